@@ -0,0 +1,106 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode;
+
+/**
+ * Keeps the contacts of geom pairs between steps.
+ * <p>
+ * {@link #collide(DGeom, DGeom, int, DContactGeomBuffer)} can replace 
+ * {@link OdeHelper#collide(DGeom, DGeom, int, DContactGeomBuffer)} in the 
+ * near callback. If neither geom of a pair has moved or rotated by more than 
+ * the thresholds since its contacts were generated, the stored contacts are 
+ * returned without calling the narrowphase. The error is therefore bounded 
+ * by the thresholds, however long the contacts are reused. Resting geoms keep 
+ * their contacts exactly, which also helps warm starting to match them.
+ * <p>
+ * {@link #update()} should be called once per step, it removes the pairs 
+ * that have not been collided for more than {@link #getMaxAge()} steps.
+ * <p>
+ * REMARK: Only the position and rotation of the geoms are checked. Call 
+ * {@link #remove(DGeom)} after changing anything else of a geom, e.g. the 
+ * size of a box. Non-placeable geoms (e.g. planes) are assumed not to change. 
+ * The cache must not be used by several threads at once.
+ * 
+ * @see OdeHelper#createContactPairCache()
+ */
+public interface DContactPairCache {
+
+	/**
+	 * Collides two geoms, or returns their stored contacts. The stored 
+	 * contacts are also returned if the geoms are passed in the other order, 
+	 * with flipped normals and swapped geoms and sides.
+	 * @param o1 The first geom to test.
+	 * @param o2 The second geom to test.
+	 * @param flags see {@link OdeHelper#collide(DGeom, DGeom, int, DContactGeomBuffer)}.
+	 * @param contacts The buffer for the contacts.
+	 * @return The number of contacts.
+	 */
+	int collide(DGeom o1, DGeom o2, int flags, DContactGeomBuffer contacts);
+
+	/**
+	 * Ages the pairs and removes those that have not been collided for more 
+	 * than the maximum age. Should be called once per step.
+	 */
+	void update();
+
+	/**
+	 * Sets the thresholds below which the stored contacts are reused.
+	 * @param linear maximum distance a geom may have moved
+	 * @param angular maximum angle (in radians) a geom may have rotated 
+	 */
+	void setThresholds(double linear, double angular);
+	double getLinearThreshold();
+	double getAngularThreshold();
+
+	/**
+	 * @param maxAge the number of calls to {@link #update()} that a pair is 
+	 * kept without being collided, at least 1 (default).
+	 */
+	void setMaxAge(int maxAge);
+	int getMaxAge();
+
+	/**
+	 * Removes all pairs of a geom, e.g. after it was changed or destroyed.
+	 * @param g The geom.
+	 */
+	void remove(DGeom g);
+
+	/**
+	 * Removes all pairs.
+	 */
+	void clear();
+
+	/**
+	 * @return The number of stored pairs.
+	 */
+	int getNumPairs();
+
+	/**
+	 * @return The number of calls of collide() that returned stored contacts.
+	 */
+	long getNumHits();
+
+	void destroy();
+}
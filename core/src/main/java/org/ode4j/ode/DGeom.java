@@ -75,7 +75,16 @@ public interface DGeom {
 	 */
 	public static final int   dFirstUserClass = 14;
 	public static final int   dLastUserClass = dFirstUserClass + dMaxUserClasses - 1;
-	public static final int   dGeomNumClasses = dLastUserClass + 1; 
+
+	/**
+	 * (TZ) Space classes that are not part of ODE. They are numbered after 
+	 * the user classes, so that <tt>dFirstUserClass</tt> keeps its value.
+	 */
+	public static final int   dFirstExtSpaceClass = dLastUserClass + 1; //18
+	public static final int   dBvhSpaceClass = dFirstExtSpaceClass; //18
+	public static final int   dOctreeSpaceClass = 19;
+	public static final int   dLastExtSpaceClass = dOctreeSpaceClass; //19
+	public static final int   dGeomNumClasses = dLastExtSpaceClass + 1; 
 	//	};
 
 
@@ -110,6 +119,8 @@ public interface DGeom {
 	 *  <li> dSimpleSpaceClass </li>
 	 *  <li> dHashSpaceClass </li>
 	 *  <li> dQuadTreeSpaceClass </li>
+	 *  <li> dBvhSpaceClass </li>
+	 *  <li> dOctreeSpaceClass </li>
 	 *  <li> dFirstUserClass </li>
 	 *  <li> dLastUserClass </li>
 	 * <p>
@@ -422,6 +433,40 @@ public interface DGeom {
 		public void call (Object data, DGeom o1, DGeom o2);
 	}
 
+	/**
+	 * User callback for parallel collision testing, see
+	 * {@link OdeHelper#spaceCollideParallel(DSpace, DWorld, int, Object, DParallelNearCallback)}.
+	 * <p>
+	 * Both methods are called in the calling thread. Only the narrowphase 
+	 * (dCollide) between the accepted pairs runs on the threads of the world.
+	 */
+	public interface DParallelNearCallback {
+		/**
+		 * Called by the broadphase for every pair of geoms that may be near 
+		 * each other. Spaces are never passed, their geoms are tested instead.
+		 * @param data The user data object, as passed to spaceCollideParallel.
+		 * @param o1   The first geom.
+		 * @param o2   The second geom.
+		 * @return <tt>false</tt> if the pair should not be tested with dCollide, 
+		 * e.g. because the bodies are connected by a joint.
+		 */
+		public boolean accept (Object data, DGeom o1, DGeom o2);
+
+		/**
+		 * Called for every accepted pair that has contacts. The pairs are 
+		 * reported in the order in which they were accepted, regardless of 
+		 * the number of threads, so that the contact joints can be created 
+		 * deterministically.
+		 * @param data The user data object, as passed to spaceCollideParallel.
+		 * @param o1   The first geom.
+		 * @param o2   The second geom.
+		 * @param contacts The contacts, only valid during the call.
+		 * @param numContacts The number of contacts, at least 1.
+		 */
+		public void contacts (Object data, DGeom o1, DGeom o2, 
+				DContactGeomBuffer contacts, int numContacts);
+	}
+
 	void collide2 (DGeom g, Object data, DNearCallback callback);
 
 
@@ -0,0 +1,86 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode;
+
+import java.util.Arrays;
+
+/**
+ * A reusable list of geoms, filled by {@link DSpace#queryAABB(DAABBC, DGeomBuffer)} 
+ * and {@link DSpace#querySphere(org.ode4j.math.DVector3C, double, DGeomBuffer)}.
+ */
+public final class DGeomBuffer {
+
+	private DGeom[] _geoms;
+	private int _size = 0;
+
+	public DGeomBuffer() {
+		this(64);
+	}
+
+	/**
+	 * @param capacity initial number of geoms, the buffer grows when needed
+	 */
+	public DGeomBuffer(int capacity) {
+		_geoms = new DGeom[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * @return The number of geoms.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * @param i index of the geom
+	 * @return The geom.
+	 */
+	public DGeom get(int i) {
+		if (i < 0 || i >= _size) {
+			throw new IndexOutOfBoundsException("Index=" + i + "; size=" + _size);
+		}
+		return _geoms[i];
+	}
+
+	/**
+	 * Appends a geom.
+	 * @param g geom
+	 */
+	public void add(DGeom g) {
+		if (_size == _geoms.length) {
+			_geoms = Arrays.copyOf(_geoms, 2*_geoms.length);
+		}
+		_geoms[_size++] = g;
+	}
+
+	/**
+	 * Removes all geoms, the capacity is kept.
+	 */
+	public void clear() {
+		// Don't keep the removed geoms alive
+		Arrays.fill(_geoms, 0, _size, null);
+		_size = 0;
+	}
+}
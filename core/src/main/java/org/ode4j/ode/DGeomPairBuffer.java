@@ -0,0 +1,128 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode;
+
+import java.util.Arrays;
+
+/**
+ * A reusable list of geom pairs, filled by {@link DSpace#collectPairs(DGeomPairBuffer)}
+ * and collided with {@link OdeHelper#collideBatch(DGeomPairBuffer, int, DContactGeomBuffer, int[])}.
+ * <p>
+ * The pairs can be filtered or reordered with {@link #set(int, DGeom, DGeom)} 
+ * and {@link #setSize(int)} before they are collided.
+ */
+public final class DGeomPairBuffer {
+
+	private DGeom[] _geoms;
+	private int _size = 0;
+
+	public DGeomPairBuffer() {
+		this(64);
+	}
+
+	/**
+	 * @param capacity initial number of pairs, the buffer grows when needed
+	 */
+	public DGeomPairBuffer(int capacity) {
+		_geoms = new DGeom[2*Math.max(capacity, 1)];
+	}
+
+	/**
+	 * @return The number of pairs.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * @param i index of the pair
+	 * @return The first geom of the pair.
+	 */
+	public DGeom getGeom1(int i) {
+		checkIndex(i);
+		return _geoms[2*i];
+	}
+
+	/**
+	 * @param i index of the pair
+	 * @return The second geom of the pair.
+	 */
+	public DGeom getGeom2(int i) {
+		checkIndex(i);
+		return _geoms[2*i+1];
+	}
+
+	/**
+	 * Appends a pair.
+	 * @param o1 first geom
+	 * @param o2 second geom
+	 */
+	public void add(DGeom o1, DGeom o2) {
+		if (2*_size == _geoms.length) {
+			_geoms = Arrays.copyOf(_geoms, 2*_geoms.length);
+		}
+		_geoms[2*_size] = o1;
+		_geoms[2*_size+1] = o2;
+		_size++;
+	}
+
+	/**
+	 * Replaces a pair.
+	 * @param i index of the pair
+	 * @param o1 first geom
+	 * @param o2 second geom
+	 */
+	public void set(int i, DGeom o1, DGeom o2) {
+		checkIndex(i);
+		_geoms[2*i] = o1;
+		_geoms[2*i+1] = o2;
+	}
+
+	/**
+	 * Removes the pairs from <tt>size</tt> on.
+	 * @param size new number of pairs, not larger than the current number
+	 */
+	public void setSize(int size) {
+		if (size < 0 || size > _size) {
+			throw new IndexOutOfBoundsException("size=" + size + "; current size=" + _size);
+		}
+		// Don't keep the removed geoms alive
+		Arrays.fill(_geoms, 2*size, 2*_size, null);
+		_size = size;
+	}
+
+	/**
+	 * Removes all pairs, the capacity is kept.
+	 */
+	public void clear() {
+		setSize(0);
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= _size) {
+			throw new IndexOutOfBoundsException("Index=" + i + "; size=" + _size);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode;
+
+/**
+ * Loose octree space.
+ * <p>
+ * The root cell is given by a center and half extents. It is split into 
+ * eight children down to a maximum depth, but the nodes are only allocated 
+ * when a geom is stored in them. Each node is enlarged by the looseness 
+ * factor, so a geom is stored in the node at the depth that matches its size 
+ * and whose cell contains the center of its AABB. This placement is 
+ * computed directly; a geom that moves inside its cell does not need any 
+ * work in the tree. 
+ * Geoms outside of the root cell and geoms with infinite AABBs (e.g. planes) 
+ * are tested against all other geoms.
+ * <p>
+ * Unlike the quad tree space, all three axes are subdivided, which suits 
+ * worlds that extend in height as well.
+ *
+ * @author Tilmann Zaeschke
+ */
+public interface DOctreeSpace extends DSpace {
+
+	/**
+	 * @return the looseness factor, the size of the nodes relative to 
+	 * their cells
+	 */
+	double getLooseness();
+
+	/**
+	 * Sets the looseness factor, the size of the nodes relative to their 
+	 * cells. Larger factors allow geoms to be stored deeper in the tree, but 
+	 * the nodes overlap more. The default is 2.
+	 * @param looseness looseness factor, must be larger than 1
+	 */
+	void setLooseness(double looseness);
+
+	/**
+	 * @return the maximum depth of the tree, the root has depth 0
+	 */
+	int getMaxDepth();
+}
@@ -24,6 +24,7 @@
  *************************************************************************/
 package org.ode4j.ode;
 
+import org.ode4j.math.DVector3C;
 import org.ode4j.ode.internal.DxGeom;
 
 /**
@@ -53,6 +54,42 @@ public interface DSpace extends DGeom {
 
 	/** This is equivalent to OdeHelper.spaceCollide(...) */
 	void collide (Object data, DNearCallback callback);
+
+	/**
+	 * Appends all pairs of geoms that may intersect to a pair buffer, 
+	 * without calling back into user code for every pair.
+	 * <p>
+	 * The pairs are those that spaceCollide() would report, except that 
+	 * pairs with a sub-space are resolved into the pairs of their geoms with 
+	 * spaceCollide2(), and the pairs inside every enabled sub-space are 
+	 * added as well. The buffer is not cleared.
+	 *
+	 * @param pairs The buffer that receives the pairs.
+	 * @see OdeHelper#collideBatch(DGeomPairBuffer, int, DContactGeomBuffer, int[])
+	 */
+	void collectPairs (DGeomPairBuffer pairs);
+
+	/**
+	 * Appends the enabled geoms whose AABB overlaps a box to a geom buffer, 
+	 * without creating a geom or calling back into user code.
+	 * <p>
+	 * Sub-spaces are not appended, the enabled sub-spaces whose AABB overlaps 
+	 * the box are searched instead. The buffer is not cleared.
+	 *
+	 * @param aabb The box.
+	 * @param geoms The buffer that receives the geoms.
+	 */
+	void queryAABB (DAABBC aabb, DGeomBuffer geoms);
+
+	/**
+	 * Appends the enabled geoms whose AABB overlaps a sphere to a geom 
+	 * buffer, see {@link #queryAABB(DAABBC, DGeomBuffer)}.
+	 *
+	 * @param center The center of the sphere.
+	 * @param radius The radius of the sphere.
+	 * @param geoms The buffer that receives the geoms.
+	 */
+	void querySphere (DVector3C center, double radius, DGeomBuffer geoms);
 	
 	
 	/**
@@ -117,4 +154,28 @@ public interface DSpace extends DGeom {
 	 * @see OdeHelper#spaceCollide2(DGeom, DGeom, Object, org.ode4j.ode.DGeom.DNearCallback)
 	 */
 	int getSublevel ();
+
+	/**
+	 * Sets the activity aware mode of a space.
+	 * <p>
+	 * A geom is active if it has a body that is enabled. Geoms without body 
+	 * and geoms of disabled (sleeping) bodies can not start to touch each 
+	 * other, so in activity aware mode such pairs are not reported by 
+	 * spaceCollide, only pairs with at least one active geom are. Sub-spaces 
+	 * count as active geoms. 
+	 * <p>
+	 * The sweep and prune space sorts the active and the inactive geoms 
+	 * separately and only prunes the active ones against all others, the 
+	 * other spaces skip the inactive pairs before testing their AABBs. 
+	 * By default the mode is off.
+	 *
+	 * @param enable true to skip pairs of two inactive geoms
+	 */
+	void setActivityAware (boolean enable);
+
+	/**
+	 * @return true if the space is in activity aware mode
+	 * @see #setActivityAware(boolean)
+	 */
+	boolean isActivityAware ();
 }
@@ -138,6 +138,20 @@ public interface DTriMeshData {
 //	/** Preprocess the trimesh data to remove mark unnecessary edges and vertices */
 //	//ODE_API 
 	void preprocess();
+
+	/**
+	 * Notifies the data that vertices of the array passed to 
+	 * {@link #build(float[], int[])} have been changed in place, e.g. for 
+	 * deformable meshes like cloth.
+	 * <p>
+	 * The data keeps a tree of the triangles that is refitted to the new 
+	 * vertices without sorting and rebuilt when its quality has degraded. The 
+	 * trimeshes that use the data are marked as moved. The indices must not 
+	 * be changed and the edge angles of {@link #preprocess()} are not updated.
+	 * @param firstVertex index of the first changed vertex
+	 * @param vertexCount number of changed vertices
+	 */
+	void updateVertices(int firstVertex, int vertexCount);
 //	/** Get and set the internal preprocessed trimesh data buffer, for loading and saving */
 //	//ODE_API 
 //	//void dGeomTriMeshDataGetBuffer(dTriMeshData g, unsigned char** buf, int* bufLen) {
@@ -339,7 +339,6 @@ public interface DWorld {
 	 * @param w The world to change threading implementation for.
 	 * @param functions_info Pointer to threading functions structure
 	 * @param threading_impl ID of threading implementation object
-	 * @deprecated This is not supported by ode4j.
 	 */
 	void setStepThreadingImplementation(final DThreadingFunctionsInfo functions_info, 
 			DThreadingImplementation threading_impl);
@@ -426,6 +425,8 @@ public interface DWorld {
 	 * <p>REMARK:
 	 * More iterations will give a more accurate solution, but will take
 	 * longer to compute.
+	 * If a convergence tolerance is set, this is the maximum number of 
+	 * iterations, see {@link #setQuickStepConvergenceTolerance(double)}.
 	 * 
 	 * @param num The default is 20 iterations.
 	 */
@@ -454,6 +455,159 @@ public interface DWorld {
 	 */
 	double getQuickStepW();
 
+
+	/**
+	 * Enable or disable the parallel SOR sweep of the QuickStep method.
+	 * 
+	 * <p>REMARK:
+	 * If enabled, the constraint rows of large islands are partitioned 
+	 * into batches that do not share any body (by colouring the 
+	 * constraint graph). The rows of a batch are then solved concurrently 
+	 * by the threads of the stepping threading implementation, see 
+	 * {@link #setStepThreadingImplementation}. The order of the rows is
+	 * not randomized in this mode, so the result does not depend on the 
+	 * number of threads. Rows that can not be coloured are solved 
+	 * sequentially after the other batches.
+	 * 
+	 * @param parallel The default is <code>false</code>.
+	 */
+	void setQuickStepParallelSOR(boolean parallel);
+
+
+	/**
+	 * Get whether the QuickStep method uses the parallel SOR sweep.
+	 * @return <code>true</code> if the parallel SOR sweep is enabled
+	 * @see #setQuickStepParallelSOR(boolean)
+	 */
+	boolean getQuickStepParallelSOR();
+
+
+	/**
+	 * Enable or disable warm starting of the QuickStep method.
+	 * 
+	 * <p>REMARK:
+	 * If enabled, the SOR iterations do not start from zero but from the
+	 * constraint forces (lambda) of the previous step, slightly damped.
+	 * Lambda is kept per joint. Contact joints are usually recreated every 
+	 * step, so their lambda is carried over to the new contact joint with 
+	 * the same geoms, the same sides (e.g. triangle indices) and the 
+	 * nearest contact position.
+	 * Resting contacts, such as stacks, then need far fewer iterations, 
+	 * see {@link #setQuickStepNumIterations(int)}.
+	 * 
+	 * @param warmStarting The default is <code>false</code>.
+	 */
+	void setQuickStepWarmStarting(boolean warmStarting);
+
+
+	/**
+	 * Get whether the QuickStep method uses warm starting.
+	 * @return <code>true</code> if warm starting is enabled
+	 * @see #setQuickStepWarmStarting(boolean)
+	 */
+	boolean getQuickStepWarmStarting();
+
+
+	/**
+	 * Set the convergence tolerance of the QuickStep method.
+	 * 
+	 * <p>REMARK:
+	 * If the tolerance is greater than zero, the SOR iterations of an island
+	 * stop as soon as no lambda (constraint force) of the island changed by 
+	 * more than the tolerance during the last iteration, but not before 
+	 * the minimum number of iterations, see 
+	 * {@link #setQuickStepMinIterations(int)}. 
+	 * The number of iterations set with 
+	 * {@link #setQuickStepNumIterations(int)} is the maximum.
+	 * Resting islands then usually stop after a few iterations, in 
+	 * particular with warm starting, see 
+	 * {@link #setQuickStepWarmStarting(boolean)}.
+	 * 
+	 * @param tolerance The default is 0, i.e. all iterations are performed.
+	 */
+	void setQuickStepConvergenceTolerance(double tolerance);
+
+
+	/**
+	 * Get the convergence tolerance of the QuickStep method.
+	 * @return the tolerance
+	 * @see #setQuickStepConvergenceTolerance(double)
+	 */
+	double getQuickStepConvergenceTolerance();
+
+
+	/**
+	 * Set the minimum number of iterations that the QuickStep method performs 
+	 * per step if a convergence tolerance is set.
+	 * 
+	 * @param num The default is 1 iteration.
+	 * @see #setQuickStepConvergenceTolerance(double)
+	 */
+	void setQuickStepMinIterations(int num);
+
+
+	/**
+	 * Get the minimum number of iterations that the QuickStep method performs 
+	 * per step.
+	 * @return the minimum number of iterations
+	 * @see #setQuickStepMinIterations(int)
+	 */
+	int getQuickStepMinIterations();
+
+
+	/**
+	 * Set the seed of the world's random number generator.
+	 * 
+	 * <p>REMARK:
+	 * The steppers use random numbers, e.g. QuickStep solves the 
+	 * constraints in a randomly permuted order. Every step draws one 
+	 * number from the world's generator and seeds a separate generator 
+	 * per island with it. Stepping is therefore reproducible for a given 
+	 * seed, independent of other worlds and of the number of threads.
+	 * 
+	 * @param seed The default is 0.
+	 */
+	void setRandomSeed(long seed);
+
+
+	/**
+	 * Get the current seed of the world's random number generator.
+	 * @return the seed
+	 * @see #setRandomSeed(long)
+	 */
+	long getRandomSeed();
+
+
+	/**
+	 * Get the number of islands that were processed by the last QuickStep.
+	 * 
+	 * <p>REMARK:
+	 * The islands are numbered from 0 in the order in which they were 
+	 * found, see {@link #getQuickStepIslandIterations(int)} and 
+	 * {@link #getQuickStepIslandResidual(int)}.
+	 * 
+	 * @return the number of islands
+	 */
+	int getQuickStepIslandCount();
+
+
+	/**
+	 * Get the number of SOR iterations that the last QuickStep performed 
+	 * for an island.
+	 * @param island island index, from 0 to {@link #getQuickStepIslandCount()}-1
+	 * @return number of iterations, 0 if the island has no constraints
+	 */
+	int getQuickStepIslandIterations(int island);
+
+
+	/**
+	 * Get the residual of an island after the last QuickStep, i.e. the 
+	 * largest change of a lambda (constraint force) in the last iteration.
+	 * @param island island index, from 0 to {@link #getQuickStepIslandCount()}-1
+	 * @return residual of the island
+	 */
+	double getQuickStepIslandResidual(int island);
+
 	
 	/**
 	 * Set auto disable linear threshold for newly created bodies.
@@ -50,14 +50,27 @@ public class OdeConfig {
 	
 	public static enum TRIMESH {
 		DISABLED,
-		GIMPACT;
+		GIMPACT,
+		/** 
+		 * GIMPACT colliders on a compact quantized AABB tree in mesh space 
+		 * (OPCODE style). Uses less memory than GIMPACT for large meshes, 
+		 * moving a trimesh does not transform all vertices.
+		 */
+		QUANTIZED;
 	}
 	
 	
-	/** Do not use directly.
-	 * TZ: For now the only option: DISABLED. */
+	/** 
+	 * The default TRIMESH implementation. 
+	 * @deprecated This is only the default type, use {@link #getTrimeshType()} 
+	 * to get the current type.
+	 */
+	@Deprecated
 	public static final TRIMESH dTRIMESH_TYPE = TRIMESH.GIMPACT;
 	
+	/** Do not use directly. See {@link #setTrimeshType(TRIMESH)}. */
+	private static volatile TRIMESH trimeshType = dTRIMESH_TYPE;
+	
 	/**
 	 * @return Whether double precision is used.
 	 */
@@ -69,7 +82,27 @@ public class OdeConfig {
 	 * @return Whether any TRIMESH is enabled.
 	 */
 	public static boolean isTrimeshEnabled() {
-		return dTRIMESH_TYPE != TRIMESH.DISABLED;
+		return trimeshType != TRIMESH.DISABLED;
+	}
+	
+	/**
+	 * @return The TRIMESH implementation.
+	 */
+	public static TRIMESH getTrimeshType() {
+		return trimeshType;
+	}
+	
+	/**
+	 * Select the TRIMESH implementation of trimeshes and trimesh data that 
+	 * are created afterwards. Trimeshes and data of different implementations 
+	 * can not be mixed.
+	 * @param type
+	 */
+	public static void setTrimeshType(TRIMESH type) {
+		if (type == null) {
+			throw new NullPointerException();
+		}
+		trimeshType = type;
 	}
 	
 	/**
@@ -26,16 +26,20 @@ package org.ode4j.ode;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DGeom.DParallelNearCallback;
 import org.ode4j.ode.DTriMesh.DTriArrayCallback;
 import org.ode4j.ode.DTriMesh.DTriCallback;
 import org.ode4j.ode.DTriMesh.DTriRayCallback;
 import org.ode4j.ode.internal.DxBody;
 import org.ode4j.ode.internal.DxBox;
+import org.ode4j.ode.internal.DxBvhSpace;
 import org.ode4j.ode.internal.DxCapsule;
+import org.ode4j.ode.internal.DxContactPairCache;
 import org.ode4j.ode.internal.DxConvex;
 import org.ode4j.ode.internal.DxCylinder;
 import org.ode4j.ode.internal.DxGeom;
@@ -44,9 +48,11 @@ import org.ode4j.ode.internal.DxHeightfield;
 import org.ode4j.ode.internal.DxHeightfieldData;
 import org.ode4j.ode.internal.DxMass;
 import org.ode4j.ode.internal.DxPlane;
+import org.ode4j.ode.internal.DxOctreeSpace;
 import org.ode4j.ode.internal.DxQuadTreeSpace;
 import org.ode4j.ode.internal.DxRay;
 import org.ode4j.ode.internal.DxSAPSpace;
+import org.ode4j.ode.internal.DxSAPSpaceIncremental;
 import org.ode4j.ode.internal.DxSimpleSpace;
 import org.ode4j.ode.internal.DxSpace;
 import org.ode4j.ode.internal.DxSphere;
@@ -480,6 +486,26 @@ public abstract class OdeHelper {
 	public static DSapSpace createSapSpace (DSpace space, DSapSpace.AXES axes) {
 		return DxSAPSpace.dSweepAndPruneSpaceCreate((DxSpace) space, axes.getCode());
 	}
+	/**
+	 * Create a sweep and prune space that keeps its sorted endpoints and its 
+	 * overlapping pairs between steps. This is faster than 
+	 * {@link #createSapSpace(DSapSpace.AXES)} if most geoms move only a little 
+	 * between calls to <tt>collide()</tt>.
+	 * @param axes DSapSpace.AXES
+	 * @return SAP space
+	 */
+	public static DSapSpace createIncrementalSapSpace (DSapSpace.AXES axes) {
+		return DxSAPSpaceIncremental.dSweepAndPruneSpaceIncrementalCreate(null, axes.getCode());
+	}
+	/**
+	 * @param space parent space or null
+	 * @param axes DSapSpace.AXES
+	 * @return SAP space
+	 * @see #createIncrementalSapSpace(DSapSpace.AXES)
+	 */
+	public static DSapSpace createIncrementalSapSpace (DSpace space, DSapSpace.AXES axes) {
+		return DxSAPSpaceIncremental.dSweepAndPruneSpaceIncrementalCreate((DxSpace) space, axes.getCode());
+	}
 	//ODE_API 
 	public static DHashSpace createHashSpace () {
 		return DxHashSpace.dHashSpaceCreate(null);
@@ -500,6 +526,48 @@ public abstract class OdeHelper {
 		return DxQuadTreeSpace.dQuadTreeSpaceCreate((DxSpace) space, 
 				Center, Extents, Depth);
 	}
+	/**
+	 * Create a dynamic AABB tree space. 
+	 * @return BVH space
+	 * @see DBvhSpace
+	 */
+	public static DBvhSpace createBvhSpace () {
+		return DxBvhSpace.dBvhSpaceCreate(null);
+	}
+	/**
+	 * Create a dynamic AABB tree space. 
+	 * @param space parent space or null
+	 * @return BVH space
+	 * @see DBvhSpace
+	 */
+	public static DBvhSpace createBvhSpace (DSpace space) {
+		return DxBvhSpace.dBvhSpaceCreate((DxSpace) space);
+	}
+	/**
+	 * Create a loose octree space. 
+	 * @param center center of the root cell
+	 * @param extents half extents of the root cell
+	 * @param maxDepth maximum depth of the tree, between 0 and 20
+	 * @return octree space
+	 * @see DOctreeSpace
+	 */
+	public static DOctreeSpace createOctreeSpace (
+			DVector3C center, DVector3C extents, int maxDepth) {
+		return DxOctreeSpace.dOctreeSpaceCreate(null, center, extents, maxDepth);
+	}
+	/**
+	 * Create a loose octree space. 
+	 * @param space parent space or null
+	 * @param center center of the root cell
+	 * @param extents half extents of the root cell
+	 * @param maxDepth maximum depth of the tree, between 0 and 20
+	 * @return octree space
+	 * @see DOctreeSpace
+	 */
+	public static DOctreeSpace createOctreeSpace (DSpace space, 
+			DVector3C center, DVector3C extents, int maxDepth) {
+		return DxOctreeSpace.dOctreeSpaceCreate((DxSpace) space, center, extents, maxDepth);
+	}
 
 	/**
 	 * Create a box geom with the provided side lengths.
@@ -678,6 +746,8 @@ public abstract class OdeHelper {
 	 * Make sure that all the threads that were using ODE have already terminated
 	 * before calling <tt>dCloseODE</tt>. In particular it is not allowed to call
 	 * <tt>dCleanupODEAllDataForThread</tt> after <tt>dCloseODE</tt>.
+	 * Thread pools that have not been freed are freed when ODE is closed, 
+	 * see {@link DThreadingThreadPool#freeAllThreadPools()}.
 	 *
 	 * @see #initODE2(int)
 	 */
@@ -735,6 +805,36 @@ public abstract class OdeHelper {
 			DContactGeomBuffer contacts) {
 		return DxGeom.dCollide((DxGeom)o1, (DxGeom)o2, flags, contacts, 1);
 	}
+
+	/**
+	 * Collides all pairs of a pair buffer, usually filled by 
+	 * {@link DSpace#collectPairs(DGeomPairBuffer)}.
+	 * <p>
+	 * The contacts of the pairs are stored one after the other: the contacts 
+	 * of pair <tt>i</tt> start at the sum of <tt>contactCounts[0..i-1]</tt>.
+	 *
+	 * @param pairs The pairs to test.
+	 * @param flags The flags for every pair, see 
+	 * {@link #collide(DGeom, DGeom, int, DContactGeomBuffer)}.
+	 * @param contacts The buffer for the contacts. In the worst case it has 
+	 * to hold the maximum number of contacts for every pair.
+	 * @param contactCounts Receives the number of contacts of every pair, 
+	 * must not be shorter than the number of pairs.
+	 * @return The total number of contacts.
+	 */
+	public static int collideBatch (DGeomPairBuffer pairs, int flags, 
+			DContactGeomBuffer contacts, int[] contactCounts) {
+		return DxSpace.dCollideBatch(pairs, flags, contacts, contactCounts);
+	}
+
+	/**
+	 * Create a cache that keeps the contacts of geom pairs between steps.
+	 * @return The new cache.
+	 * @see DContactPairCache
+	 */
+	public static DContactPairCache createContactPairCache () {
+		return new DxContactPairCache();
+	}
 	
 
 	/**
@@ -958,6 +1058,66 @@ public abstract class OdeHelper {
 		((DxSpace)space).dSpaceCollide(data, callback);
 	}
 
+	/**
+	 * Collides all geoms in a space and its sub-spaces, with the narrowphase 
+	 * running on the threads of a world.
+	 * <p>
+	 * The broadphase runs in the calling thread and passes every potentially 
+	 * intersecting pair of geoms to {@link DParallelNearCallback#accept}. 
+	 * The accepted pairs are split between the threads of the threading 
+	 * implementation of the world (see 
+	 * {@link DWorld#setStepThreadingImplementation}), that run dCollide on them 
+	 * with separate contact buffers. Finally the contacts of every pair are 
+	 * passed to {@link DParallelNearCallback#contacts} in the calling thread, 
+	 * in the order in which the pairs were accepted, which is where the 
+	 * contact joints should be created.
+	 * <p>
+	 * With a single threaded world the contacts are the same as those of 
+	 * {@link #spaceCollide(DSpace, Object, DNearCallback)} followed by 
+	 * {@link #collide(DGeom, DGeom, int, DContactGeomBuffer)} for every pair 
+	 * and for the interior of every enabled sub-space. 
+	 * <p>
+	 * REMARK: The geoms must not be changed until the call returns. User 
+	 * colliders must be safe to be called concurrently for different pairs.
+	 *
+	 * @param space The space to test.
+	 * @param world The world whose threads are used.
+	 * @param flags The flags for dCollide, the lower 16 bits are the maximum 
+	 * number of contacts per pair.
+	 * @param data Passed to the callback functions.
+	 * @param callback The callback functions.
+	 * @see #spaceCollide(DSpace, Object, DNearCallback)
+	 */
+	public static void spaceCollideParallel (DSpace space, DWorld world, int flags, 
+			Object data, DParallelNearCallback callback) {
+		((DxWorld)world).dSpaceCollideParallel((DxSpace)space, flags, data, callback);
+	}
+
+	/**
+	 * Tests many geoms against a space, as with 
+	 * {@link #spaceCollide2(DGeom, DGeom, Object, DNearCallback)} for every 
+	 * geom, and appends the pairs to a pair buffer. The pairs of a geom are 
+	 * appended after the pairs of the previous geom, pairs with sub-spaces 
+	 * are resolved into the pairs of their geoms. The buffer is not cleared.
+	 * <p>
+	 * For spaces created with DxSAPSpace2 the queries run concurrently on the 
+	 * threads of the world, sharing one BVH that is built with these threads 
+	 * as well. The order of the pairs does not depend on the number of 
+	 * threads.
+	 * <p>
+	 * REMARK: The geoms must not be changed until the call returns.
+	 *
+	 * @param space The space to test.
+	 * @param geoms The geoms to test against the space, must not be spaces.
+	 * @param world The world whose threads are used, or <tt>null</tt>.
+	 * @param pairs The buffer that receives the pairs.
+	 * @see #collideBatch(DGeomPairBuffer, int, DContactGeomBuffer, int[])
+	 */
+	public static void spaceCollide2Batch (DSpace space, DGeom[] geoms, DWorld world, 
+			DGeomPairBuffer pairs) {
+		DxSpace.dSpaceCollide2Batch((DxSpace)space, geoms, (DxWorld)world, pairs);
+	}
+
 	/**
 	 * Determines which geoms from one space may potentially intersect with 
 	 * geoms from another space, and calls the callback function for each candidate 
@@ -1042,7 +1202,6 @@ public abstract class OdeHelper {
 	 * @see DThreadingImplementation#dExternalThreadingServeMultiThreadedImplementation
 	 * @see DThreadingImplementation#free()
 	 */
-	@Deprecated
 	public static DThreadingImplementation allocateMultiThreaded() {
 		return DxThreadingImplementation.dThreadingAllocateMultiThreadedImplementation();
 	}
@@ -1051,18 +1210,12 @@ public abstract class OdeHelper {
 	 * Creates an instance of built-in thread pool object that can be used to serve
 	 * multi-threaded threading implementations.
 	 *
-	 * The threads allocated inherit priority of caller thread. Their affinity is not
-	 * explicitly adjusted and gets the value the system assigns by default. Threads 
-	 * have their stack memory fully committed immediately on start. On POSIX platforms 
-	 * threads are started with all the possible signals blocked. Threads execute 
-	 * calls to {@code dAllocateODEDataForThread} with {@code ode_data_allocate_flags} 
-	 * on initialization.
-	 *
-	 * On POSIX platforms this function must be called with signals masked 
-	 * or other measures must be taken to prevent reception of signals by calling thread 
-	 * for the duration of the call.
+	 * The threads allocated inherit priority of caller thread. They are daemon 
+	 * threads, so they do not prevent the JVM from exiting. Threads execute 
+	 * calls to {@code dAllocateODEDataForThread} on initialization.
 	 * 
-	 * @param thread_count Number of threads to start in pool
+	 * @param thread_count Number of threads to start in pool or 0 for the number of 
+	 * available processors
 	 * @param stack_size Size of stack to be used for every thread or 0 for system default value
 //	 * @param ode_data_allocate_flags Flags to be passed to {@code dAllocateODEDataForThread} on 
 //	 * behalf of each thread
@@ -1072,11 +1225,34 @@ public abstract class OdeHelper {
 	 * @see DThreadingImplementation#shutdownProcessing()
 	 * @see DThreadingThreadPool#freeThreadPool()
 	 */
-	@Deprecated
 	public static DThreadingThreadPool allocateThreadPool(int thread_count, int stack_size, 
 			//int ode_data_allocate_flags, 
 			Object[][] reserved) {
 		return DThreadingThreadPool.allocateThreadPool(thread_count, stack_size, 
 				OdeInit.dAllocateFlagBasicData, reserved);
 	}
+
+	/**
+	 * Creates an instance of built-in thread pool object that runs its threads 
+	 * as tasks of the given executor instead of starting its own threads, e.g. 
+	 * on a {@code ForkJoinPool} or on virtual threads.
+	 * <p>
+	 * Each pool thread blocks the task it runs in until the pool is freed, so 
+	 * the executor must be able to run {@code thread_count} tasks at the same 
+	 * time. The executor is owned by the caller and is not shut down by ODE.
+	 * Pools that have not been freed are freed by {@link #closeODE()}.
+	 * 
+	 * @param executor Executor to run the pool threads on
+	 * @param thread_count Number of threads to start in pool or 0 for the number of 
+	 * available processors
+	 * @return the allocated object or NULL on failure
+	 *
+	 * @see OdeHelper#allocateMultiThreaded()
+	 * @see DThreadingImplementation#shutdownProcessing()
+	 * @see DThreadingThreadPool#freeThreadPool()
+	 */
+	public static DThreadingThreadPool allocateThreadPool(Executor executor, int thread_count) {
+		return DThreadingThreadPool.allocateThreadPool(executor, thread_count, 
+				OdeInit.dAllocateFlagBasicData);
+	}
 }
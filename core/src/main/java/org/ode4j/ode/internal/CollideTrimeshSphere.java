@@ -562,7 +562,8 @@ public class CollideTrimeshSphere implements DColliderFn {
 		SphereGeom.recomputeAABB();
 
 	    //Collide trimeshes
-	    DxGimpactCollision.gim_trimesh_sphere_collisionODE(TriMesh.m_collision_trimesh,Position,Radius,trimeshcontacts);
+	    DxGimpactCollision.gim_trimesh_sphere_collisionODE(TriMesh.m_collision_trimesh,Position,Radius,trimeshcontacts,
+	    		TriMesh.getTCCache(SphereGeom));
 
 	    if(trimeshcontacts.size() == 0)
 	    {
@@ -92,6 +92,10 @@ public class CollisionLibccd {
 	private static class ccd_convex_t extends ccd_obj_t {
 		//ccd_obj_t o;
 		DxConvex convex;
+		// (TZ) last support point, the start of the next support query
+		int support = -1;
+		// (TZ) temporary of ccdSupportConvex
+		final ccd_vec3_t dir = new ccd_vec3_t();
 	};
 	//typedef struct _ccd_convex_t ccd_convex_t;
 
@@ -264,25 +268,17 @@ public class CollisionLibccd {
 		@Override
 		public void run(Object obj, ccd_vec3_t _dir, ccd_vec3_t v) {
 			final ccd_convex_t c = (ccd_convex_t )obj;
-			final ccd_vec3_t dir = new ccd_vec3_t(), p = new ccd_vec3_t();
-			double maxdot, dot;
-			int i;
+			final ccd_vec3_t dir = c.dir;
 			double []curp;
 
 			ccdVec3Copy(dir, _dir);
 			ccdQuatRotVec(dir, c.rot_inv);
 
-			maxdot = -CCD_REAL_MAX;
+			// (TZ) hill-climbing from the last support point of this pair
+			c.support = c.convex.SupportIndexLocal(ccdVec3X(dir), ccdVec3Y(dir), ccdVec3Z(dir), c.support);
 			curp = c.convex.getPoints();
-			int curpI = 0;
-			for (i = 0; i < c.convex.getPointcount(); i++, curpI += 3){
-				ccdVec3Set(p, curp[curpI+0], curp[curpI+1], curp[curpI+2]);
-				dot = ccdVec3Dot(dir, p);
-				if (dot > maxdot){
-					ccdVec3Copy(v, p);
-					maxdot = dot;
-				}
-			}
+			int curpI = c.support*3;
+			ccdVec3Set(v, curp[curpI+0], curp[curpI+1], curp[curpI+2]);
 
 
 			// transform support vertex
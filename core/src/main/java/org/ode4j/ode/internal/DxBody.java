@@ -131,6 +131,16 @@ public class DxBody extends DObject implements DBody, Cloneable {
 	int average_ready;            // indicates ( with = 1 ), if the Body's buffers are ready for average-calculations
 
 	BodyMoveCallBack moved_callback; // let the user know the body moved
+
+	// island tracking, see DxIslandTracker (TZ)
+	DxBody islandParent;		// union-find parent, this body for the root of an island
+	int islandRank;
+	DxBody islandNext;			// next body of the island, the bodies form a ring
+	int islandEnabledCount;		// root only: number of enabled bodies of the island
+	DxBody islandAwakePrev, islandAwakeNext;	// root only: list of awake islands
+	boolean islandAwake;		// root only: the island is in the list of awake islands
+	boolean islandDirty;		// root only: the island may have to be split
+	boolean islandRemoved;		// the body has been destroyed
 	private dxDampingParameters dampingp; // damping parameters, depends on flags
 	double max_angular_speed;      // limit the angular velocity to this magnitude
 
@@ -182,6 +192,7 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		//addObjectToList (b,(dObject **) &w.firstbody);
 		addObjectToList(b, w.firstbody);
 		w.nb++;
+		w.islands.addBody(b);
 
 		// set auto-disable parameters
 		b.average_avel_buffer = b.average_lvel_buffer = null; // no buffer at beginning
@@ -220,6 +231,8 @@ public class DxBody extends DObject implements DBody, Cloneable {
 			geom2.dGeomSetBody (null);
 		}
 
+		world.islands.removeBody(this);
+
 		// detach all neighbouring joints, then delete this body.
 		DxJointNode n = firstjoint.get();
 		while (n != null) {
@@ -719,7 +732,7 @@ public class DxBody extends DObject implements DBody, Cloneable {
 	//	void dBodyEnable (dxBody b)
     public void dBodyEnable ()
     {
-        flags &= ~dxBodyDisabled;
+        setDisabledFlag(false);
         adis_stepsleft = adis.idle_steps;
         adis_timeleft = adis.idle_time;
         // no code for average-processing needed here
@@ -731,14 +744,33 @@ public class DxBody extends DObject implements DBody, Cloneable {
     //(TZ)
     public void dBodyEnable_noAdis ()
     {
-        flags &= ~dxBodyDisabled;
+        setDisabledFlag(false);
     }
 
 
 	//	void dBodyDisable (dxBody b)
 	public void dBodyDisable ()
 	{
-		flags |= dxBodyDisabled;
+		setDisabledFlag(true);
+	}
+
+
+	/**
+	 * Sets or clears dxBodyDisabled. All changes of the flag go through here,
+	 * so that the island tracker of the world knows which islands are awake. 
+	 */
+	//(TZ)
+	private void setDisabledFlag(boolean disabled)
+	{
+		if (disabled != ((flags & dxBodyDisabled) != 0)) {
+			if (disabled) {
+				flags |= dxBodyDisabled;
+			}
+			else {
+				flags &= ~dxBodyDisabled;
+			}
+			world.islands.bodyEnabledChanged(this);
+		}
 	}
 
 
@@ -869,7 +901,7 @@ public class DxBody extends DObject implements DBody, Cloneable {
 		{
 			flags &= ~dxBodyAutoDisable;
 			// (mg) we should also reset the IsDisabled state to correspond to the DoDisabling flag
-			flags &= ~dxBodyDisabled;
+			setDisabledFlag(false);
 			adis.idle_steps = world.getAutoDisableSteps();
 			adis.idle_time = world.getAutoDisableTime();
 			// resetting the average calculations too
@@ -0,0 +1,705 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.OdeConstants.dInfinity;
+import static org.ode4j.ode.internal.Common.dAASSERT;
+import static org.ode4j.ode.internal.Common.dIASSERT;
+import static org.ode4j.ode.internal.Common.dUASSERT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DBvhSpace;
+import org.ode4j.ode.DGeomBuffer;
+
+/**
+ * Dynamic AABB tree space.
+ * <p>
+ * The finite geoms of the space are the leaves of a persistent bounding volume 
+ * tree. Each leaf stores the AABB of its geom enlarged by the fat margin, so 
+ * <tt>cleanGeoms()</tt> only has to reinsert the dirty geoms that have left 
+ * their fat AABB. The tree is kept balanced with the rotations of an AVL 
+ * tree, new leaves are placed using the surface area heuristic.
+ * <tt>collide()</tt> traverses the tree against itself, <tt>collide2()</tt> 
+ * queries the tree with the AABB of the given geom.
+ * Geoms with infinite AABBs (e.g. planes) are kept in a separate list and are 
+ * tested against all other geoms.
+ * <p>
+ * The node layout follows the dynamic tree of Box2D (Erin Catto), the nodes 
+ * are stored in arrays that are indexed with the node id.
+ *
+ * @author Tilmann Zaeschke
+ */
+public class DxBvhSpace extends DxSpace implements DBvhSpace {
+
+	/** Value of <tt>_bvhLeafEx</tt> for geoms that are not (yet) in the tree. */
+	private static final int NO_LEAF = -1;
+	/** Value of <tt>_bvhLeafEx</tt> for geoms in the list of infinite geoms. */
+	private static final int INF_LEAF = -2;
+	private static final int NULL_NODE = -1;
+	private static final double DEFAULT_FAT_MARGIN = 0.1;
+
+	private double fatMargin = DEFAULT_FAT_MARGIN;
+
+	// nodes: fat AABBs (min0, max0, min1, max1, min2, max2), tree links,
+	// height (leaves have height 0) and the geom of leaves.
+	private double[] nodeAabb;
+	private int[] nodeParent;
+	private int[] nodeChild1;
+	private int[] nodeChild2;
+	private int[] nodeHeight;
+	private DxGeom[] nodeGeom;
+	private int nodeCapacity;
+	private int freeList = NULL_NODE;	// linked via nodeParent
+	private int root = NULL_NODE;
+
+	// geoms that got dirty since the last cleanGeoms(), may contain geoms
+	// that have been removed in the meantime and duplicates.
+	private final List<DxGeom> dirtyGeoms = new ArrayList<DxGeom>();
+	// geoms with infinite AABBs
+	private final List<DxGeom> infGeomList = new ArrayList<DxGeom>();
+
+	// traversal stacks, reused between calls
+	private int[] pairStack = new int[64];
+	private int[] queryStack = new int[64];
+	private boolean queryStackInUse = false;
+
+	/**
+	 * Creation.
+	 */
+	public static DxBvhSpace dBvhSpaceCreate(DxSpace space) {
+		return new DxBvhSpace(space);
+	}
+
+	private DxBvhSpace(DxSpace space) {
+		super(space);
+		type = dBvhSpaceClass;
+		allocateNodes(16);
+	}
+
+	@Override
+	public double getFatMargin() {
+		return fatMargin;
+	}
+
+	@Override
+	public void setFatMargin(double margin) {
+		dUASSERT(margin >= 0, "margin must not be negative");
+		fatMargin = margin;
+	}
+
+	@Override
+	void add(DxGeom g) {
+		CHECK_NOT_LOCKED(this);
+		dAASSERT(g);
+		dUASSERT(g.parent_space == null, "geom is already in a space");
+		g._bvhLeafEx = NO_LEAF;
+		dirtyGeoms.add(g);
+		super.add(g);
+	}
+
+	@Override
+	void remove(DxGeom g) {
+		CHECK_NOT_LOCKED(this);
+		dAASSERT(g);
+		dUASSERT(g.parent_space == this, "object is not in this space");
+		if (g._bvhLeafEx >= 0) {
+			removeLeaf(g._bvhLeafEx);
+			freeNode(g._bvhLeafEx);
+		} else if (g._bvhLeafEx == INF_LEAF) {
+			infGeomList.remove(g);
+		}
+		g._bvhLeafEx = NO_LEAF;
+		// an entry in the dirty list is skipped once the geom has left the space
+		super.remove(g);
+	}
+
+	@Override
+	void dirty(DxGeom g) {
+		dAASSERT(g);
+		dUASSERT(g.parent_space == this, "object is not in this space");
+		dirtyGeoms.add(g);
+	}
+
+	@Override
+	public void cleanGeoms() {
+		// compute the AABBs of all dirty geoms, clear the dirty flags and
+		// reinsert the geoms that have left their fat AABB
+		lock_count++;
+		for (int i = 0; i < dirtyGeoms.size(); i++) {
+			DxGeom g = dirtyGeoms.get(i);
+			if (g.parent_space != this || !g.hasFlagDirty()) {
+				continue; // removed or duplicate
+			}
+			if (g instanceof DxSpace) {
+				((DxSpace) g).cleanGeoms();
+			}
+			g.recomputeAABB();
+			g.unsetFlagDirtyAndBad();
+			updateGeom(g);
+		}
+		dirtyGeoms.clear();
+		lock_count--;
+	}
+
+	@Override
+	public void collide(Object data, DNearCallback callback) {
+		dAASSERT(callback);
+
+		lock_count++;
+		cleanGeoms();
+
+		// infinite geoms against each other and against all other geoms
+		for (int i = 0; i < infGeomList.size(); i++) {
+			DxGeom g1 = infGeomList.get(i);
+			if (!GEOM_ENABLED(g1)) {
+				continue;
+			}
+			for (int j = i + 1; j < infGeomList.size(); j++) {
+				DxGeom g2 = infGeomList.get(j);
+				if (GEOM_ENABLED(g2)) {
+					collideAABBs(g1, g2, data, callback);
+				}
+			}
+			queryTree(g1, data, callback);
+		}
+
+		// self-traversal of the tree. A pair with a negative second entry
+		// stands for the subtree of the first node against itself.
+		if (root != NULL_NODE) {
+			int[] stack = pairStack;
+			int sp = 0;
+			stack[sp++] = root;
+			stack[sp++] = NULL_NODE;
+			while (sp > 0) {
+				int b = stack[--sp];
+				int a = stack[--sp];
+				if (stack.length < sp + 6) {
+					stack = pairStack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				if (b == NULL_NODE) {
+					if (nodeHeight[a] == 0) {
+						continue;
+					}
+					int c1 = nodeChild1[a];
+					int c2 = nodeChild2[a];
+					stack[sp++] = c1;
+					stack[sp++] = NULL_NODE;
+					stack[sp++] = c2;
+					stack[sp++] = NULL_NODE;
+					stack[sp++] = c1;
+					stack[sp++] = c2;
+					continue;
+				}
+				if (!overlap(a, b)) {
+					continue;
+				}
+				boolean leafA = nodeHeight[a] == 0;
+				boolean leafB = nodeHeight[b] == 0;
+				if (leafA && leafB) {
+					DxGeom g1 = nodeGeom[a];
+					DxGeom g2 = nodeGeom[b];
+					if (GEOM_ENABLED(g1) && GEOM_ENABLED(g2)) {
+						collideAABBs(g1, g2, data, callback);
+					}
+				} else if (leafB || (!leafA && nodeHeight[a] >= nodeHeight[b])) {
+					// descend into the larger subtree
+					stack[sp++] = nodeChild1[a];
+					stack[sp++] = b;
+					stack[sp++] = nodeChild2[a];
+					stack[sp++] = b;
+				} else {
+					stack[sp++] = a;
+					stack[sp++] = nodeChild1[b];
+					stack[sp++] = a;
+					stack[sp++] = nodeChild2[b];
+				}
+			}
+		}
+
+		lock_count--;
+	}
+
+	@Override
+	void collide2(Object data, DxGeom geom, DNearCallback callback) {
+		dAASSERT(geom != null && callback != null);
+
+		lock_count++;
+		cleanGeoms();
+		geom.recomputeAABB();
+
+		for (int i = 0; i < infGeomList.size(); i++) {
+			DxGeom g = infGeomList.get(i);
+			if (GEOM_ENABLED(g)) {
+				collideAABBs(g, geom, data, callback);
+			}
+		}
+		queryTree(geom, data, callback);
+
+		lock_count--;
+	}
+
+	@Override
+	void query(DAABBC aabb, DVector3C center, double radius, DGeomBuffer geoms) {
+		for (int i = 0; i < infGeomList.size(); i++) {
+			queryGeom(infGeomList.get(i), aabb, center, radius, geoms);
+		}
+		if (root == NULL_NODE) {
+			return;
+		}
+		// a query may be started by the callback of collide2()
+		boolean nested = queryStackInUse;
+		int[] stack = nested ? new int[64] : queryStack;
+		queryStackInUse = true;
+
+		double min0 = aabb.getMin0(), max0 = aabb.getMax0();
+		double min1 = aabb.getMin1(), max1 = aabb.getMax1();
+		double min2 = aabb.getMin2(), max2 = aabb.getMax2();
+		int sp = 0;
+		stack[sp++] = root;
+		while (sp > 0) {
+			int n = stack[--sp];
+			int o = n * 6;
+			double[] a = nodeAabb;
+			if (a[o] > max0 || a[o + 1] < min0 || a[o + 2] > max1 || 
+					a[o + 3] < min1 || a[o + 4] > max2 || a[o + 5] < min2) {
+				continue;
+			}
+			if (nodeHeight[n] == 0) {
+				queryGeom(nodeGeom[n], aabb, center, radius, geoms);
+			} else {
+				if (stack.length < sp + 2) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[sp++] = nodeChild1[n];
+				stack[sp++] = nodeChild2[n];
+			}
+		}
+
+		if (!nested) {
+			queryStack = stack;
+			queryStackInUse = false;
+		}
+	}
+
+	/**
+	 * The AABB of this space is the union of the fat AABB of the root and 
+	 * the AABBs of the infinite geoms.
+	 */
+	@Override
+	void computeAABB() {
+		cleanGeoms();
+		if (root == NULL_NODE && infGeomList.isEmpty()) {
+			_aabb.setZero();
+			return;
+		}
+		DAABB aabb = _aabb;
+		aabb.set(dInfinity, -dInfinity, dInfinity, -dInfinity, dInfinity, -dInfinity);
+		if (root != NULL_NODE) {
+			int o = root * 6;
+			aabb.set(nodeAabb[o], nodeAabb[o + 1], nodeAabb[o + 2], nodeAabb[o + 3], 
+					nodeAabb[o + 4], nodeAabb[o + 5]);
+		}
+		for (int i = 0; i < infGeomList.size(); i++) {
+			aabb.expand(infGeomList.get(i).getAABB());
+		}
+	}
+
+	/**
+	 * Calls <tt>collideAABBs()</tt> for all enabled geoms in the tree whose fat 
+	 * AABB overlaps the AABB of the given geom. 
+	 */
+	private void queryTree(DxGeom geom, Object data, DNearCallback callback) {
+		if (root == NULL_NODE) {
+			return;
+		}
+		// the callback may start another query on this space
+		boolean nested = queryStackInUse;
+		int[] stack = nested ? new int[64] : queryStack;
+		queryStackInUse = true;
+
+		DAABB bb = geom._aabb;
+		double min0 = bb.getMin0(), max0 = bb.getMax0();
+		double min1 = bb.getMin1(), max1 = bb.getMax1();
+		double min2 = bb.getMin2(), max2 = bb.getMax2();
+		int sp = 0;
+		stack[sp++] = root;
+		while (sp > 0) {
+			int n = stack[--sp];
+			int o = n * 6;
+			double[] a = nodeAabb;
+			if (a[o] > max0 || a[o + 1] < min0 || a[o + 2] > max1 || 
+					a[o + 3] < min1 || a[o + 4] > max2 || a[o + 5] < min2) {
+				continue;
+			}
+			if (nodeHeight[n] == 0) {
+				DxGeom g = nodeGeom[n];
+				if (GEOM_ENABLED(g)) {
+					collideAABBs(g, geom, data, callback);
+				}
+			} else {
+				if (stack.length < sp + 2) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[sp++] = nodeChild1[n];
+				stack[sp++] = nodeChild2[n];
+			}
+		}
+
+		if (!nested) {
+			queryStack = stack;
+			queryStackInUse = false;
+		}
+	}
+
+	/**
+	 * Moves a clean geom between the tree and the list of infinite geoms 
+	 * and reinserts it if its AABB is not contained in its fat AABB anymore.
+	 */
+	private void updateGeom(DxGeom g) {
+		DAABB bb = g._aabb;
+		boolean infinite = 
+				bb.getMin0() == -dInfinity || bb.getMax0() == dInfinity ||
+				bb.getMin1() == -dInfinity || bb.getMax1() == dInfinity ||
+				bb.getMin2() == -dInfinity || bb.getMax2() == dInfinity;
+		int leaf = g._bvhLeafEx;
+		if (infinite) {
+			if (leaf == INF_LEAF) {
+				return;
+			}
+			if (leaf >= 0) {
+				removeLeaf(leaf);
+				freeNode(leaf);
+			}
+			infGeomList.add(g);
+			g._bvhLeafEx = INF_LEAF;
+			return;
+		}
+		if (leaf == INF_LEAF) {
+			infGeomList.remove(g);
+			leaf = NO_LEAF;
+		}
+		if (leaf >= 0) {
+			int o = leaf * 6;
+			double[] a = nodeAabb;
+			if (a[o] <= bb.getMin0() && a[o + 1] >= bb.getMax0() &&
+					a[o + 2] <= bb.getMin1() && a[o + 3] >= bb.getMax1() &&
+					a[o + 4] <= bb.getMin2() && a[o + 5] >= bb.getMax2()) {
+				return; // still inside of its fat AABB
+			}
+			removeLeaf(leaf);
+		} else {
+			leaf = allocateNode();
+			nodeGeom[leaf] = g;
+			g._bvhLeafEx = leaf;
+		}
+		int o = leaf * 6;
+		double m = fatMargin;
+		nodeAabb[o] = bb.getMin0() - m;
+		nodeAabb[o + 1] = bb.getMax0() + m;
+		nodeAabb[o + 2] = bb.getMin1() - m;
+		nodeAabb[o + 3] = bb.getMax1() + m;
+		nodeAabb[o + 4] = bb.getMin2() - m;
+		nodeAabb[o + 5] = bb.getMax2() + m;
+		insertLeaf(leaf);
+	}
+
+	private void allocateNodes(int capacity) {
+		int old = nodeCapacity;
+		if (old == 0) {
+			nodeAabb = new double[capacity * 6];
+			nodeParent = new int[capacity];
+			nodeChild1 = new int[capacity];
+			nodeChild2 = new int[capacity];
+			nodeHeight = new int[capacity];
+			nodeGeom = new DxGeom[capacity];
+		} else {
+			nodeAabb = Arrays.copyOf(nodeAabb, capacity * 6);
+			nodeParent = Arrays.copyOf(nodeParent, capacity);
+			nodeChild1 = Arrays.copyOf(nodeChild1, capacity);
+			nodeChild2 = Arrays.copyOf(nodeChild2, capacity);
+			nodeHeight = Arrays.copyOf(nodeHeight, capacity);
+			nodeGeom = Arrays.copyOf(nodeGeom, capacity);
+		}
+		// link the new nodes into the free list
+		for (int i = capacity - 1; i >= old; i--) {
+			nodeParent[i] = freeList;
+			freeList = i;
+		}
+		nodeCapacity = capacity;
+	}
+
+	private int allocateNode() {
+		if (freeList == NULL_NODE) {
+			allocateNodes(nodeCapacity * 2);
+		}
+		int n = freeList;
+		freeList = nodeParent[n];
+		nodeParent[n] = NULL_NODE;
+		nodeChild1[n] = NULL_NODE;
+		nodeChild2[n] = NULL_NODE;
+		nodeHeight[n] = 0;
+		return n;
+	}
+
+	private void freeNode(int n) {
+		nodeGeom[n] = null;
+		nodeHeight[n] = -1;
+		nodeParent[n] = freeList;
+		freeList = n;
+	}
+
+	private boolean overlap(int a, int b) {
+		int oa = a * 6, ob = b * 6;
+		double[] x = nodeAabb;
+		return !(x[oa] > x[ob + 1] || x[oa + 1] < x[ob] || 
+				x[oa + 2] > x[ob + 3] || x[oa + 3] < x[ob + 2] ||
+				x[oa + 4] > x[ob + 5] || x[oa + 5] < x[ob + 4]);
+	}
+
+	/** Half the surface area of the AABB of node n. */
+	private double area(int n) {
+		int o = n * 6;
+		double[] x = nodeAabb;
+		double d0 = x[o + 1] - x[o];
+		double d1 = x[o + 3] - x[o + 2];
+		double d2 = x[o + 5] - x[o + 4];
+		return d0 * d1 + d1 * d2 + d2 * d0;
+	}
+
+	/** Half the surface area of the union of the AABBs of nodes a and b. */
+	private double unionArea(int a, int b) {
+		int oa = a * 6, ob = b * 6;
+		double[] x = nodeAabb;
+		double d0 = Math.max(x[oa + 1], x[ob + 1]) - Math.min(x[oa], x[ob]);
+		double d1 = Math.max(x[oa + 3], x[ob + 3]) - Math.min(x[oa + 2], x[ob + 2]);
+		double d2 = Math.max(x[oa + 5], x[ob + 5]) - Math.min(x[oa + 4], x[ob + 4]);
+		return d0 * d1 + d1 * d2 + d2 * d0;
+	}
+
+	/** Sets the AABB of node n to the union of the AABBs of nodes a and b. */
+	private void setUnion(int n, int a, int b) {
+		int o = n * 6, oa = a * 6, ob = b * 6;
+		double[] x = nodeAabb;
+		x[o] = Math.min(x[oa], x[ob]);
+		x[o + 1] = Math.max(x[oa + 1], x[ob + 1]);
+		x[o + 2] = Math.min(x[oa + 2], x[ob + 2]);
+		x[o + 3] = Math.max(x[oa + 3], x[ob + 3]);
+		x[o + 4] = Math.min(x[oa + 4], x[ob + 4]);
+		x[o + 5] = Math.max(x[oa + 5], x[ob + 5]);
+	}
+
+	private void insertLeaf(int leaf) {
+		if (root == NULL_NODE) {
+			root = leaf;
+			nodeParent[leaf] = NULL_NODE;
+			return;
+		}
+
+		// find the best sibling with the surface area heuristic
+		int index = root;
+		while (nodeHeight[index] != 0) {
+			int c1 = nodeChild1[index];
+			int c2 = nodeChild2[index];
+
+			double area = area(index);
+			double combinedArea = unionArea(index, leaf);
+			// cost of creating a new parent for this node and the new leaf
+			double cost = 2 * combinedArea;
+			// minimum cost of pushing the leaf further down the tree
+			double inheritanceCost = 2 * (combinedArea - area);
+
+			double cost1 = unionArea(c1, leaf) + inheritanceCost;
+			if (nodeHeight[c1] != 0) {
+				cost1 -= area(c1);
+			}
+			double cost2 = unionArea(c2, leaf) + inheritanceCost;
+			if (nodeHeight[c2] != 0) {
+				cost2 -= area(c2);
+			}
+
+			if (cost < cost1 && cost < cost2) {
+				break;
+			}
+			index = cost1 < cost2 ? c1 : c2;
+		}
+		int sibling = index;
+
+		// create a new parent
+		int oldParent = nodeParent[sibling];
+		int newParent = allocateNode();
+		nodeParent[newParent] = oldParent;
+		setUnion(newParent, leaf, sibling);
+		nodeHeight[newParent] = nodeHeight[sibling] + 1;
+		nodeChild1[newParent] = sibling;
+		nodeChild2[newParent] = leaf;
+		nodeParent[sibling] = newParent;
+		nodeParent[leaf] = newParent;
+		if (oldParent != NULL_NODE) {
+			if (nodeChild1[oldParent] == sibling) {
+				nodeChild1[oldParent] = newParent;
+			} else {
+				nodeChild2[oldParent] = newParent;
+			}
+		} else {
+			root = newParent;
+		}
+
+		refitAncestors(nodeParent[leaf]);
+	}
+
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL_NODE;
+			return;
+		}
+
+		int parent = nodeParent[leaf];
+		int grandParent = nodeParent[parent];
+		int sibling = nodeChild1[parent] == leaf ? nodeChild2[parent] : nodeChild1[parent];
+
+		if (grandParent != NULL_NODE) {
+			// connect the sibling to the grand parent and destroy the parent
+			if (nodeChild1[grandParent] == parent) {
+				nodeChild1[grandParent] = sibling;
+			} else {
+				nodeChild2[grandParent] = sibling;
+			}
+			nodeParent[sibling] = grandParent;
+			freeNode(parent);
+			refitAncestors(grandParent);
+		} else {
+			root = sibling;
+			nodeParent[sibling] = NULL_NODE;
+			freeNode(parent);
+		}
+		nodeParent[leaf] = NULL_NODE;
+	}
+
+	/** Walks back up the tree, rebalancing and fixing heights and AABBs. */
+	private void refitAncestors(int index) {
+		while (index != NULL_NODE) {
+			index = balance(index);
+			int c1 = nodeChild1[index];
+			int c2 = nodeChild2[index];
+			dIASSERT(c1 != NULL_NODE && c2 != NULL_NODE);
+			nodeHeight[index] = 1 + Math.max(nodeHeight[c1], nodeHeight[c2]);
+			setUnion(index, c1, c2);
+			index = nodeParent[index];
+		}
+	}
+
+	private void replaceChild(int parent, int oldChild, int newChild) {
+		if (parent == NULL_NODE) {
+			root = newChild;
+		} else if (nodeChild1[parent] == oldChild) {
+			nodeChild1[parent] = newChild;
+		} else {
+			dIASSERT(nodeChild2[parent] == oldChild);
+			nodeChild2[parent] = newChild;
+		}
+	}
+
+	/**
+	 * Performs a left or right rotation if node A is imbalanced.
+	 * @return the new root of the subtree
+	 */
+	private int balance(int iA) {
+		if (nodeHeight[iA] < 2) {
+			return iA;
+		}
+
+		int iB = nodeChild1[iA];
+		int iC = nodeChild2[iA];
+		int balance = nodeHeight[iC] - nodeHeight[iB];
+
+		// rotate C up
+		if (balance > 1) {
+			int iF = nodeChild1[iC];
+			int iG = nodeChild2[iC];
+
+			nodeChild1[iC] = iA;
+			nodeParent[iC] = nodeParent[iA];
+			nodeParent[iA] = iC;
+			replaceChild(nodeParent[iC], iA, iC);
+
+			if (nodeHeight[iF] > nodeHeight[iG]) {
+				nodeChild2[iC] = iF;
+				nodeChild2[iA] = iG;
+				nodeParent[iG] = iA;
+				setUnion(iA, iB, iG);
+				setUnion(iC, iA, iF);
+				nodeHeight[iA] = 1 + Math.max(nodeHeight[iB], nodeHeight[iG]);
+				nodeHeight[iC] = 1 + Math.max(nodeHeight[iA], nodeHeight[iF]);
+			} else {
+				nodeChild2[iC] = iG;
+				nodeChild2[iA] = iF;
+				nodeParent[iF] = iA;
+				setUnion(iA, iB, iF);
+				setUnion(iC, iA, iG);
+				nodeHeight[iA] = 1 + Math.max(nodeHeight[iB], nodeHeight[iF]);
+				nodeHeight[iC] = 1 + Math.max(nodeHeight[iA], nodeHeight[iG]);
+			}
+			return iC;
+		}
+
+		// rotate B up
+		if (balance < -1) {
+			int iD = nodeChild1[iB];
+			int iE = nodeChild2[iB];
+
+			nodeChild1[iB] = iA;
+			nodeParent[iB] = nodeParent[iA];
+			nodeParent[iA] = iB;
+			replaceChild(nodeParent[iB], iA, iB);
+
+			if (nodeHeight[iD] > nodeHeight[iE]) {
+				nodeChild2[iB] = iD;
+				nodeChild1[iA] = iE;
+				nodeParent[iE] = iA;
+				setUnion(iA, iC, iE);
+				setUnion(iB, iA, iD);
+				nodeHeight[iA] = 1 + Math.max(nodeHeight[iC], nodeHeight[iE]);
+				nodeHeight[iB] = 1 + Math.max(nodeHeight[iA], nodeHeight[iD]);
+			} else {
+				nodeChild2[iB] = iE;
+				nodeChild1[iA] = iD;
+				nodeParent[iD] = iA;
+				setUnion(iA, iC, iD);
+				setUnion(iB, iA, iE);
+				nodeHeight[iA] = 1 + Math.max(nodeHeight[iC], nodeHeight[iD]);
+				nodeHeight[iB] = 1 + Math.max(nodeHeight[iA], nodeHeight[iE]);
+			}
+			return iB;
+		}
+
+		return iA;
+	}
+}
@@ -0,0 +1,134 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.internal.joints.DxJoint;
+import org.ode4j.ode.internal.joints.DxJointContact;
+
+/**
+ * Keeps the lambdas of the contact joints of the last step for warm starting
+ * the QuickStep method.
+ * <p>
+ * Contact joints are usually destroyed and recreated every step, so the 
+ * lambda stored in the joint is lost. ODE has no feature ids, instead a new 
+ * contact is matched with a contact of the previous step that has the same 
+ * geoms and sides (e.g. triangle indices) and the nearest position within 
+ * <code>MATCH_DISTANCE</code>. Every cached contact is used at most once.
+ * <p>
+ * The cache is used by DxWorld before and after processing the islands, i.e.
+ * it is never accessed concurrently.
+ */
+class DxContactLambdaCache {
+
+	/** Maximum distance between the positions of matching contacts. */
+	private static final double MATCH_DISTANCE = 0.05;
+
+	private static class CachedContact {
+		DGeom g2;
+		int side1, side2;
+		final DVector3 pos = new DVector3();
+		final double[] lambda = new double[6];
+		int next;			// next contact with the same g1, -1 at the end
+		boolean used;
+	}
+
+	/** First contact per g1. */
+	private final IdentityHashMap<DGeom, Integer> firstContact = new IdentityHashMap<DGeom, Integer>();
+	private final ArrayList<CachedContact> contacts = new ArrayList<CachedContact>();
+	private int contactCount = 0;
+
+	/**
+	 * Copies the cached lambdas into the matching contact joints.
+	 * @param firstjoint the first joint of the world
+	 */
+	void seed(DxJoint firstjoint) {
+		if (contactCount == 0) {
+			return;
+		}
+		for (DxJoint j = firstjoint; j != null; j = (DxJoint)j.getNext()) {
+			if (!(j instanceof DxJointContact)) continue;
+			DContactGeom geom = ((DxJointContact)j).contact.geom;
+			if (geom.g1 == null) continue;
+			Integer first = firstContact.get(geom.g1);
+			if (first == null) continue;
+
+			CachedContact best = null;
+			double bestDist = MATCH_DISTANCE;
+			for (int i = first; i != -1; ) {
+				CachedContact c = contacts.get(i);
+				if (!c.used && c.g2 == geom.g2 && c.side1 == geom.side1 && c.side2 == geom.side2) {
+					double dist = c.pos.distance(geom.pos);
+					if (dist <= bestDist) {
+						bestDist = dist;
+						best = c;
+					}
+				}
+				i = c.next;
+			}
+			if (best != null) {
+				best.used = true;
+				System.arraycopy(best.lambda, 0, j.lambda, 0, 6);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the cached lambdas by those of the current contact joints.
+	 * @param firstjoint the first joint of the world
+	 */
+	void store(DxJoint firstjoint) {
+		firstContact.clear();
+		contactCount = 0;
+		for (DxJoint j = firstjoint; j != null; j = (DxJoint)j.getNext()) {
+			if (!(j instanceof DxJointContact)) continue;
+			DContactGeom geom = ((DxJointContact)j).contact.geom;
+			if (geom.g1 == null) continue;
+
+			if (contactCount == contacts.size()) {
+				contacts.add(new CachedContact());
+			}
+			CachedContact c = contacts.get(contactCount);
+			c.g2 = geom.g2;
+			c.side1 = geom.side1;
+			c.side2 = geom.side2;
+			c.pos.set(geom.pos);
+			System.arraycopy(j.lambda, 0, c.lambda, 0, 6);
+			c.used = false;
+			Integer first = firstContact.put(geom.g1, contactCount);
+			c.next = first != null ? first : -1;
+			contactCount++;
+		}
+		// Drop the references to geoms of contacts that are gone
+		for (int i = contactCount; i < contacts.size(); i++) {
+			contacts.get(i).g2 = null;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.internal.Common.dAASSERT;
+import static org.ode4j.ode.internal.Common.dUASSERT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.ode4j.math.DMatrix3;
+import org.ode4j.math.DMatrix3C;
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DContactPairCache;
+import org.ode4j.ode.DGeom;
+
+/**
+ * Stores the contacts of geom pairs together with the transforms of the 
+ * geoms at the time the contacts were generated.
+ * <p>
+ * The pairs are kept in a list, the pairs of the same first geom are linked 
+ * and the first one is found in a map, like in DxContactLambdaCache. A pair 
+ * is found in either order of its geoms, because spaces may report it as 
+ * (a, b) in one step and as (b, a) in the next.
+ */
+public class DxContactPairCache implements DContactPairCache {
+
+	private static final double DEFAULT_LINEAR_THRESHOLD = 0.001;
+	private static final double DEFAULT_ANGULAR_THRESHOLD = 0.001;
+
+	private static class Pair {
+		DxGeom g1, g2;
+		int next;			// next pair with the same g1, -1 at the end
+		int lastUsed;		// frame of the last collide()
+		int flags;
+		final DVector3 pos1 = new DVector3();
+		final DVector3 pos2 = new DVector3();
+		final DMatrix3 R1 = new DMatrix3();
+		final DMatrix3 R2 = new DMatrix3();
+		DContactGeom[] contacts = new DContactGeom[0];
+		int contactCount;
+	}
+
+	/**
+	 * Maps geoms to an int, an open addressing identity hash table that 
+	 * avoids boxing the values.
+	 */
+	private static class GeomIntMap {
+		private DxGeom[] keys = new DxGeom[16];
+		private int[] values = new int[16];
+		private int size = 0;
+
+		private static int hash(DxGeom g) {
+			int h = System.identityHashCode(g) * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		/** @return the value of the geom or -1 */
+		int get(DxGeom g) {
+			int mask = keys.length - 1;
+			for (int i = hash(g) & mask; keys[i] != null; i = (i + 1) & mask) {
+				if (keys[i] == g) {
+					return values[i];
+				}
+			}
+			return -1;
+		}
+
+		/** @return the previous value of the geom or -1 */
+		int put(DxGeom g, int value) {
+			if (2*(size + 1) > keys.length) {
+				resize();
+			}
+			int mask = keys.length - 1;
+			int i = hash(g) & mask;
+			for (; keys[i] != null; i = (i + 1) & mask) {
+				if (keys[i] == g) {
+					int old = values[i];
+					values[i] = value;
+					return old;
+				}
+			}
+			keys[i] = g;
+			values[i] = value;
+			size++;
+			return -1;
+		}
+
+		void clear() {
+			if (size != 0) {
+				Arrays.fill(keys, null);
+				size = 0;
+			}
+		}
+
+		private void resize() {
+			DxGeom[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new DxGeom[oldKeys.length*2];
+			values = new int[oldKeys.length*2];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					put(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+	}
+
+	/** First pair per g1. */
+	private final GeomIntMap firstPair = new GeomIntMap();
+	private final ArrayList<Pair> pairs = new ArrayList<Pair>();
+	private int pairCount = 0;
+	private int frame = 0;
+	private long hits = 0;
+
+	private double linearThreshold = DEFAULT_LINEAR_THRESHOLD;
+	private double angularThreshold = DEFAULT_ANGULAR_THRESHOLD;
+	private int maxAge = 1;
+
+	@Override
+	public int collide(DGeom o1, DGeom o2, int flags, DContactGeomBuffer contacts) {
+		dAASSERT(o1, o2, contacts);
+		DxGeom g1 = (DxGeom) o1;
+		DxGeom g2 = (DxGeom) o2;
+		Pair p = find(g1, g2);
+		boolean swapped = false;
+		if (p == null) {
+			p = find(g2, g1);
+			swapped = p != null;
+		}
+		if (p != null && p.flags == flags && !hasMoved(p.g1, p.pos1, p.R1) && !hasMoved(p.g2, p.pos2, p.R2)) {
+			for (int i = 0; i < p.contactCount; i++) {
+				copy(p.contacts[i], contacts.get(i), swapped);
+			}
+			p.lastUsed = frame;
+			hits++;
+			return p.contactCount;
+		}
+
+		int n = DxGeom.dCollide(g1, g2, flags, contacts, 1);
+		if (p == null) {
+			p = add(g1, g2);
+		}
+		p.flags = flags;
+		p.lastUsed = frame;
+		storeTransform(p.g1, p.pos1, p.R1);
+		storeTransform(p.g2, p.pos2, p.R2);
+		if (p.contacts.length < n) {
+			DContactGeom[] newContacts = new DContactGeom[n];
+			System.arraycopy(p.contacts, 0, newContacts, 0, p.contacts.length);
+			for (int i = p.contacts.length; i < n; i++) {
+				newContacts[i] = new DContactGeom();
+			}
+			p.contacts = newContacts;
+		}
+		for (int i = 0; i < n; i++) {
+			copy(contacts.get(i), p.contacts[i], swapped);
+		}
+		p.contactCount = n;
+		return n;
+	}
+
+	private Pair find(DxGeom g1, DxGeom g2) {
+		for (int i = firstPair.get(g1); i != -1; ) {
+			Pair p = pairs.get(i);
+			if (p.g2 == g2) {
+				return p;
+			}
+			i = p.next;
+		}
+		return null;
+	}
+
+	private Pair add(DxGeom g1, DxGeom g2) {
+		if (pairCount == pairs.size()) {
+			pairs.add(new Pair());
+		}
+		Pair p = pairs.get(pairCount);
+		p.g1 = g1;
+		p.g2 = g2;
+		p.next = firstPair.put(g1, pairCount);
+		pairCount++;
+		return p;
+	}
+
+	private static void storeTransform(DxGeom g, DVector3 pos, DMatrix3 R) {
+		if (g.hasFlagPlaceable()) {
+			pos.set(g.getPosition());
+			R.set(g.getRotation());
+		}
+	}
+
+	private boolean hasMoved(DxGeom g, DVector3 pos, DMatrix3 R) {
+		if (!g.hasFlagPlaceable()) {
+			return false;
+		}
+		if (g.getPosition().distance(pos) > linearThreshold) {
+			return true;
+		}
+		// For small angles |R - R0|^2 (Frobenius) is about 2 * angle^2
+		DMatrix3C R1 = g.getRotation();
+		double sum = 0;
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				double d = R1.get(i, j) - R.get(i, j);
+				sum += d*d;
+			}
+		}
+		return sum > 2*angularThreshold*angularThreshold;
+	}
+
+	/**
+	 * @param swapped whether the contact is copied between the orders 
+	 * (g1, g2) and (g2, g1), i.e. whether the normal is flipped and the 
+	 * geoms and sides are swapped, like dCollide() does
+	 */
+	private static void copy(DContactGeom src, DContactGeom dst, boolean swapped) {
+		dst.pos.set(src.pos);
+		dst.depth = src.depth;
+		if (swapped) {
+			dst.normal.set(src.normal).scale(-1);
+			dst.g1 = src.g2;
+			dst.g2 = src.g1;
+			dst.side1 = src.side2;
+			dst.side2 = src.side1;
+		} else {
+			dst.normal.set(src.normal);
+			dst.g1 = src.g1;
+			dst.g2 = src.g2;
+			dst.side1 = src.side1;
+			dst.side2 = src.side2;
+		}
+	}
+
+	/**
+	 * Keeps the pairs that have been used since <tt>minFrame</tt> and don't 
+	 * contain the given geom, and rebuilds the links between them.
+	 */
+	private void compact(int minFrame, DGeom removedGeom) {
+		firstPair.clear();
+		int n = 0;
+		for (int i = 0; i < pairCount; i++) {
+			Pair p = pairs.get(i);
+			if (p.lastUsed - minFrame < 0 || p.g1 == removedGeom || p.g2 == removedGeom) {
+				continue;
+			}
+			if (i != n) {
+				// Swap, so that the Pair objects are reused
+				pairs.set(i, pairs.get(n));
+				pairs.set(n, p);
+			}
+			p.next = firstPair.put(p.g1, n);
+			n++;
+		}
+		// Drop the references to geoms of pairs that are gone
+		for (int i = n; i < pairCount; i++) {
+			Pair p = pairs.get(i);
+			p.g1 = null;
+			p.g2 = null;
+			for (int j = 0; j < p.contactCount; j++) {
+				p.contacts[j].g1 = null;
+				p.contacts[j].g2 = null;
+			}
+			p.contactCount = 0;
+		}
+		pairCount = n;
+	}
+
+	@Override
+	public void update() {
+		frame++;
+		compact(frame - maxAge, null);
+	}
+
+	@Override
+	public void setThresholds(double linear, double angular) {
+		dUASSERT(linear >= 0 && angular >= 0, "thresholds must not be negative");
+		linearThreshold = linear;
+		angularThreshold = angular;
+	}
+
+	@Override
+	public double getLinearThreshold() {
+		return linearThreshold;
+	}
+
+	@Override
+	public double getAngularThreshold() {
+		return angularThreshold;
+	}
+
+	@Override
+	public void setMaxAge(int maxAge) {
+		dUASSERT(maxAge >= 1, "maxAge must be at least 1");
+		this.maxAge = maxAge;
+	}
+
+	@Override
+	public int getMaxAge() {
+		return maxAge;
+	}
+
+	@Override
+	public void remove(DGeom g) {
+		dAASSERT(g);
+		compact(frame - maxAge, g);
+	}
+
+	@Override
+	public void clear() {
+		compact(frame + 1, null);
+	}
+
+	@Override
+	public int getNumPairs() {
+		return pairCount;
+	}
+
+	@Override
+	public long getNumHits() {
+		return hits;
+	}
+
+	@Override
+	public void destroy() {
+		clear();
+		pairs.clear();
+	}
+}
@@ -41,6 +41,8 @@ import static org.ode4j.ode.internal.cpp4j.Cmath.fabs;
 import static org.ode4j.ode.internal.cpp4j.Cstdio.fprintf;
 import static org.ode4j.ode.internal.cpp4j.Cstdio.stdout;
 
+import java.util.Arrays;
+
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DColliderFn;
@@ -113,15 +115,33 @@ public class DxConvex extends DxGeom implements DConvex {
 	//edge* edges;
 	private Edge[] edges;
 
+	/** 
+	 * (TZ) Vertex adjacency for hill-climbing support queries, the neighbours 
+	 * of point i are adjacency[adjacencyStart[i]] to 
+	 * adjacency[adjacencyStart[i+1]-1]. Null if the points are searched 
+	 * linearly, see FillAdjacency(). */
+	private int[] adjacencyStart;
+	private int[] adjacency;
+	/** (TZ) Visit stamps and stack of MinPlateauIndex(). */
+	private int[] plateauStamps;
+	private int[] plateauStack;
+	private int plateauStamp;
+	/** 
+	 * (TZ) Support points for +x, -x, +y, -y, +z and -z, a coarse Gauss map 
+	 * that gives the start point of a query without a warm start. */
+	private final int[] axisSupport = new int[6];
+	/** Convex shapes with fewer points are searched linearly. */
+	private static final int HILL_CLIMBING_MIN_POINTS = 32;
+
 	/** 
 	 * A Support mapping function for convex shapes.
 	 * @param dir [IN] direction to find the Support Point for
+	 * @param rdir [OUT] (TZ) temporary for the direction in convex space
 	 * @return the index of the support vertex.
 	 */
 	//inline unsigned int SupportIndex(dVector3 dir)
-	private int SupportIndex(DVector3 dir)
+	private int SupportIndex(DVector3 dir, DVector3 rdir)
 	{
-		DVector3 rdir = new DVector3();
 		//unsigned 
 		int index=0;
 		dMultiply1_331 (rdir,final_posr().R(),dir);
@@ -139,6 +159,113 @@ public class DxConvex extends DxGeom implements DConvex {
 		return index;
 	}
 
+	/** 
+	 * (TZ) Support mapping in convex space. Walks from the start point to the 
+	 * neighbour with the largest dot product until no neighbour is larger, 
+	 * which finds the maximum because the shape is convex. Small shapes are 
+	 * searched linearly. If several points have the maximal dot product, 
+	 * all of them are visited and the smallest index is returned, like in 
+	 * the linear search.
+	 * @param x direction in convex space
+	 * @param y direction in convex space
+	 * @param z direction in convex space
+	 * @param start index of the point to start from, e.g. the last support 
+	 * point of a nearby direction, or -1
+	 * @return the index of the support point.
+	 */
+	int SupportIndexLocal(double x, double y, double z, int start)
+	{
+		final double[] points = this.points;
+		if (adjacency == null)
+		{
+			int index = 0;
+			double max = points[0]*x + points[1]*y + points[2]*z;
+			for (int i = 1, p = 3; i < pointcount; ++i, p += 3)
+			{
+				double dot = points[p]*x + points[p+1]*y + points[p+2]*z;
+				if (dot > max)
+				{
+					index = i;
+					max = dot;
+				}
+			}
+			return index;
+		}
+		int index = start;
+		if (index < 0)
+		{
+			double ax = Math.abs(x), ay = Math.abs(y), az = Math.abs(z);
+			if (ax >= ay && ax >= az) index = axisSupport[x >= 0 ? 0 : 1];
+			else if (ay >= az) index = axisSupport[y >= 0 ? 2 : 3];
+			else index = axisSupport[z >= 0 ? 4 : 5];
+		}
+		double max = points[index*3]*x + points[index*3+1]*y + points[index*3+2]*z;
+		int current;
+		do
+		{
+			current = index;
+			for (int k = adjacencyStart[current]; k < adjacencyStart[current+1]; ++k)
+			{
+				int p = adjacency[k]*3;
+				double dot = points[p]*x + points[p+1]*y + points[p+2]*z;
+				if (dot > max)
+				{
+					index = adjacency[k];
+					max = dot;
+				}
+			}
+		}
+		while (index != current);
+		for (int k = adjacencyStart[index]; k < adjacencyStart[index+1]; ++k)
+		{
+			int p = adjacency[k]*3;
+			if (points[p]*x + points[p+1]*y + points[p+2]*z == max)
+			{
+				return MinPlateauIndex(x, y, z, index, max);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * (TZ) Visits the points around <tt>start</tt> that have the same dot 
+	 * product <tt>max</tt>, e.g. the corners of a face that is orthogonal 
+	 * to the direction. 
+	 * @return the smallest index of these points
+	 */
+	private synchronized int MinPlateauIndex(double x, double y, double z, int start, double max)
+	{
+		final double[] points = this.points;
+		final int[] stamps = plateauStamps;
+		final int[] stack = plateauStack;
+		if (++plateauStamp == 0)
+		{
+			Arrays.fill(stamps, 0);
+			plateauStamp = 1;
+		}
+		final int stamp = plateauStamp;
+		int index = start;
+		int top = 0;
+		stamps[start] = stamp;
+		stack[top++] = start;
+		while (top > 0)
+		{
+			int v = stack[--top];
+			for (int k = adjacencyStart[v]; k < adjacencyStart[v+1]; ++k)
+			{
+				int n = adjacency[k];
+				if (stamps[n] != stamp && 
+						points[n*3]*x + points[n*3+1]*y + points[n*3+2]*z == max)
+				{
+					stamps[n] = stamp;
+					stack[top++] = n;
+					if (n < index) index = n;
+				}
+			}
+		}
+		return index;
+	}
+
 	//private:
 	// For Internal Use Only
 	/*! \brief Fills the edges dynamic array based on points and polygons.
@@ -234,6 +361,7 @@ public class DxConvex extends DxGeom implements DConvex {
 		polygons=_polygons;
 		edges = null;
 		FillEdges();
+		FillAdjacency();
 		if (!dNODEBUG) {//#ifndef dNODEBUG
 			// Check for properly build polygons by calculating the determinant
 			// of the 3x3 matrix composed of the first 3 points in the polygon.
@@ -352,6 +480,102 @@ public class DxConvex extends DxGeom implements DConvex {
 			indexPos=points_in_polyPos+1;//index=points_in_poly+1;
 		}
 	}
+
+	/** 
+	 * (TZ) Populates the vertex adjacency from the polygons, see 
+	 * SupportIndexLocal(). Hill-climbing is only enabled if every point 
+	 * belongs to a polygon and the points are connected.
+	 */
+	void FillAdjacency()
+	{
+		adjacencyStart = null;
+		adjacency = null;
+		if (pointcount < HILL_CLIMBING_MIN_POINTS) return;
+
+		// Every corner of a polygon adds its predecessor and successor, each 
+		// edge is added twice because it is shared by two polygons
+		int[] start = new int[pointcount+1];
+		int pos = 0;
+		for (int i = 0; i < planecount; ++i)
+		{
+			int n = polygons[pos];
+			for (int j = 0; j < n; ++j)
+			{
+				start[polygons[pos+1+j]+1] += 2;
+			}
+			pos += n+1;
+		}
+		for (int i = 0; i < pointcount; ++i)
+		{
+			if (start[i+1] == 0) return; // point without polygon
+			start[i+1] += start[i];
+		}
+		int[] neighbours = new int[start[pointcount]];
+		int[] fill = new int[pointcount];
+		System.arraycopy(start, 0, fill, 0, pointcount);
+		pos = 0;
+		for (int i = 0; i < planecount; ++i)
+		{
+			int n = polygons[pos];
+			for (int j = 0; j < n; ++j)
+			{
+				int a = polygons[pos+1+j];
+				neighbours[fill[a]++] = polygons[pos+1+(j+n-1)%n];
+				neighbours[fill[a]++] = polygons[pos+1+(j+1)%n];
+			}
+			pos += n+1;
+		}
+
+		// Remove duplicates
+		int[] compactStart = new int[pointcount+1];
+		int count = 0;
+		for (int i = 0; i < pointcount; ++i)
+		{
+			Arrays.sort(neighbours, start[i], start[i+1]);
+			for (int k = start[i]; k < start[i+1]; ++k)
+			{
+				if (k == start[i] || neighbours[k] != neighbours[k-1])
+				{
+					neighbours[count++] = neighbours[k];
+				}
+			}
+			compactStart[i+1] = count;
+		}
+
+		// Hill-climbing needs one connected shape
+		boolean[] reached = new boolean[pointcount];
+		int[] stack = new int[pointcount];
+		int top = 0, reachedCount = 1;
+		reached[0] = true;
+		stack[top++] = 0;
+		while (top > 0)
+		{
+			int v = stack[--top];
+			for (int k = compactStart[v]; k < compactStart[v+1]; ++k)
+			{
+				if (!reached[neighbours[k]])
+				{
+					reached[neighbours[k]] = true;
+					stack[top++] = neighbours[k];
+					++reachedCount;
+				}
+			}
+		}
+		if (reachedCount != pointcount) return;
+
+		adjacencyStart = compactStart;
+		adjacency = Arrays.copyOf(neighbours, count);
+		plateauStamps = new int[pointcount];
+		plateauStack = new int[pointcount];
+		plateauStamp = 0;
+		for (int axis = 0; axis < 3; ++axis)
+		{
+			double[] dir = new double[3];
+			dir[axis] = 1;
+			axisSupport[axis*2] = SupportIndexLocal(dir[0], dir[1], dir[2], 0);
+			axisSupport[axis*2+1] = SupportIndexLocal(-dir[0], -dir[1], -dir[2], 0);
+		}
+	}
 	//#if 0
 	//dxConvex::BSPNode* dxConvex::CreateNode(std::vector<Arc> Arcs,std::vector<Polygon> Polygons)
 	//{
@@ -432,6 +656,7 @@ public class DxConvex extends DxGeom implements DConvex {
 		this.points = points;
 		this.pointcount = pointcount;
 		this.polygons=polygons;
+		FillAdjacency();
 	}
 
 	//****************************************************************************
@@ -1341,10 +1566,11 @@ Helper struct
 		DVector3 e1b = new DVector3(),e2a = new DVector3(),e2b = new DVector3();
 		DVector3 dist = new DVector3(ccso.dist);
 		//dVector3Copy(ccso.dist,dist);
-		int s1 = cvx1.SupportIndex(dist);
+		// (TZ) e1 is only used as a temporary here
+		int s1 = cvx1.SupportIndex(dist, e1);
 		// invert direction
 		dist.scale(-1);//dVector3Inv(dist);  
-		int s2 = cvx2.SupportIndex(dist);
+		int s2 = cvx2.SupportIndex(dist, e1);
 		for(int i = 0;i<cvx1.edgecount;++i)
 		{
 			// Skip edge if it doesn't contain the extremal vertex
@@ -1440,9 +1666,10 @@ Helper struct
 	//#endif
 
 	//inline unsigned int GetSupportSide(dVector3& dir,dxConvex& cvx)
-	private static int GetSupportSide(DVector3 dir,DxConvex cvx)
+	// (TZ) dics and tmp are temporaries of the caller
+	private static int GetSupportSide(DVector3 dir,DxConvex cvx,DVector3 dics,DVector3 tmp)
 	{
-		DVector3 dics = new DVector3(),tmp = new DVector3(); // Direction in convex space
+		// dics: Direction in convex space
 		double SavedDot;
 		double Dot;
 		//unsigned 
@@ -1525,12 +1752,13 @@ Helper struct
 			boolean outside,out;
 			//CollisionUtil.dVector3Copy(ccso.dist,dist);
 			dist = new DVector3(ccso.dist);
-			reference_side = GetSupportSide(dist,cvx1);
+			// (TZ) p and tmp are only used as temporaries here
+			reference_side = GetSupportSide(dist,cvx1,p,tmp);
 //			dist[0]=-dist[0];
 //			dist[1]=-dist[1];
 //			dist[2]=-dist[2];
 			dist.scale(-1);
-			incident_side = GetSupportSide(dist,cvx2);
+			incident_side = GetSupportSide(dist,cvx2,p,tmp);
 
 			pReferencePolyPos = 0;//cvx1.polygons;
 			pIncidentPolyPos  = 0;//cvx2.polygons;
@@ -171,6 +171,9 @@ public abstract class DxGeom extends DBase implements DGeom {
 	int _sapIdxDirtyEx; // TZ: Used by SAP-Space.
 	int _sapIdxGeomEx; // TZ: Used by SAP-Space.
 	Block _qtIdxEx; // TZ: Used by QuadTree-Space.
+	int _bvhLeafEx; // TZ: Used by BVH-Space.
+	int _octProxyEx; // TZ: Used by Octree-Space.
+	int _hashIdxEx; // TZ: Used by Hash-Space.
 	
 	//double[] aabb = new double[6];	// cached AABB for this space
 	DAABB _aabb = new DAABB();	// cached AABB for this space
@@ -1549,6 +1552,12 @@ public abstract class DxGeom extends DBase implements DGeom {
 				setCollider(i, j, new CollideSpaceGeom());
 			}
 		}
+		// (TZ) space classes after the user classes
+		for (int i=dFirstExtSpaceClass; i <= dLastExtSpaceClass; i++) {
+			for (int j=0; j < dGeomNumClasses; j++) {
+				setCollider(i, j, new CollideSpaceGeom());
+			}
+		}
 
 		setCollider(dSphereClass, dSphereClass, new DxSphere.CollideSphereSphere());
 		setCollider(dSphereClass, dBoxClass, new DxSphere.CollideSphereBox());
@@ -1720,6 +1729,24 @@ public abstract class DxGeom extends DBase implements DGeom {
 	//		    "invalid operation for locked space");
 
 
+	/**
+	 * (TZ) A geom is active if it has an enabled body. Spaces are always 
+	 * active, because they may contain active geoms.
+	 */
+	final boolean isActive() {
+		return (body != null && (body.flags & DxBody.dxBodyDisabled) == 0) || this instanceof DxSpace;
+	}
+
+	/**
+	 * (TZ) Pairs of two inactive geoms of an activity aware space are never 
+	 * reported, because static and sleeping geoms can not start to touch.
+	 */
+	static boolean isInactivePair(DxGeom g1, DxGeom g2) {
+		DxSpace space = g1.parent_space;
+		return space != null && space.activityAware && space == g2.parent_space 
+				&& !g1.isActive() && !g2.isActive();
+	}
+
 	// collide two geoms together. for the hash table space, this is
 	// called if the two AABBs inhabit the same hash table cells.
 	// this only calls the callback function if the AABBs actually
@@ -1731,19 +1758,34 @@ public abstract class DxGeom extends DBase implements DGeom {
 
 	static void collideAABBs (DxGeom g1, DxGeom g2,
 			Object data, DNearCallback callback)
+	{
+		if (testAABBs(g1, g2)) {
+			// the objects might actually intersect - call the space callback function
+			callback.call (data,g1,g2);
+		}
+	}
+
+	/**
+	 * (TZ) The tests of collideAABBs() without the callback. Does not modify 
+	 * the geoms, so it can be called concurrently.
+	 * @return true if the geoms might intersect
+	 */
+	static boolean testAABBs (DxGeom g1, DxGeom g2)
 	{
 		dIASSERT((g1._gflags & GEOM_AABB_BAD)==0);
 		dIASSERT((g2._gflags & GEOM_AABB_BAD)==0);
 
 		// no contacts if both geoms on the same body, and the body is not 0
-		if (g1.body == g2.body && g1.body!= null) return;
+		if (g1.body == g2.body && g1.body!= null) return false;
 
 		// test if the category and collide bitfields match
 		if ( ((g1.category_bits & g2.collide_bits)!=0 ||
 				(g2.category_bits & g1.collide_bits)!=0) == false) {
-			return;
+			return false;
 		}
 
+		if (isInactivePair(g1, g2)) return false;
+
 		// if the bounding boxes are disjoint then don't do anything
 		DAABB bounds1 = g1._aabb;
 		DAABB bounds2 = g2._aabb;
@@ -1756,16 +1798,14 @@ public abstract class DxGeom extends DBase implements DGeom {
 //			return;
 //		}
 		if (bounds1.isDisjoint( bounds2 )) {
-			return;
+			return false;
 		}
 
 		// check if either object is able to prove that it doesn't intersect the
 		// AABB of the other
-		if (!g1.AABBTest (g2,bounds2)) return;
-		if (!g2.AABBTest (g1,bounds1)) return;
-
-		// the objects might actually intersect - call the space callback function
-		callback.call (data,g1,g2);
+		if (!g1.AABBTest (g2,bounds2)) return false;
+		if (!g2.AABBTest (g1,bounds1)) return false;
+		return true;
 	}
 
 	@Override
@@ -28,6 +28,7 @@ import static org.ode4j.ode.internal.DxGimpactCollision.GIM_AABB_COPY;
 import static org.ode4j.ode.internal.DxGimpactCollision.MakeMatrix;
 
 import java.nio.channels.UnsupportedAddressTypeException;
+import java.util.WeakHashMap;
 
 import org.ode4j.math.DVector3;
 import org.ode4j.ode.DBox;
@@ -38,6 +39,7 @@ import org.ode4j.ode.DTriMesh;
 import org.ode4j.ode.DTriMeshData;
 import org.ode4j.ode.internal.gimpact.GimGeometry;
 import org.ode4j.ode.internal.gimpact.GimTrimesh;
+import org.ode4j.ode.internal.gimpact.GimTrimesh.GIM_TC_CACHE;
 import org.ode4j.ode.internal.gimpact.GimGeometry.mat4f;
 import org.ode4j.ode.internal.gimpact.GimGeometry.vec3f;
 
@@ -52,6 +54,16 @@ public class DxGimpact extends DxTriMesh {
 
 	GimTrimesh m_collision_trimesh;
 
+	private final mat4f m_transform = new mat4f();
+
+	// (TZ) Vertex version of the data the trimesh is up to date with
+	private int m_vertex_version;
+
+	// (TZ) Temporal coherence caches of the spheres, boxes and capsules, the 
+	// entries of geoms that are not referenced anymore are dropped
+	private final WeakHashMap<DxGeom, GIM_TC_CACHE> m_tc_caches = 
+			new WeakHashMap<DxGeom, GIM_TC_CACHE>();
+
 
 	//void dGeomTriMeshSetLastTransform( DMatrix4 last_trans ) { //stub
 	void dGeomTriMeshSetLastTransform( Object last_trans ) { //stub
@@ -128,6 +140,7 @@ public class DxGimpact extends DxTriMesh {
 
 		//Terminate Trimesh
 		m_collision_trimesh.gim_trimesh_destroy();
+		_Data.removeGeom(this);
 
 //		GimBufferArray.gim_terminate_buffer_managers(m_buffer_managers);
 		super.DESTRUCTOR();
@@ -137,7 +150,40 @@ public class DxGimpact extends DxTriMesh {
 	@Override
 	//void dxTriMesh::ClearTCCache(){
 	void ClearTCCache(){
+		synchronized (m_tc_caches) {
+			m_tc_caches.clear();
+		}
+	}
 
+	/**
+	 * (TZ) Colliders of different pairs may run concurrently, the cache of a 
+	 * pair is only used by the collider of the pair.
+	 * @param geom sphere, box or capsule
+	 * @return the temporal coherence cache of the geom or null if TC is 
+	 * disabled for its class
+	 */
+	GIM_TC_CACHE getTCCache(DxGeom geom) {
+		boolean enabled;
+		if (geom instanceof DxSphere) {
+			enabled = doSphereTC;
+		} else if (geom instanceof DxBox) {
+			enabled = doBoxTC;
+		} else if (geom instanceof DxCapsule) {
+			enabled = doCapsuleTC;
+		} else {
+			enabled = false;
+		}
+		if (!enabled) {
+			return null;
+		}
+		synchronized (m_tc_caches) {
+			GIM_TC_CACHE cache = m_tc_caches.get(geom);
+			if (cache == null) {
+				cache = new GIM_TC_CACHE();
+				m_tc_caches.put(geom, cache);
+			}
+			return cache;
+		}
 	}
 
 
@@ -151,13 +197,22 @@ public class DxGimpact extends DxTriMesh {
 	//void dxTriMesh::computeAABB()
 	void computeAABB()
 	{
+		//(TZ) vertices changed by DTriMeshData.updateVertices()
+		if (m_vertex_version != _Data.getVertexVersion()) {
+			_Data.updateVertices(m_collision_trimesh, m_vertex_version);
+			m_vertex_version = _Data.getVertexVersion();
+		}
+
+		//(TZ) collide in mesh space if the data has been preprocessed
+		m_collision_trimesh.gim_trimesh_set_local_tree(_Data.getLocalTree());
+
 		//update trimesh transform
-		mat4f transform = new mat4f();
+		mat4f transform = m_transform;
 		GimGeometry.IDENTIFY_MATRIX_4X4(transform);
 		MakeMatrix(this, transform);
 		m_collision_trimesh.gim_trimesh_set_tranform(transform);
 
-		//Update trimesh boxes
+		//Update trimesh boxes, only the global bound in mesh space mode
 		m_collision_trimesh.gim_trimesh_update();
 
 		GIM_AABB_COPY( m_collision_trimesh.getAabbSet().getGlobalBound(), _aabb );
@@ -243,7 +298,11 @@ public class DxGimpact extends DxTriMesh {
 	//void dGeomTriMeshSetData(dGeomID g, dTriMeshDataID Data)
 	void dGeomTriMeshSetData(DTriMeshData Data)
 	{
+		this._Data.removeGeom(this);
 		this._Data = (DxGimpactData) Data;
+		this._Data.addGeom(this);
+		this.m_vertex_version = _Data.getVertexVersion();
+		ClearTCCache();
 		// I changed my data -- I know nothing about my own AABB anymore.
 		//this._gflags |= (GEOM_DIRTY|GEOM_AABB_BAD);
 		setFlagDirtyAndBad();
@@ -298,6 +357,9 @@ public class DxGimpact extends DxTriMesh {
 		} else {
 			throw new UnsupportedOperationException();
 		}
+		if (!enable) {
+			ClearTCCache();
+		}
 	}
 
 	boolean dGeomTriMeshIsTCEnabled(Class<? extends DGeom> geomClass)
@@ -35,6 +35,7 @@ import org.ode4j.ode.internal.cpp4j.java.RefDouble;
 import org.ode4j.ode.internal.gimpact.GimContact;
 import org.ode4j.ode.internal.gimpact.GimDynArray;
 import org.ode4j.ode.internal.gimpact.GimTrimesh;
+import org.ode4j.ode.internal.gimpact.GimTrimesh.GIM_TC_CACHE;
 import org.ode4j.ode.internal.gimpact.GimGeometry.aabb3f;
 import org.ode4j.ode.internal.gimpact.GimGeometry.mat4f;
 import org.ode4j.ode.internal.gimpact.GimGeometry.vec3f;
@@ -119,9 +120,9 @@ public class DxGimpactCollision {
 	
 			//#define gim_trimesh_sphere_collisionODE( mesh, Position, Radius, contact ) {	\
 			static void gim_trimesh_sphere_collisionODE( GimTrimesh mesh, DVector3C Position, 
-					double Radius, GimDynArray<GimContact> contact ) {	
+					double Radius, GimDynArray<GimContact> contact, GIM_TC_CACHE tc_cache ) {	
 				vec3f pos_vec3f = DVector3Tovec3f( Position );			
-				mesh.gim_trimesh_sphere_collision( pos_vec3f, (float) Radius, contact );			
+				mesh.gim_trimesh_sphere_collision( pos_vec3f, (float) Radius, contact, tc_cache );			
 			}
 	
 			//#define gim_trimesh_plane_collisionODE( mesh, plane, contact ) { 			\
@@ -25,12 +25,16 @@
 package org.ode4j.ode.internal;
 
 import static org.ode4j.ode.internal.Common.dIASSERT;
+import static org.ode4j.ode.internal.Common.dUASSERT;
 
 import java.util.ArrayList;
 
 import org.ode4j.math.DVector4;
 import org.ode4j.ode.internal.cpp4j.java.Ref;
 import org.ode4j.ode.internal.cpp4j.java.RefInt;
+import org.ode4j.ode.internal.gimpact.GimAABBTree;
+import org.ode4j.ode.internal.gimpact.GimQuantizedAABBTree;
+import org.ode4j.ode.internal.gimpact.GimTrimesh;
 
 /**
  *
@@ -46,9 +50,24 @@ public class DxGimpactData extends DxTriMeshData {
 //	int m_TriStride;
 //	boolean m_single;
 	private float[] m_Angles;
+	// (TZ) Local space tree, see GimTrimesh.gim_trimesh_set_local_tree()
+	private GimAABBTree m_LocalTree;
+	// Quantized trees are always built, TRIMESH.QUANTIZED
+	private final boolean m_Quantized;
+	// (TZ) Incremented by updateVertices(), with the range of the last update
+	private int m_VertexVersion;
+	private int m_DirtyFirst;
+	private int m_DirtyEnd;
+	// Trimeshes that use the data
+	private final ArrayList<DxGimpact> m_Geoms = new ArrayList<DxGimpact>();
+
+    DxGimpactData() {
+    	this(false);
+    }
 
-    DxGimpactData()//dxTriMeshData()
+    DxGimpactData(boolean quantized)//dxTriMeshData()
 	{
+		m_Quantized = quantized;
 		m_Vertices=null;
 //		m_VertexStride = 12;
 //		m_VertexCount = 0;
@@ -67,6 +86,39 @@ public class DxGimpactData extends DxTriMeshData {
     	return m_Indices;
     }
 
+    /**
+     * @return the local space tree of the triangles or null if the data has 
+     * not been preprocessed and is not quantized
+     */
+    GimAABBTree getLocalTree() {
+    	return m_LocalTree;
+    }
+
+    int getVertexVersion() {
+    	return m_VertexVersion;
+    }
+
+    void addGeom(DxGimpact geom) {
+    	m_Geoms.add(geom);
+    }
+
+    void removeGeom(DxGimpact geom) {
+    	m_Geoms.remove(geom);
+    }
+
+    /**
+     * Copies the changed vertices into the trimesh of a geom.
+     * @param trimesh trimesh of a geom
+     * @param version vertex version the trimesh is up to date with
+     */
+    void updateVertices(GimTrimesh trimesh, int version) {
+    	if (version == m_VertexVersion - 1) {
+    		trimesh.gim_trimesh_update_source_vertices(m_Vertices, m_DirtyFirst, m_DirtyEnd);
+    	} else {
+    		trimesh.gim_trimesh_update_source_vertices(m_Vertices, 0, m_Vertices.length / 3);
+    	}
+    }
+
 //    void Build(const void* Vertices, int VertexStride, int VertexCount,
 //	       const void* Indices, int IndexCount, int TriStride,
 //	       const void* Normals,
@@ -117,6 +169,7 @@ public class DxGimpactData extends DxTriMeshData {
  		dIASSERT(Indices!=null);
  		m_Vertices = Vertices;
  		m_Indices = Indices;
+ 		m_LocalTree = m_Quantized ? buildLocalTree() : null;
  		//TODO remove?
  		//check();
   	}
@@ -158,14 +211,44 @@ public class DxGimpactData extends DxTriMeshData {
 	@Override
 	public void preprocess() {
 		m_Angles = new GimpactDataPreprocessor(this).buildAngles();
+		// Trimeshes with preprocessed data collide in mesh space, moving them 
+		// does not transform all vertices
+		if (m_LocalTree == null) {
+			m_LocalTree = buildLocalTree();
+		}
+	}
+
+	private GimAABBTree buildLocalTree() {
+		if (m_Quantized) {
+			return GimQuantizedAABBTree.gim_quantized_aabbtree_build(m_Vertices, m_Indices);
+		}
+		return GimAABBTree.gim_aabbtree_build(m_Vertices, m_Indices);
 	}
 
 	@Override
 	//void dxTriMeshData::UpdateData()
 	void UpdateData() {
 		//  BVTree.Refit();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		updateVertices(0, m_Vertices.length / 3);
+	}
+
+	@Override
+	public void updateVertices(int firstVertex, int vertexCount) {
+		dUASSERT(m_Vertices != null, "data has not been built");
+		int end = firstVertex + vertexCount;
+		dUASSERT(firstVertex >= 0 && vertexCount >= 0 && end * 3 <= m_Vertices.length, 
+				"vertex range out of bounds");
+		// Deformable meshes collide in mesh space like preprocessed ones
+		if (m_LocalTree == null || 
+				!m_LocalTree.gim_aabbtree_refit(m_Vertices, m_Indices, firstVertex, end)) {
+			m_LocalTree = buildLocalTree();
+		}
+		m_VertexVersion++;
+		m_DirtyFirst = firstVertex;
+		m_DirtyEnd = end;
+		for (int i = 0; i < m_Geoms.size(); i++) {
+			m_Geoms.get(i).dGeomMoved();
+		}
 	}
 
 	
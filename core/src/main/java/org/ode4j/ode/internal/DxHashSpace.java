@@ -24,9 +24,12 @@
  *************************************************************************/
 package org.ode4j.ode.internal;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
+import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DGeomBuffer;
 import org.ode4j.ode.DHashSpace;
 import org.ode4j.ode.internal.cpp4j.java.RefInt;
 
@@ -47,36 +50,45 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 	private static final int MAXINT = Integer.MAX_VALUE;
 
 
-	// prime[i] is the largest prime smaller than 2^i
-	//	#define NUM_PRIMES 31
-	//	static const long int prime[NUM_PRIMES] = {1L,2L,3L,7L,13L,31L,61L,127L,251L,509L,
-	//	  1021L,2039L,4093L,8191L,16381L,32749L,65521L,131071L,262139L,
-	//	  524287L,1048573L,2097143L,4194301L,8388593L,16777213L,33554393L,
-	//	  67108859L,134217689L,268435399L,536870909L,1073741789L};
-	private static final int NUM_PRIMES = 31;
-	private static final int[] prime =  {1,2,3,7,13,31,61,127,251,509,
-		1021,2039,4093,8191,16381,32749,65521,131071,262139,
-		524287,1048573,2097143,4194301,8388593,16777213,33554393,
-		67108859,134217689,268435399,536870909,1073741789};
-
-
-	// an axis aligned bounding box in the hash table
-	private static class dxAABB {
-		int level;		// the level this is stored in (cell size = 2^level)
-		//TODO do not initialise?
-		int[] dbounds = new int[6];	// AABB bounds, discretized to cell size
-		DxGeom geom;		// corresponding geometry object (AABB stored here)
-		int index;		// index of this AABB, starting from 0
-	}
-
-
-	// a hash table node that represents an AABB that intersects a particular cell
-	// at a particular level
-	private static class Node {
-		Node next;		// next node in hash table collision list, 0 if none
-		int x,y,z;		// cell position in space, discretized to cell size
-		dxAABB aabb;		// axis aligned bounding box that intersects this cell
-	};
+	// The hash grid is kept between calls of collide(). Every geom has a 
+	// proxy (index in _hashIdxEx) that records the level and the discretized
+	// bounds of the cells it has been put into. A geom is only moved in the 
+	// grid if its level or its discretized bounds change.
+	//
+	// Cells are kept in an open addressing hash table, each cell has a list 
+	// of the proxies in the cell. Empty cells are removed.
+	private static final int NOT_PLACED = Integer.MIN_VALUE;	// level of new proxies
+
+	// proxies
+	private DxGeom[] proxyGeom = new DxGeom[16];
+	private int[] proxyLevel = new int[16];		// level, or MAXINT for big boxes
+	private int[] proxyBounds = new int[16 * 6];	// AABB bounds, discretized to cell size
+	private int proxyCount = 0;		// used proxy ids, including free ones
+	private int[] freeProxies = new int[16];
+	private int freeProxyCount = 0;
+	private boolean levelsChanged = false;
+
+	// cells
+	private int[] cellKey = new int[16 * 4];	// level, x, y, z
+	private int[][] cellProxies = new int[16][];
+	private int[] cellSize = new int[16];
+	private int cellCount = 0;		// used cell ids, including free ones
+	private int[] freeCells = new int[16];
+	private int freeCellCount = 0;
+	private int usedCellCount = 0;
+	// hash table: slot -> cell id or -1
+	private int[] table;
+	private int tableMask;
+
+	// temporary list of big boxes
+	private int[] bigBoxes = new int[16];
+	// (TZ) proxies with level MAXINT for query(), their index in this list 
+	// is stored in the first discretized bound
+	private int[] bigProxies = new int[16];
+	private int bigProxyCount = 0;
+	// (TZ) number of proxies in the cells of every level, levels that are 
+	// 64 apart share a counter, so a count may be too high but never too low
+	private final int[] levelProxyCount = new int[64];
 
 
 	// return the `level' of an AABB. the AABB will be put into cells at this
@@ -111,23 +123,15 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 		frexp (q,level);	// q = (0.5 .. 1.0) * 2^level (definition of frexp)
 		return level.i;
 	}
-	// find a virtual memory address for a cell at the given level and x,y,z
+	// find the hash table slot for a cell at the given level and x,y,z
 	// position.
-	// @@@ currently this is not very sophisticated, e.g. the scaling
-	// factors could be better designed to avoid collisions, and they should
-	// probably depend on the hash table physical size.
-
-	//	static unsigned long getVirtualAddress (int level, int x, int y, int z)
-	private static int getVirtualAddress (int level, int x, int y, int z)
+	private int hashCell (int level, int x, int y, int z)
 	{
-		int r = level*1000 + x*100 + y*10 + z;
-		//TODO remove check ?!?
-		if (r>=Integer.MAX_VALUE) {
-		    throw new IllegalArgumentException("level: " + level + " x=" + x + 
-		            " y=" + y + " z="+ z);
-		}
-		return Math.abs(r);
-		//return level*1000 + x*100 + y*10 + z;
+		int h = level*0x27d4eb2d + x*0x165667b1 + y*0x61c88647 + z*0x5bd1e995;
+		h ^= h >>> 15;
+		h *= 0x2c1b3c6d;
+		h ^= h >>> 12;
+		return h & tableMask;
 	}
 
 	//****************************************************************************
@@ -153,6 +157,9 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 		type = dHashSpaceClass;
 		global_minlevel = -3;
 		global_maxlevel = 10;
+		table = new int[64];
+		Arrays.fill(table, -1);
+		tableMask = table.length - 1;
 	}
 
 
@@ -162,6 +169,8 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 		dAASSERT (minlevel <= maxlevel);
 		global_minlevel = minlevel;
 		global_maxlevel = maxlevel;
+		// all geoms have to be put into the grid again
+		levelsChanged = true;
 	}
 
 
@@ -178,10 +187,50 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 	}
 
 
+	@Override
+	void add (DxGeom geom)
+	{
+		super.add(geom);
+		int p;
+		if (freeProxyCount > 0) {
+			p = freeProxies[--freeProxyCount];
+		}
+		else {
+			p = proxyCount++;
+			if (p == proxyGeom.length) {
+				proxyGeom = Arrays.copyOf(proxyGeom, p * 2);
+				proxyLevel = Arrays.copyOf(proxyLevel, p * 2);
+				proxyBounds = Arrays.copyOf(proxyBounds, p * 2 * 6);
+			}
+		}
+		proxyGeom[p] = geom;
+		proxyLevel[p] = NOT_PLACED;
+		geom._hashIdxEx = p;
+	}
+
+	@Override
+	void remove (DxGeom geom)
+	{
+		CHECK_NOT_LOCKED ();
+		dUASSERT (geom.parent_space == this,"object is not in this space");
+		int p = geom._hashIdxEx;
+		removeFromCells(p);
+		if (proxyLevel[p] == MAXINT) {
+			removeBigProxy(p);
+		}
+		proxyGeom[p] = null;
+		if (freeProxyCount == freeProxies.length) {
+			freeProxies = Arrays.copyOf(freeProxies, freeProxyCount * 2);
+		}
+		freeProxies[freeProxyCount++] = p;
+		super.remove(geom);
+	}
+
 	@Override
 	public void cleanGeoms()
 	{
-		// compute the AABBs of all dirty geoms, and clear the dirty flags
+		// compute the AABBs of all dirty geoms, clear the dirty flags and 
+		// move them in the hash grid
 		lock_count++;
 		for (DxGeom g : getGeoms()) {
 			//if ((g._gflags & GEOM_DIRTY)==0) break;
@@ -192,6 +241,13 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 			g.recomputeAABB();
 			//g._gflags &= (~(GEOM_DIRTY|GEOM_AABB_BAD));
 			g.unsetFlagDirtyAndBad();
+			updateProxy(g._hashIdxEx);
+		}
+		if (levelsChanged) {
+			levelsChanged = false;
+			for (DxGeom g : getGeoms()) {
+				updateProxy(g._hashIdxEx);
+			}
 		}
 		lock_count--;
 	}
@@ -200,8 +256,7 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 	public void collide (Object data, DNearCallback callback)
 	{
 		dAASSERT(callback);
-		//dxGeom geom; //*
-		int i,maxlevel;
+		int maxlevel;
 
 		// 0 or 1 geoms can't collide with anything
 		if (getNumGeoms() < 2) return;
@@ -209,171 +264,299 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 		lock_count++;
 		cleanGeoms();
 
-		// create a list of auxiliary information for all geom axis aligned bounding
-		// boxes. set the level for all AABBs. put AABBs larger than the space's
-		// global_maxlevel in the big_boxes list, check everything else against
-		// that list at the end. for AABBs that are not too big, record the maximum
-		// level that we need.
-
-		ArrayList<dxAABB> hash_boxes = new ArrayList<dxAABB>();	// list of AABBs in hash table
-		ArrayList<dxAABB> big_boxes = new ArrayList<dxAABB>();	// list of AABBs too big for hash table
+		// record the maximum level of the enabled AABBs in the hash grid. 
+		// collect the AABBs larger than the space's global_maxlevel, check 
+		// everything else against that list at the end.
 		maxlevel = global_minlevel - 1;
-		for (DxGeom geom : getGeoms()) {
-			if (!GEOM_ENABLED(geom)){
+		int bigCount = 0;
+		for (int p = 0; p < proxyCount; p++) {
+			DxGeom geom = proxyGeom[p];
+			if (geom == null || !GEOM_ENABLED(geom)) {
 				continue;
 			}
-			dxAABB aabb = new dxAABB(); //(dxAABB) ALLOCA (sizeof(dxAABB));
-			aabb.geom = geom;
-			// compute level, but prevent cells from getting too small
-			int level = findLevel (geom._aabb);
-			if (level < global_minlevel) level = global_minlevel;
-			if (level <= global_maxlevel) {
-				aabb.level = level;
-				if (level > maxlevel) maxlevel = level;
-				// cellsize = 2^level
-				double cellsize = ldexp (1.0,level);
-				// discretize AABB position to cell size
-				for (i=0; i < 3; i++) {
-					aabb.dbounds[2*i] = (int)Math.floor (geom._aabb.getMin(i)/cellsize);
-					aabb.dbounds[2*i+1] = (int)Math.floor (geom._aabb.getMax(i)/cellsize);
+			int level = proxyLevel[p];
+			if (level == MAXINT) {
+				if (bigCount == bigBoxes.length) {
+					bigBoxes = Arrays.copyOf(bigBoxes, bigCount * 2);
 				}
-				// set AABB index
-				aabb.index = hash_boxes.size();
-	            // aabb goes in main list
-	            hash_boxes.add(aabb);
+				bigBoxes[bigCount++] = p;
 			}
-			else {
-				// aabb is too big, put it in the big_boxes list. we don't care about
-				// setting level, dbounds, index, or the maxlevel
-				big_boxes.add(aabb);
+			else if (level > maxlevel) {
+				maxlevel = level;
 			}
 		}
 
-	    int n = hash_boxes.size(); // number of AABBs in main list
+		// for all AABBs, check for other AABBs in the same cells for 
+		// collisions, and then check for other AABBs in all intersecting 
+		// higher level cells. 
+		// Instead of recording which pairs have been tested, a pair is only 
+		// tested in the first cell (smallest x, y and z) that both AABBs 
+		// occupy, and two AABBs of the same level only by the AABB with the 
+		// smaller index.
+		for (int p = 0; p < proxyCount; p++) {
+			DxGeom geom = proxyGeom[p];
+			if (geom == null || !GEOM_ENABLED(geom) || proxyLevel[p] == MAXINT) {
+				continue;
+			}
+			// discrete bounds at current level
+			int o = p * 6;
+			int x0 = proxyBounds[o], x1 = proxyBounds[o+1];
+			int y0 = proxyBounds[o+2], y1 = proxyBounds[o+3];
+			int z0 = proxyBounds[o+4], z1 = proxyBounds[o+5];
+			int plevel = proxyLevel[p];
+			for (int level = plevel; level <= maxlevel; level++) {
+				for (int xi = x0; xi <= x1; xi++) {
+					for (int yi = y0; yi <= y1; yi++) {
+						for (int zi = z0; zi <= z1; zi++) {
+							int c = findCell(level, xi, yi, zi);
+							if (c < 0) {
+								continue;
+							}
+							int[] list = cellProxies[c];
+							for (int k = 0, n = cellSize[c]; k < n; k++) {
+								int q = list[k];
+								if (q == p || (level == plevel && q < p)) {
+									continue;
+								}
+								int oq = q * 6;
+								if (xi != Math.max(x0, proxyBounds[oq]) || 
+										yi != Math.max(y0, proxyBounds[oq+2]) ||
+										zi != Math.max(z0, proxyBounds[oq+4])) {
+									continue;	// tested in another cell
+								}
+								DxGeom geom2 = proxyGeom[q];
+								if (GEOM_ENABLED(geom2)) {
+									collideAABBs (geom,geom2,data,callback);
+								}
+							}
+						}
+					}
+				}
+				// get the discrete bounds for the next level up
+				x0 >>= 1; x1 >>= 1;
+				y0 >>= 1; y1 >>= 1;
+				z0 >>= 1; z1 >>= 1;
+			}
+
+			// every AABB in the hash grid must be intersected against every
+			// AABB in the big boxes list. so let's hope there are not too many 
+			// objects in the big boxes list.
+			for (int k = 0; k < bigCount; k++) {
+				collideAABBs (geom,proxyGeom[bigBoxes[k]],data,callback);
+			}
+		}
 
-		// for `n' objects, an n*n array of bits is used to record if those objects
-		// have been intersection-tested against each other yet. this array can
-		// grow large with high n, but oh well...
-		int tested_rowsize = (n+7) >> 3;	// number of bytes needed for n bits
-		//std::vector<unsigned char> tested(n * tested_rowsize);
-		int[] tested = new int[n * tested_rowsize];
+		// intersect all AABBs in the big boxes list together
+		for (int k = 0; k < bigCount; k++) {
+			for (int k2 = k + 1; k2 < bigCount; k2++) {
+				collideAABBs (proxyGeom[bigBoxes[k]],proxyGeom[bigBoxes[k2]],data,callback);
+			}
+		}
 
-		// create a hash table to store all AABBs. each AABB may take up to 8 cells.
-		// we use chaining to resolve collisions, but we use a relatively large table
-		// to reduce the chance of collisions.
+		lock_count--;
+	}
 
-		// compute hash table size sz to be a prime > 8*n
-		for (i=0; i<NUM_PRIMES; i++) {
-			if (prime[i] >= (8*n)) break;
+	/**
+	 * Computes the level and the discretized bounds of a clean geom and 
+	 * moves it in the hash grid if they have changed.
+	 */
+	private void updateProxy (int p)
+	{
+		DxGeom geom = proxyGeom[p];
+		// compute level, but prevent cells from getting too small
+		int level = findLevel (geom._aabb);
+		if (level < global_minlevel) level = global_minlevel;
+		if (level > global_maxlevel) {
+			// aabb is too big for the hash grid
+			if (proxyLevel[p] != MAXINT) {
+				removeFromCells(p);
+				proxyLevel[p] = MAXINT;
+				if (bigProxyCount == bigProxies.length) {
+					bigProxies = Arrays.copyOf(bigProxies, bigProxyCount * 2);
+				}
+				proxyBounds[p * 6] = bigProxyCount;
+				bigProxies[bigProxyCount++] = p;
+			}
+			return;
 		}
-		if (i >= NUM_PRIMES) 
-			i = NUM_PRIMES-1;	// probably pointless
-		int sz = prime[i];
-
-		// allocate and initialize hash table node pointers
-		//std::vector<Node*> table(sz);
-		Node[] table = new Node[sz];
-
-		// add each AABB to the hash table (may need to add it to up to 8 cells)
-		//TODO use proper List here!
-		//for (aabb=first_aabb; aabb != null; aabb=aabb.next) {
-		for (dxAABB aabb: hash_boxes) {
-			int[] dbounds = aabb.dbounds;
-			for (int xi = dbounds[0]; xi <= dbounds[1]; xi++) {
-				for (int yi = dbounds[2]; yi <= dbounds[3]; yi++) {
-					for (int zi = dbounds[4]; zi <= dbounds[5]; zi++) {
-						// get the hash index  TODO TZ: cast to int
-						int hi = getVirtualAddress (aabb.level,xi,yi,zi) % sz;
-						// add a new node to the hash table
-						Node node = new Node();//(Node) ALLOCA (sizeof (Node));
-						node.x = xi;
-						node.y = yi;
-						node.z = zi;
-						node.aabb = aabb;
-						node.next = table[hi];
-						table[hi] = node;
+		// cellsize = 2^level
+		double cellsize = ldexp (1.0,level);
+		// discretize AABB position to cell size
+		int x0 = (int)Math.floor (geom._aabb.getMin0()/cellsize);
+		int x1 = (int)Math.floor (geom._aabb.getMax0()/cellsize);
+		int y0 = (int)Math.floor (geom._aabb.getMin1()/cellsize);
+		int y1 = (int)Math.floor (geom._aabb.getMax1()/cellsize);
+		int z0 = (int)Math.floor (geom._aabb.getMin2()/cellsize);
+		int z1 = (int)Math.floor (geom._aabb.getMax2()/cellsize);
+		int o = p * 6;
+		if (level == proxyLevel[p] && 
+				x0 == proxyBounds[o] && x1 == proxyBounds[o+1] &&
+				y0 == proxyBounds[o+2] && y1 == proxyBounds[o+3] &&
+				z0 == proxyBounds[o+4] && z1 == proxyBounds[o+5]) {
+			return;		// still in the same cells
+		}
+		if (proxyLevel[p] == MAXINT) {
+			removeBigProxy(p);
+		}
+		removeFromCells(p);
+		proxyLevel[p] = level;
+		levelProxyCount[level & 63]++;
+		proxyBounds[o] = x0; proxyBounds[o+1] = x1;
+		proxyBounds[o+2] = y0; proxyBounds[o+3] = y1;
+		proxyBounds[o+4] = z0; proxyBounds[o+5] = z1;
+		// add the AABB to the hash grid (may need to add it to up to 8 cells)
+		for (int xi = x0; xi <= x1; xi++) {
+			for (int yi = y0; yi <= y1; yi++) {
+				for (int zi = z0; zi <= z1; zi++) {
+					int c = findCell(level, xi, yi, zi);
+					if (c < 0) {
+						c = createCell(level, xi, yi, zi);
+					}
+					int n = cellSize[c];
+					if (n == cellProxies[c].length) {
+						cellProxies[c] = Arrays.copyOf(cellProxies[c], n * 2);
 					}
+					cellProxies[c][n] = p;
+					cellSize[c] = n + 1;
 				}
 			}
 		}
+	}
 
-		// now that all AABBs are loaded into the hash table, we do the actual
-		// collision detection. for all AABBs, check for other AABBs in the
-		// same cells for collisions, and then check for other AABBs in all
-		// intersecting higher level cells.
-
-		int[] db = new int[6];			// discrete bounds at current level
-		for (dxAABB aabb: hash_boxes) {
-			// we are searching for collisions with aabb
-			for (i=0; i<6; i++) db[i] = aabb.dbounds[i];
-			for (int level = aabb.level; level <= maxlevel; level++) {
-				for (int xi = db[0]; xi <= db[1]; xi++) {
-					for (int yi = db[2]; yi <= db[3]; yi++) {
-						for (int zi = db[4]; zi <= db[5]; zi++) {
-							// get the hash index
-							//int TZ long 
-							int hi = getVirtualAddress (level,xi,yi,zi) % sz;
-							// search all nodes at this index
-							for (Node node = table[hi]; node != null; node=node.next) {
-								// node points to an AABB that may intersect aabb
-								if (node.aabb == aabb) 
-									continue;
-								if (node.aabb.level == level &&
-										node.x == xi && node.y == yi && node.z == zi) {
-									// see if aabb and node->aabb have already been tested
-									// against each other
-									//TZ unsigned char mask;
-									int mask;
-									if (aabb.index <= node.aabb.index) {
-										i = (aabb.index * tested_rowsize)+(node.aabb.index >> 3);
-										mask = 1 << (node.aabb.index & 7);
-									}
-									else {
-										i = (node.aabb.index * tested_rowsize)+(aabb.index >> 3);
-										mask = 1 << (aabb.index & 7);
-									}
-									dIASSERT (i >= 0 && i < (tested_rowsize*n));
-									if ((tested[i] & mask)==0) {
-										collideAABBs (aabb.geom,node.aabb.geom,data,callback);
-									}
-									tested[i] |= mask;
-								}
-							}
+	private void removeBigProxy (int p)
+	{
+		int slot = proxyBounds[p * 6];
+		int last = bigProxies[--bigProxyCount];
+		bigProxies[slot] = last;
+		proxyBounds[last * 6] = slot;
+	}
+
+	private void removeFromCells (int p)
+	{
+		int level = proxyLevel[p];
+		if (level == NOT_PLACED || level == MAXINT) {
+			return;
+		}
+		int o = p * 6;
+		for (int xi = proxyBounds[o]; xi <= proxyBounds[o+1]; xi++) {
+			for (int yi = proxyBounds[o+2]; yi <= proxyBounds[o+3]; yi++) {
+				for (int zi = proxyBounds[o+4]; zi <= proxyBounds[o+5]; zi++) {
+					int c = findCell(level, xi, yi, zi);
+					dIASSERT (c >= 0);
+					int[] list = cellProxies[c];
+					int n = cellSize[c] - 1;
+					for (int k = 0; k <= n; k++) {
+						if (list[k] == p) {
+							list[k] = list[n];
+							break;
 						}
 					}
+					cellSize[c] = n;
+					if (n == 0) {
+						deleteCell(c);
+					}
 				}
-				// get the discrete bounds for the next level up
-				for (i=0; i<6; i++) 
-					db[i] >>= 1;
 			}
 		}
+		levelProxyCount[level & 63]--;
+		proxyLevel[p] = NOT_PLACED;
+	}
 
-		// every AABB in the normal list must now be intersected against every
-		// AABB in the big_boxes list. so let's hope there are not too many objects
-		// in the big_boxes list.
-		for (dxAABB aabb: hash_boxes) {
-			for (dxAABB aabb2: big_boxes) {
-				collideAABBs (aabb.geom,aabb2.geom,data,callback);
+	/** @return the cell id or -1 if the cell does not exist */
+	private int findCell (int level, int x, int y, int z)
+	{
+		int slot = hashCell(level, x, y, z);
+		for (int c = table[slot]; c >= 0; c = table[slot]) {
+			int o = c * 4;
+			if (cellKey[o] == level && cellKey[o+1] == x && 
+					cellKey[o+2] == y && cellKey[o+3] == z) {
+				return c;
 			}
+			slot = (slot + 1) & tableMask;
 		}
+		return -1;
+	}
 
-		// intersected all AABBs in the big_boxes list together
-		for (dxAABB aabb: big_boxes) {
-			for (dxAABB aabb2: big_boxes) {
-				collideAABBs (aabb.geom,aabb2.geom,data,callback);
+	private int createCell (int level, int x, int y, int z)
+	{
+		int c;
+		if (freeCellCount > 0) {
+			c = freeCells[--freeCellCount];
+		}
+		else {
+			c = cellCount++;
+			if (c == cellSize.length) {
+				cellKey = Arrays.copyOf(cellKey, c * 2 * 4);
+				cellProxies = Arrays.copyOf(cellProxies, c * 2);
+				cellSize = Arrays.copyOf(cellSize, c * 2);
 			}
+			cellProxies[c] = new int[4];
 		}
+		int o = c * 4;
+		cellKey[o] = level;
+		cellKey[o+1] = x;
+		cellKey[o+2] = y;
+		cellKey[o+3] = z;
+		cellSize[c] = 0;
+		usedCellCount++;
+		if (usedCellCount * 2 > table.length) {
+			// grow the table, this also inserts the new cell
+			rehash(table.length * 2);
+		}
+		else {
+			insertCell(c);
+		}
+		return c;
+	}
 
-		//(TZ): Not necessary in Java
-//	    // deallocate table
-//	    for (int ii=0; ii<table.length; ++i)
-//	        for (Node node = table[ii]; node != null;) {
-//	            Node next = node.next;
-//	            delete node;
-//	            node = next;
-//	        }
+	private void insertCell (int c)
+	{
+		int o = c * 4;
+		int slot = hashCell(cellKey[o], cellKey[o+1], cellKey[o+2], cellKey[o+3]);
+		while (table[slot] >= 0) {
+			slot = (slot + 1) & tableMask;
+		}
+		table[slot] = c;
+	}
 
-		lock_count--;
+	private void deleteCell (int c)
+	{
+		int o = c * 4;
+		int hole = hashCell(cellKey[o], cellKey[o+1], cellKey[o+2], cellKey[o+3]);
+		while (table[hole] != c) {
+			hole = (hole + 1) & tableMask;
+		}
+		// backward shift deletion
+		int next = (hole + 1) & tableMask;
+		while (table[next] >= 0) {
+			int n = table[next] * 4;
+			int home = hashCell(cellKey[n], cellKey[n+1], cellKey[n+2], cellKey[n+3]);
+			// move the entry if its home is not in (hole, next]
+			if (((next - home) & tableMask) >= ((next - hole) & tableMask)) {
+				table[hole] = table[next];
+				hole = next;
+			}
+			next = (next + 1) & tableMask;
+		}
+		table[hole] = -1;
+		cellSize[c] = -1;
+		if (freeCellCount == freeCells.length) {
+			freeCells = Arrays.copyOf(freeCells, freeCellCount * 2);
+		}
+		freeCells[freeCellCount++] = c;
+		usedCellCount--;
+	}
+
+	private void rehash (int size)
+	{
+		table = new int[size];
+		Arrays.fill(table, -1);
+		tableMask = size - 1;
+		for (int c = 0; c < cellCount; c++) {
+			if (cellSize[c] >= 0) {
+				insertCell(c);
+			}
+		}
 	}
 
 	@Override
@@ -397,6 +580,73 @@ public class DxHashSpace extends DxSpace implements DHashSpace {
 		lock_count--;
 	}
 
+	/**
+	 * (TZ) Visits the cells that the box occupies on every level with 
+	 * proxies, unless there are more cells than proxies. A geom is only appended in the 
+	 * first cell (smallest x, y and z) that it shares with the box.
+	 */
+	@Override
+	void query (DAABBC aabb, DVector3C center, double radius, DGeomBuffer geoms)
+	{
+		for (int k = 0; k < bigProxyCount; k++) {
+			queryGeom(proxyGeom[bigProxies[k]], aabb, center, radius, geoms);
+		}
+		// count the cells of the box
+		double cells = 0;
+		for (int level = global_minlevel; level <= global_maxlevel; level++) {
+			if (levelProxyCount[level & 63] == 0) {
+				continue;
+			}
+			double cellsize = ldexp (1.0,level);
+			cells += (Math.floor(aabb.getMax0()/cellsize) - Math.floor(aabb.getMin0()/cellsize) + 1) *
+					(Math.floor(aabb.getMax1()/cellsize) - Math.floor(aabb.getMin1()/cellsize) + 1) *
+					(Math.floor(aabb.getMax2()/cellsize) - Math.floor(aabb.getMin2()/cellsize) + 1);
+		}
+		if (!(cells <= proxyCount - freeProxyCount)) {
+			// cheaper to test all geoms (or the box is infinite)
+			for (int p = 0; p < proxyCount; p++) {
+				DxGeom geom = proxyGeom[p];
+				if (geom != null && proxyLevel[p] != MAXINT) {
+					queryGeom(geom, aabb, center, radius, geoms);
+				}
+			}
+			return;
+		}
+		for (int level = global_minlevel; level <= global_maxlevel; level++) {
+			if (levelProxyCount[level & 63] == 0) {
+				continue;
+			}
+			double cellsize = ldexp (1.0,level);
+			int x0 = (int)Math.floor (aabb.getMin0()/cellsize);
+			int x1 = (int)Math.floor (aabb.getMax0()/cellsize);
+			int y0 = (int)Math.floor (aabb.getMin1()/cellsize);
+			int y1 = (int)Math.floor (aabb.getMax1()/cellsize);
+			int z0 = (int)Math.floor (aabb.getMin2()/cellsize);
+			int z1 = (int)Math.floor (aabb.getMax2()/cellsize);
+			for (int xi = x0; xi <= x1; xi++) {
+				for (int yi = y0; yi <= y1; yi++) {
+					for (int zi = z0; zi <= z1; zi++) {
+						int c = findCell(level, xi, yi, zi);
+						if (c < 0) {
+							continue;
+						}
+						int[] list = cellProxies[c];
+						for (int k = 0, n = cellSize[c]; k < n; k++) {
+							int q = list[k];
+							int oq = q * 6;
+							if (xi != Math.max(x0, proxyBounds[oq]) || 
+									yi != Math.max(y0, proxyBounds[oq+2]) ||
+									zi != Math.max(z0, proxyBounds[oq+4])) {
+								continue;	// appended in another cell
+							}
+							queryGeom(proxyGeom[q], aabb, center, radius, geoms);
+						}
+					}
+				}
+			}
+		}
+	}
+
 	//****************************************************************************
 	// space functions
 
@@ -0,0 +1,332 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.ode4j.ode.internal.joints.DxJoint;
+import org.ode4j.ode.internal.joints.DxJointNode;
+
+/**
+ * Keeps track of the islands of a world between steps, so that building the
+ * islands for a step does not have to visit all bodies and joints again.
+ * <p>
+ * An island is a set of bodies connected by enabled joints. The islands are 
+ * kept in a union-find structure over the bodies: attaching or enabling a 
+ * joint merges the islands of its bodies. Removing a connection can split an
+ * island, which is not known until the island is searched again, so the 
+ * island is only marked as dirty. Dirty islands are split lazily in 
+ * {@link #update()}, which re-joins their bodies from scratch.
+ * <p>
+ * Only islands with at least one enabled body are 'awake', they are kept in 
+ * a list. Islands whose bodies are all disabled are not visited at all when
+ * stepping.
+ * <p>
+ * The bodies of an island form a ring through <code>DxBody.islandNext</code>,
+ * so that an island can be traversed starting at any of its bodies.
+ * <p>
+ * The tracker is updated by DxBody and DxJoint whenever bodies are created or
+ * destroyed, bodies are enabled or disabled, and joints are attached, 
+ * detached, enabled or disabled. It is not thread safe, like the world.
+ */
+public class DxIslandTracker {
+
+	private DxBody firstAwake;		// first root of the list of awake islands
+	private DxBody lastAwake;
+	private final ArrayList<DxBody> dirty = new ArrayList<DxBody>();
+	private DxBody[] members = new DxBody[16];
+	private DxBody[] awakeRoots = new DxBody[16];
+	private int awakeRootCount = 0;
+	private int iterRoot;			// state of firstAwakeBody()/nextAwakeBody()
+
+	//****************************************************************************
+	// union-find
+
+	private static DxBody find(DxBody b) {
+		// path halving
+		while (b.islandParent != b) {
+			b.islandParent = b.islandParent.islandParent;
+			b = b.islandParent;
+		}
+		return b;
+	}
+
+	private void union(DxBody b1, DxBody b2) {
+		DxBody root = find(b1);
+		DxBody child = find(b2);
+		if (root == child) {
+			return;
+		}
+		if (root.islandRank < child.islandRank) {
+			DxBody tmp = root;
+			root = child;
+			child = tmp;
+		}
+		else if (root.islandRank == child.islandRank) {
+			root.islandRank++;
+		}
+		child.islandParent = root;
+
+		// join the rings
+		DxBody next = root.islandNext;
+		root.islandNext = child.islandNext;
+		child.islandNext = next;
+
+		root.islandEnabledCount += child.islandEnabledCount;
+		if (child.islandAwake) {
+			removeAwake(child);
+		}
+		if (child.islandDirty) {
+			// the entry of the child in the dirty list is skipped in update()
+			child.islandDirty = false;
+			markDirty(root);
+		}
+		if (root.islandEnabledCount > 0 && !root.islandAwake) {
+			addAwake(root);
+		}
+	}
+
+	private void markDirty(DxBody root) {
+		if (!root.islandDirty) {
+			root.islandDirty = true;
+			dirty.add(root);
+		}
+	}
+
+	private void addAwake(DxBody root) {
+		root.islandAwake = true;
+		root.islandAwakePrev = lastAwake;
+		root.islandAwakeNext = null;
+		if (lastAwake != null) {
+			lastAwake.islandAwakeNext = root;
+		}
+		else {
+			firstAwake = root;
+		}
+		lastAwake = root;
+	}
+
+	private void removeAwake(DxBody root) {
+		if (root.islandAwakePrev != null) {
+			root.islandAwakePrev.islandAwakeNext = root.islandAwakeNext;
+		}
+		else {
+			firstAwake = root.islandAwakeNext;
+		}
+		if (root.islandAwakeNext != null) {
+			root.islandAwakeNext.islandAwakePrev = root.islandAwakePrev;
+		}
+		else {
+			lastAwake = root.islandAwakePrev;
+		}
+		root.islandAwakePrev = null;
+		root.islandAwakeNext = null;
+		root.islandAwake = false;
+	}
+
+	private void resetBody(DxBody b) {
+		b.islandParent = b;
+		b.islandRank = 0;
+		b.islandNext = b;
+		b.islandEnabledCount = b.dBodyIsEnabled() ? 1 : 0;
+		b.islandAwake = false;
+		b.islandDirty = false;
+	}
+
+	/**
+	 * Splits a dirty island: the bodies are separated and then joined again
+	 * along their enabled joints.
+	 */
+	private void split(DxBody root) {
+		if (root.islandAwake) {
+			removeAwake(root);
+		}
+		int n = 0;
+		DxBody b = root;
+		do {
+			if (!b.islandRemoved) {
+				if (n == members.length) {
+					members = Arrays.copyOf(members, 2 * n);
+				}
+				members[n++] = b;
+			}
+			b = b.islandNext;
+		} while (b != root);
+
+		for (int i = 0; i < n; i++) {
+			resetBody(members[i]);
+		}
+		for (int i = 0; i < n; i++) {
+			b = members[i];
+			if (b.islandEnabledCount > 0 && b.islandParent == b && !b.islandAwake) {
+				addAwake(b);
+			}
+			for (DxJointNode node = b.firstjoint.get(); node != null; node = node.next) {
+				if (node.body != null && node.joint.isEnabled()) {
+					union(b, node.body);
+				}
+			}
+			members[i] = null;
+		}
+	}
+
+	//****************************************************************************
+	// events
+
+	void addBody(DxBody b) {
+		b.islandRemoved = false;
+		resetBody(b);
+		if (b.islandEnabledCount > 0) {
+			addAwake(b);
+		}
+	}
+
+	/**
+	 * Called before a body is destroyed. The body stays in its island until
+	 * the island has been split.
+	 */
+	void removeBody(DxBody b) {
+		b.islandRemoved = true;
+		markDirty(find(b));
+	}
+
+	/**
+	 * Called after the dxBodyDisabled flag of a body has changed.
+	 */
+	void bodyEnabledChanged(DxBody b) {
+		DxBody root = find(b);
+		root.islandEnabledCount += b.dBodyIsEnabled() ? 1 : -1;
+		if (root.islandEnabledCount > 0) {
+			if (!root.islandAwake) {
+				addAwake(root);
+			}
+		}
+		else if (root.islandAwake) {
+			removeAwake(root);
+		}
+	}
+
+	/**
+	 * Called after a joint has been attached or enabled.
+	 */
+	public void jointConnected(DxJoint j) {
+		DxBody b1 = j.node[0].body;
+		DxBody b2 = j.node[1].body;
+		if (b1 != null && b2 != null && j.isEnabled()) {
+			union(b1, b2);
+		}
+	}
+
+	/**
+	 * Called before a joint is detached or disabled.
+	 */
+	public void jointDisconnecting(DxJoint j) {
+		DxBody b1 = j.node[0].body;
+		DxBody b2 = j.node[1].body;
+		if (b1 != null && b2 != null && j.isEnabled()) {
+			markDirty(find(b1));
+		}
+	}
+
+	//****************************************************************************
+	// stepping
+
+	/**
+	 * Splits the dirty islands and takes a snapshot of the awake islands.
+	 * The snapshot is not changed by enabling or disabling bodies, e.g. by
+	 * auto-disabling.
+	 * @return number of awake islands
+	 */
+	public int update() {
+		for (int i = 0; i < dirty.size(); i++) {
+			DxBody root = dirty.get(i);
+			// skip islands that have been merged into other islands
+			if (root.islandDirty && root.islandParent == root) {
+				split(root);
+			}
+		}
+		dirty.clear();
+
+		int n = 0;
+		for (DxBody root = firstAwake; root != null; root = root.islandAwakeNext) {
+			if (n == awakeRoots.length) {
+				awakeRoots = Arrays.copyOf(awakeRoots, 2 * n);
+			}
+			awakeRoots[n++] = root;
+		}
+		for (int i = n; i < awakeRootCount; i++) {
+			awakeRoots[i] = null;
+		}
+		awakeRootCount = n;
+		return n;
+	}
+
+	/**
+	 * @param index index in the snapshot of the last update()
+	 * @return a body of the island, the island has no enabled bodies anymore 
+	 * if {@link #isAwake(DxBody)} returns false for it.
+	 */
+	public DxBody getAwakeIsland(int index) {
+		return awakeRoots[index];
+	}
+
+	/**
+	 * @param root the body returned by getAwakeIsland()
+	 * @return whether the island has any enabled bodies
+	 */
+	public boolean isAwake(DxBody root) {
+		return root.islandEnabledCount > 0;
+	}
+
+	/**
+	 * @return the next body of the island, the bodies form a ring
+	 */
+	public DxBody nextIslandBody(DxBody b) {
+		return b.islandNext;
+	}
+
+	/**
+	 * Iterates over all bodies of the islands in the snapshot of the last
+	 * update(), this includes all enabled bodies of the world.
+	 * @return the first body or <tt>null</tt>
+	 */
+	DxBody firstAwakeBody() {
+		iterRoot = 0;
+		return iterRoot < awakeRootCount ? awakeRoots[0] : null;
+	}
+
+	/**
+	 * @see #firstAwakeBody()
+	 */
+	DxBody nextAwakeBody(DxBody b) {
+		DxBody next = b.islandNext;
+		if (next != awakeRoots[iterRoot]) {
+			return next;
+		}
+		iterRoot++;
+		return iterRoot < awakeRootCount ? awakeRoots[iterRoot] : null;
+	}
+}
@@ -0,0 +1,613 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.OdeConstants.dInfinity;
+import static org.ode4j.ode.internal.Common.dAASSERT;
+import static org.ode4j.ode.internal.Common.dIASSERT;
+import static org.ode4j.ode.internal.Common.dUASSERT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DGeomBuffer;
+import org.ode4j.ode.DOctreeSpace;
+
+/**
+ * Loose octree space.
+ * <p>
+ * Every geom in the space has a proxy. The proxy of a finite geom whose 
+ * center is inside the root cell is stored in the node at the deepest level 
+ * where the geom fits into the loose bounds of the cell that contains its 
+ * center. Level and cell are computed from the AABB directly, and a moved 
+ * proxy is only relinked if one of them changes. The path to the new node is 
+ * searched starting from the common ancestor with the old node, which is 
+ * usually the parent for geoms that move into a neighbouring cell. Nodes are 
+ * allocated on demand and freed when they are empty and have no children. 
+ * Other geoms are kept in the list of outside proxies.
+ * <p>
+ * <tt>collide()</tt> queries the tree with the AABB of every proxy. A query 
+ * only tests the proxies at the same or a deeper level, and proxies at the 
+ * same level only if they have a larger index, so every pair is reported once.
+ * Because the loose bounds of a child are contained in the loose bounds of 
+ * its parent, a query can skip every subtree whose node does not overlap 
+ * the AABB.
+ * <p>
+ * Nodes and proxies are stored in arrays that are indexed with their ids.
+ *
+ * @author Tilmann Zaeschke
+ */
+public class DxOctreeSpace extends DxSpace implements DOctreeSpace {
+
+	private static final int NULL_NODE = -1;
+	/** Value of <tt>proxyNode</tt> for proxies that are not placed yet. */
+	private static final int NOT_PLACED = -1;
+	/** Value of <tt>proxyNode</tt> for proxies in the outside list. */
+	private static final int OUTSIDE = -2;
+	private static final int MAX_DEPTH = 20;
+	private static final double DEFAULT_LOOSENESS = 2;
+	// Relative enlargement of the loose bounds that covers rounding errors
+	private static final double BOUNDS_EPSILON = 1e-9;
+
+	private final double[] rootMin = new double[3];
+	private final double[] rootSize = new double[3];
+	private final int maxDepth;
+	private double looseness = DEFAULT_LOOSENESS;
+	private boolean layoutChanged = false;
+
+	// nodes: level, cell coordinates, loose bounds (min0, max0, min1, max1, 
+	// min2, max2), tree links and the proxies stored in the node. Free nodes 
+	// have a negative level and are linked via nodeParent.
+	private int[] nodeDepth;
+	private int[] nodeCell;		// x, y, z
+	private double[] nodeBounds;
+	private int[] nodeParent;
+	private int[] nodeChildren;	// 8 per node
+	private int[][] nodeProxies;
+	private int[] nodeProxyCount;
+	private int nodeCapacity;
+	private int freeNode = NULL_NODE;
+	private final int root;
+
+	// proxies: geom, node (or NOT_PLACED/OUTSIDE) and index in the proxy 
+	// list of the node (or in the outside list)
+	private DxGeom[] proxyGeom = new DxGeom[16];
+	private int[] proxyNode = new int[16];
+	private int[] proxySlot = new int[16];
+	private int proxyEnd = 0;	// proxies are < proxyEnd
+	private int[] freeProxies = new int[16];
+	private int freeProxyCount = 0;
+
+	private int[] outsideProxies = new int[16];
+	private int outsideCount = 0;
+
+	// geoms that got dirty since the last cleanGeoms(), may contain geoms
+	// that have been removed in the meantime and duplicates.
+	private final List<DxGeom> dirtyGeoms = new ArrayList<DxGeom>();
+
+	// query stack, reused between calls
+	private int[] queryStack = new int[64];
+	private boolean queryStackInUse = false;
+
+	// result of computePlacement()
+	private int placeDepth;
+	private final int[] placeCell = new int[3];
+	private final double[] placeRel = new double[3];
+
+	/**
+	 * Creation.
+	 * @param space parent space or null
+	 * @param center center of the root cell
+	 * @param extents half extents of the root cell
+	 * @param depth maximum depth of the tree
+	 */
+	public static DxOctreeSpace dOctreeSpaceCreate(DxSpace space, DVector3C center, 
+			DVector3C extents, int depth) {
+		return new DxOctreeSpace(space, center, extents, depth);
+	}
+
+	private DxOctreeSpace(DxSpace space, DVector3C center, DVector3C extents, int depth) {
+		super(space);
+		dUASSERT(depth >= 0 && depth <= MAX_DEPTH, "depth must be between 0 and 20");
+		dUASSERT(extents.get0() > 0 && extents.get1() > 0 && extents.get2() > 0, 
+				"extents must be positive");
+		type = dOctreeSpaceClass;
+		for (int a = 0; a < 3; a++) {
+			rootMin[a] = center.get(a) - extents.get(a);
+			rootSize[a] = 2 * extents.get(a);
+		}
+		maxDepth = depth;
+		allocateNodes(16);
+		root = allocateNode(0, 0, 0, 0, NULL_NODE);
+	}
+
+	@Override
+	public double getLooseness() {
+		return looseness;
+	}
+
+	@Override
+	public void setLooseness(double looseness) {
+		dUASSERT(looseness > 1, "looseness must be larger than 1");
+		CHECK_NOT_LOCKED(this);
+		this.looseness = looseness;
+		for (int n = 0; n < nodeCapacity; n++) {
+			if (nodeDepth[n] >= 0) {
+				computeNodeBounds(n);
+			}
+		}
+		// the levels of all geoms change
+		layoutChanged = true;
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	@Override
+	void add(DxGeom g) {
+		CHECK_NOT_LOCKED(this);
+		dAASSERT(g);
+		dUASSERT(g.parent_space == null, "geom is already in a space");
+		int p;
+		if (freeProxyCount > 0) {
+			p = freeProxies[--freeProxyCount];
+		} else {
+			if (proxyEnd == proxyGeom.length) {
+				int n = proxyEnd * 2;
+				proxyGeom = Arrays.copyOf(proxyGeom, n);
+				proxyNode = Arrays.copyOf(proxyNode, n);
+				proxySlot = Arrays.copyOf(proxySlot, n);
+			}
+			p = proxyEnd++;
+		}
+		proxyGeom[p] = g;
+		proxyNode[p] = NOT_PLACED;
+		g._octProxyEx = p;
+		dirtyGeoms.add(g);
+		super.add(g);
+	}
+
+	@Override
+	void remove(DxGeom g) {
+		CHECK_NOT_LOCKED(this);
+		dAASSERT(g);
+		dUASSERT(g.parent_space == this, "object is not in this space");
+		int p = g._octProxyEx;
+		int node = proxyNode[p];
+		unlinkProxy(p);
+		if (node >= 0) {
+			pruneNodes(node);
+		}
+		proxyGeom[p] = null;
+		proxyNode[p] = NOT_PLACED;
+		if (freeProxyCount == freeProxies.length) {
+			freeProxies = Arrays.copyOf(freeProxies, freeProxyCount * 2);
+		}
+		freeProxies[freeProxyCount++] = p;
+		g._octProxyEx = -1;
+		// an entry in the dirty list is skipped once the geom has left the space
+		super.remove(g);
+	}
+
+	@Override
+	void dirty(DxGeom g) {
+		dAASSERT(g);
+		dUASSERT(g.parent_space == this, "object is not in this space");
+		dirtyGeoms.add(g);
+	}
+
+	@Override
+	public void cleanGeoms() {
+		// compute the AABBs of all dirty geoms, clear the dirty flags and
+		// move the proxies whose level or cell has changed
+		lock_count++;
+		for (int i = 0; i < dirtyGeoms.size(); i++) {
+			DxGeom g = dirtyGeoms.get(i);
+			if (g.parent_space != this || !g.hasFlagDirty()) {
+				continue; // removed or duplicate
+			}
+			if (g instanceof DxSpace) {
+				((DxSpace) g).cleanGeoms();
+			}
+			g.recomputeAABB();
+			g.unsetFlagDirtyAndBad();
+			placeProxy(g._octProxyEx);
+		}
+		dirtyGeoms.clear();
+		if (layoutChanged) {
+			for (int p = 0; p < proxyEnd; p++) {
+				if (proxyGeom[p] != null) {
+					placeProxy(p);
+				}
+			}
+			layoutChanged = false;
+		}
+		lock_count--;
+	}
+
+	@Override
+	public void collide(Object data, DNearCallback callback) {
+		dAASSERT(callback);
+
+		lock_count++;
+		cleanGeoms();
+
+		// outside geoms against each other and against all other geoms
+		for (int i = 0; i < outsideCount; i++) {
+			DxGeom g1 = proxyGeom[outsideProxies[i]];
+			if (!GEOM_ENABLED(g1)) {
+				continue;
+			}
+			for (int j = i + 1; j < outsideCount; j++) {
+				DxGeom g2 = proxyGeom[outsideProxies[j]];
+				if (GEOM_ENABLED(g2)) {
+					collideAABBs(g1, g2, data, callback);
+				}
+			}
+			queryTree(g1, -1, 0, data, callback);
+		}
+
+		// every proxy in the tree against the proxies at the same or a deeper level
+		for (int p = 0; p < proxyEnd; p++) {
+			int node = proxyNode[p];
+			if (node >= 0 && GEOM_ENABLED(proxyGeom[p])) {
+				queryTree(proxyGeom[p], p, nodeDepth[node], data, callback);
+			}
+		}
+
+		lock_count--;
+	}
+
+	@Override
+	void collide2(Object data, DxGeom geom, DNearCallback callback) {
+		dAASSERT(geom != null && callback != null);
+
+		lock_count++;
+		cleanGeoms();
+		geom.recomputeAABB();
+
+		for (int i = 0; i < outsideCount; i++) {
+			DxGeom g = proxyGeom[outsideProxies[i]];
+			if (GEOM_ENABLED(g)) {
+				collideAABBs(g, geom, data, callback);
+			}
+		}
+		queryTree(geom, -1, 0, data, callback);
+
+		lock_count--;
+	}
+
+	@Override
+	void query(DAABBC aabb, DVector3C center, double radius, DGeomBuffer geoms) {
+		for (int i = 0; i < outsideCount; i++) {
+			queryGeom(proxyGeom[outsideProxies[i]], aabb, center, radius, geoms);
+		}
+		// a query may be started by the callback of collide2()
+		boolean nested = queryStackInUse;
+		int[] stack = nested ? new int[64] : queryStack;
+		queryStackInUse = true;
+
+		double min0 = aabb.getMin0(), max0 = aabb.getMax0();
+		double min1 = aabb.getMin1(), max1 = aabb.getMax1();
+		double min2 = aabb.getMin2(), max2 = aabb.getMax2();
+		int sp = 0;
+		stack[sp++] = root;
+		while (sp > 0) {
+			int n = stack[--sp];
+			int o = n * 6;
+			double[] b = nodeBounds;
+			if (b[o] > max0 || b[o + 1] < min0 || b[o + 2] > max1 || 
+					b[o + 3] < min1 || b[o + 4] > max2 || b[o + 5] < min2) {
+				continue;
+			}
+			int[] proxies = nodeProxies[n];
+			for (int i = 0, count = nodeProxyCount[n]; i < count; i++) {
+				queryGeom(proxyGeom[proxies[i]], aabb, center, radius, geoms);
+			}
+			if (stack.length < sp + 8) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			for (int c = n * 8, end = c + 8; c < end; c++) {
+				if (nodeChildren[c] != NULL_NODE) {
+					stack[sp++] = nodeChildren[c];
+				}
+			}
+		}
+
+		if (!nested) {
+			queryStack = stack;
+			queryStackInUse = false;
+		}
+	}
+
+	/**
+	 * Calls <tt>collideAABBs()</tt> for the enabled geoms in the tree whose 
+	 * node overlaps the AABB of the given geom.
+	 * @param geom geom to test
+	 * @param self proxy of the geom if it is in the tree, otherwise -1
+	 * @param minDepth only nodes at this or a deeper level are tested
+	 */
+	private void queryTree(DxGeom geom, int self, int minDepth, Object data, DNearCallback callback) {
+		// the callback may start another query on this space
+		boolean nested = queryStackInUse;
+		int[] stack = nested ? new int[64] : queryStack;
+		queryStackInUse = true;
+
+		DAABB bb = geom._aabb;
+		double min0 = bb.getMin0(), max0 = bb.getMax0();
+		double min1 = bb.getMin1(), max1 = bb.getMax1();
+		double min2 = bb.getMin2(), max2 = bb.getMax2();
+		int sp = 0;
+		stack[sp++] = root;
+		while (sp > 0) {
+			int n = stack[--sp];
+			int o = n * 6;
+			double[] b = nodeBounds;
+			if (b[o] > max0 || b[o + 1] < min0 || b[o + 2] > max1 || 
+					b[o + 3] < min1 || b[o + 4] > max2 || b[o + 5] < min2) {
+				continue;
+			}
+			int depth = nodeDepth[n];
+			if (depth >= minDepth) {
+				int[] proxies = nodeProxies[n];
+				for (int i = 0, count = nodeProxyCount[n]; i < count; i++) {
+					int q = proxies[i];
+					if (self >= 0 && (q == self || (depth == minDepth && q < self))) {
+						continue;
+					}
+					DxGeom g = proxyGeom[q];
+					if (GEOM_ENABLED(g)) {
+						collideAABBs(geom, g, data, callback);
+					}
+				}
+			}
+			if (stack.length < sp + 8) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			for (int c = n * 8, end = c + 8; c < end; c++) {
+				if (nodeChildren[c] != NULL_NODE) {
+					stack[sp++] = nodeChildren[c];
+				}
+			}
+		}
+
+		if (!nested) {
+			queryStack = stack;
+			queryStackInUse = false;
+		}
+	}
+
+	/**
+	 * Computes the level and the cell of a clean geom. 
+	 * @return false if the geom has to go into the outside list
+	 */
+	private boolean computePlacement(DxGeom g) {
+		DAABB bb = g._aabb;
+		double fit = dInfinity;
+		double[] rel = placeRel;
+		for (int a = 0; a < 3; a++) {
+			double min = bb.getMin(a);
+			double max = bb.getMax(a);
+			if (min == -dInfinity || max == dInfinity) {
+				return false;
+			}
+			rel[a] = ((min + max) * 0.5 - rootMin[a]) / rootSize[a];
+			if (!(rel[a] >= 0 && rel[a] < 1)) {
+				return false; // center outside of the root cell (or NaN)
+			}
+			double halfSize = (max - min) * 0.5;
+			// the geom fits into the cells of level d if 
+			// halfSize <= (looseness - 1) * rootSize / 2^(d+1)
+			if (halfSize > 0) {
+				fit = Math.min(fit, (looseness - 1) * rootSize[a] * 0.5 / halfSize);
+			}
+		}
+		if (fit < 1) {
+			return false;
+		}
+		int depth = fit >= (1 << maxDepth) ? maxDepth : Math.getExponent(fit);
+		placeDepth = depth;
+		int cells = 1 << depth;
+		for (int a = 0; a < 3; a++) {
+			placeCell[a] = Math.min((int) (rel[a] * cells), cells - 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Moves a clean proxy to the node that matches its AABB, or into the 
+	 * outside list.
+	 */
+	private void placeProxy(int p) {
+		int oldNode = proxyNode[p];
+		if (!computePlacement(proxyGeom[p])) {
+			if (oldNode != OUTSIDE) {
+				unlinkProxy(p);
+				if (oldNode >= 0) {
+					pruneNodes(oldNode);
+				}
+				if (outsideCount == outsideProxies.length) {
+					outsideProxies = Arrays.copyOf(outsideProxies, outsideCount * 2);
+				}
+				proxySlot[p] = outsideCount;
+				outsideProxies[outsideCount++] = p;
+				proxyNode[p] = OUTSIDE;
+			}
+			return;
+		}
+		int depth = placeDepth;
+		int x = placeCell[0], y = placeCell[1], z = placeCell[2];
+		if (oldNode >= 0 && nodeDepth[oldNode] == depth && nodeCell[oldNode * 3] == x && 
+				nodeCell[oldNode * 3 + 1] == y && nodeCell[oldNode * 3 + 2] == z) {
+			return; // still in the same cell
+		}
+
+		// climb to the common ancestor, then descend and create the missing nodes
+		int n = oldNode >= 0 ? oldNode : root;
+		while (!containsCell(n, depth, x, y, z)) {
+			n = nodeParent[n];
+		}
+		while (nodeDepth[n] < depth) {
+			int shift = depth - nodeDepth[n] - 1;
+			int cx = x >> shift, cy = y >> shift, cz = z >> shift;
+			int c = n * 8 + ((cx & 1) | ((cy & 1) << 1) | ((cz & 1) << 2));
+			int child = nodeChildren[c];
+			if (child == NULL_NODE) {
+				child = allocateNode(nodeDepth[n] + 1, cx, cy, cz, n);
+				nodeChildren[c] = child;
+			}
+			n = child;
+		}
+
+		// link to the new node before the old nodes are pruned
+		unlinkProxy(p);
+		if (nodeProxyCount[n] == nodeProxies[n].length) {
+			nodeProxies[n] = Arrays.copyOf(nodeProxies[n], nodeProxies[n].length * 2);
+		}
+		proxySlot[p] = nodeProxyCount[n];
+		nodeProxies[n][nodeProxyCount[n]++] = p;
+		proxyNode[p] = n;
+		if (oldNode >= 0) {
+			pruneNodes(oldNode);
+		}
+	}
+
+	private boolean containsCell(int n, int depth, int x, int y, int z) {
+		int shift = depth - nodeDepth[n];
+		if (shift < 0) {
+			return false;
+		}
+		int o = n * 3;
+		return (x >> shift) == nodeCell[o] && (y >> shift) == nodeCell[o + 1] && 
+				(z >> shift) == nodeCell[o + 2];
+	}
+
+	/**
+	 * Removes a proxy from its node or from the outside list, the node is 
+	 * not pruned.
+	 */
+	private void unlinkProxy(int p) {
+		int node = proxyNode[p];
+		int slot = proxySlot[p];
+		if (node >= 0) {
+			int last = nodeProxies[node][--nodeProxyCount[node]];
+			nodeProxies[node][slot] = last;
+			proxySlot[last] = slot;
+		} else if (node == OUTSIDE) {
+			int last = outsideProxies[--outsideCount];
+			outsideProxies[slot] = last;
+			proxySlot[last] = slot;
+		}
+		proxyNode[p] = NOT_PLACED;
+	}
+
+	/**
+	 * Frees the node and its ancestors as long as they are empty and have 
+	 * no children. The root is never freed.
+	 */
+	private void pruneNodes(int n) {
+		while (n != root && nodeProxyCount[n] == 0) {
+			for (int c = n * 8, end = c + 8; c < end; c++) {
+				if (nodeChildren[c] != NULL_NODE) {
+					return;
+				}
+			}
+			int parent = nodeParent[n];
+			for (int c = parent * 8, end = c + 8; c < end; c++) {
+				if (nodeChildren[c] == n) {
+					nodeChildren[c] = NULL_NODE;
+				}
+			}
+			freeNode(n);
+			n = parent;
+		}
+	}
+
+	private void allocateNodes(int capacity) {
+		int old = nodeCapacity;
+		nodeCapacity = capacity;
+		nodeDepth = old == 0 ? new int[capacity] : Arrays.copyOf(nodeDepth, capacity);
+		nodeCell = old == 0 ? new int[capacity * 3] : Arrays.copyOf(nodeCell, capacity * 3);
+		nodeBounds = old == 0 ? new double[capacity * 6] : Arrays.copyOf(nodeBounds, capacity * 6);
+		nodeParent = old == 0 ? new int[capacity] : Arrays.copyOf(nodeParent, capacity);
+		nodeChildren = old == 0 ? new int[capacity * 8] : Arrays.copyOf(nodeChildren, capacity * 8);
+		nodeProxies = old == 0 ? new int[capacity][] : Arrays.copyOf(nodeProxies, capacity);
+		nodeProxyCount = old == 0 ? new int[capacity] : Arrays.copyOf(nodeProxyCount, capacity);
+		// link the new nodes into the free list
+		for (int n = capacity - 1; n >= old; n--) {
+			nodeDepth[n] = -1;
+			nodeParent[n] = freeNode;
+			freeNode = n;
+		}
+	}
+
+	private int allocateNode(int depth, int x, int y, int z, int parent) {
+		if (freeNode == NULL_NODE) {
+			allocateNodes(nodeCapacity * 2);
+		}
+		int n = freeNode;
+		freeNode = nodeParent[n];
+		nodeDepth[n] = depth;
+		nodeCell[n * 3] = x;
+		nodeCell[n * 3 + 1] = y;
+		nodeCell[n * 3 + 2] = z;
+		nodeParent[n] = parent;
+		Arrays.fill(nodeChildren, n * 8, n * 8 + 8, NULL_NODE);
+		if (nodeProxies[n] == null) {
+			nodeProxies[n] = new int[4];
+		}
+		nodeProxyCount[n] = 0;
+		computeNodeBounds(n);
+		return n;
+	}
+
+	private void freeNode(int n) {
+		dIASSERT(nodeProxyCount[n] == 0);
+		nodeDepth[n] = -1;
+		nodeParent[n] = freeNode;
+		freeNode = n;
+	}
+
+	/**
+	 * The loose bounds of a node are its cell enlarged by 
+	 * (looseness - 1) / 2 times the cell size on every side.
+	 */
+	private void computeNodeBounds(int n) {
+		int depth = nodeDepth[n];
+		for (int a = 0; a < 3; a++) {
+			double cellSize = Math.scalb(rootSize[a], -depth);
+			double margin = cellSize * ((looseness - 1) * 0.5 + BOUNDS_EPSILON);
+			double min = rootMin[a] + nodeCell[n * 3 + a] * cellSize;
+			nodeBounds[n * 6 + a * 2] = min - margin;
+			nodeBounds[n * 6 + a * 2 + 1] = min + cellSize + margin;
+		}
+	}
+}
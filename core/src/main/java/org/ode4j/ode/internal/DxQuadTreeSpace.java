@@ -35,6 +35,7 @@ import java.util.List;
 import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DAABBC;
 import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeomBuffer;
 import org.ode4j.ode.DQuadTreeSpace;
 import org.ode4j.ode.internal.cpp4j.java.ObjArray;
 import org.ode4j.ode.internal.cpp4j.java.RefInt;
@@ -261,6 +262,27 @@ public class DxQuadTreeSpace extends DxSpace implements DQuadTreeSpace {
 			}
 		}
 
+		// (TZ) Query the local list and the children that overlap the AABB
+		void Query(DAABBC AABB, DVector3C Center, double Radius, DGeomBuffer Geoms){
+			DxGeom g = mFirst;
+			while (g!=null){
+				queryGeom(g, AABB, Center, Radius, Geoms);
+				g = g.getNextEx();
+			}
+
+			if (mChildren!=null){
+				for (int i = 0; i < SPLITS; i++){
+		            Block CurrentChild = mChildren.at(i);
+					if (CurrentChild.mGeomCount == 0 ||
+							AABB.getMin(AXIS0) >= CurrentChild.mMaxX ||
+							AABB.getMax(AXIS0) < CurrentChild.mMinX ||
+							AABB.getMin(AXIS1) >= CurrentChild.mMaxZ ||
+							AABB.getMax(AXIS1) < CurrentChild.mMinZ) continue;
+					CurrentChild.Query(AABB, Center, Radius, Geoms);
+				}
+			}
+		}
+
 		//void Block::CollideLocal(dxGeom* g2, void* UserData, 
 		//dNearCallback* Callback){
 		void CollideLocal(DxGeom g2, Object userData, 
@@ -631,6 +653,11 @@ public class DxQuadTreeSpace extends DxSpace implements DQuadTreeSpace {
 		lock_count--;
 	}
 
+	@Override
+	void query(DAABBC aabb, DVector3C center, double radius, DGeomBuffer geoms){
+		Blocks[0].Query(aabb, center, radius, geoms);
+	}
+
 	//dSpace dQuadTreeSpaceCreate(dxSpace* space, dVector3 Center, 
 	//dVector3 Extents, int Depth){
 	public static DxQuadTreeSpace dQuadTreeSpaceCreate(DxSpace space, DVector3C Center, 
@@ -38,7 +38,6 @@ import static org.ode4j.ode.internal.Common.dIASSERT;
 import static org.ode4j.ode.internal.Common.dIVERIFY;
 import static org.ode4j.ode.internal.Common.dRecip;
 import static org.ode4j.ode.internal.Matrix.dSetZero;
-import static org.ode4j.ode.internal.Misc.dRandInt;
 import static org.ode4j.ode.internal.Timer.dTimerEnd;
 import static org.ode4j.ode.internal.Timer.dTimerNow;
 import static org.ode4j.ode.internal.Timer.dTimerReport;
@@ -47,16 +46,15 @@ import static org.ode4j.ode.internal.cpp4j.Cstdio.stdout;
 import static org.ode4j.ode.internal.QuickStepEnums.*;
 
 import java.util.Arrays;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.ode4j.math.DMatrix3;
 import org.ode4j.math.DVector3;
 import org.ode4j.ode.DJoint;
 import org.ode4j.ode.internal.Objects_H.dxQuickStepParameters;
 import org.ode4j.ode.internal.cpp4j.java.Ref;
+import org.ode4j.ode.internal.cpp4j.java.RefDouble;
 import org.ode4j.ode.internal.joints.DxJoint;
 import org.ode4j.ode.internal.joints.Info2DescrQuickStep;
 import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext;
@@ -65,6 +63,8 @@ import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext.dstepper
 import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
 import org.ode4j.ode.internal.processmem.DxWorldProcessIslandsInfo.dmemestimate_fn_t;
 import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
+import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena.ArrayType;
+import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena.ObjectType;
 import org.ode4j.ode.threading.ThreadingUtils;
 import org.ode4j.ode.threading.Threading_H.CallContext;
 import org.ode4j.ode.threading.Threading_H.DCallReleasee;
@@ -77,16 +77,14 @@ import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
 public class DxQuickStep extends AbstractStepper implements dstepper_fn_t,
 dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 
-	//TODO evaluate this
 	/**
 	 * Experimental improvement to reduce GC, see issue #36
+	 * @deprecated Not used anymore, all arrays and contexts of a step are 
+	 * reused through the DxWorldProcessMemArena of the stepper. 
 	 */
+	@Deprecated
 	public static boolean REUSE_OBJECTS = false;
 	
-	public static final int THREADS = 4;
-	static final ThreadPoolExecutor POOL = new ThreadPoolExecutor(
-			THREADS, THREADS, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
-
 	//TZ where is this defined???
     private static final boolean CHECK_VELOCITY_OBEYS_CONSTRAINT = false;
     
@@ -112,10 +110,15 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	 * uncomment the following line to use warm starting. this definitely
 	 * help for motor-driven joints. unfortunately it appears to hurt
 	 * with high-friction contacts using the SOR method. use with care
+	 * (TZ) Warm starting is enabled per world, see dxQuickStepParameters.warm_starting.
 	 */
-	//not defined because 'ifdef 0' around 'multiply_invM_JT' causes comp error.
 	//private static boolean WARM_STARTING = false;
 
+	/** for warm starting, this seems to be necessary to prevent
+	 * jerkiness in motor-driven joints. i have no idea why this works.
+	 */
+	private static final double WARM_STARTING_FACTOR = 0.9;
+
 	/** for the SOR method:
 	 * uncomment the following line to determine a new constraint-solving
 	 * order for each iteration. however, the qsort per iteration is expensive,
@@ -132,6 +135,23 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	 */
 	private static final boolean RANDOMLY_REORDER_CONSTRAINTS = true;
 
+	/** for the parallel SOR method (see dxQuickStepParameters.parallel_sor):
+	 * islands with fewer constraint rows are solved sequentially, 
+	 * as the synchronization would cost more than it saves.
+	 */
+	private static final int PARALLEL_SOR_MIN_ROWS = 256;
+
+	/** for the parallel SOR method:
+	 * maximal number of row colours (i.e. batches per iteration). Rows
+	 * that can not be coloured are solved sequentially after the batches.
+	 */
+	private static final int PARALLEL_SOR_MAX_COLOURS = Long.SIZE; // one bit per colour
+
+	/** for the parallel SOR method:
+	 * number of rows a thread claims at once from the current batch.
+	 */
+	private static final int PARALLEL_SOR_ROW_CHUNK = 32;
+
 	//****************************************************************************
 	// special matrix multipliers
 
@@ -222,6 +242,17 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		final DxJoint.Info1 info = new DxJoint.Info1();
 	}
 
+	private static final ArrayType<DJointWithInfo1> JOINTINFOS = new ArrayType<DJointWithInfo1>() {
+		@Override
+		protected DJointWithInfo1[] NewArray(int size) {
+			DJointWithInfo1[] jointinfos = new DJointWithInfo1[size];
+			for (int i = 0; i < size; i++) {
+				jointinfos[i] = new DJointWithInfo1();
+			}
+			return jointinfos;
+		}
+	};
+
 	private static class dxQuickStepperStage0Outputs
 	{
 		int                    nj;
@@ -254,9 +285,9 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		{
 			m_stepperCallContext = stepperCallContext;
 			m_invI = invI;
-			//m_tagsTaken = 0;
-			//m_gravityTaken = 0;
-			//m_inertiaBodyIndex = 0;
+			m_tagsTaken.set(0);
+			m_gravityTaken.set(0);
+			m_inertiaBodyIndex.set(0);
 		}
 
 		DxStepperProcessingCallContext m_stepperCallContext;
@@ -265,6 +296,15 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		final AtomicInteger                     m_gravityTaken = new AtomicInteger();
 		//unsigned int                    volatile m_inertiaBodyIndex;
 		final AtomicInteger                    m_inertiaBodyIndex = new AtomicInteger();
+		// (TZ) Temporaries of the inertia computation. Stage0-Bodies is executed
+		// by a single thread (see dxQuickStepIsland()), a multi-threaded version
+		// would need them per thread.
+		final DMatrix3                         m_tmp = new DMatrix3();
+		final DMatrix3                         m_I = new DMatrix3();
+		final DMatrix3                         m_Itild = new DMatrix3();
+		final DMatrix3                         m_itInv = new DMatrix3();
+		final DVector3                         m_L = new DVector3();
+		final DVector3                         m_tau0 = new DVector3();
 	}
 
 	private static class dxQuickStepperStage0JointsCallContext implements CallContext
@@ -322,6 +362,8 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		int[]                            m_jb;
 		double[]                         m_J;
 		double[]                         m_Jcopy;
+		// Largest |delta lambda| of the last SOR iteration
+		final RefDouble                  m_residual = new RefDouble();
 	};
 
 	private static class dxQuickStepperStage3CallContext implements CallContext
@@ -349,10 +391,18 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 			m_stepperCallContext = callContext;
 			m_localContext = localContext;
 			m_rhs_tmp = rhs_tmp;
-			//m_ji_J = 0;
-			//m_ji_jb = 0;
-			//m_bi = 0;
-			//m_Jrhsi = 0;
+			m_ji_J.set(0);
+			m_ji_jb.set(0);
+			m_bi.set(0);
+			m_Jrhsi.set(0);
+			final int allowedThreads = callContext.m_stepperAllowedThreads();
+			if (m_Jinfos.length < allowedThreads) {
+				Info2DescrQuickStep[] Jinfos = Arrays.copyOf(m_Jinfos, allowedThreads);
+				for (int i = m_Jinfos.length; i < allowedThreads; i++) {
+					Jinfos[i] = new Info2DescrQuickStep();
+				}
+				m_Jinfos = Jinfos;
+			}
 		}
 
 		DxStepperProcessingCallContext m_stepperCallContext;
@@ -366,6 +416,111 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		final AtomicInteger           m_ji_jb = new AtomicInteger();
 		final AtomicInteger           m_bi = new AtomicInteger();
 		final AtomicInteger           m_Jrhsi = new AtomicInteger();
+		final Ref<DCallReleasee>      m_releasee = new Ref<DCallReleasee>();
+		// One per Stage2a thread
+		Info2DescrQuickStep[]         m_Jinfos = new Info2DescrQuickStep[0];
+	};
+
+	private static class dxQuickStepperSORCallContext implements CallContext
+	{
+		void Initialize(DxStepperProcessingCallContext callContext, 
+				dxQuickStepperLocalContext localContext, 
+				double[] iMJ, double[] lambda, double[] cforce, int[] order, int[] batchStart,
+				int batchCount, int num_iterations, BlockPointer lcpState)
+		{
+			m_stepperCallContext = callContext;
+			m_localContext = localContext;
+			m_iMJ = iMJ;
+			m_lambda = lambda;
+			m_cforce = cforce;
+			m_order = order;
+			m_batchStart = batchStart;
+			m_batchCount = batchCount;
+			m_num_iterations = num_iterations;
+			m_lcpState = lcpState;
+			m_batchIndex = 0;
+			m_iterations = 0;
+			m_maxDelta.set(Double.doubleToLongBits(0));
+		}
+
+		DxStepperProcessingCallContext m_stepperCallContext;
+		dxQuickStepperLocalContext   m_localContext;
+		double[]                       m_iMJ;
+		double[]                       m_lambda;
+		double[]                       m_cforce;
+		int[]                          m_order;
+		int[]                          m_batchStart;
+		int                            m_batchCount;
+		int                            m_num_iterations;
+		BlockPointer                   m_lcpState;
+		DCallReleasee                  m_stage4Releasee;
+		// Current batch, assigned by the sync call before the sweep calls are posted
+		int                            m_batchIndex;
+		int                            m_rowsStart;
+		int                            m_rowsEnd;
+		int                            m_chunkSize;
+		int                            m_chunkCount;
+		final AtomicInteger            m_chunk = new AtomicInteger();
+		// Iterations done and largest |delta lambda| of the current iteration (as long bits)
+		int                            m_iterations;
+		final AtomicLong               m_maxDelta = new AtomicLong();
+		final Ref<DCallReleasee>       m_releasee = new Ref<DCallReleasee>();
+	};
+
+	private static final ObjectType<dxQuickStepperStage1CallContext> STAGE1_CALL_CONTEXT = 
+			new ObjectType<dxQuickStepperStage1CallContext>() {
+		@Override
+		protected dxQuickStepperStage1CallContext NewObject() {
+			return new dxQuickStepperStage1CallContext();
+		}
+	};
+
+	private static final ObjectType<dxQuickStepperStage0BodiesCallContext> STAGE0_BODIES_CALL_CONTEXT = 
+			new ObjectType<dxQuickStepperStage0BodiesCallContext>() {
+		@Override
+		protected dxQuickStepperStage0BodiesCallContext NewObject() {
+			return new dxQuickStepperStage0BodiesCallContext();
+		}
+	};
+
+	private static final ObjectType<dxQuickStepperStage0JointsCallContext> STAGE0_JOINTS_CALL_CONTEXT = 
+			new ObjectType<dxQuickStepperStage0JointsCallContext>() {
+		@Override
+		protected dxQuickStepperStage0JointsCallContext NewObject() {
+			return new dxQuickStepperStage0JointsCallContext();
+		}
+	};
+
+	private static final ObjectType<dxQuickStepperLocalContext> LOCAL_CONTEXT = 
+			new ObjectType<dxQuickStepperLocalContext>() {
+		@Override
+		protected dxQuickStepperLocalContext NewObject() {
+			return new dxQuickStepperLocalContext();
+		}
+	};
+
+	private static final ObjectType<dxQuickStepperStage2CallContext> STAGE2_CALL_CONTEXT = 
+			new ObjectType<dxQuickStepperStage2CallContext>() {
+		@Override
+		protected dxQuickStepperStage2CallContext NewObject() {
+			return new dxQuickStepperStage2CallContext();
+		}
+	};
+
+	private static final ObjectType<dxQuickStepperStage3CallContext> STAGE3_CALL_CONTEXT = 
+			new ObjectType<dxQuickStepperStage3CallContext>() {
+		@Override
+		protected dxQuickStepperStage3CallContext NewObject() {
+			return new dxQuickStepperStage3CallContext();
+		}
+	};
+
+	private static final ObjectType<dxQuickStepperSORCallContext> SOR_CALL_CONTEXT = 
+			new ObjectType<dxQuickStepperSORCallContext>() {
+		@Override
+		protected dxQuickStepperSORCallContext NewObject() {
+			return new dxQuickStepperSORCallContext();
+		}
 	};
 
 	//static int dxQuickStepIsland_Stage2a_Callback(void *callContext, dcallindex_t callInstanceIndex, dCallReleaseeID callThisReleasee);
@@ -421,27 +576,26 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	//#if WARM_STARTING
 	//static void multiply_invM_JT (int m, int nb, dRealMutablePtr iMJ, int[] *jb,
 	//		dRealMutablePtr in, dRealMutablePtr out)
-//	private static void multiply_invM_JT (int m, int nb, double[] iMJ, int[] jb,
-//			double[] in, double[] out)
-//	{
-//		dSetZero (out,6*nb);
-//		int iMJ_ofs = 0;//final double[] iMJ_ptr = iMJ;
-//		for (int i=0; i<m; i++) {
-//			int b1 = jb[i*2];
-//			int b2 = jb[i*2+1];
-//			final double in_i = in[i];
-//			int out_ofs = b1*6;//double[] out_ptr = out + b1*6;
-//			//for (j=0; j<6; j++) out_ptr[j] += iMJ_ptr[j] * in[i];
-//			for (int j=0; j<6; j++) out[j + out_ofs] += iMJ[j + iMJ_ofs] * in_i;
-//			iMJ_ofs +=6;//iMJ_ptr += 6;
-//			if (b2 != -1) {
-//				out_ofs = b2*6;//out_ptr = out + b2*6;
-//				//for (j=0; j<6; j++) out_ptr[j] += iMJ_ptr[j] * in[i];
-//				for (int j=0; j<6; j++) out[j + out_ofs] += iMJ[j + iMJ_ofs] * in_i;
-//			}
-//			iMJ_ofs +=6;//iMJ_ptr += 6;
-//		}
-//	}
+	private static void multiply_invM_JT (int m, int nb, double[] iMJ, int[] jb,
+			double[] in, double[] out)
+	{
+		dSetZero (out,CFE__MAX*nb);
+		int iMJ_ofs = 0;//final double[] iMJ_ptr = iMJ;
+		for (int i=0; i<m; i++) {
+			int b1 = jb[i*2];
+			int b2 = jb[i*2+1];
+			final double in_i = in[i];
+			int out_ofs = b1*CFE__MAX;//double[] out_ptr = out + b1*6;
+			//for (j=0; j<6; j++) out_ptr[j] += iMJ_ptr[j] * in[i];
+			for (int j=0; j<6; j++) out[j + out_ofs] += iMJ[j + iMJ_ofs + IMJ__1_MIN] * in_i;
+			if (b2 != -1) {
+				out_ofs = b2*CFE__MAX;//out_ptr = out + b2*6;
+				//for (j=0; j<6; j++) out_ptr[j] += iMJ_ptr[j] * in[i];
+				for (int j=0; j<6; j++) out[j + out_ofs] += iMJ[j + iMJ_ofs + IMJ__2_MIN] * in_i;
+			}
+			iMJ_ofs += IMJ__MAX;//iMJ_ptr += 12;
+		}
+	}
 	//#endif
 
 	/** 
@@ -639,11 +793,13 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	// b, lo and hi are modified on exit
 
 
-	private static class IndexError {
+	//TZ The order of the rows is an int[] of row indexes, the error to sort on
+	// (REORDER_CONSTRAINTS) is not supported.
+//	private static class IndexError {
 //		double error;		// error to sort on
 //		int findex;
-		int index;		// row index
-	}
+//		int index;		// row index
+//	}
 
 
 	//#ifdef REORDER_CONSTRAINTS
@@ -683,23 +839,25 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	//#endif
 
 	
-	//static void SOR_LCP (int m, int nb, dRealMutablePtr J, int *jb, dxBody * const *body,
-	//		dRealPtr invI, dRealMutablePtr lambda, dRealMutablePtr fc, dRealMutablePtr b,
-	//		dRealMutablePtr lo, dRealMutablePtr hi, dRealPtr cfm, int *findex,
-	//		dxQuickStepParameters *qs)
-	private static void SOR_LCP (DxWorldProcessMemArena memarena,
+	/**
+	 * Prepares the SOR iterations: clears lambda and fc (or, with warm 
+	 * starting, damps lambda and computes the matching fc), computes 
+	 * iMJ = inv(M)*J' and scales J and the right hand side by the
+	 * (over-relaxed) inverse diagonal of A.
+	 * @return iMJ
+	 */
+	private static double[] SOR_LCP_Prepare (DxWorldProcessMemArena memarena,
 	        final int m, final int nb, double[] J, int[] jb, final DxBody []bodyP,
 	        final int bodyOfs, final double[] invI, double[] lambda, double[] fc, 
-			final int []findex, dxQuickStepParameters qs)
+			dxQuickStepParameters qs)
 	{
-		//TZ not defined
-//		if (WARM_STARTING) {//#ifdef WARM_STARTING
-//			// for warm starting, this seems to be necessary to prevent
-//			// jerkiness in motor-driven joints. i have no idea why this works.
-//			for (int i=0; i<m; i++) lambda[i] *= 0.9;
-//		} else { //#else
+		if (qs.warm_starting) {//#ifdef WARM_STARTING
+			// for warm starting, this seems to be necessary to prevent
+			// jerkiness in motor-driven joints. i have no idea why this works.
+			for (int i=0; i<m; i++) lambda[i] *= WARM_STARTING_FACTOR;
+		} else { //#else
 			dSetZero (lambda,m);
-//		}//#endif
+		}//#endif
 
 		// precompute iMJ = inv(M)*J'
 		//double[] iMJ = new double[m*12];//dRealAllocaArray (iMJ,m*12);
@@ -708,14 +866,12 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 
 		// compute fc=(inv(M)*J')*lambda. we will incrementally maintain fc
 		// as we change lambda.
-		//not defined:
-//		if (WARM_STARTING) {//TZ #ifdef WARM_STARTING
-//			throw new UnsupportedOperationException();
-//			//multiply_invM_JT (m,nb,iMJ,jb,lambda,fc);
-//		} else {//#else
+		if (qs.warm_starting) {//TZ #ifdef WARM_STARTING
+			multiply_invM_JT (m,nb,iMJ,jb,lambda,fc);
+		} else {//#else
 		//TODO (TZ) should not be necessary (is created just before given to this method)
 			dSetZero (fc,nb*6);
-//		}//#endif
+		}//#endif
 
         {
             final double sor_w = qs.w;      // SOR over-relaxation parameter
@@ -749,10 +905,28 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
             }
         }
 
+		return iMJ;
+	}
+
+	//static void SOR_LCP (int m, int nb, dRealMutablePtr J, int *jb, dxBody * const *body,
+	//		dRealPtr invI, dRealMutablePtr lambda, dRealMutablePtr fc, dRealMutablePtr b,
+	//		dRealMutablePtr lo, dRealMutablePtr hi, dRealPtr cfm, int *findex,
+	//		dxQuickStepParameters *qs)
+	/**
+	 * @param rand generator of the island, for RANDOMLY_REORDER_CONSTRAINTS
+	 * @param residual receives the largest |delta lambda| of the last iteration
+	 * @return the number of iterations performed
+	 */
+	private static int SOR_LCP (DxWorldProcessMemArena memarena,
+	        final int m, final int nb, double[] J, int[] jb, final DxBody []bodyP,
+	        final int bodyOfs, final double[] invI, double[] lambda, double[] fc, 
+			final int []findex, dxQuickStepParameters qs, DxRandom rand, RefDouble residual)
+	{
+		double[] iMJ = SOR_LCP_Prepare (memarena,m,nb,J,jb,bodyP,bodyOfs,invI,lambda,fc,qs);
+
 		// order to solve constraint rows in
 		//IndexError *order = (IndexError*) ALLOCA (m*sizeof(IndexError));
-		IndexError[] order = new IndexError[m];
-		for (int iii=0; iii<m; iii++) order[iii] = new IndexError();
+		int[] order = memarena.AllocateArrayInt(m);
 		int head_size = 0;
 
 		if (!REORDER_CONSTRAINTS) {//TZ #ifndef REORDER_CONSTRAINTS
@@ -763,10 +937,10 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		    // Fill the array from both ends
 		    for (int i=0; i<m; i++) {
 		        if (findex[i] == -1) {
-		            order[orderhead].index = i; // Place them at the front
+		            order[orderhead] = i; // Place them at the front
 		            ++orderhead;
 		        } else {
-		            order[ordertail].index = i; // Place them at the end
+		            order[ordertail] = i; // Place them at the end
 		            --ordertail;
 		        }
 		    }
@@ -782,7 +956,10 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		
 		
 		final int num_iterations = qs.num_iterations;
-		for (int iteration=0; iteration < num_iterations; iteration++) {
+		int iteration;
+		double max_delta = 0;
+		for (iteration=0; iteration < num_iterations; iteration++) {
+			max_delta = 0;
 
 			//TODO commented out for now because it's 'false'
 			if (REORDER_CONSTRAINTS) {//#ifdef REORDER_CONSTRAINTS
@@ -831,15 +1008,15 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 			if (RANDOMLY_REORDER_CONSTRAINTS) {//#ifdef RANDOMLY_REORDER_CONSTRAINTS
 				if ((iteration & 7) == 0) {
 					for (int i=1; i<head_size; i++) {
-					    int swapi = dRandInt(i+1);
-                        IndexError tmp = order[i];
+					    int swapi = rand.dRandInt(i+1);
+                        int tmp = order[i];
 						order[i] = order[swapi];
 						order[swapi] = tmp;
 					}
 		            int tail_size = m - head_size;
 		            for (int j=1; j<tail_size; j++) {
-		                int swapj = dRandInt(j+1);
-		                IndexError tmp = order[head_size + j];
+		                int swapj = rand.dRandInt(j+1);
+		                int tmp = order[head_size + j];
 		                order[head_size + j] = order[head_size + swapj];
 		                order[head_size + swapj] = tmp;
 		            }
@@ -851,128 +1028,196 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 				//     linearizing access to those arrays. hmmm, this does not seem
 				//     like a win, but we should think carefully about our memory
 				//     access pattern.
-				int index = order[i].index;
-				int j_ofs = index * JME__MAX;
-				double delta;
-				final int NULL = -1;
-				
-			    int b1 = jb[index*2];
-			    int b2 = jb[index*2+1];
-		        int fc_ofs1 = b1 * CFE__MAX;
-		        int fc_ofs2 = (b2 != -1) ? b2 * CFE__MAX : NULL;
-
-				double old_lambda = lambda[index];
-
-			    delta = J[j_ofs + JME_RHS] - old_lambda * J[j_ofs + JME_CFM];
-
-			    //dRealPtr J_ptr = J + index*12;
-			    final int J_ofs = index * JME__MAX;
-			    // @@@ potential optimization: SIMD-ize this and the b2 >= 0 case
-		        delta -= fc[fc_ofs1 + CFE_LX] * J[J_ofs + JME_J1LX] + fc[fc_ofs1 + CFE_LY] * J[J_ofs + JME_J1LY] +
-		        		fc[fc_ofs1 + CFE_LZ] * J[J_ofs + JME_J1LZ] + fc[fc_ofs1 + CFE_AX] * J[J_ofs + JME_J1AX] +
-		        		fc[fc_ofs1 + CFE_AY] * J[J_ofs + JME_J1AY] + fc[fc_ofs1 + CFE_AZ] * J[J_ofs + JME_J1AZ];
-		        // @@@ potential optimization: handle 1-body constraints in a separate
-			    // @@@ potential optimization: handle 1-body constraints in a separate
-			    //     loop to avoid the cost of test & jump?
-			    if (fc_ofs2 != NULL) {
-			        delta -= fc[fc_ofs2 + CFE_LX] * J[J_ofs + JME_J2LX] + fc[fc_ofs2 + CFE_LY] * J[J_ofs + JME_J2LY] +
-			        		fc[fc_ofs2 + CFE_LZ] * J[J_ofs + JME_J2LZ] + fc[fc_ofs2 + CFE_AX] * J[J_ofs + JME_J2AX] +
-			        		fc[fc_ofs2 + CFE_AY] * J[J_ofs + JME_J2AY] + fc[fc_ofs2 + CFE_AZ] * J[J_ofs + JME_J2AZ];
-			    }
+				double delta = dFabs (SOR_LCP_Row (order[i],J,jb,iMJ,lambda,fc,findex));
+				if (delta > max_delta) max_delta = delta;
+			}
+
+			if (SOR_LCP_Converged (qs, iteration + 1, max_delta)) {
+				iteration++;
+				break;
+			}
+		}
+
+		residual.set(max_delta);
+		return iteration;
+	}
+
+	/**
+	 * @param iterations number of iterations performed so far
+	 * @param max_delta largest |delta lambda| of the last iteration
+	 * @return whether the SOR iterations may stop before num_iterations
+	 */
+	private static boolean SOR_LCP_Converged (dxQuickStepParameters qs, int iterations, double max_delta)
+	{
+		return qs.tolerance > 0 && iterations >= qs.min_iterations && max_delta <= qs.tolerance;
+	}
 
-			    double hi_act, lo_act;
+	/**
+	 * Solves a single constraint row and updates lambda and fc accordingly.
+	 * Rows that do not share a body may be solved concurrently.
+	 * @return the change of lambda[index]
+	 */
+	private static double SOR_LCP_Row (final int index, final double[] J, final int[] jb, 
+			final double[] iMJ, double[] lambda, double[] fc, final int[] findex)
+	{
+		int j_ofs = index * JME__MAX;
+		double delta;
+		final int NULL = -1;
+		
+	    int b1 = jb[index*2];
+	    int b2 = jb[index*2+1];
+	    int fc_ofs1 = b1 * CFE__MAX;
+	    int fc_ofs2 = (b2 != -1) ? b2 * CFE__MAX : NULL;
+
+		double old_lambda = lambda[index];
+
+	    delta = J[j_ofs + JME_RHS] - old_lambda * J[j_ofs + JME_CFM];
+
+	    //dRealPtr J_ptr = J + index*12;
+	    final int J_ofs = index * JME__MAX;
+	    // @@@ potential optimization: SIMD-ize this and the b2 >= 0 case
+	    delta -= fc[fc_ofs1 + CFE_LX] * J[J_ofs + JME_J1LX] + fc[fc_ofs1 + CFE_LY] * J[J_ofs + JME_J1LY] +
+	    	fc[fc_ofs1 + CFE_LZ] * J[J_ofs + JME_J1LZ] + fc[fc_ofs1 + CFE_AX] * J[J_ofs + JME_J1AX] +
+	    	fc[fc_ofs1 + CFE_AY] * J[J_ofs + JME_J1AY] + fc[fc_ofs1 + CFE_AZ] * J[J_ofs + JME_J1AZ];
+	    // @@@ potential optimization: handle 1-body constraints in a separate
+	    // @@@ potential optimization: handle 1-body constraints in a separate
+	    //     loop to avoid the cost of test & jump?
+	    if (fc_ofs2 != NULL) {
+	        delta -= fc[fc_ofs2 + CFE_LX] * J[J_ofs + JME_J2LX] + fc[fc_ofs2 + CFE_LY] * J[J_ofs + JME_J2LY] +
+	        		fc[fc_ofs2 + CFE_LZ] * J[J_ofs + JME_J2LZ] + fc[fc_ofs2 + CFE_AX] * J[J_ofs + JME_J2AX] +
+	        		fc[fc_ofs2 + CFE_AY] * J[J_ofs + JME_J2AY] + fc[fc_ofs2 + CFE_AZ] * J[J_ofs + JME_J2AZ];
+	    }
+
+	    double hi_act, lo_act;
 			
-			    // set the limits for this constraint. note that 'hicopy' is used.
-			    // this is the place where the QuickStep method differs from the
-			    // direct LCP solving method, since that method only performs this
-			    // limit adjustment once per time step, whereas this method performs
-			    // once per iteration per constraint row.
-			    // the constraints are ordered so that all lambda[] values needed have
-			    // already been computed.
-			    if (findex[index] != -1) {
-			        hi_act = dFabs (J[j_ofs + JME_HI] * lambda[findex[index]]);
-			        lo_act = -hi_act;
-			    } else {
-			        hi_act = J[j_ofs + JME_HI];
-			        lo_act = J[j_ofs + JME_LO];
-			    }
+	    // set the limits for this constraint. note that 'hicopy' is used.
+	    // this is the place where the QuickStep method differs from the
+	    // direct LCP solving method, since that method only performs this
+	    // limit adjustment once per time step, whereas this method performs
+	    // once per iteration per constraint row.
+	    // the constraints are ordered so that all lambda[] values needed have
+	    // already been computed.
+	    if (findex[index] != -1) {
+	        hi_act = dFabs (J[j_ofs + JME_HI] * lambda[findex[index]]);
+	        lo_act = -hi_act;
+	    } else {
+	        hi_act = J[j_ofs + JME_HI];
+	        lo_act = J[j_ofs + JME_LO];
+	    }
 
-			    // compute lambda and clamp it to [lo,hi].
-			    // @@@ potential optimization: does SSE have clamping instructions
-			    //     to save test+jump penalties here?
-			    double new_lambda = old_lambda + delta;
-			    if (new_lambda < lo_act) {
-			        delta = lo_act-old_lambda;
-			        lambda[index] = lo_act;
-			    }
-			    else if (new_lambda > hi_act) {
-			        delta = hi_act-old_lambda;
-			        lambda[index] = hi_act;
-			    }
-			    else {
-			        lambda[index] = new_lambda;
-			    }
+	    // compute lambda and clamp it to [lo,hi].
+	    // @@@ potential optimization: does SSE have clamping instructions
+	    //     to save test+jump penalties here?
+	    double new_lambda = old_lambda + delta;
+	    if (new_lambda < lo_act) {
+	        delta = lo_act-old_lambda;
+	        lambda[index] = lo_act;
+	    }
+	    else if (new_lambda > hi_act) {
+	        delta = hi_act-old_lambda;
+	        lambda[index] = hi_act;
+	    }
+	    else {
+	        lambda[index] = new_lambda;
+	    }
+
+		//@@@ a trick that may or may not help
+		//dReal ramp = (1-((dReal)(iteration+1)/(dReal)num_iterations));
+		//delta *= ramp;
+
+	    final int iMJ_ofs = index*IMJ__MAX; //dRealPtr iMJ_ptr = iMJ + (size_t)index*12;
+		// update fc.
+		// @@@ potential optimization: SIMD for this and the b2 >= 0 case
+	    fc[fc_ofs1 + CFE_LX] += delta * iMJ[iMJ_ofs + 0];//fc_ptr[0] += delta * iMJ_ptr[0];
+		fc[fc_ofs1 + CFE_LY] += delta * iMJ[iMJ_ofs + 1];//fc_ptr[1] += delta * iMJ_ptr[1];
+		fc[fc_ofs1 + CFE_LZ] += delta * iMJ[iMJ_ofs + 2];//fc_ptr[2] += delta * iMJ_ptr[2];
+		fc[fc_ofs1 + CFE_AX] += delta * iMJ[iMJ_ofs + 3];//fc_ptr[3] += delta * iMJ_ptr[3];
+		fc[fc_ofs1 + CFE_AY] += delta * iMJ[iMJ_ofs + 4];//fc_ptr[4] += delta * iMJ_ptr[4];
+		fc[fc_ofs1 + CFE_AZ] += delta * iMJ[iMJ_ofs + 5];//fc_ptr[5] += delta * iMJ_ptr[5];
+		// @@@ potential optimization: handle 1-body constraints in a separate
+		//     loop to avoid the cost of test & jump?
+		if (fc_ofs2 != NULL) {
+			fc[fc_ofs2 + CFE_LX] += delta * iMJ[iMJ_ofs + 6];//fc_ptr[0] += delta * iMJ_ptr[6];
+			fc[fc_ofs2 + CFE_LY] += delta * iMJ[iMJ_ofs + 7];//fc_ptr[1] += delta * iMJ_ptr[7];
+			fc[fc_ofs2 + CFE_LZ] += delta * iMJ[iMJ_ofs + 8];//fc_ptr[2] += delta * iMJ_ptr[8];
+			fc[fc_ofs2 + CFE_AX] += delta * iMJ[iMJ_ofs + 9];//fc_ptr[3] += delta * iMJ_ptr[9];
+			fc[fc_ofs2 + CFE_AY] += delta * iMJ[iMJ_ofs + 10];//fc_ptr[4] += delta * iMJ_ptr[10];
+			fc[fc_ofs2 + CFE_AZ] += delta * iMJ[iMJ_ofs + 11];//fc_ptr[5] += delta * iMJ_ptr[11];
+		}
+		return delta;
+	}
+
+	/**
+	 * Partitions the constraint rows into batches of rows that do not share 
+	 * any body, by greedy colouring of the constraint graph. Rows with 
+	 * findex == -1 are coloured first, so they tend to be solved before the
+	 * friction rows that depend on them.
+	 * Colours are limited to PARALLEL_SOR_MAX_COLOURS, the rows that can not
+	 * be coloured form the last batch (which may be empty).
+	 * @param order receives the rows sorted by batch
+	 * @param batchStart receives the start indexes of the batches in <tt>order</tt>, 
+	 * followed by <tt>m</tt>, needs PARALLEL_SOR_MAX_COLOURS + 2 elements
+	 * @return the number of batches
+	 */
+	private static int SOR_LCP_ColourRows (DxWorldProcessMemArena memarena, 
+			final int m, final int nb, final int[] jb, 
+			final int[] findex, int[] order, int[] batchStart)
+	{
+		BlockPointer colourstate = memarena.BEGIN_STATE_SAVE();
+		long[] bodyColours = memarena.AllocateArrayLong(nb); // bit mask of the colours used by each body
+		int[] rowColour = memarena.AllocateArrayInt(m);
+		int colourCount = 0;
+		boolean anyUncoloured = false;
 
-				//@@@ a trick that may or may not help
-				//dReal ramp = (1-((dReal)(iteration+1)/(dReal)num_iterations));
-				//delta *= ramp;
-
-			    final int iMJ_ofs = index*IMJ__MAX; //dRealPtr iMJ_ptr = iMJ + (size_t)index*12;
-				// update fc.
-				// @@@ potential optimization: SIMD for this and the b2 >= 0 case
-			    fc[fc_ofs1 + CFE_LX] += delta * iMJ[iMJ_ofs + 0];//fc_ptr[0] += delta * iMJ_ptr[0];
-				fc[fc_ofs1 + CFE_LY] += delta * iMJ[iMJ_ofs + 1];//fc_ptr[1] += delta * iMJ_ptr[1];
-				fc[fc_ofs1 + CFE_LZ] += delta * iMJ[iMJ_ofs + 2];//fc_ptr[2] += delta * iMJ_ptr[2];
-				fc[fc_ofs1 + CFE_AX] += delta * iMJ[iMJ_ofs + 3];//fc_ptr[3] += delta * iMJ_ptr[3];
-				fc[fc_ofs1 + CFE_AY] += delta * iMJ[iMJ_ofs + 4];//fc_ptr[4] += delta * iMJ_ptr[4];
-				fc[fc_ofs1 + CFE_AZ] += delta * iMJ[iMJ_ofs + 5];//fc_ptr[5] += delta * iMJ_ptr[5];
-				// @@@ potential optimization: handle 1-body constraints in a separate
-				//     loop to avoid the cost of test & jump?
-				if (fc_ofs2 != NULL) {
-					fc[fc_ofs2 + CFE_LX] += delta * iMJ[iMJ_ofs + 6];//fc_ptr[0] += delta * iMJ_ptr[6];
-					fc[fc_ofs2 + CFE_LY] += delta * iMJ[iMJ_ofs + 7];//fc_ptr[1] += delta * iMJ_ptr[7];
-					fc[fc_ofs2 + CFE_LZ] += delta * iMJ[iMJ_ofs + 8];//fc_ptr[2] += delta * iMJ_ptr[8];
-					fc[fc_ofs2 + CFE_AX] += delta * iMJ[iMJ_ofs + 9];//fc_ptr[3] += delta * iMJ_ptr[9];
-					fc[fc_ofs2 + CFE_AY] += delta * iMJ[iMJ_ofs + 10];//fc_ptr[4] += delta * iMJ_ptr[10];
-					fc[fc_ofs2 + CFE_AZ] += delta * iMJ[iMJ_ofs + 11];//fc_ptr[5] += delta * iMJ_ptr[11];
+		for (int pass = 0; pass != 2; pass++) {
+			for (int i=0; i<m; i++) {
+				if ((findex[i] == -1) != (pass == 0)) {
+					continue;
+				}
+				int b1 = jb[i*2];
+				int b2 = jb[i*2+1];
+				long used = bodyColours[b1];
+				if (b2 != -1) used |= bodyColours[b2];
+				if (used != -1L) {
+					int colour = Long.numberOfTrailingZeros(~used);
+					long mask = 1L << colour;
+					bodyColours[b1] |= mask;
+					if (b2 != -1) bodyColours[b2] |= mask;
+					rowColour[i] = colour;
+					if (colour >= colourCount) colourCount = colour + 1;
+				} else {
+					rowColour[i] = -1;
+					anyUncoloured = true;
 				}
 			}
 		}
-	}
 
-	
-	private double[] buf_invI = new double[100];
-	private double[] ensureSize_invI(int size) {
-		if (buf_invI.length < size || !REUSE_OBJECTS) {
-			buf_invI = new double[size];
-		} else {
-			Arrays.fill(buf_invI, 0);
+		// counting sort by colour, uncoloured rows go into the last batch
+		Arrays.fill(batchStart, 0, colourCount + 2, 0);
+		for (int i=0; i<m; i++) {
+			int batch = rowColour[i] != -1 ? rowColour[i] : colourCount;
+			batchStart[batch + 1]++;
 		}
-		return buf_invI;
-	}
-	private DJointWithInfo1[] buf_jointinfos = new DJointWithInfo1[0];
-	private DJointWithInfo1[] ensureSize_jointinfos(int size) {
-		if (buf_jointinfos.length < size || !REUSE_OBJECTS) {
-			//TODO we could partially copy the old array...
-			buf_jointinfos = new DJointWithInfo1[size];
-			for (int i = 0; i < size; i++) {
-				buf_jointinfos[i] = new DJointWithInfo1();
-			}
-		} else {
-			//Obviously this doesn't reset all objects, only the
-			//ones that are likely to be needed.
-			for (int i = 0; i < size; i++) {
-				DJointWithInfo1 j = buf_jointinfos[i];
-				if (j != null) {
-					j.joint = null;
-					j.info.m = 0;
-					j.info.nub = 0;
+		for (int b=0; b<=colourCount; b++) {
+			batchStart[b + 1] += batchStart[b];
+		}
+		int[] fill = memarena.AllocateArrayInt(colourCount + 1);
+		System.arraycopy(batchStart, 0, fill, 0, colourCount + 1);
+		for (int pass = 0; pass != 2; pass++) {
+			for (int i=0; i<m; i++) {
+				if ((findex[i] == -1) != (pass == 0)) {
+					continue;
 				}
+				int batch = rowColour[i] != -1 ? rowColour[i] : colourCount;
+				order[fill[batch]++] = i;
 			}
 		}
-		return buf_jointinfos;
+		dIASSERT(anyUncoloured || batchStart[colourCount] == batchStart[colourCount + 1]);
+		memarena.END_STATE_SAVE(colourstate);
+		return colourCount + 1;
 	}
-	
+
+
 	/*extern */
 	private void dxQuickStepIsland(DxStepperProcessingCallContext callContext)
 	{
@@ -983,35 +1228,26 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	    int nb = callContext.m_islandBodiesCount();
 	    int _nj = callContext.m_islandJointsCount();
 
-	    //double[] invI = memarena.AllocateArrayDReal(nb*3*4);//new double[3*4*nb];//dRealAllocaArray (invI,3*4*nb);
-	    double[] invI = ensureSize_invI(nb*3*4);
+	    double[] invI = memarena.AllocateArrayDReal(nb*3*4);//new double[3*4*nb];//dRealAllocaArray (invI,3*4*nb);
 	    
 	    //dJointWithInfo1[] const jointinfos = memarena.AllocateArray<dJointWithInfo1>(_nj);
-	    memarena.dummy();
-	    //DJointWithInfo1[] jointinfos = new DJointWithInfo1[_nj];
-	    DJointWithInfo1[] jointinfos = ensureSize_jointinfos(_nj);	    
-	    //TODO this is done in dxQuickStepIsland_Stage0_Joints()
-//	    for (int i = 0; i < jointinfos.length; i++) {
-//	    	jointinfos[i] = new DJointWithInfo1();
-//	    }
+	    // (TZ) the elements are reused as well, they are filled in dxQuickStepIsland_Stage0_Joints()
+	    DJointWithInfo1[] jointinfos = memarena.AllocateArray(JOINTINFOS, _nj);
 	    
 	    final int allowedThreads = callContext.m_stepperAllowedThreads();
 	    dIASSERT(allowedThreads != 0);
 
 	    BlockPointer stagesMemArenaState = memarena.SaveState();
 
-	    memarena.dummy();
-	    final dxQuickStepperStage1CallContext stage1CallContext = new dxQuickStepperStage1CallContext(); 
+	    final dxQuickStepperStage1CallContext stage1CallContext = memarena.AllocateObject(STAGE1_CALL_CONTEXT); 
 	    		//(dxQuickStepperStage1CallContext )memarena.AllocateBlock(sizeof(dxQuickStepperStage1CallContext));
 	    stage1CallContext.Initialize(callContext, stagesMemArenaState, invI, jointinfos);
 
-	    memarena.dummy();
-	    final dxQuickStepperStage0BodiesCallContext stage0BodiesCallContext = new dxQuickStepperStage0BodiesCallContext(); 
+	    final dxQuickStepperStage0BodiesCallContext stage0BodiesCallContext = memarena.AllocateObject(STAGE0_BODIES_CALL_CONTEXT); 
 	    		//(dxQuickStepperStage0BodiesCallContext)memarena.AllocateBlock(sizeof(dxQuickStepperStage0BodiesCallContext));
 	    stage0BodiesCallContext.Initialize(callContext, invI);
 
-	    memarena.dummy();
-	    final dxQuickStepperStage0JointsCallContext stage0JointsCallContext = new dxQuickStepperStage0JointsCallContext(); 
+	    final dxQuickStepperStage0JointsCallContext stage0JointsCallContext = memarena.AllocateObject(STAGE0_JOINTS_CALL_CONTEXT); 
 	    		//(dxQuickStepperStage0JointsCallContext)memarena.AllocateBlock(sizeof(dxQuickStepperStage0JointsCallContext));
 	    stage0JointsCallContext.Initialize(callContext, jointinfos, stage1CallContext.m_stage0Outputs);
 
@@ -1023,29 +1259,6 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 //	    }
 //	    else
 //	    {
-//			//TODO
-////			try {
-////				ArrayList<Callable<Boolean>> tasks = new ArrayList<>(); 
-////				for (int i = 0; i < THREADS; i++) {
-////					tasks.add(new Callable<Boolean>() {
-////						@Override
-////						public Boolean call() {
-////							dxQuickStepIsland_Stage0_Bodies(stage0BodiesCallContext);
-////							return Boolean.TRUE;
-////						}
-////					});
-////				}
-////				for (Future<Boolean> f: POOL.invokeAll(tasks, 1, TimeUnit.HOURS)) {
-////					f.get();
-////				}
-////
-////				dxQuickStepIsland_Stage0_Joints(stage0JointsCallContext);
-////				dxQuickStepIsland_Stage1(stage1CallContext);
-////			} catch (InterruptedException e) {
-////				throw new RuntimeException(e);
-////			} catch (ExecutionException e) {
-////				throw new RuntimeException(e);
-////			}
 //
 //			int bodyThreads = allowedThreads;
 //	        int jointThreads = 1;
@@ -1139,7 +1352,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 
 	        for (int i = 0; i != nb; invIrowP += 12, ++i) {
 	            if (i == bodyIndex) {
-	                DMatrix3 tmp = new DMatrix3();
+	                DMatrix3 tmp = callContext.m_tmp;
 	                DxBody b = bodyP[bodyOfs+i];
 
 	                // compute inverse inertia tensor in global frame
@@ -1149,7 +1362,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                // Don't apply gyroscopic torques to bodies
 	                // if not flagged or the body is kinematic
 	                if (b.isFlagsGyroscopic() && (b.invMass>0)) {
-	                    DMatrix3 I = new DMatrix3();
+	                    DMatrix3 I = callContext.m_I;
 	                    // compute inertia tensor in global frame
 	                    dMultiply2_333 (tmp,b.mass._I,b.posr().R());
 	                    dMultiply0_333 (I,b.posr().R(),tmp);
@@ -1163,7 +1376,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                    //"Stabilizing Gyroscopic Forces in Rigid Multibody Simulations"
 	                    // (LacoursiÃ¨re 2006)
 	                    double h = callContext.m_stepperCallContext.m_stepSize(); // Step size
-	                    DVector3 L = new DVector3(); // Compute angular momentum
+	                    DVector3 L = callContext.m_L; // Compute angular momentum
 	                    dMultiply0_331(L,I,b.avel);
 	                    
 	                    // Compute a new effective 'inertia tensor'
@@ -1173,7 +1386,8 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                    // Itild may not be symmetric pos-definite, 
 	                    // but we can still use it to compute implicit
 	                    // gyroscopic torques.
-	                    DMatrix3 Itild= new DMatrix3();//{0};  
+	                    DMatrix3 Itild= callContext.m_Itild;//{0};  
+	                    Itild.setZero();
 	                    dSetCrossMatrixMinus(Itild,L);//,4);
 //	                    for (int ii=0;ii<12;++ii) {
 //	                      Itild[ii]=Itild[ii]*h+I[ii];
@@ -1185,7 +1399,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                    // a sort of "torque"
 	                    L.scale(dRecip(h));//dScaleVector3(L,dRecip(h)); 
 	                    // Invert the pseudo-tensor
-	                    DMatrix3 itInv = new DMatrix3();
+	                    DMatrix3 itInv = callContext.m_itInv;
 	                    // This is a closed-form inversion.
 	                    // It's probably not numerically stable
 	                    // when dealing with small masses with
@@ -1207,7 +1421,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	                        // to the old inertia matrix as explicit
 	                        // torques with a semi-implicit update
 	                        // step.
-	                        DVector3 tau0 = new DVector3();
+	                        DVector3 tau0 = callContext.m_tau0;
 	                        dMultiply0_331(tau0,Itild,L);
 	                        
 	                        // Add the gyro torques to the torque 
@@ -1322,8 +1536,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		// if there are constraints, compute the constraint force
 		if (m > 0) {
 			//mindex = memarena.AllocateArray<unsigned int>(2 * (size_t)(nj + 1));
-			memarena.dummy();
-			mindex = new int[2 * (nj + 1)];
+			mindex = memarena.AllocateArrayInt(2 * (nj + 1));
 			{
 				int mcurrO = 0;//mindex;
 				int moffs = 0, mfboffs = 0;
@@ -1346,28 +1559,18 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 				}
 			}
 
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			findex = new int[m];//memarena.AllocateArray<int>(m);
-			J = new double[m * JME__MAX];
-			jb = new int[m*2];//memarena.AllocateArray<int>((size_t)m*2);
-			Jcopy = new double[m * JME__MAX];
+			findex = memarena.AllocateArrayInt(m);
+			J = memarena.AllocateArrayDReal(m * JME__MAX);
+			jb = memarena.AllocateArrayInt(m*2);
+			Jcopy = memarena.AllocateArrayDReal(mfb * JCE__MAX);
 		}
 
-		memarena.dummy();
-		dxQuickStepperLocalContext localContext = new dxQuickStepperLocalContext(); 
+		dxQuickStepperLocalContext localContext = memarena.AllocateObject(LOCAL_CONTEXT); 
 		//(dxQuickStepperLocalContext *)memarena.AllocateBlock(sizeof(dxQuickStepperLocalContext));
 		localContext.Initialize(invI, jointinfos, nj, m, mfb, mindex, findex, J, jb, Jcopy);
 
 		BlockPointer stage1MemarenaState = memarena.SaveState();
-		memarena.dummy();
-		dxQuickStepperStage3CallContext stage3CallContext = new dxQuickStepperStage3CallContext();
+		dxQuickStepperStage3CallContext stage3CallContext = memarena.AllocateObject(STAGE3_CALL_CONTEXT);
 		//(dxQuickStepperStage3CallContext*)memarena.AllocateBlock(sizeof(dxQuickStepperStage3CallContext));
 		stage3CallContext.Initialize(callContext, localContext, stage1MemarenaState);
 
@@ -1376,11 +1579,9 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 			// force mixing vector `cfm', and LCP low and high bound vectors, and an
 			// 'findex' vector.
 			//dReal *rhs_tmp = memarena.AllocateArray<dReal>((size_t)nb*6);
-			memarena.dummy();
-			double[] rhs_tmp = new double[nb*6];
+			double[] rhs_tmp = memarena.AllocateArrayDReal(nb*6);
 
-			memarena.dummy();
-			dxQuickStepperStage2CallContext stage2CallContext = new dxQuickStepperStage2CallContext(); 
+			dxQuickStepperStage2CallContext stage2CallContext = memarena.AllocateObject(STAGE2_CALL_CONTEXT); 
 			//(dxQuickStepperStage2CallContext*)memarena.AllocateBlock(sizeof(dxQuickStepperStage2CallContext));
 			stage2CallContext.Initialize(callContext, localContext, rhs_tmp);
 
@@ -1389,28 +1590,30 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 
 			if (allowedThreads == 1)
 			{
-				dxQuickStepIsland_Stage2a(stage2CallContext);
+				dxQuickStepIsland_Stage2a(stage2CallContext, 0);
 				dxQuickStepIsland_Stage2b(stage2CallContext);
 				dxQuickStepIsland_Stage2c(stage2CallContext);
 				dxQuickStepIsland_Stage3(stage3CallContext);
 			}
 			else
 			{
-				final Ref<DCallReleasee> stage3CallReleasee = new Ref<DCallReleasee>();
-				world.threading().PostThreadedCallForUnawareReleasee(null, stage3CallReleasee, 1, callContext.m_finalReleasee(), 
+				// (TZ) the releasees are received one after the other in a reused Ref
+				final Ref<DCallReleasee> postReleasee = stage2CallContext.m_releasee;
+				world.threading().PostThreadedCallForUnawareReleasee(null, postReleasee, 1, callContext.m_finalReleasee(), 
 						null, dxQuickStepIsland_Stage3_Callback, stage3CallContext, 0, "QuickStepIsland Stage3");
+				final DCallReleasee stage3CallReleasee = postReleasee.get();
 
-				final Ref<DCallReleasee> stage2bSyncReleasee = new Ref<DCallReleasee>();
 				world.threading().PostThreadedCall(
-						null, stage2bSyncReleasee, 1, stage3CallReleasee.get(), 
+						null, postReleasee, 1, stage3CallReleasee, 
 						null, dxQuickStepIsland_Stage2bSync_Callback, stage2CallContext, 0, "QuickStepIsland Stage2b Sync");
+				final DCallReleasee stage2bSyncReleasee = postReleasee.get();
 
-				final Ref<DCallReleasee> stage2aSyncReleasee = new Ref<DCallReleasee>();
 				world.threading().PostThreadedCall(
-						null, stage2aSyncReleasee, allowedThreads, stage2bSyncReleasee.get(), 
+						null, postReleasee, allowedThreads, stage2bSyncReleasee, 
 						null, dxQuickStepIsland_Stage2aSync_Callback, stage2CallContext, 0, "QuickStepIsland Stage2a Sync");
+				final DCallReleasee stage2aSyncReleasee = postReleasee.get();
 
-				world.threading().PostThreadedCallsGroup(null, allowedThreads, stage2aSyncReleasee.get(), 
+				world.threading().PostThreadedCallsGroup(null, allowedThreads, stage2aSyncReleasee, 
 						dxQuickStepIsland_Stage2a_Callback, stage2CallContext, "QuickStepIsland Stage2a");
 			}
 		}
@@ -1428,13 +1631,16 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 			//(void)callInstanceIndex; // unused
 			//(void)callThisReleasee; // unused
 			dxQuickStepperStage2CallContext stage2CallContext = (dxQuickStepperStage2CallContext)_stage2CallContext;
-			dxQuickStepIsland_Stage2a(stage2CallContext);
+			dxQuickStepIsland_Stage2a(stage2CallContext, callInstanceIndex);
 			return true;
 		}
 	};
 
+	/**
+	 * @param callInstanceIndex index of the calling thread in the group, selects the Jinfo to use
+	 */
 	private static 
-	void dxQuickStepIsland_Stage2a(dxQuickStepperStage2CallContext stage2CallContext)
+	void dxQuickStepIsland_Stage2a(dxQuickStepperStage2CallContext stage2CallContext, int callInstanceIndex)
 	{
 	    final DxStepperProcessingCallContext callContext = stage2CallContext.m_stepperCallContext;
 	    final dxQuickStepperLocalContext localContext = stage2CallContext.m_localContext;
@@ -1448,7 +1654,6 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	        int[] findex = localContext.m_findex;
 	        double[] J = localContext.m_J;
 	        double[] Jcopy = localContext.m_Jcopy;
-            int jCopy_ofs = 0;
 
 	        if (TIMING) dTimerNow ("create J");
 	        // get jacobian data from constraints. an m*12 matrix will be created
@@ -1467,7 +1672,7 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	        final double worldERP = world.getERP();
 	        final double worldCFM = world.getCFM();
 
-	        Info2DescrQuickStep Jinfo = new Info2DescrQuickStep();
+	        Info2DescrQuickStep Jinfo = stage2CallContext.m_Jinfos[callInstanceIndex];
 	        Jinfo.setRowskip(JME__MAX, JME__MAX);
 	        Jinfo.setArrays(J, findex);
 		            
@@ -1512,6 +1717,9 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	            int mfbcurr = mindex[ji * 2 + 1], mfbnext = mindex[ji * 2 + 3];
                 int mfbCount = mfbnext - mfbcurr;
                 if (mfbCount != 0) {
+                    // (TZ) like in ODE the rows of each joint go to its own place in Jcopy, 
+                    // so that Stage2a threads do not overwrite each other's rows
+                    int jCopy_ofs = mfbcurr * JCE__MAX;
                     int jEndMfb = jRow + mfbCount * JME__MAX;
                     for (int jCurr = jRow; jCurr < jEndMfb ;jCurr += JME__MAX) {
                     	System.arraycopy(J, jCurr + JME__J1_MIN, Jcopy, jCopy_ofs + JCE__J1_MIN, JME__J1_COUNT);
@@ -1678,11 +1886,218 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 			//(void)callInstanceIndex; // unused
 			//(void)callThisReleasee; // unused
 			dxQuickStepperStage3CallContext stage3CallContext = (dxQuickStepperStage3CallContext)_stage3CallContext;
-			dxQuickStepIsland_Stage3(stage3CallContext);
+			final DxStepperProcessingCallContext callContext = stage3CallContext.m_stepperCallContext;
+			if (callContext.m_world().qs.parallel_sor 
+					&& stage3CallContext.m_localContext.m_m >= PARALLEL_SOR_MIN_ROWS) {
+				dxQuickStepIsland_Stage3Parallel(stage3CallContext, callThisReleasee);
+			} else {
+				dxQuickStepIsland_Stage3(stage3CallContext);
+			}
 			return true;
 		}
 	};
 
+	/**
+	 * Parallel version of Stage3. The SOR iterations are posted as a chain of
+	 * row batches (see SOR_LCP_ColourRows()); Stage4 runs after the last batch.
+	 */
+	private static 
+	void dxQuickStepIsland_Stage3Parallel(dxQuickStepperStage3CallContext stage3CallContext, 
+			DCallReleasee callThisReleasee)
+	{
+	    final DxStepperProcessingCallContext callContext = stage3CallContext.m_stepperCallContext;
+	    final dxQuickStepperLocalContext localContext = stage3CallContext.m_localContext;
+
+	    DxWorldProcessMemArena memarena = callContext.m_stepperArena();
+	    memarena.RestoreState(stage3CallContext.m_stage1MemArenaState);
+	    stage3CallContext = null; // WARNING! stage3CallContext is not valid after this point!
+	    dIVERIFY(stage3CallContext == null); // To suppress unused variable assignment warnings
+
+	    double[] invI = localContext.m_invI;
+	    int m = localContext.m_m;
+	    int[] findex = localContext.m_findex;
+	    double[] J = localContext.m_J;
+	    int[] jb = localContext.m_jb;
+
+	    DxWorld world = callContext.m_world();
+	    DxBody[] bodyA = callContext.m_islandBodiesStartA();
+	    int bodyOfs = callContext.m_islandBodiesStartOfs();
+	    int nb = callContext.m_islandBodiesCount();
+
+	    double[] lambda = memarena.AllocateArrayDReal(m);
+	    if (world.qs.warm_starting) {
+	    	dxQuickStepLoadLambda(localContext.m_jointinfos, localContext.m_nj, lambda);
+	    }
+	    double[] cforce = memarena.AllocateArrayDReal(nb*6);
+	    BlockPointer lcpstate = memarena.BEGIN_STATE_SAVE(); 
+
+	    if (TIMING) dTimerNow ("solving LCP problem");
+	    double[] iMJ = SOR_LCP_Prepare (memarena,m,nb,J,jb,bodyA,bodyOfs,invI,lambda,cforce,world.qs);
+	    int[] order = memarena.AllocateArrayInt(m);
+	    int[] batchStart = memarena.AllocateArrayInt(PARALLEL_SOR_MAX_COLOURS + 2);
+	    int batchCount = SOR_LCP_ColourRows (memarena,m,nb,jb,findex,order,batchStart);
+
+	    dxQuickStepperSORCallContext sorCallContext = memarena.AllocateObject(SOR_CALL_CONTEXT);
+	    sorCallContext.Initialize(callContext, localContext, iMJ, lambda, cforce, order, batchStart, 
+	    		batchCount, world.qs.num_iterations, lcpstate);
+
+	    final Ref<DCallReleasee> stage4CallReleasee = sorCallContext.m_releasee;
+	    world.threading().PostThreadedCallForUnawareReleasee(null, stage4CallReleasee, 1, callThisReleasee, 
+	    		null, dxQuickStepIsland_Stage4_Callback, sorCallContext, 0, "QuickStepIsland Stage4");
+	    sorCallContext.m_stage4Releasee = stage4CallReleasee.get();
+
+	    world.threading().PostThreadedCall(null, null, 0, sorCallContext.m_stage4Releasee, 
+	    		null, dxQuickStepIsland_SORSync_Callback, sorCallContext, 0, "QuickStepIsland SOR Sync");
+	}
+
+	private static 
+	dThreadedCallFunction dxQuickStepIsland_SORSync_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext _sorCallContext, int callInstanceIndex,
+				DCallReleasee callThisReleasee) {
+			//(void)callInstanceIndex; // unused
+			//(void)callThisReleasee; // unused
+			dxQuickStepperSORCallContext sorCallContext = (dxQuickStepperSORCallContext)_sorCallContext;
+			final DxStepperProcessingCallContext callContext = sorCallContext.m_stepperCallContext;
+			final int[] batchStart = sorCallContext.m_batchStart;
+			final int batchCount = sorCallContext.m_batchCount;
+			final int batchEnd = batchCount * sorCallContext.m_num_iterations;
+
+			int batchIndex = sorCallContext.m_batchIndex;
+			// Only the last batch (uncoloured rows) may be empty
+			while (batchIndex != batchEnd && batchStart[batchIndex % batchCount] == batchStart[batchIndex % batchCount + 1]) {
+				++batchIndex;
+			}
+
+			if (batchIndex != 0 && batchIndex % batchCount == 0) {
+				// An iteration has been completed
+				sorCallContext.m_iterations = batchIndex / batchCount;
+				if (batchIndex != batchEnd) {
+					double maxDelta = Double.longBitsToDouble(sorCallContext.m_maxDelta.get());
+					if (SOR_LCP_Converged (callContext.m_world().qs, sorCallContext.m_iterations, maxDelta)) {
+						batchIndex = batchEnd;
+					} else {
+						sorCallContext.m_maxDelta.set(Double.doubleToLongBits(0));
+					}
+				}
+			}
+
+			if (batchIndex != batchEnd) {
+				sorCallContext.m_batchIndex = batchIndex + 1;
+
+				final int batch = batchIndex % batchCount;
+				final int rowsStart = batchStart[batch];
+				final int rowsEnd = batchStart[batch + 1];
+				// Uncoloured rows may share bodies and are solved by a single thread
+				final int chunkSize = batch != batchCount - 1 ? PARALLEL_SOR_ROW_CHUNK : rowsEnd - rowsStart;
+				final int chunkCount = (rowsEnd - rowsStart + chunkSize - 1) / chunkSize;
+				sorCallContext.m_rowsStart = rowsStart;
+				sorCallContext.m_rowsEnd = rowsEnd;
+				sorCallContext.m_chunkSize = chunkSize;
+				sorCallContext.m_chunkCount = chunkCount;
+				sorCallContext.m_chunk.set(0);
+
+				final int sweepThreads = Math.min(callContext.m_stepperAllowedThreads(), chunkCount);
+				DxWorld world = callContext.m_world();
+				final Ref<DCallReleasee> nextSyncReleasee = sorCallContext.m_releasee;
+				world.threading().PostThreadedCallForUnawareReleasee(null, nextSyncReleasee, sweepThreads, 
+						sorCallContext.m_stage4Releasee, null, dxQuickStepIsland_SORSync_Callback, sorCallContext, 0, 
+						"QuickStepIsland SOR Sync");
+				world.threading().PostThreadedCallsGroup(null, sweepThreads, nextSyncReleasee.get(), 
+						dxQuickStepIsland_SORSweep_Callback, sorCallContext, "QuickStepIsland SOR Sweep");
+			}
+			// else: all iterations are done, this releases Stage4
+
+			return true;
+		}
+	};
+
+	private static 
+	dThreadedCallFunction dxQuickStepIsland_SORSweep_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext _sorCallContext, int callInstanceIndex,
+				DCallReleasee callThisReleasee) {
+			//(void)callInstanceIndex; // unused
+			//(void)callThisReleasee; // unused
+			dxQuickStepperSORCallContext sorCallContext = (dxQuickStepperSORCallContext)_sorCallContext;
+			dxQuickStepIsland_SORSweep(sorCallContext);
+			return true;
+		}
+	};
+
+	private static 
+	void dxQuickStepIsland_SORSweep(dxQuickStepperSORCallContext sorCallContext)
+	{
+	    final dxQuickStepperLocalContext localContext = sorCallContext.m_localContext;
+	    final double[] J = localContext.m_J;
+	    final int[] jb = localContext.m_jb;
+	    final int[] findex = localContext.m_findex;
+	    final double[] iMJ = sorCallContext.m_iMJ;
+	    double[] lambda = sorCallContext.m_lambda;
+	    double[] fc = sorCallContext.m_cforce;
+	    final int[] order = sorCallContext.m_order;
+
+	    final int rowsStart = sorCallContext.m_rowsStart;
+	    final int rowsEnd = sorCallContext.m_rowsEnd;
+	    final int chunkSize = sorCallContext.m_chunkSize;
+	    final int chunkCount = sorCallContext.m_chunkCount;
+
+	    // The rows of a batch do not share bodies, so they can be solved in any order
+	    double maxDelta = 0;
+	    int ci;
+	    while ((ci = ThreadingUtils.ThrsafeIncrementIntUpToLimit(sorCallContext.m_chunk, chunkCount)) != chunkCount) {
+	        int i = rowsStart + ci * chunkSize;
+	        final int iend = Math.min(i + chunkSize, rowsEnd);
+	        for (; i != iend; ++i) {
+	            double delta = dFabs (SOR_LCP_Row (order[i],J,jb,iMJ,lambda,fc,findex));
+	            if (delta > maxDelta) maxDelta = delta;
+	        }
+	    }
+
+	    // The bits of non-negative doubles are ordered like the doubles themselves
+	    final long maxDeltaBits = Double.doubleToLongBits(maxDelta);
+	    long current;
+	    while (maxDeltaBits > (current = sorCallContext.m_maxDelta.get())
+	    		&& !sorCallContext.m_maxDelta.compareAndSet(current, maxDeltaBits)) {
+	    	// retry
+	    }
+	}
+
+	private static 
+	dThreadedCallFunction dxQuickStepIsland_Stage4_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext _sorCallContext, int callInstanceIndex,
+				DCallReleasee callThisReleasee) {
+			//(void)callInstanceIndex; // unused
+			//(void)callThisReleasee; // unused
+			dxQuickStepperSORCallContext sorCallContext = (dxQuickStepperSORCallContext)_sorCallContext;
+			final DxStepperProcessingCallContext callContext = sorCallContext.m_stepperCallContext;
+			callContext.m_world().dxSetQuickStepIslandStatistics(callContext.m_islandIndex(), 
+					sorCallContext.m_iterations, Double.longBitsToDouble(sorCallContext.m_maxDelta.get()));
+			final dxQuickStepperLocalContext localContext = sorCallContext.m_localContext;
+			final double[] lambda = sorCallContext.m_lambda;
+			final double[] cforce = sorCallContext.m_cforce;
+			callContext.m_stepperArena().END_STATE_SAVE(sorCallContext.m_lcpState);
+			sorCallContext = null; // WARNING! sorCallContext is not valid after this point!
+			dIVERIFY(sorCallContext == null); // To suppress unused variable assignment warnings
+			dxQuickStepIsland_Stage4(callContext, localContext, lambda, cforce);
+			return true;
+		}
+	};
+
+	/**
+	 * Loads lambda from the values saved by the joints on the previous step.
+	 */
+	private static void dxQuickStepLoadLambda(DJointWithInfo1[] jointinfos, int nj, double[] lambda)
+	{
+		int lambdacurr = 0;//lambda;
+		for (int i = 0; i < nj; i++) {
+			int infom = jointinfos[i].info.m;
+			System.arraycopy(jointinfos[i].joint.lambda, 0, lambda, lambdacurr, infom);
+			lambdacurr += infom;
+		}
+	}
+
 	private static 
 	void dxQuickStepIsland_Stage3(dxQuickStepperStage3CallContext stage3CallContext)
 	{
@@ -1695,44 +2110,37 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 	    dIVERIFY(stage3CallContext == null); // To suppress unused variable assignment warnings
 
 	    double[] invI = localContext.m_invI;
-	    DJointWithInfo1[] jointinfos = localContext.m_jointinfos;
-	    int nj = localContext.m_nj;
 	    int m = localContext.m_m;
-	    int mfb = localContext.m_mfb;
 	    //const unsigned int *mindex = localContext->m_mindex;
 	    int[] findex = localContext.m_findex;
 	    double[] J = localContext.m_J;
 	    int[] jb = localContext.m_jb;
-        double[] Jcopy = localContext.m_Jcopy;
 
 	    DxWorld world = callContext.m_world();
 	    DxBody[] bodyA = callContext.m_islandBodiesStartA();
 	    int bodyOfs = callContext.m_islandBodiesStartOfs();
 	    int nb = callContext.m_islandBodiesCount();
 
+	    double[] lambda = null;
+	    double[] cforce = null;
 	    if (m > 0) {
     			
 			// load lambda from the value saved on the previous iteration
-			double[] lambda = memarena.AllocateArrayDReal(m);//new double[m];//dRealAllocaArray (lambda,m);
+			lambda = memarena.AllocateArrayDReal(m);//new double[m];//dRealAllocaArray (lambda,m);
 			
-			//TZ not defined
-//			if (WARM_STARTING) {//#ifdef WARM_STARTING
-//	           dReal *lambdscurr = lambda;
-//	            const dJointWithInfo1 *jicurr = jointinfos;
-//	            const dJointWithInfo1 *const jiend = jicurr + nj;
-//	            for (; jicurr != jiend; jicurr++) {
-//	                unsigned int infom = jicurr->info.m;
-//	                memcpy (lambdscurr, jicurr->joint->lambda, infom * sizeof(dReal));
-//	                lambdscurr += infom;
-//	            }
-//			}//#endif
+			if (world.qs.warm_starting) {//#ifdef WARM_STARTING
+				dxQuickStepLoadLambda(localContext.m_jointinfos, localContext.m_nj, lambda);
+			}//#endif
 
-			double[] cforce = memarena.AllocateArrayDReal(nb*6);
+			cforce = memarena.AllocateArrayDReal(nb*6);
 			BlockPointer lcpstate = memarena.BEGIN_STATE_SAVE(); 
 			{
 	            if (TIMING) dTimerNow ("solving LCP problem");
 	            // solve the LCP problem and get lambda and invM*constraint_force
-	            SOR_LCP (memarena,m,nb,J,jb,bodyA,bodyOfs,invI,lambda,cforce,findex,world.qs);
+	            RefDouble residual = localContext.m_residual;
+	            int iterations = SOR_LCP (memarena,m,nb,J,jb,bodyA,bodyOfs,invI,lambda,cforce,findex,world.qs,
+	            		callContext.m_rand(),residual);
+	            world.dxSetQuickStepIslandStatistics(callContext.m_islandIndex(), iterations, residual.get());
 			}
 			memarena.END_STATE_SAVE(lcpstate);
 			    
@@ -1748,23 +2156,38 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 //			System.err.println("SOR_LCP cfm=" + Arrays.toString(cfm));
 //			System.err.println("SOR_LCP findex=" + Arrays.toString(findex));
 //			System.err.println("SOR_LCP qs=" + world.qs.num_iterations + " w=" + world.qs.w);
-			
-			//TZ not defined
-//			if (WARM_STARTING) {//#ifdef WARM_STARTING
-//		    {
-//            // save lambda for the next iteration
-//            //@@@ note that this doesn't work for contact joints yet, as they are
-//            // recreated every iteration
-//            const dReal *lambdacurr = lambda;
-//            const dJointWithInfo1 *jicurr = jointinfos;
-//            const dJointWithInfo1 *const jiend = jicurr + nj;
-//            for (; jicurr != jiend; jicurr++) {
-//                unsigned int infom = jicurr->info.m;
-//                memcpy (jicurr->joint->lambda, lambdacurr, infom * sizeof(dReal));
-//                lambdacurr += infom;
-//            }
-//		      }
-//				//#endif
+	    }
+
+	    dxQuickStepIsland_Stage4(callContext, localContext, lambda, cforce);
+	}
+
+	private static 
+	void dxQuickStepIsland_Stage4(DxStepperProcessingCallContext callContext, 
+			dxQuickStepperLocalContext localContext, double[] lambda, double[] cforce)
+	{
+	    double[] invI = localContext.m_invI;
+	    DJointWithInfo1[] jointinfos = localContext.m_jointinfos;
+	    int nj = localContext.m_nj;
+	    int m = localContext.m_m;
+	    int mfb = localContext.m_mfb;
+        double[] Jcopy = localContext.m_Jcopy;
+
+	    DxBody[] bodyA = callContext.m_islandBodiesStartA();
+	    int bodyOfs = callContext.m_islandBodiesStartOfs();
+	    int nb = callContext.m_islandBodiesCount();
+
+	    if (m > 0) {
+			if (callContext.m_world().qs.warm_starting) {//#ifdef WARM_STARTING
+	            // save lambda for the next iteration
+	            // (TZ) contact joints are recreated every iteration, their lambda 
+	            // is carried over by DxContactLambdaCache.
+	            int lambdacurr = 0;//lambda;
+	            for (int i = 0; i < nj; i++) {
+	                int infom = jointinfos[i].info.m;
+	                System.arraycopy(lambda, lambdacurr, jointinfos[i].joint.lambda, 0, infom);
+	                lambdacurr += infom;
+	            }
+			}//#endif
 
 			// note that the SOR method overwrites rhs and J at this point, so
 			// they should not be used again.
@@ -2014,7 +2437,8 @@ dmemestimate_fn_t, dmaxcallcountestimate_fn_t {
 		//(void)activeThreadCount; // unused
 	    int result = 1 // dxQuickStepIsland itself
 	        + (2 * allowedThreadCount + 2) // (dxQuickStepIsland_Stage2a + dxQuickStepIsland_Stage2b) * allowedThreadCount + 2 * dxStepIsland_Stage2?_Sync
-	        + 1; // dxStepIsland_Stage3
+	        + 1 // dxStepIsland_Stage3
+	        + (allowedThreadCount + 2); // parallel SOR: dxQuickStepIsland_SORSweep * allowedThreadCount + dxQuickStepIsland_SORSync + dxQuickStepIsland_Stage4
 	    return result;
 	}
 
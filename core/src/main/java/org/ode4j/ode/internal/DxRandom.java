@@ -0,0 +1,87 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+/**
+ * Random number generator with the same sequence as Misc.dRand(), but
+ * with its own, non-atomic seed. 
+ * Every world has one; the steppers derive a generator per island from it 
+ * (see seedIsland()), so concurrent islands do not contend on a shared 
+ * seed and the results do not depend on the order of processing.
+ * <p>
+ * Instances are not thread safe.
+ */
+public final class DxRandom {
+
+	private long seed;
+
+	public DxRandom() {
+		this(0);
+	}
+
+	public DxRandom(long seed) {
+		dRandSetSeed(seed);
+	}
+
+	/** 
+	 * @return next 32 bit random number, see Misc.dRand().
+	 */
+	public long dRand() {
+		seed = (1664525L * seed + 1013904223L) & 0xffffffffL;
+		return seed;
+	}
+
+	/** 
+	 * @return a random integer between 0..n-1, see Misc.dRandInt(long).
+	 */
+	public int dRandInt(int n) {
+		return Misc.dRandInt(dRand(), n);
+	}
+
+	/** 
+	 * @return a random real number between 0..1
+	 */
+	public double dRandReal() {
+		return ((double) dRand()) / ((double) 0xffffffffL);
+	}
+
+	public long dRandGetSeed() {
+		return seed;
+	}
+
+	public void dRandSetSeed(long s) {
+		seed = s & 0xffffffffL;
+	}
+
+	/**
+	 * Seeds this generator for an island from the seed of the current step.
+	 * @param stepSeed seed drawn from the world's generator once per step
+	 * @param islandIndex index of the island in the step
+	 */
+	public void seedIsland(long stepSeed, int islandIndex) {
+		// Spread the island indexes over the 32 bit seed range (golden ratio)
+		dRandSetSeed(stepSeed ^ (islandIndex * 0x9E3779B9L));
+	}
+}
@@ -31,7 +31,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DGeomBuffer;
 import org.ode4j.ode.DSapSpace;
 
 
@@ -78,6 +81,9 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 	//private dArray<dxGeom> TmpGeomList;	// temporary for normal geoms
 	private ArrayList<DxGeom> TmpGeomList = new ArrayList<DxGeom>();	// temporary for normal geoms
 	private List<DxGeom> TmpInfGeomList = new ArrayList<DxGeom>();	// temporary for geoms with infinite AABBs
+	// (TZ) In activity aware mode TmpGeomList holds only the active normal 
+	// geoms, the inactive ones are only pruned against the active ones.
+	private ArrayList<DxGeom> TmpInactiveGeomList = new ArrayList<DxGeom>();	// temporary for inactive normal geoms
 
 	// Our sorting axes. (X,Z,Y is often best). Stored *2 for minor speedup
 	// Axis indices into geom's aabb are: min=idx, max=idx+1
@@ -146,6 +152,8 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 			return;
 		}
 
+		if (isInactivePair(g1, g2)) return;
+
 		DAABB bounds1 = g1._aabb;
 		DAABB bounds2 = g2._aabb;
 
@@ -337,6 +345,7 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 		// separate all ENABLED geoms into infinite AABBs and normal AABBs
 		TmpGeomList.clear();//setSize(0);
 		TmpInfGeomList.clear();
+		TmpInactiveGeomList.clear();
 		int axis0max = ax0id;// + 1;
 		for( int i = 0; i < geom_count; ++i ) {
 			DxGeom g = GeomList.get(i);
@@ -345,6 +354,8 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 			final double amax = g._aabb.getMax(axis0max);
 			if( amax == dInfinity ) // HACK? probably not...
 				TmpInfGeomList.add( g );
+			else if ( activityAware && !g.isActive() )
+				TmpInactiveGeomList.add( g );
 			else
 				TmpGeomList.add( g );//push( g );
 		}
@@ -363,6 +374,12 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 			//BoxPruning( tmp_geom_count, (final dxGeom**)TmpGeomList.data(), overlapBoxes );
 			BoxPruning( TmpGeomList, data, callback );
 		}
+		int inactiveSize = TmpInactiveGeomList.size();
+		if ( normSize > 0 && inactiveSize > 0 )
+		{
+			Collections.sort(TmpInactiveGeomList, new GeomComparator());
+			BipartiteBoxPruning( TmpGeomList, TmpInactiveGeomList, data, callback );
+		}
 
 		int infSize = TmpInfGeomList.size();
 		int m, n;
@@ -382,6 +399,12 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 				DxGeom g2 = TmpGeomList.get(n);
 				collideGeomsNoAABBs( g1, g2, data, callback );
 			}
+			if ( g1.isActive() ) {
+				for( n = 0; n < inactiveSize; ++n ) {
+					DxGeom g2 = TmpInactiveGeomList.get(n);
+					collideGeomsNoAABBs( g1, g2, data, callback );
+				}
+			}
 		}
 
 		lock_count--;
@@ -411,6 +434,16 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 		lock_count--;
 	}
 
+	@Override
+	void query(DAABBC aabb, DVector3C center, double radius, DGeomBuffer geoms)
+	{
+		// the geom list is not sorted between the calls of collide()
+		int geom_count = GeomList.size();
+		for ( int i = 0; i < geom_count; ++i ) {
+			queryGeom(GeomList.get(i), aabb, center, radius, geoms);
+		}
+	}
+
 	
 	private class GeomComparator implements Comparator<DxGeom> {
 		@Override
@@ -469,6 +502,47 @@ public class DxSAPSpace extends DxSpace implements DSapSpace {
 		}
 	}
 
+	/**
+	 * (TZ) Bipartite box pruning, reports the overlapping pairs of boxes where 
+	 * one box belongs to each set. Both lists must be sorted.
+	 */
+	private void BipartiteBoxPruning(final List<DxGeom> geoms0, final List<DxGeom> geoms1, 
+			Object data, DNearCallback callback)
+	{
+		// Pairs where the box of the second set starts at or after the box of the first set
+		prunePairs(geoms0, geoms1, false, data, callback);
+		// Pairs where the box of the second set starts before the box of the first set
+		prunePairs(geoms1, geoms0, true, data, callback);
+	}
+
+	private void prunePairs(final List<DxGeom> from, final List<DxGeom> to, boolean strict, 
+			Object data, DNearCallback callback)
+	{
+		int toSize = to.size();
+		int start = 0;
+		for (int i = 0; i < from.size(); i++) {
+			DxGeom g0 = from.get(i);
+			DAABB aabb0 = g0._aabb;
+			final double min0 = aabb0.getMin(ax0id);
+			final double max0 = aabb0.getMax(ax0id);
+			while (start < toSize && (strict ? to.get(start)._aabb.getMin(ax0id) <= min0 
+					: to.get(start)._aabb.getMin(ax0id) < min0)) {
+				start++;
+			}
+			for (int j = start; j < toSize; j++) {
+				DxGeom g1 = to.get(j);
+				if (g1._aabb.getMin(ax0id) > max0) {
+					break;
+				}
+				if ( aabb0.getMax(ax1id) >= g1._aabb.getMin(ax1id)) 
+					if (g1._aabb.getMax(ax1id) >= aabb0.getMin(ax1id) )
+						if ( aabb0.getMax(ax2id) >= g1._aabb.getMin(ax2id))
+							if (g1._aabb.getMax(ax2id) >= aabb0.getMin(ax2id) )
+								collideGeomsNoAABBs(g0, g1, data, callback);
+			}
+		}
+	}
+
 	//Commented out, see above (TZ)
 //	/**
 //	 *	Complete box pruning.
@@ -30,36 +30,267 @@ import static org.ode4j.ode.internal.Common.dIASSERT;
 import static org.ode4j.ode.internal.Common.dUASSERT;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DAABB;
 import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeomBuffer;
+import org.ode4j.ode.DGeomPairBuffer;
 import org.ode4j.ode.DSapSpace;
 import org.ode4j.ode.DSpace;
+import org.ode4j.ode.threading.DxThreadingBase;
+import org.ode4j.ode.threading.Threading_H.CallContext;
+import org.ode4j.ode.threading.Threading_H.DCallReleasee;
+import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
 
 /**
  * Original code: OPCODE - Optimized Collision Detection Copyright (C) 2001
  * Pierre Terdiman Homepage: http://www.codercorner.com/Opcode.htm
  *
  * Temporally coherent version of SAPSpace with additional BVH tree for collide2 performance improvement.
+ * <p>
+ * (TZ) The BVH is built with a binned SAH split search. If a threading 
+ * implementation is available (see {@link #collide2Batch(DGeom[], DxThreadingBase, DGeomPairBuffer)}), 
+ * the upper levels are split in the calling thread and the subtrees below 
+ * are built concurrently. Once built, the BVH is read-only until the geoms 
+ * change, so batches of collide2 queries are answered concurrently as well.
  * 
  * @author Piotr Piastucki
  *
  */
-public class DxSAPSpace2 extends DxSpace implements DSapSpace {
+public class DxSAPSpace2 extends DxSpace implements DSapSpace, CallContext {
+
+	// Maximum number of geoms in a BVH leaf
+	private static final int BVH_MAX_LEAF_GEOMS = 8;
+	// Number of bins of the SAH split search
+	private static final int BVH_BINS = 16;
+	// Cost of traversing a node relative to testing a geom
+	private static final double BVH_TRAVERSAL_COST = 1;
+	// Centroids of AABBs that are infinite on a secondary axis are clamped
+	private static final double BVH_CENTROID_LIMIT = 1e300;
+	// Minimum number of geoms for a threaded build
+	private static final int BVH_THREADED_MIN_GEOMS = 4096;
+	// Subtrees per job of a threaded build, allows balancing the load
+	private static final int BVH_TASKS_PER_JOB = 4;
+	// Queries per job chunk of collide2Batch()
+	private static final int QUERIES_PER_CHUNK = 32;
 
-	private static class BVHNode {
-		DAABB aabb;
-		int imin, imax;
-		int escape;
+	/**
+	 * Flattened BVH in depth first order: every node is followed by its first 
+	 * child, <tt>escape</tt> is the index after the subtree of the node. 
+	 * The leafs reference ranges of <tt>geoms</tt>, which are sorted in place 
+	 * by <tt>build()</tt>. Builders working on disjoint ranges of the same 
+	 * array can run concurrently.
+	 */
+	private static final class BVHBuilder {
+		DxGeom[] geoms;
+		// min0, max0, min1, max1, min2, max2 for every node
+		double[] bounds = new double[16 * 6];
+		int[] first = new int[16];
+		// number of geoms for leafs, 0 for inner nodes, see splitTop() for < 0
+		int[] count = new int[16];
+		int[] escape = new int[16];
+		int nodeCount;
+
+		// split search
+		private final double[] binBounds = new double[BVH_BINS * 6];
+		private final int[] binCounts = new int[BVH_BINS];
+		private final double[] rightCosts = new double[BVH_BINS];
+		private final double[] sweepBounds = new double[6];
+		private final double[] centroidBounds = new double[6];
+
+		void reset(DxGeom[] geoms) {
+			this.geoms = geoms;
+			nodeCount = 0;
+		}
+
+		int addNode() {
+			if (nodeCount == first.length) {
+				int n = nodeCount * 2;
+				bounds = Arrays.copyOf(bounds, n * 6);
+				first = Arrays.copyOf(first, n);
+				count = Arrays.copyOf(count, n);
+				escape = Arrays.copyOf(escape, n);
+			}
+			return nodeCount++;
+		}
+
+		void build(int begin, int end) {
+			int node = addNode();
+			int split = split(begin, end, node);
+			first[node] = begin;
+			if (split < 0) {
+				count[node] = end - begin;
+			} else {
+				count[node] = 0;
+				build(begin, split);
+				build(split, end);
+			}
+			escape[node] = nodeCount;
+		}
+
+		/**
+		 * Appends the nodes of another builder.
+		 */
+		void append(BVHBuilder b) {
+			int offset = nodeCount;
+			for (int i = 0; i < b.nodeCount; i++) {
+				int node = addNode();
+				System.arraycopy(b.bounds, i * 6, bounds, node * 6, 6);
+				first[node] = b.first[i];
+				count[node] = b.count[i];
+				escape[node] = b.escape[i] + offset;
+			}
+		}
+
+		/**
+		 * Computes the bounds of the node and searches the best split with 
+		 * the surface area heuristic. The geoms of the range are partitioned 
+		 * at the split.
+		 * @return index of the split or -1 if the node should be a leaf
+		 */
+		int split(int begin, int end, int node) {
+			int n = end - begin;
+			int o = node * 6;
+			double[] cb = centroidBounds;
+			resetBounds(bounds, o);
+			resetBounds(cb, 0);
+			for (int i = begin; i < end; i++) {
+				DAABB bb = geoms[i]._aabb;
+				expandBounds(bounds, o, bb);
+				for (int a = 0; a < 3; a++) {
+					double c = centroid(bb, a);
+					if (c < cb[a * 2]) cb[a * 2] = c;
+					if (c > cb[a * 2 + 1]) cb[a * 2 + 1] = c;
+				}
+			}
+			if (n <= 1) {
+				return -1;
+			}
+
+			// bin the centroids on the axis with the largest extent
+			int axis = 0;
+			double extent = cb[1] - cb[0];
+			for (int a = 1; a < 3; a++) {
+				if (cb[a * 2 + 1] - cb[a * 2] > extent) {
+					axis = a;
+					extent = cb[a * 2 + 1] - cb[a * 2];
+				}
+			}
+			if (!(extent > 0)) {
+				// all centroids are equal
+				return n <= BVH_MAX_LEAF_GEOMS ? -1 : begin + n / 2;
+			}
+			double cmin = cb[axis * 2];
+			double scale = BVH_BINS / extent;
+			Arrays.fill(binCounts, 0);
+			for (int b = 0; b < BVH_BINS; b++) {
+				resetBounds(binBounds, b * 6);
+			}
+			for (int i = begin; i < end; i++) {
+				DAABB bb = geoms[i]._aabb;
+				int b = bin(bb, axis, cmin, scale);
+				binCounts[b]++;
+				expandBounds(binBounds, b * 6, bb);
+			}
+
+			// costs of the right sides, then sweep from the left. The split 
+			// at bin b is between bin b-1 and bin b. The first and the last 
+			// bin are never empty, so there is always a valid split.
+			double[] sb = sweepBounds;
+			resetBounds(sb, 0);
+			int right = 0;
+			for (int b = BVH_BINS - 1; b > 0; b--) {
+				right += binCounts[b];
+				mergeBounds(sb, binBounds, b * 6);
+				rightCosts[b] = right == 0 ? 0 : area(sb, 0) * right;
+			}
+			resetBounds(sb, 0);
+			int left = 0;
+			int bestBin = -1;
+			double bestCost = 0;
+			for (int b = 1; b < BVH_BINS; b++) {
+				left += binCounts[b - 1];
+				mergeBounds(sb, binBounds, (b - 1) * 6);
+				if (left == 0 || left == n) {
+					continue;
+				}
+				double cost = area(sb, 0) * left + rightCosts[b];
+				if (bestBin < 0 || cost < bestCost) {
+					bestBin = b;
+					bestCost = cost;
+				}
+			}
+			if (n <= BVH_MAX_LEAF_GEOMS) {
+				// leaf cost n versus split cost C_trav + bestCost / A_node
+				double nodeArea = area(bounds, o);
+				if (!(BVH_TRAVERSAL_COST * nodeArea + bestCost < n * nodeArea)) {
+					return -1;
+				}
+			}
+
+			// partition
+			int i = begin;
+			int j = end - 1;
+			while (i <= j) {
+				if (bin(geoms[i]._aabb, axis, cmin, scale) < bestBin) {
+					i++;
+				} else {
+					DxGeom g = geoms[i];
+					geoms[i] = geoms[j];
+					geoms[j--] = g;
+				}
+			}
+			return i;
+		}
+
+		private static double centroid(DAABB bb, int axis) {
+			double c = (bb.getMin(axis) + bb.getMax(axis)) * 0.5;
+			// also maps NaN (-inf + inf) to -BVH_CENTROID_LIMIT
+			return c >= -BVH_CENTROID_LIMIT ? Math.min(c, BVH_CENTROID_LIMIT) : -BVH_CENTROID_LIMIT;
+		}
+
+		private static int bin(DAABB bb, int axis, double cmin, double scale) {
+			int b = (int) ((centroid(bb, axis) - cmin) * scale);
+			return b < BVH_BINS ? b : BVH_BINS - 1;
+		}
+
+		private static void resetBounds(double[] b, int o) {
+			for (int a = 0; a < 3; a++) {
+				b[o + a * 2] = dInfinity;
+				b[o + a * 2 + 1] = -dInfinity;
+			}
+		}
+
+		private static void expandBounds(double[] b, int o, DAABB bb) {
+			for (int a = 0; a < 3; a++) {
+				if (bb.getMin(a) < b[o + a * 2]) b[o + a * 2] = bb.getMin(a);
+				if (bb.getMax(a) > b[o + a * 2 + 1]) b[o + a * 2 + 1] = bb.getMax(a);
+			}
+		}
 
-		private BVHNode() {
-			aabb = new DAABB();
-			aabb.set(dInfinity, -dInfinity, dInfinity, -dInfinity, dInfinity, -dInfinity);
+		private static void mergeBounds(double[] b, double[] src, int o) {
+			for (int a = 0; a < 3; a++) {
+				if (src[o + a * 2] < b[a * 2]) b[a * 2] = src[o + a * 2];
+				if (src[o + a * 2 + 1] > b[a * 2 + 1]) b[a * 2 + 1] = src[o + a * 2 + 1];
+			}
+		}
 
+		private static double area(double[] b, int o) {
+			double dx = b[o + 1] - b[o];
+			double dy = b[o + 3] - b[o + 2];
+			double dz = b[o + 5] - b[o + 4];
+			if (!(dx >= 0)) {
+				return 0; // empty
+			}
+			return dx * dy + dy * dz + dz * dx;
 		}
 	}
 
@@ -71,8 +302,23 @@ public class DxSAPSpace2 extends DxSpace implements DSapSpace {
 	private List<DxGeom> normGeomList = new ArrayList<DxGeom>();
 	// temporary storage for enabled geoms with normal AABBs
 	private List<DxGeom> tempGeomList = new ArrayList<DxGeom>();
-	// temporary storage for tracking overlapping geoms
-	private List<BVHNode> bvhNodes = new ArrayList<BVHNode>();
+	// BVH over the geoms with normal AABBs for collide2(), valid until the 
+	// geoms change
+	private final BVHBuilder bvh = new BVHBuilder();
+	private DxGeom[] bvhGeoms = new DxGeom[0];
+	private boolean bvhValid = false;
+	// upper levels and subtrees of a threaded build
+	private final BVHBuilder bvhTop = new BVHBuilder();
+	private BVHBuilder[] bvhTasks = new BVHBuilder[0];
+	private int[] bvhTaskRanges = new int[0];
+	private int bvhTaskCount;
+	// state of collide2Batch(), the pairs of every chunk of queries
+	private DGeom[] batchQueries;
+	private int batchChunkCount;
+	private DGeomPairBuffer[] batchPairs = new DGeomPairBuffer[0];
+	private boolean batchBusy;
+	// work distribution between the jobs
+	private final AtomicInteger nextJobItem = new AtomicInteger();
 	// Our sorting axes. (X,Z,Y is often best). Stored *2 for minor speedup
 	// Axis indices into geom's aabb are: min=idx, max=idx+1
 	private int ax0id;
@@ -103,6 +349,9 @@ public class DxSAPSpace2 extends DxSpace implements DSapSpace {
 			return;
 		}
 
+		if (isInactivePair(g1, g2))
+			return;
+
 		DAABB bounds1 = g1._aabb;
 		DAABB bounds2 = g2._aabb;
 
@@ -184,7 +433,7 @@ public class DxSAPSpace2 extends DxSpace implements DSapSpace {
 			Collections.sort(normGeomList, new GeomComparator());
 			dirty.clear();
 			dirtyGeoms = false;
-			bvhNodes.clear();
+			bvhValid = false;
 		}
 		lock_count--;
 	}
@@ -237,29 +486,28 @@ public class DxSAPSpace2 extends DxSpace implements DSapSpace {
         cleanGeoms();
         geom.recomputeAABB();
         if (normGeomList.size() > 0) {
-	        if (bvhNodes.isEmpty()) {
-	        	buildBVH();
+	        if (!bvhValid) {
+	        	buildBVH(null);
 	        }
-			DAABBC aabb = geom.getAABB();
+			DAABB aabb = geom._aabb;
+			double[] bounds = bvh.bounds;
 			int i = 0;
-			int size = bvhNodes.size();
+			int size = bvh.nodeCount;
 			while (i < size) {
-				BVHNode node = bvhNodes.get(i);
-				boolean overlap = !node.aabb.isDisjoint(aabb); 
-				boolean isLeafNode = node.escape >= 0;
-				if (isLeafNode && overlap) {
-					for (int j = node.imin; j < node.imax; j++) {
-			            DxGeom g = normGeomList.get(j);
-			            if (GEOM_ENABLED(g)) {
-			            	collideAABBs(g, geom, data, callback);
-			            }
-					}
+				int o = i * 6;
+				if (bounds[o] > aabb.getMax0() || bounds[o + 1] < aabb.getMin0() ||
+						bounds[o + 2] > aabb.getMax1() || bounds[o + 3] < aabb.getMin1() ||
+						bounds[o + 4] > aabb.getMax2() || bounds[o + 5] < aabb.getMin2()) {
+					i = bvh.escape[i];
+					continue;
 				}
-				if (overlap || isLeafNode) {
-					i++;
-				} else {
-					i = -node.escape;
+				for (int j = bvh.first[i], end = j + bvh.count[i]; j < end; j++) {
+		            DxGeom g = bvhGeoms[j];
+		            if (GEOM_ENABLED(g)) {
+		            	collideAABBs(g, geom, data, callback);
+		            }
 				}
+				i++;
 			}
 		}
         for (DxGeom g : infGeomList) {
@@ -270,39 +518,256 @@ public class DxSAPSpace2 extends DxSpace implements DSapSpace {
         lock_count--;
     }
 
-	private void buildBVH() {
-		subdivide(null, 0, normGeomList.size(), 10);
+	@Override
+	void query(DAABBC aabb, DVector3C center, double radius, DGeomBuffer geoms) {
+		if (normGeomList.size() > 0) {
+			if (!bvhValid) {
+				buildBVH(null);
+			}
+			double[] bounds = bvh.bounds;
+			int i = 0;
+			int size = bvh.nodeCount;
+			while (i < size) {
+				int o = i * 6;
+				if (bounds[o] > aabb.getMax0() || bounds[o + 1] < aabb.getMin0() ||
+						bounds[o + 2] > aabb.getMax1() || bounds[o + 3] < aabb.getMin1() ||
+						bounds[o + 4] > aabb.getMax2() || bounds[o + 5] < aabb.getMin2()) {
+					i = bvh.escape[i];
+					continue;
+				}
+				for (int j = bvh.first[i], end = j + bvh.count[i]; j < end; j++) {
+					queryGeom(bvhGeoms[j], aabb, center, radius, geoms);
+				}
+				i++;
+			}
+		}
+		for (int j = 0; j < infGeomList.size(); j++) {
+			queryGeom(infGeomList.get(j), aabb, center, radius, geoms);
+		}
+	}
+
+	/**
+	 * (TZ) Answers the collide2 queries of all geoms, the queries run 
+	 * concurrently on the threads of the threading implementation. 
+	 * The pairs are merged in the order of the queries.
+	 */
+	@Override
+	void collide2Batch(DGeom[] geoms, DxThreadingBase threading, DGeomPairBuffer pairs) {
+		dUASSERT(!batchBusy, "collide2Batch() can not be called recursively");
+		lock_count++;
+		batchBusy = true;
+		try {
+			cleanGeoms();
+			for (DGeom g : geoms) {
+				((DxGeom) g).recomputeAABB();
+			}
+			if (!bvhValid && normGeomList.size() > 0) {
+				buildBVH(threading);
+			}
+
+			batchQueries = geoms;
+			batchChunkCount = (geoms.length + QUERIES_PER_CHUNK - 1) / QUERIES_PER_CHUNK;
+			if (batchPairs.length < batchChunkCount) {
+				DGeomPairBuffer[] newPairs = new DGeomPairBuffer[batchChunkCount];
+				System.arraycopy(batchPairs, 0, newPairs, 0, batchPairs.length);
+				for (int i = batchPairs.length; i < batchChunkCount; i++) {
+					newPairs[i] = new DGeomPairBuffer();
+				}
+				batchPairs = newPairs;
+			}
+			nextJobItem.set(0);
+			if (!DxSpaceCollideParallel.runThreadedJobs(threading, batchChunkCount, 
+					QueryJob_Callback, this, "Collide2 Batch")) {
+				queryChunks();
+			}
+
+			// pairs with sub-spaces are resolved by the pair collector
+			for (int c = 0; c < batchChunkCount; c++) {
+				DGeomPairBuffer chunk = batchPairs[c];
+				for (int i = 0; i < chunk.size(); i++) {
+					pairCollector.call(pairs, chunk.getGeom1(i), chunk.getGeom2(i));
+				}
+				chunk.clear();
+			}
+		} finally {
+			batchQueries = null;
+			batchBusy = false;
+			lock_count--;
+		}
+	}
+
+	private void queryChunks() {
+		int chunk;
+		while ((chunk = nextJobItem.getAndIncrement()) < batchChunkCount) {
+			DGeomPairBuffer pairs = batchPairs[chunk];
+			int end = Math.min((chunk + 1) * QUERIES_PER_CHUNK, batchQueries.length);
+			for (int i = chunk * QUERIES_PER_CHUNK; i < end; i++) {
+				query((DxGeom) batchQueries[i], pairs);
+			}
+		}
 	}
 
-	private void subdivide(BVHNode parent, int imin, int imax, int geomsPerNode) {
-		int inum = imax - imin;
-		if (inum == 0)
-			return;
-		BVHNode node = new BVHNode();
-		node.imin = imin;
-		node.imax = imax;
-		bvhNodes.add(node);
-		if (inum <= geomsPerNode) {
-			// Leaf
-			node.escape = bvhNodes.size();
-			for (int i = imin; i < imax; i++) {
-				node.aabb.expand(normGeomList.get(i)._aabb);
-			}
-			if (parent != null) {
-				parent.aabb.expand(node.aabb);
+	/**
+	 * (TZ) Read-only version of collide2() that can run concurrently: the 
+	 * space has to be clean, the BVH has to be valid and the AABB of the 
+	 * geom has to be computed.
+	 */
+	private void query(DxGeom geom, DGeomPairBuffer pairs) {
+		DAABB aabb = geom._aabb;
+		double[] bounds = bvh.bounds;
+		int i = 0;
+		int size = bvhValid ? bvh.nodeCount : 0;
+		while (i < size) {
+			int o = i * 6;
+			if (bounds[o] > aabb.getMax0() || bounds[o + 1] < aabb.getMin0() ||
+					bounds[o + 2] > aabb.getMax1() || bounds[o + 3] < aabb.getMin1() ||
+					bounds[o + 4] > aabb.getMax2() || bounds[o + 5] < aabb.getMin2()) {
+				i = bvh.escape[i];
+				continue;
+			}
+			for (int j = bvh.first[i], end = j + bvh.count[i]; j < end; j++) {
+				DxGeom g = bvhGeoms[j];
+				if (GEOM_ENABLED(g) && testAABBs(g, geom)) {
+					pairs.add(g, geom);
+				}
+			}
+			i++;
+		}
+		for (int j = 0, n = infGeomList.size(); j < n; j++) {
+			DxGeom g = infGeomList.get(j);
+			if (GEOM_ENABLED(g) && testAABBs(g, geom)) {
+				pairs.add(g, geom);
+			}
+		}
+	}
+
+	/**
+	 * Builds the BVH over the geoms with normal AABBs.
+	 * @param threading threading implementation for the subtrees or null
+	 */
+	private void buildBVH(DxThreadingBase threading) {
+		int n = normGeomList.size();
+		if (bvhGeoms.length < n) {
+			bvhGeoms = new DxGeom[Math.max(n, 2 * bvhGeoms.length)];
+		}
+		normGeomList.toArray(bvhGeoms);
+		// don't keep removed geoms alive
+		Arrays.fill(bvhGeoms, n, bvhGeoms.length, null);
+		bvh.reset(bvhGeoms);
+		if (n >= BVH_THREADED_MIN_GEOMS && threading != null) {
+			int jobCount = threading.RetrieveThreadingThreadCount();
+			if (jobCount > 1) {
+				// split the upper levels in this thread
+				int taskSize = Math.max(BVH_MAX_LEAF_GEOMS, n / (jobCount * BVH_TASKS_PER_JOB));
+				bvhTop.reset(bvhGeoms);
+				bvhTaskCount = 0;
+				splitTop(0, n, taskSize);
+				nextJobItem.set(0);
+				if (!DxSpaceCollideParallel.runThreadedJobs(threading, bvhTaskCount, 
+						BuildJob_Callback, this, "BVH Build")) {
+					buildTasks();
+				}
+				assemble(0);
+				bvhValid = true;
+				return;
+			}
+		}
+		if (n > 0) {
+			bvh.build(0, n);
+		}
+		bvhValid = true;
+	}
+
+	/**
+	 * Builds the upper levels of the BVH into <tt>bvhTop</tt>. Ranges with 
+	 * up to <tt>taskSize</tt> geoms are stored as nodes with 
+	 * <tt>count = -1 - task</tt> and built later by the task.
+	 */
+	private void splitTop(int begin, int end, int taskSize) {
+		int node = bvhTop.addNode();
+		bvhTop.first[node] = begin;
+		if (end - begin <= taskSize) {
+			if (bvhTaskCount == bvhTasks.length) {
+				int n = Math.max(16, bvhTaskCount * 2);
+				bvhTasks = Arrays.copyOf(bvhTasks, n);
+				bvhTaskRanges = Arrays.copyOf(bvhTaskRanges, n * 2);
+			}
+			if (bvhTasks[bvhTaskCount] == null) {
+				bvhTasks[bvhTaskCount] = new BVHBuilder();
 			}
+			bvhTaskRanges[bvhTaskCount * 2] = begin;
+			bvhTaskRanges[bvhTaskCount * 2 + 1] = end;
+			bvhTop.count[node] = -1 - bvhTaskCount;
+			bvhTaskCount++;
 		} else {
-			// Split
-			int isplit = imin + inum / 2;
-			subdivide(node, imin, isplit, geomsPerNode);
-			subdivide(node, isplit, imax, geomsPerNode);
-			if (parent != null) {
-				parent.aabb.expand(node.aabb);
+			int split = bvhTop.split(begin, end, node);
+			if (split < 0) {
+				bvhTop.count[node] = end - begin;
+			} else {
+				bvhTop.count[node] = 0;
+				splitTop(begin, split, taskSize);
+				splitTop(split, end, taskSize);
 			}
-			node.escape = -bvhNodes.size();
 		}
+		bvhTop.escape[node] = bvhTop.nodeCount;
 	}
 
+	private void buildTasks() {
+		int task;
+		while ((task = nextJobItem.getAndIncrement()) < bvhTaskCount) {
+			BVHBuilder builder = bvhTasks[task];
+			builder.reset(bvhGeoms);
+			builder.build(bvhTaskRanges[task * 2], bvhTaskRanges[task * 2 + 1]);
+		}
+	}
+
+	/**
+	 * Copies the subtree of a node of <tt>bvhTop</tt> into <tt>bvh</tt>, 
+	 * replacing the task nodes with the subtrees of the tasks.
+	 * @return the index after the subtree in <tt>bvhTop</tt>
+	 */
+	private int assemble(int top) {
+		int count = bvhTop.count[top];
+		if (count < 0) {
+			BVHBuilder task = bvhTasks[-1 - count];
+			bvh.append(task);
+			// the geoms must not be kept alive by the task
+			task.geoms = null;
+			return top + 1;
+		}
+		int node = bvh.addNode();
+		System.arraycopy(bvhTop.bounds, top * 6, bvh.bounds, node * 6, 6);
+		bvh.first[node] = bvhTop.first[top];
+		bvh.count[node] = count;
+		int next = top + 1;
+		if (count == 0) {
+			next = assemble(next);
+			next = assemble(next);
+		}
+		bvh.escape[node] = bvh.nodeCount;
+		return next;
+	}
+
+	private static final dThreadedCallFunction BuildJob_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext callContext, 
+				int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
+		{
+			((DxSAPSpace2)callContext).buildTasks();
+			return true;
+		}
+	};
+
+	private static final dThreadedCallFunction QueryJob_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext callContext, 
+				int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
+		{
+			((DxSAPSpace2)callContext).queryChunks();
+			return true;
+		}
+	};
+
 	private class GeomComparator implements Comparator<DxGeom> {
 		@Override
 		public int compare(DxGeom arg0, DxGeom arg1) {
@@ -0,0 +1,637 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.OdeConstants.dInfinity;
+import static org.ode4j.ode.internal.Common.dAASSERT;
+import static org.ode4j.ode.internal.Common.dIASSERT;
+import static org.ode4j.ode.internal.Common.dUASSERT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DGeomBuffer;
+import org.ode4j.ode.DSapSpace;
+
+/**
+ * Incremental ("classical") sweep and prune.
+ * <p>
+ * In contrast to <tt>DxSAPSpace</tt>, which sorts all geoms on every 
+ * <tt>collide()</tt>, this space keeps the sorted interval endpoints of all 
+ * three axes between steps. After geoms have moved the endpoint arrays are 
+ * re-sorted with insertion sort, which is close to O(n) if the geoms only 
+ * moved a little. Every swap of two endpoints updates the set of overlapping 
+ * pairs, so <tt>collide()</tt> only has to report the current pairs.
+ * <p>
+ * Geoms with infinite AABBs are kept in a separate list and are tested 
+ * against all other geoms.
+ *
+ * @author Tilmann Zaeschke
+ */
+public class DxSAPSpaceIncremental extends DxSpace implements DSapSpace {
+
+	private static final int NO_PROXY = -1;
+	private static final int INF_PROXY = -2;
+
+	// Sorting axes, axis indices into the AABB of a geom
+	private final int[] axes = new int[3];
+
+	// Proxies: one for each geom with a finite AABB. proxyBox holds min/max 
+	// for the sorting axes (min0, max0, min1, max1, min2, max2). 
+	private DxGeom[] proxyGeom = new DxGeom[16];
+	private double[] proxyBox = new double[16 * 6];
+	private int proxyCount = 0;		// used proxy ids, including free ones
+	private int[] freeProxies = new int[16];
+	private int freeProxyCount = 0;
+	private int removedProxyCount = 0;	// removed since the last cleanGeoms()
+	private int addedProxyCount = 0;	// added since the last cleanGeoms()
+
+	// Endpoints of each axis, sorted by value. Minimum endpoints are sorted 
+	// before maximum endpoints with the same value, so touching AABBs overlap.
+	// The info is (proxy id << 1) | (1 for maximum endpoints).
+	private final double[][] endpointValue = new double[3][32];
+	private final int[][] endpointInfo = new int[3][32];
+	private int endpointCount = 0;
+
+	private final PairSet pairs = new PairSet();
+	// scratch arrays for rebuilds
+	private double[] tmpValue = new double[0];
+	private int[] tmpInfo = new int[0];
+	private int[] active = new int[16];
+	private int[] activePos = new int[16];
+
+	// geoms that got dirty since the last cleanGeoms(), may contain geoms
+	// that have been removed in the meantime and duplicates.
+	private final List<DxGeom> dirtyGeoms = new ArrayList<DxGeom>();
+	// geoms with infinite AABBs
+	private final List<DxGeom> infGeomList = new ArrayList<DxGeom>();
+
+	/**
+	 * Creation.
+	 */
+	public static DxSAPSpaceIncremental dSweepAndPruneSpaceIncrementalCreate(DxSpace space, int axisorder) {
+		return new DxSAPSpaceIncremental(space, axisorder);
+	}
+
+	private DxSAPSpaceIncremental(DxSpace space, int axisorder) {
+		super(space);
+		type = dSweepAndPruneSpaceClass;
+		_aabb.setZero();
+		axes[0] = ((axisorder) & 3);
+		axes[1] = ((axisorder >> 2) & 3);
+		axes[2] = ((axisorder >> 4) & 3);
+	}
+
+	@Override
+	void add(DxGeom g) {
+		CHECK_NOT_LOCKED(this);
+		dAASSERT(g);
+		dUASSERT(g.parent_space == null, "geom is already in a space");
+		g._sapIdxGeomEx = NO_PROXY;
+		dirtyGeoms.add(g);
+		super.add(g);
+	}
+
+	@Override
+	void remove(DxGeom g) {
+		CHECK_NOT_LOCKED(this);
+		dAASSERT(g);
+		dUASSERT(g.parent_space == this, "object is not in this space");
+		int proxy = g._sapIdxGeomEx;
+		if (proxy >= 0) {
+			removeProxy(proxy);
+		} else if (proxy == INF_PROXY) {
+			infGeomList.remove(g);
+		}
+		g._sapIdxGeomEx = NO_PROXY;
+		// an entry in the dirty list is skipped once the geom has left the space
+		super.remove(g);
+	}
+
+	@Override
+	void dirty(DxGeom g) {
+		dAASSERT(g);
+		dUASSERT(g.parent_space == this, "object is not in this space");
+		dirtyGeoms.add(g);
+	}
+
+	@Override
+	public void cleanGeoms() {
+		if (dirtyGeoms.isEmpty() && removedProxyCount == 0) {
+			return;
+		}
+		// compute the AABBs of all dirty geoms, clear the dirty flags and 
+		// update the proxies
+		lock_count++;
+		for (int i = 0; i < dirtyGeoms.size(); i++) {
+			DxGeom g = dirtyGeoms.get(i);
+			if (g.parent_space != this || !g.hasFlagDirty()) {
+				continue; // removed or duplicate
+			}
+			if (g instanceof DxSpace) {
+				((DxSpace) g).cleanGeoms();
+			}
+			g.recomputeAABB();
+			g.unsetFlagDirtyAndBad();
+			updateGeom(g);
+		}
+		dirtyGeoms.clear();
+
+		// re-sort the endpoints and update the pairs. Inserting many new 
+		// endpoints one by one is O(n) each, a rebuild is cheaper.
+		boolean rebuild = addedProxyCount > 2 * (32 - Integer.numberOfLeadingZeros(endpointCount));
+		for (int a = 0; a < 3; a++) {
+			refreshEndpoints(a);
+			if (rebuild) {
+				mergeSortEndpoints(a);
+			} else {
+				sortEndpoints(a);
+			}
+		}
+		if (removedProxyCount != 0) {
+			releaseRemovedProxies();
+		}
+		if (rebuild) {
+			rebuildPairs();
+		}
+		addedProxyCount = 0;
+		lock_count--;
+	}
+
+	@Override
+	public void collide(Object data, DNearCallback callback) {
+		dAASSERT(callback);
+
+		lock_count++;
+		cleanGeoms();
+
+		// report the overlapping pairs
+		for (int i = 0, n = pairs.size(); i < n; i++) {
+			long key = pairs.get(i);
+			DxGeom g1 = proxyGeom[(int) (key >>> 32)];
+			DxGeom g2 = proxyGeom[(int) key];
+			if (GEOM_ENABLED(g1) && GEOM_ENABLED(g2)) {
+				DxSAPSpace.collideGeomsNoAABBs(g1, g2, data, callback);
+			}
+		}
+
+		// collide infinite ones with each other and with normal ones, their
+		// AABBs may still be finite in some directions
+		int infSize = infGeomList.size();
+		for (int m = 0; m < infSize; ++m) {
+			DxGeom g1 = infGeomList.get(m);
+			if (!GEOM_ENABLED(g1)) {
+				continue;
+			}
+			for (int n = m + 1; n < infSize; ++n) {
+				DxGeom g2 = infGeomList.get(n);
+				if (GEOM_ENABLED(g2)) {
+					collideAABBs(g1, g2, data, callback);
+				}
+			}
+			for (int p = 0; p < proxyCount; p++) {
+				DxGeom g2 = proxyGeom[p];
+				if (g2 != null && GEOM_ENABLED(g2)) {
+					collideAABBs(g1, g2, data, callback);
+				}
+			}
+		}
+
+		lock_count--;
+	}
+
+	@Override
+	void collide2(Object data, DxGeom geom, DNearCallback callback) {
+		dAASSERT(geom != null && callback != null);
+
+		lock_count++;
+		cleanGeoms();
+		geom.recomputeAABB();
+
+		for (int i = 0; i < infGeomList.size(); i++) {
+			DxGeom g = infGeomList.get(i);
+			if (GEOM_ENABLED(g)) {
+				collideAABBs(g, geom, data, callback);
+			}
+		}
+		// all proxies with a minimum below the maximum of the geom
+		double max0 = geom._aabb.getMax(axes[0]);
+		double[] value = endpointValue[0];
+		int[] info = endpointInfo[0];
+		for (int i = 0; i < endpointCount && value[i] <= max0; i++) {
+			if ((info[i] & 1) == 0) {
+				DxGeom g = proxyGeom[info[i] >> 1];
+				if (GEOM_ENABLED(g)) {
+					collideAABBs(g, geom, data, callback);
+				}
+			}
+		}
+
+		lock_count--;
+	}
+
+	@Override
+	void query(DAABBC aabb, DVector3C center, double radius, DGeomBuffer geoms) {
+		for (int i = 0; i < infGeomList.size(); i++) {
+			queryGeom(infGeomList.get(i), aabb, center, radius, geoms);
+		}
+		// all proxies with a minimum below the maximum of the box
+		double max0 = aabb.getMax(axes[0]);
+		double[] value = endpointValue[0];
+		int[] info = endpointInfo[0];
+		for (int i = 0; i < endpointCount && value[i] <= max0; i++) {
+			if ((info[i] & 1) == 0) {
+				queryGeom(proxyGeom[info[i] >> 1], aabb, center, radius, geoms);
+			}
+		}
+	}
+
+	/**
+	 * Moves a clean geom between the proxies and the list of infinite geoms
+	 * and copies its AABB to its proxy.
+	 */
+	private void updateGeom(DxGeom g) {
+		DAABB bb = g._aabb;
+		boolean infinite = 
+				bb.getMin0() == -dInfinity || bb.getMax0() == dInfinity ||
+				bb.getMin1() == -dInfinity || bb.getMax1() == dInfinity ||
+				bb.getMin2() == -dInfinity || bb.getMax2() == dInfinity;
+		int proxy = g._sapIdxGeomEx;
+		if (infinite) {
+			if (proxy == INF_PROXY) {
+				return;
+			}
+			if (proxy >= 0) {
+				removeProxy(proxy);
+			}
+			infGeomList.add(g);
+			g._sapIdxGeomEx = INF_PROXY;
+			return;
+		}
+		if (proxy == INF_PROXY) {
+			infGeomList.remove(g);
+			proxy = NO_PROXY;
+		}
+		if (proxy == NO_PROXY) {
+			proxy = createProxy(g);
+		}
+		int o = proxy * 6;
+		for (int a = 0; a < 3; a++) {
+			proxyBox[o + 2 * a] = bb.getMin(axes[a]);
+			proxyBox[o + 2 * a + 1] = bb.getMax(axes[a]);
+		}
+	}
+
+	/**
+	 * Creates a proxy with endpoints at the end of the endpoint arrays, the 
+	 * following sort moves them into place.
+	 */
+	private int createProxy(DxGeom g) {
+		int proxy;
+		if (freeProxyCount > 0) {
+			proxy = freeProxies[--freeProxyCount];
+		} else {
+			proxy = proxyCount++;
+			if (proxy == proxyGeom.length) {
+				proxyGeom = Arrays.copyOf(proxyGeom, proxy * 2);
+				proxyBox = Arrays.copyOf(proxyBox, proxy * 2 * 6);
+			}
+		}
+		proxyGeom[proxy] = g;
+		g._sapIdxGeomEx = proxy;
+		addedProxyCount++;
+
+		if (endpointCount + 2 > endpointInfo[0].length) {
+			for (int a = 0; a < 3; a++) {
+				endpointValue[a] = Arrays.copyOf(endpointValue[a], endpointCount * 2);
+				endpointInfo[a] = Arrays.copyOf(endpointInfo[a], endpointCount * 2);
+			}
+		}
+		for (int a = 0; a < 3; a++) {
+			endpointInfo[a][endpointCount] = proxy << 1;
+			endpointInfo[a][endpointCount + 1] = (proxy << 1) | 1;
+		}
+		endpointCount += 2;
+		return proxy;
+	}
+
+	/**
+	 * Marks a proxy as removed. Its endpoints are moved to the end of the 
+	 * arrays by the next sort and then dropped.
+	 */
+	private void removeProxy(int proxy) {
+		proxyGeom[proxy] = null;
+		int o = proxy * 6;
+		for (int i = 0; i < 6; i++) {
+			proxyBox[o + i] = dInfinity;
+		}
+		removedProxyCount++;
+	}
+
+	/**
+	 * Drops the endpoints and the pairs of removed proxies and recycles 
+	 * their ids.
+	 */
+	private void releaseRemovedProxies() {
+		int[] info = endpointInfo[0];
+		while (endpointCount > 0 && proxyGeom[info[endpointCount - 1] >> 1] == null) {
+			int proxy = info[endpointCount - 1] >> 1;
+			if ((info[endpointCount - 1] & 1) == 1) {
+				if (freeProxyCount == freeProxies.length) {
+					freeProxies = Arrays.copyOf(freeProxies, freeProxyCount * 2);
+				}
+				freeProxies[freeProxyCount++] = proxy;
+			}
+			endpointCount--;
+		}
+		// Pairs of two removed proxies do not necessarily see a swap
+		for (int i = pairs.size() - 1; i >= 0; i--) {
+			long key = pairs.get(i);
+			if (proxyGeom[(int) (key >>> 32)] == null || proxyGeom[(int) key] == null) {
+				pairs.remove(key);
+			}
+		}
+		removedProxyCount = 0;
+	}
+
+	private void refreshEndpoints(int axis) {
+		double[] value = endpointValue[axis];
+		int[] info = endpointInfo[axis];
+		double[] box = proxyBox;
+		int offset = 2 * axis;
+		for (int i = 0; i < endpointCount; i++) {
+			int e = info[i];
+			value[i] = box[(e >> 1) * 6 + offset + (e & 1)];
+		}
+	}
+
+	/**
+	 * Insertion sort of the endpoints of one axis. An endpoint that passes 
+	 * an endpoint of another proxy may change the overlap of the two proxies.
+	 */
+	private void sortEndpoints(int axis) {
+		double[] value = endpointValue[axis];
+		int[] info = endpointInfo[axis];
+		for (int i = 1; i < endpointCount; i++) {
+			double v = value[i];
+			int e = info[i];
+			int j = i - 1;
+			while (j >= 0 && (value[j] > v || (value[j] == v && (info[j] & 1) > (e & 1)))) {
+				int other = info[j];
+				if ((other & 1) != (e & 1)) {
+					// a minimum passes a maximum or vice versa
+					updatePair(e >> 1, other >> 1);
+				}
+				value[j + 1] = value[j];
+				info[j + 1] = other;
+				j--;
+			}
+			value[j + 1] = v;
+			info[j + 1] = e;
+		}
+	}
+
+	/**
+	 * Stable merge sort of the endpoints of one axis, without updating 
+	 * the pairs.
+	 */
+	private void mergeSortEndpoints(int axis) {
+		if (tmpValue.length < endpointCount) {
+			tmpValue = new double[endpointInfo[0].length];
+			tmpInfo = new int[endpointInfo[0].length];
+		}
+		double[] value = endpointValue[axis];
+		int[] info = endpointInfo[axis];
+		double[] srcValue = value, dstValue = tmpValue;
+		int[] srcInfo = info, dstInfo = tmpInfo;
+		for (int width = 1; width < endpointCount; width *= 2) {
+			for (int lo = 0; lo < endpointCount; lo += 2 * width) {
+				int mid = Math.min(lo + width, endpointCount);
+				int hi = Math.min(lo + 2 * width, endpointCount);
+				int i = lo, j = mid, k = lo;
+				while (i < mid && j < hi) {
+					double vi = srcValue[i], vj = srcValue[j];
+					if (vj < vi || (vj == vi && (srcInfo[j] & 1) < (srcInfo[i] & 1))) {
+						dstValue[k] = vj;
+						dstInfo[k++] = srcInfo[j++];
+					} else {
+						dstValue[k] = vi;
+						dstInfo[k++] = srcInfo[i++];
+					}
+				}
+				while (i < mid) {
+					dstValue[k] = srcValue[i];
+					dstInfo[k++] = srcInfo[i++];
+				}
+				while (j < hi) {
+					dstValue[k] = srcValue[j];
+					dstInfo[k++] = srcInfo[j++];
+				}
+			}
+			double[] tv = srcValue; srcValue = dstValue; dstValue = tv;
+			int[] ti = srcInfo; srcInfo = dstInfo; dstInfo = ti;
+		}
+		if (srcValue != value) {
+			System.arraycopy(srcValue, 0, value, 0, endpointCount);
+			System.arraycopy(srcInfo, 0, info, 0, endpointCount);
+		}
+	}
+
+	/**
+	 * Finds all overlapping pairs with a sweep over the sorted endpoints of 
+	 * the first axis.
+	 */
+	private void rebuildPairs() {
+		pairs.clear();
+		if (active.length < proxyCount) {
+			active = new int[proxyGeom.length];
+			activePos = new int[proxyGeom.length];
+		}
+		int activeCount = 0;
+		int[] info = endpointInfo[0];
+		for (int i = 0; i < endpointCount; i++) {
+			int proxy = info[i] >> 1;
+			if ((info[i] & 1) == 0) {
+				for (int k = 0; k < activeCount; k++) {
+					if (overlap(proxy, active[k])) {
+						pairs.add(proxy, active[k]);
+					}
+				}
+				activePos[proxy] = activeCount;
+				active[activeCount++] = proxy;
+			} else {
+				int last = active[--activeCount];
+				active[activePos[proxy]] = last;
+				activePos[last] = activePos[proxy];
+			}
+		}
+	}
+
+	private void updatePair(int p1, int p2) {
+		if (p1 == p2) {
+			return;
+		}
+		if (overlap(p1, p2)) {
+			pairs.add(p1, p2);
+		} else {
+			pairs.remove(PairSet.key(p1, p2));
+		}
+	}
+
+	private boolean overlap(int p1, int p2) {
+		if (proxyGeom[p1] == null || proxyGeom[p2] == null) {
+			return false;
+		}
+		double[] b = proxyBox;
+		int o1 = p1 * 6, o2 = p2 * 6;
+		return b[o1] <= b[o2 + 1] && b[o2] <= b[o1 + 1] && 
+				b[o1 + 2] <= b[o2 + 3] && b[o2 + 2] <= b[o1 + 3] &&
+				b[o1 + 4] <= b[o2 + 5] && b[o2 + 4] <= b[o1 + 5];
+	}
+
+	/**
+	 * Set of proxy pairs. The pairs are kept in a dense array for iteration,
+	 * an open addressing hash table with linear probing maps the pairs to 
+	 * their index in the dense array.
+	 */
+	private static final class PairSet {
+		private static final long EMPTY = -1L;
+
+		private long[] dense = new long[64];
+		private int size = 0;
+		private long[] tableKey;
+		private int[] tableIndex;
+		private int mask;
+
+		PairSet() {
+			allocateTable(128);
+		}
+
+		static long key(int p1, int p2) {
+			return p1 < p2 ? ((long) p1 << 32) | p2 : ((long) p2 << 32) | p1;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			Arrays.fill(tableKey, EMPTY);
+			size = 0;
+		}
+
+		long get(int i) {
+			return dense[i];
+		}
+
+		void add(int p1, int p2) {
+			long key = key(p1, p2);
+			int slot = hash(key);
+			while (tableKey[slot] != EMPTY) {
+				if (tableKey[slot] == key) {
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (size == dense.length) {
+				dense = Arrays.copyOf(dense, size * 2);
+			}
+			tableKey[slot] = key;
+			tableIndex[slot] = size;
+			dense[size++] = key;
+			if (size * 2 > tableKey.length) {
+				rehash(tableKey.length * 2);
+			}
+		}
+
+		void remove(long key) {
+			int slot = find(key);
+			if (slot < 0) {
+				return;
+			}
+			// move the last pair into the gap of the dense array
+			int index = tableIndex[slot];
+			long last = dense[--size];
+			if (index != size) {
+				dense[index] = last;
+				tableIndex[find(last)] = index;
+			}
+			// backward shift deletion
+			int hole = slot;
+			int next = (hole + 1) & mask;
+			while (tableKey[next] != EMPTY) {
+				int home = hash(tableKey[next]);
+				// move the entry if its home is not in (hole, next]
+				if (((next - home) & mask) >= ((next - hole) & mask)) {
+					tableKey[hole] = tableKey[next];
+					tableIndex[hole] = tableIndex[next];
+					hole = next;
+				}
+				next = (next + 1) & mask;
+			}
+			tableKey[hole] = EMPTY;
+		}
+
+		private int find(long key) {
+			int slot = hash(key);
+			while (tableKey[slot] != EMPTY) {
+				if (tableKey[slot] == key) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32)) & mask;
+		}
+
+		private void allocateTable(int capacity) {
+			tableKey = new long[capacity];
+			Arrays.fill(tableKey, EMPTY);
+			tableIndex = new int[capacity];
+			mask = capacity - 1;
+		}
+
+		private void rehash(int capacity) {
+			allocateTable(capacity);
+			for (int i = 0; i < size; i++) {
+				int slot = hash(dense[i]);
+				while (tableKey[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				tableKey[slot] = dense[i];
+				tableIndex[slot] = i;
+			}
+			dIASSERT(size * 2 <= capacity);
+		}
+	}
+}
@@ -26,9 +26,15 @@ package org.ode4j.ode.internal;
 
 import java.util.Iterator;
 
+import org.ode4j.math.DVector3C;
 import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DContactGeomBuffer;
 import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeomBuffer;
+import org.ode4j.ode.DGeomPairBuffer;
 import org.ode4j.ode.DSpace;
+import org.ode4j.ode.threading.DxThreadingBase;
 
 import static org.ode4j.ode.internal.Common.*;
 
@@ -73,6 +79,8 @@ public abstract class DxSpace extends DxGeom implements DSpace {
 	protected DxGeom _first = null;		// first geom in list
 	boolean cleanup;			// cleanup mode, 1=destroy geoms on exit
 	int sublevel;         // space sublevel (used in dSpaceCollide2). NOT TRACKED AUTOMATICALLY!!!
+	boolean activityAware;	// (TZ) skip pairs of inactive geoms, see DxGeom.isInactivePair()
+	private final DAABB queryBounds = new DAABB();	// (TZ) bounds of the sphere of querySphere()
 	//unsigned
 	int tls_kind;	// space TLS kind to be used for global caches retrieval
 
@@ -289,6 +297,149 @@ public abstract class DxSpace extends DxGeom implements DSpace {
 		}
 	}
 
+	// (TZ) Adds the pairs to the pair buffer passed as data
+	static final DNearCallback pairCollector = new DNearCallback() {
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			if (o1 instanceof DxSpace || o2 instanceof DxSpace) {
+				// The interior of the spaces is added by collectPairs()
+				dSpaceCollide2((DxGeom)o1, (DxGeom)o2, data, this);
+				return;
+			}
+			((DGeomPairBuffer)data).add(o1, o2);
+		}
+	};
+
+	@Override
+	public void collectPairs(DGeomPairBuffer pairs)
+	{
+		dAASSERT(pairs);
+		collide(pairs, pairCollector);
+		for (DxGeom g = _first; g != null; g = g.getNext()) {
+			if (g instanceof DxSpace && GEOM_ENABLED(g)) {
+				((DxSpace)g).collectPairs(pairs);
+			}
+		}
+	}
+
+	@Override
+	public void queryAABB(DAABBC aabb, DGeomBuffer geoms)
+	{
+		dAASSERT(aabb, geoms);
+		lock_count++;
+		cleanGeoms();
+		query(aabb, null, 0, geoms);
+		lock_count--;
+	}
+
+	@Override
+	public void querySphere(DVector3C center, double radius, DGeomBuffer geoms)
+	{
+		dAASSERT(center, geoms);
+		dUASSERT(radius >= 0, "radius must not be negative");
+		queryBounds.set(center.get0() - radius, center.get0() + radius, 
+				center.get1() - radius, center.get1() + radius, 
+				center.get2() - radius, center.get2() + radius);
+		lock_count++;
+		cleanGeoms();
+		query(queryBounds, center, radius, geoms);
+		lock_count--;
+	}
+
+	/**
+	 * (TZ) Appends the enabled geoms whose AABB overlaps the box and, if 
+	 * <tt>center</tt> is not null, the sphere. The space is clean. Spaces 
+	 * should override this to visit only the geoms near the box, the default 
+	 * implementation tests all geoms.
+	 */
+	void query(DAABBC aabb, DVector3C center, double radius, DGeomBuffer geoms)
+	{
+		for (DxGeom g = _first; g != null; g = g.getNext()) {
+			queryGeom(g, aabb, center, radius, geoms);
+		}
+	}
+
+	/**
+	 * (TZ) Appends the geom for query() if it is a hit, sub-spaces are 
+	 * searched instead.
+	 */
+	final void queryGeom(DxGeom g, DAABBC aabb, DVector3C center, double radius, 
+			DGeomBuffer geoms)
+	{
+		DAABB bb = g._aabb;
+		if (!GEOM_ENABLED(g) || bb.isDisjoint(aabb)) {
+			return;
+		}
+		if (center != null) {
+			// squared distance of the center to the AABB
+			double dist2 = 0;
+			for (int a = 0; a < 3; a++) {
+				double c = center.get(a);
+				double d = c < bb.getMin(a) ? bb.getMin(a) - c : 
+					(c > bb.getMax(a) ? c - bb.getMax(a) : 0);
+				dist2 += d*d;
+			}
+			if (dist2 > radius*radius) {
+				return;
+			}
+		}
+		if (g instanceof DxSpace) {
+			((DxSpace)g).query(aabb, center, radius, geoms);
+		}
+		else {
+			geoms.add(g);
+		}
+	}
+
+	/**
+	 * (TZ) Appends the pairs that spaceCollide2() reports for every geom 
+	 * with this space to the pair buffer, pairs with sub-spaces are resolved.
+	 * @param geoms query geoms, must not be spaces
+	 * @param threading threading implementation for the queries or null, 
+	 * not used by the default implementation
+	 * @param pairs buffer for the pairs
+	 */
+	void collide2Batch(DGeom[] geoms, DxThreadingBase threading, DGeomPairBuffer pairs)
+	{
+		for (DGeom g : geoms) {
+			collide2(pairs, (DxGeom)g, pairCollector);
+		}
+	}
+
+	/**
+	 * (TZ) See {@link #collide2Batch(DGeom[], DxThreadingBase, DGeomPairBuffer)}.
+	 * @param world world whose threads are used or null
+	 */
+	public static void dSpaceCollide2Batch(DxSpace space, DGeom[] geoms, DxWorld world, 
+			DGeomPairBuffer pairs)
+	{
+		dAASSERT(space, geoms, pairs);
+		for (DGeom g : geoms) {
+			dUASSERT(!(g instanceof DxSpace), "query geoms must not be spaces");
+		}
+		space.collide2Batch(geoms, world != null ? world.threading() : null, pairs);
+	}
+
+	/**
+	 * (TZ) Collides the pairs one after the other, the contacts of the pairs 
+	 * are stored one after the other.
+	 * @return total number of contacts
+	 */
+	public static int dCollideBatch(DGeomPairBuffer pairs, int flags, 
+			DContactGeomBuffer contacts, int[] contactCounts)
+	{
+		dAASSERT(pairs, contacts, contactCounts);
+		dUASSERT(contactCounts.length >= pairs.size(), "contactCounts is too short");
+		int total = 0;
+		for (int i = 0; i < pairs.size(); i++) {
+			int n = dCollide((DxGeom)pairs.getGeom1(i), (DxGeom)pairs.getGeom2(i), flags, 
+					contacts.createView(total), 1);
+			contactCounts[i] = n;
+			total += n;
+		}
+		return total;
+	}
+
 	//****************************************************************************
 	// dxSpace
 
@@ -387,6 +538,18 @@ public abstract class DxSpace extends DxGeom implements DSpace {
 		return sublevel;
 	}
 
+	@Override
+	public void setActivityAware(boolean enable)
+	{
+		activityAware = enable;
+	}
+
+	@Override
+	public boolean isActivityAware()
+	{
+		return activityAware;
+	}
+
 	
 	@Override
 	public void setManualCleanup(int value) { 
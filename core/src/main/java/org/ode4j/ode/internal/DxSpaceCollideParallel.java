@@ -0,0 +1,261 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001,2002 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.internal;
+
+import static org.ode4j.ode.internal.Common.dIASSERT;
+import static org.ode4j.ode.internal.Common.dUASSERT;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeomPairBuffer;
+import org.ode4j.ode.DGeom.DParallelNearCallback;
+import org.ode4j.ode.internal.cpp4j.java.Ref;
+import org.ode4j.ode.internal.cpp4j.java.RefInt;
+import org.ode4j.ode.threading.DxThreadingBase;
+import org.ode4j.ode.threading.Threading_H.CallContext;
+import org.ode4j.ode.threading.Threading_H.DCallReleasee;
+import org.ode4j.ode.threading.Threading_H.DCallWait;
+import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
+
+/**
+ * (TZ) Collides a space with the narrowphase running on the threads of a 
+ * world.
+ * <p>
+ * The broadphase runs in the calling thread and collects the geom pairs 
+ * with {@link DxSpace#collectPairs(DGeomPairBuffer)}, the pairs that are not 
+ * accepted by the user are removed. The list is split into chunks of pairs that the jobs 
+ * pick up one after the other, every chunk has its own contact buffer. 
+ * When all jobs have finished, the contacts are reported in the order of 
+ * the pair list. The result is therefore the same for any number of threads. 
+ * <p>
+ * The colliders must not modify state that is shared between pairs, which is 
+ * true for the built-in colliders as long as the geoms are not moved during 
+ * the call.
+ */
+public class DxSpaceCollideParallel implements CallContext {
+
+	// Pairs per job chunk, small enough to balance the load between the jobs
+	private static final int PAIRS_PER_CHUNK = 16;
+
+	private final DxWorld world;
+
+	// Broadphase pairs
+	private final DGeomPairBuffer pairs = new DGeomPairBuffer();
+	private int pairCount;
+	private int[] pairContacts = new int[PAIRS_PER_CHUNK];
+
+	// Contact buffers of the chunks, reused between calls
+	private DContactGeomBuffer[] chunkBuffers = new DContactGeomBuffer[1];
+	private int chunkBufferContacts;
+
+	private final AtomicInteger nextChunk = new AtomicInteger();
+	private int chunkCount;
+	private int flags;
+	private int maxContacts;
+
+	private Object data;
+	private DParallelNearCallback callback;
+	private boolean busy;
+
+	DxSpaceCollideParallel(DxWorld world) {
+		this.world = world;
+	}
+
+	/**
+	 * @param space space to collide
+	 * @param flags flags for dCollide, the lower bits are the maximum number 
+	 * of contacts per pair
+	 * @param data user data
+	 * @param callback user callback
+	 */
+	void collide(DxSpace space, int flags, Object data, DParallelNearCallback callback) {
+		dUASSERT(!busy, "spaceCollideParallel() can not be called recursively");
+		dUASSERT((flags & DxGeom.NUMC_MASK) > 0, "no contacts requested");
+		busy = true;
+		try {
+			this.flags = flags;
+			this.maxContacts = flags & DxGeom.NUMC_MASK;
+			this.data = data;
+			this.callback = callback;
+			space.collectPairs(pairs);
+			acceptPairs();
+			pairCount = pairs.size();
+			if (pairCount != 0) {
+				prepareChunks();
+				if (!runThreadedJobs(world.threading(), chunkCount, 
+						ThreadedCollideJob_Callback, this, "Space Collide")) {
+					collidePairs();
+				}
+				reportContacts();
+			}
+		} finally {
+			// Don't keep the user's geoms and objects alive
+			pairs.clear();
+			pairCount = 0;
+			this.data = null;
+			this.callback = null;
+			busy = false;
+		}
+	}
+
+	//****************************************************************************
+	// broadphase
+
+	/**
+	 * Removes the pairs that are not accepted by the user, keeping the order.
+	 */
+	private void acceptPairs() {
+		int n = 0;
+		for (int i = 0; i < pairs.size(); i++) {
+			DGeom o1 = pairs.getGeom1(i);
+			DGeom o2 = pairs.getGeom2(i);
+			if (callback.accept(data, o1, o2)) {
+				pairs.set(n++, o1, o2);
+			}
+		}
+		pairs.setSize(n);
+	}
+
+	//****************************************************************************
+	// narrowphase
+
+	private void prepareChunks() {
+		chunkCount = (pairCount + PAIRS_PER_CHUNK - 1) / PAIRS_PER_CHUNK;
+		if (pairContacts.length < pairCount) {
+			pairContacts = new int[Math.max(pairCount, 2*pairContacts.length)];
+		}
+		if (chunkBufferContacts != maxContacts) {
+			// The buffers are allocated by the jobs when they are needed
+			Arrays.fill(chunkBuffers, null);
+			chunkBufferContacts = maxContacts;
+		}
+		if (chunkBuffers.length < chunkCount) {
+			DContactGeomBuffer[] newBuffers = new DContactGeomBuffer[Math.max(chunkCount, 2*chunkBuffers.length)];
+			System.arraycopy(chunkBuffers, 0, newBuffers, 0, chunkBuffers.length);
+			chunkBuffers = newBuffers;
+		}
+		nextChunk.set(0);
+	}
+
+	private void collidePairs() {
+		int chunk;
+		while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+			collideChunk(chunk);
+		}
+	}
+
+	private void collideChunk(int chunk) {
+		DContactGeomBuffer buffer = chunkBuffers[chunk];
+		if (buffer == null) {
+			buffer = new DContactGeomBuffer(PAIRS_PER_CHUNK*maxContacts);
+			chunkBuffers[chunk] = buffer;
+		}
+		int first = chunk*PAIRS_PER_CHUNK;
+		int last = Math.min(first + PAIRS_PER_CHUNK, pairCount);
+		for (int i = first; i < last; i++) {
+			DContactGeomBuffer contacts = buffer.createView((i - first)*maxContacts);
+			pairContacts[i] = DxGeom.dCollide((DxGeom)pairs.getGeom1(i), (DxGeom)pairs.getGeom2(i), 
+					flags, contacts, 1);
+		}
+	}
+
+	/**
+	 * Runs <tt>job</tt> on the threads of the threading implementation, 
+	 * once per thread but at most <tt>maxJobCount</tt> times. The jobs have 
+	 * to pick up their work items themselves. 
+	 * Also used by {@link DxSAPSpace2}.
+	 * @param threading the threading implementation, may be <tt>null</tt>
+	 * @param maxJobCount the number of work items
+	 * @param job the job callback, called with <tt>context</tt>
+	 * @param context the context of the job
+	 * @param name the name of the calls
+	 * @return false if the jobs have not been run, the caller then has to 
+	 * do the work itself
+	 */
+	static boolean runThreadedJobs(DxThreadingBase threading, int maxJobCount, 
+			dThreadedCallFunction job, CallContext context, String name) {
+		if (threading == null) {
+			return false;
+		}
+		int jobCount = Math.min(threading.RetrieveThreadingThreadCount(), maxJobCount);
+		if (jobCount <= 1 || !threading.PreallocateResourcesForThreadedCalls(jobCount + 1)) {
+			return false;
+		}
+
+		DCallWait callWait = threading.AllocThreadedCallWait();
+		try {
+			RefInt summaryFault = new RefInt();
+			Ref<DCallReleasee> groupReleasee = new Ref<DCallReleasee>();
+			// The group call depends on the jobs and completes after all of them
+			threading.PostThreadedCall(summaryFault, groupReleasee, jobCount, null, 
+					callWait, ThreadedGroup_Callback, context, 0, name + " Group");
+			threading.PostThreadedCallsGroup(null, jobCount, groupReleasee.get(), 
+					job, context, name + " Job");
+			threading.WaitThreadedCallExclusively(null, callWait, null, name + " Wait");
+			dIASSERT(summaryFault.get() == 0);
+		} finally {
+			threading.FreeThreadedCallWait(callWait);
+		}
+		return true;
+	}
+
+	private static final dThreadedCallFunction ThreadedGroup_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext callContext, 
+				int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
+		{
+			// Do nothing - it's just a wrapper call
+			return true;
+		}
+	};
+
+	private static final dThreadedCallFunction ThreadedCollideJob_Callback = new dThreadedCallFunction() {
+		@Override
+		public boolean run(CallContext callContext, 
+				int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
+		{
+			((DxSpaceCollideParallel)callContext).collidePairs();
+			return true;
+		}
+	};
+
+	//****************************************************************************
+	// merge
+
+	private void reportContacts() {
+		for (int i = 0; i < pairCount; i++) {
+			int n = pairContacts[i];
+			if (n != 0) {
+				int chunk = i / PAIRS_PER_CHUNK;
+				DContactGeomBuffer contacts = 
+						chunkBuffers[chunk].createView((i - chunk*PAIRS_PER_CHUNK)*maxContacts);
+				callback.contacts(data, pairs.getGeom1(i), pairs.getGeom2(i), contacts, n);
+			}
+		}
+	}
+}
@@ -66,10 +66,11 @@ public abstract class DxTriMesh extends DxGeom implements DTriMesh {
 			DTriRayCallback RayCallback)
 	{
 		DxTriMesh Geom;
-		switch (OdeConfig.dTRIMESH_TYPE) {
+		switch (OdeConfig.getTrimeshType()) {
 		case DISABLED: Geom = new DxTriMeshDisabled(space, Data); break;
-		case GIMPACT: Geom = new DxGimpact(space, (DxGimpactData) Data); break;
-		default: throw new IllegalArgumentException(OdeConfig.dTRIMESH_TYPE.name());
+		case GIMPACT: 
+		case QUANTIZED: Geom = new DxGimpact(space, (DxGimpactData) Data); break;
+		default: throw new IllegalArgumentException(OdeConfig.getTrimeshType().name());
 		}
 		Geom.Callback = Callback;
 		Geom.ArrayCallback = ArrayCallback;
@@ -49,10 +49,11 @@ public abstract class DxTriMeshData implements DTriMeshData {
     abstract void UpdateData();
 
     public static DTriMeshData dGeomTriMeshDataCreate() {
-		switch (OdeConfig.dTRIMESH_TYPE) {
+		switch (OdeConfig.getTrimeshType()) {
 		case DISABLED: return new DxTriMeshDisabled.dxTriMeshDisabledData();
-		case GIMPACT: return new DxGimpactData();
-		default: throw new IllegalArgumentException(OdeConfig.dTRIMESH_TYPE.name());
+		case GIMPACT: return new DxGimpactData(false);
+		case QUANTIZED: return new DxGimpactData(true);
+		default: throw new IllegalArgumentException(OdeConfig.getTrimeshType().name());
 		}
     }
 //	public abstract void dGeomTriMeshDataDestroy();
@@ -42,6 +42,11 @@ class DxTriMeshDisabled extends DxTriMesh {
 			throw new UnsupportedOperationException();
 		}
 
+		@Override
+		public void updateVertices(int firstVertex, int vertexCount) {
+			throw new UnsupportedOperationException();
+		}
+
 //		@Override
 //		public void buildSingle(double[] Vertices,
 //				int VertexStride, int VertexCount, int[] Indices,
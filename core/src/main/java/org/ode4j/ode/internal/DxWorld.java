@@ -26,17 +26,20 @@ package org.ode4j.ode.internal;
 
 import static org.ode4j.ode.OdeConstants.dInfinity;
 import static org.ode4j.ode.OdeMath.dCalcVectorDot3;
+import static org.ode4j.ode.internal.Common.dAASSERT;
 import static org.ode4j.ode.internal.Common.dIASSERT;
 import static org.ode4j.ode.internal.Common.dNODEBUG;
 import static org.ode4j.ode.internal.Common.dRecip;
 import static org.ode4j.ode.internal.Common.dSqrt;
 import static org.ode4j.ode.internal.Common.dUASSERT;
 import static org.ode4j.ode.internal.ErrorHandler.dMessage;
+import static org.ode4j.ode.internal.Matrix.dSetZero;
 import static org.ode4j.ode.internal.Objects_H.g_world_default_threading_functions;
 import static org.ode4j.ode.internal.Objects_H.g_world_default_threading_impl;
 
 import org.ode4j.math.DVector3;
 import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DGeom.DParallelNearCallback;
 import org.ode4j.ode.DWorld;
 import org.ode4j.ode.internal.Objects_H.dxAutoDisable;
 import org.ode4j.ode.internal.Objects_H.dxContactParameters;
@@ -73,6 +76,7 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 
 	//TZ these are super-classes, but I made them delegates.
 	private DxThreadingBase dxThreadingBase;
+	private DxSpaceCollideParallel spaceCollideParallel;
 	//private DxIThreadingDefaultImplProvider dxIThreadingDefaultImplProvider;
 	
 	//TODO
@@ -91,8 +95,15 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	int body_flags;               // flags for new bodies
     private int islands_max_threads; // maximum threads to allocate for island processing
 	public DxStepWorkingMemory wmem; // Working memory object for dWorldStep/dWorldQuickStep
+	public final DxIslandTracker islands = new DxIslandTracker(); // islands between steps
 
 	dxQuickStepParameters qs;
+	private DxContactLambdaCache contactLambdaCache; // contact lambdas for warm starting, see dWorldQuickStep()
+	private final DxRandom rand = new DxRandom(); // seeds the random generators of the islands
+	// QuickStep statistics of the last step, indexed by island
+	private int qs_island_count;
+	private int[] qs_island_iterations = new int[0];
+	private double[] qs_island_residuals = new double[0];
 	public dxContactParameters contactp;
 	dxDampingParameters dampingp; // damping parameters
 	double max_angular_speed;      // limit the angular velocity to this magnitude
@@ -464,10 +475,20 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 
 	    boolean result = false;
 
+	    if (qs.warm_starting) {
+	    	// Contact joints are recreated every step: hand over the lambdas of 
+	    	// the previous step's contacts before the islands are processed.
+	    	if (contactLambdaCache == null) {
+	    		contactLambdaCache = new DxContactLambdaCache();
+	    	}
+	    	contactLambdaCache.seed(firstjoint.get());
+	    }
+
 	    DxWorldProcessIslandsInfo islandsinfo = new DxWorldProcessIslandsInfo();
 	    if (DxWorldProcessContext.dxReallocateWorldProcessContext (this, islandsinfo, stepsize, 
 	            DxQuickStep.INSTANCE))//dxEstimateQuickStepMemoryRequirements))
 	    {
+	    	dxResetQuickStepIslandStatistics(islandsinfo.GetIslandsCount());
 	    	//if (dxProcessIslands (w, islandsinfo, stepsize, &dxQuickStepIsland, &dxEstimateQuickStepMaxCallCount))
 	        if (dxProcessIslands (islandsinfo, stepsize, DxQuickStep.INSTANCE, Step.INSTANCE))
 	        {
@@ -475,6 +496,10 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	        }
 	    }
 
+	    if (result && qs.warm_starting) {
+	    	contactLambdaCache.store(firstjoint.get());
+	    }
+
 	    return result;
 	}
 
@@ -679,6 +704,114 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	}
 
 
+	private void dWorldSetQuickStepParallelSOR (boolean parallel)
+	{
+		qs.parallel_sor = parallel;
+	}
+
+
+	private boolean dWorldGetQuickStepParallelSOR ()
+	{
+		return qs.parallel_sor;
+	}
+
+
+	private void dWorldSetQuickStepWarmStarting (boolean warmStarting)
+	{
+		if (qs.warm_starting && !warmStarting) {
+			// Forget the lambdas, they would be stale when warm starting is enabled again
+			contactLambdaCache = null;
+			for (DxJoint j = firstjoint.get(); j != null; j = (DxJoint)j.getNext()) {
+				dSetZero(j.lambda);
+			}
+		}
+		qs.warm_starting = warmStarting;
+	}
+
+
+	private boolean dWorldGetQuickStepWarmStarting ()
+	{
+		return qs.warm_starting;
+	}
+
+
+	private void dWorldSetQuickStepConvergenceTolerance (double tolerance)
+	{
+		dUASSERT (tolerance >= 0, "tolerance must be >= 0");
+		qs.tolerance = tolerance;
+	}
+
+
+	private double dWorldGetQuickStepConvergenceTolerance ()
+	{
+		return qs.tolerance;
+	}
+
+
+	private void dWorldSetQuickStepMinIterations (int num)
+	{
+		dUASSERT (num >= 1, "minimum number of iterations must be >= 1");
+		qs.min_iterations = num;
+	}
+
+
+	private int dWorldGetQuickStepMinIterations ()
+	{
+		return qs.min_iterations;
+	}
+
+
+	private void dxResetQuickStepIslandStatistics (int islandCount)
+	{
+		if (qs_island_iterations.length < islandCount) {
+			qs_island_iterations = new int[islandCount];
+			qs_island_residuals = new double[islandCount];
+		}
+		for (int i = 0; i < islandCount; i++) {
+			qs_island_iterations[i] = 0;
+			qs_island_residuals[i] = 0;
+		}
+		qs_island_count = islandCount;
+	}
+
+
+	/**
+	 * Records the SOR statistics of an island. Islands may be processed 
+	 * concurrently, but each one only writes its own entry.
+	 */
+	void dxSetQuickStepIslandStatistics (int island, int iterations, double residual)
+	{
+		qs_island_iterations[island] = iterations;
+		qs_island_residuals[island] = residual;
+	}
+
+
+	private void dWorldSetRandomSeed (long seed)
+	{
+		rand.dRandSetSeed(seed);
+	}
+
+
+	private long dWorldGetRandomSeed ()
+	{
+		return rand.dRandGetSeed();
+	}
+
+
+	private int dWorldGetQuickStepIslandIterations (int island)
+	{
+		dUASSERT (island >= 0 && island < qs_island_count, "island index out of range");
+		return qs_island_iterations[island];
+	}
+
+
+	private double dWorldGetQuickStepIslandResidual (int island)
+	{
+		dUASSERT (island >= 0 && island < qs_island_count, "island index out of range");
+		return qs_island_residuals[island];
+	}
+
+
 //	void dWorldSetContactMaxCorrectingVel (dxWorld w, double vel)
 	public void dWorldSetContactMaxCorrectingVel (double vel)
 	{
@@ -796,8 +929,9 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	{
 		boolean result = false;
 
+		// Islands get their own generators, seeded from the world's generator once per step
 		DxIslandsProcessingCallContext callContext = new DxIslandsProcessingCallContext(this, 
-				islandsInfo, stepSize, stepper);
+				islandsInfo, stepSize, rand.dRand(), stepper);
 
 		do {
 			//DxStepWorkingMemory wmem = world.wmem;
@@ -813,7 +947,9 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 			dIASSERT(islandsAllowedThreadCount != 0);
 			dIASSERT(activeThreadCount.get() >= islandsAllowedThreadCount);
 
-			// For now, set stepper allowed threads equal to island stepping threads
+			// For now, set stepper allowed threads equal to island stepping threads. 
+			// (TZ) Only the islands that are large compared to the others use them, 
+			// see DxIslandsProcessingCallContext.AssignIslandsScheduling().
 			int stepperAllowedThreadCount = islandsAllowedThreadCount; 
 
 			int simultaneousCallsCount = EstimateIslandProcessingSimultaneousCallsMaximumCount(
@@ -832,6 +968,7 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 
 			callContext.AssignGroupReleasee(groupReleasee.get());
 			callContext.SetStepperAllowedThreads(stepperAllowedThreadCount);
+			callContext.AssignIslandsScheduling(islandsAllowedThreadCount);
 
 			// Summary fault flag may be omitted as any failures will automatically propagate to 
 			// dependent releasee (i.e. to groupReleasee)
@@ -858,10 +995,15 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	//****************************************************************************
 	// Auto disabling
 
+	/**
+	 * Only the bodies of the awake islands are visited, see 
+	 * {@link DxIslandTracker#update()}, which has to be called before.
+	 */
 	public void dInternalHandleAutoDisabling (double stepsize)
 	{
 		DxBody bb;
-		for ( bb=firstbody.get(); bb!=null; bb=(DxBody)bb.getNext() )
+		//for ( bb=firstbody.get(); bb!=null; bb=(DxBody)bb.getNext() )
+		for ( bb=islands.firstAwakeBody(); bb!=null; bb=islands.nextAwakeBody(bb) )
 		{
 			// don't freeze objects mid-air (patch 1586738)
 			if ( bb.firstjoint.get() == null ) continue;
@@ -989,7 +1131,7 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 			// disable the body if it's idle for a long enough time
 			if ( bb.adis_stepsleft <= 0 && bb.adis_timeleft <= 0 )
 			{
-				bb.flags |= DxBody.dxBodyDisabled; // set the disable flag
+				bb.dBodyDisable(); // set the disable flag
 
 				// disabling bodies should also include resetting the velocity
 				// should prevent jittering in big "islands"
@@ -1098,6 +1240,21 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 		return dxThreadingBase;
 	}
 
+	/**
+	 * (TZ) Collides the space with the narrowphase running on the threads 
+	 * of this world.
+	 * @see DxSpaceCollideParallel
+	 */
+	public void dSpaceCollideParallel(DxSpace space, int flags, Object data, 
+			DParallelNearCallback callback)
+	{
+		dAASSERT(space, callback);
+		if (spaceCollideParallel == null) {
+			spaceCollideParallel = new DxSpaceCollideParallel(this);
+		}
+		spaceCollideParallel.collide(space, flags, data, callback);
+	}
+
 	@Override
 	public void setGravity (double x, double y, double z)
 	{ dWorldSetGravity (x,y,z); }
@@ -1141,6 +1298,45 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 	@Override
 	public double getQuickStepW() 
 	{ return dWorldGetQuickStepW (); }
+	@Override
+	public void setQuickStepParallelSOR(boolean parallel)
+	{ dWorldSetQuickStepParallelSOR (parallel); }
+	@Override
+	public boolean getQuickStepParallelSOR() 
+	{ return dWorldGetQuickStepParallelSOR (); }
+	@Override
+	public void setQuickStepWarmStarting(boolean warmStarting)
+	{ dWorldSetQuickStepWarmStarting (warmStarting); }
+	@Override
+	public boolean getQuickStepWarmStarting() 
+	{ return dWorldGetQuickStepWarmStarting (); }
+	@Override
+	public void setQuickStepConvergenceTolerance(double tolerance)
+	{ dWorldSetQuickStepConvergenceTolerance (tolerance); }
+	@Override
+	public double getQuickStepConvergenceTolerance() 
+	{ return dWorldGetQuickStepConvergenceTolerance (); }
+	@Override
+	public void setQuickStepMinIterations(int num)
+	{ dWorldSetQuickStepMinIterations (num); }
+	@Override
+	public int getQuickStepMinIterations() 
+	{ return dWorldGetQuickStepMinIterations (); }
+	@Override
+	public void setRandomSeed(long seed)
+	{ dWorldSetRandomSeed (seed); }
+	@Override
+	public long getRandomSeed() 
+	{ return dWorldGetRandomSeed (); }
+	@Override
+	public int getQuickStepIslandCount() 
+	{ return qs_island_count; }
+	@Override
+	public int getQuickStepIslandIterations(int island) 
+	{ return dWorldGetQuickStepIslandIterations (island); }
+	@Override
+	public double getQuickStepIslandResidual(int island) 
+	{ return dWorldGetQuickStepIslandResidual (island); }
 
 	@Override
 	public void  setAutoDisableLinearThreshold (double threshold) 
@@ -1330,7 +1526,6 @@ public class DxWorld extends DBase implements DWorld, DxIThreadingDefaultImplPro
 
 
 	@Override
-	@Deprecated
 	public void setStepThreadingImplementation(
 			DThreadingFunctionsInfo functions_info,
 			DThreadingImplementation threading_impl) {
@@ -113,12 +113,20 @@ public class Misc extends Common {
 	 */
 	public static int dRandInt (long n)
 	{
-	    long result;
 	    // Since there is no memory barrier macro in ODE assign via volatile variable 
 	    // to prevent compiler reusing seed as value of `r'
 	    long raw_r = dRand();
-	    long r = raw_r;
-	    
+	    return dRandInt(raw_r, n);
+	}
+
+
+	/** 
+	 * Folds the 32 bit random number <tt>r</tt> into 0..n-1, see dRandInt(long).
+	 * (TZ) Shared with the non-atomic generator DxRandom.
+	 */
+	static int dRandInt (long r, long n)
+	{
+	    long result;
 	    long un = n;
 	    //dIASSERT(sizeof(n) == sizeof(un));
 
@@ -109,6 +109,10 @@ public class Objects_H {
 	public static class dxQuickStepParameters extends CloneableParameter {
 		public int num_iterations;		// number of SOR iterations to perform
 		public double w;			// the SOR over-relaxation parameter
+		public boolean parallel_sor;	// sweep independent (coloured) constraint rows in parallel
+		public boolean warm_starting;	// seed lambda with the (scaled) lambda of the previous step
+		public double tolerance;		// stop iterating once max |delta lambda| <= tolerance (0: never)
+		public int min_iterations;		// minimum number of SOR iterations if tolerance > 0
 		@Override
 		protected dxQuickStepParameters clone() {
 			return cloneThis();
@@ -118,6 +122,10 @@ public class Objects_H {
 	    dxQuickStepParameters() {
 	    	num_iterations = 20;
 	    	w = 1.3;
+	    	parallel_sor = false;
+	    	warm_starting = false;
+	    	tolerance = 0;
+	    	min_iterations = 1;
 	    }
 	}
 
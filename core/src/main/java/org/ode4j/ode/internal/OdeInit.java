@@ -26,6 +26,7 @@ package org.ode4j.ode.internal;
 
 import org.ode4j.ode.internal.cpp4j.java.RefBoolean;
 import org.ode4j.ode.internal.gimpact.Gimpact;
+import org.ode4j.ode.threading.DThreadingThreadPool;
 
 /**
  * ODE initialization/finalization code.
@@ -377,6 +378,9 @@ public class OdeInit {
 
         if (!bAnyModeStillInitialized)
         {
+            // (TZ) pool threads must not keep running after the library is closed
+            DThreadingThreadPool.freeAllThreadPools();
+
             CollideSpaceGeom.dClearPosrCache();
             DxGeom.dFinitUserClasses();
             DxGeom.dFinitColliders();
@@ -47,6 +47,7 @@ import static org.ode4j.ode.internal.cpp4j.Cstdio.stdout;
 import static org.ode4j.ode.threading.ThreadingUtils.ThrsafeExchange;
 import static org.ode4j.ode.threading.ThreadingUtils.ThrsafeIncrementIntUpToLimit;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ode4j.math.DMatrix3;
@@ -63,6 +64,8 @@ import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext.dstepper
 import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
 import org.ode4j.ode.internal.processmem.DxWorldProcessIslandsInfo.dmemestimate_fn_t;
 import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
+import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena.ArrayType;
+import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena.ObjectType;
 import org.ode4j.ode.threading.Threading_H.CallContext;
 import org.ode4j.ode.threading.Threading_H.DCallReleasee;
 import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
@@ -115,6 +118,17 @@ dmaxcallcountestimate_fn_t {
 		final DxJoint.Info1 info = new DxJoint.Info1();
 	}
 
+	private static final ArrayType<dJointWithInfo1> JOINTINFOS = new ArrayType<dJointWithInfo1>() {
+		@Override
+		protected dJointWithInfo1[] NewArray(int size) {
+			dJointWithInfo1[] jointinfos = new dJointWithInfo1[size];
+			for (int i = 0; i < size; i++) {
+				jointinfos[i] = new dJointWithInfo1();
+			}
+			return jointinfos;
+		}
+	};
+
 	private static class dxStepperStage0Outputs
 	{
 		int                          ji_start;
@@ -125,7 +139,7 @@ dmaxcallcountestimate_fn_t {
 
 	private static class dxStepperStage1CallContext implements CallContext
 	{
-		dxStepperStage1CallContext(final DxStepperProcessingCallContext stepperCallContext, 
+		void Initialize(final DxStepperProcessingCallContext stepperCallContext, 
 				BlockPointer stageMemArenaState, double[] invI, 
 				dJointWithInfo1[] jointinfosA, int jointinfosOfs)    {
 			m_stepperCallContext = stepperCallContext;
@@ -135,37 +149,59 @@ dmaxcallcountestimate_fn_t {
 			m_jointinfosOfs = jointinfosOfs;
 		}
 
-		final DxStepperProcessingCallContext m_stepperCallContext;
+		DxStepperProcessingCallContext m_stepperCallContext;
 		BlockPointer                    m_stageMemArenaState;
 		double[]                        m_invI;
 		dJointWithInfo1[]               m_jointinfosA;
 		int				                m_jointinfosOfs;
 		final dxStepperStage0Outputs          m_stage0Outputs = new dxStepperStage0Outputs();
+		final Ref<DCallReleasee>        m_releasee = new Ref<DCallReleasee>();
+	}
+
+	// (TZ) Temporaries of the inertia computation, one set per Stage0-Bodies thread
+	private static class dxStepperInertiaTemps
+	{
+		final DMatrix3                  m_tmp = new DMatrix3();
+		final DMatrix3                  m_I = new DMatrix3();
+		final DMatrix3                  m_Itild = new DMatrix3();
+		final DMatrix3                  m_itInv = new DMatrix3();
+		final DVector3                  m_L = new DVector3();
+		final DVector3                  m_tau0 = new DVector3();
 	}
 
 	private static class dxStepperStage0BodiesCallContext implements CallContext
 	{
-		dxStepperStage0BodiesCallContext(final DxStepperProcessingCallContext stepperCallContext, 
+		void Initialize(final DxStepperProcessingCallContext stepperCallContext, 
 				double[] invI)
-				{
+		{
 			m_stepperCallContext = stepperCallContext;
 			m_invI = invI; 
-			m_tagsTaken = new AtomicInteger(0);
-			m_gravityTaken = new AtomicInteger(0);
-			//m_inertiaBodyIndex = 0;
+			m_tagsTaken.set(0);
+			m_gravityTaken.set(0);
+			m_inertiaBodyIndex.set(0);
+			final int allowedThreads = stepperCallContext.m_stepperAllowedThreads();
+			if (m_temps.length < allowedThreads) {
+				dxStepperInertiaTemps[] temps = Arrays.copyOf(m_temps, allowedThreads);
+				for (int i = m_temps.length; i < allowedThreads; i++) {
+					temps[i] = new dxStepperInertiaTemps();
 				}
+				m_temps = temps;
+			}
+		}
 
-		final DxStepperProcessingCallContext m_stepperCallContext;
+		DxStepperProcessingCallContext m_stepperCallContext;
 		double[]                        m_invI;
-		final AtomicInteger                   m_tagsTaken;
-		final AtomicInteger                   m_gravityTaken;
+		final AtomicInteger                   m_tagsTaken = new AtomicInteger();
+		final AtomicInteger                   m_gravityTaken = new AtomicInteger();
 		//volatile int                    m_inertiaBodyIndex;
 		final AtomicInteger                     m_inertiaBodyIndex = new AtomicInteger();
+		// One per Stage0-Bodies thread
+		dxStepperInertiaTemps[]         m_temps = new dxStepperInertiaTemps[0];
 	}
 
 	private static class dxStepperStage0JointsCallContext implements CallContext
 	{
-		dxStepperStage0JointsCallContext(final DxStepperProcessingCallContext stepperCallContext, 
+		void Initialize(final DxStepperProcessingCallContext stepperCallContext, 
 				dJointWithInfo1[] jointinfosA, int jointinfosOfs, 
 				dxStepperStage0Outputs stage0Outputs) {
 			m_stepperCallContext = stepperCallContext;
@@ -174,7 +210,7 @@ dmaxcallcountestimate_fn_t {
 			m_stage0Outputs = stage0Outputs;
 		}
 
-		final DxStepperProcessingCallContext m_stepperCallContext;
+		DxStepperProcessingCallContext m_stepperCallContext;
 		dJointWithInfo1[]                 m_jointinfosA;
 		int				                  m_jointinfosOfs;
 		dxStepperStage0Outputs            m_stage0Outputs;
@@ -254,12 +290,20 @@ dmaxcallcountestimate_fn_t {
 			m_localContext = localContext;
 			m_JinvM = JinvM;
 			m_rhs_tmp_or_cfm = rhs_tmp_or_cfm;
-			//m_ji_J = 0;
-			//m_ji_Ainit = 0;
-			//m_ji_JinvM = 0;
-			//m_ji_Aaddjb = 0;
-			//m_bi_rhs_tmp = 0;
-			//m_ji_rhs.set(0);
+			m_ji_J.set(0);
+			m_ji_Ainit.set(0);
+			m_ji_JinvM.set(0);
+			m_ji_Aaddjb.set(0);
+			m_bi_rhs_tmp.set(0);
+			m_ji_rhs.set(0);
+			final int allowedThreads = callContext.m_stepperAllowedThreads();
+			if (m_Jinfos.length < allowedThreads) {
+				Info2DescrStep[] Jinfos = Arrays.copyOf(m_Jinfos, allowedThreads);
+				for (int i = m_Jinfos.length; i < allowedThreads; i++) {
+					Jinfos[i] = new Info2DescrStep();
+				}
+				m_Jinfos = Jinfos;
+			}
 		}
 
 		DxStepperProcessingCallContext m_stepperCallContext;
@@ -278,8 +322,59 @@ dmaxcallcountestimate_fn_t {
 		final AtomicInteger               m_bi_rhs_tmp = new AtomicInteger();
 		//volatile int               m_ji_rhs;
 		final AtomicInteger              m_ji_rhs = new AtomicInteger();
+		final Ref<DCallReleasee>         m_releasee = new Ref<DCallReleasee>();
+		// One per Stage2a thread
+		Info2DescrStep[]                 m_Jinfos = new Info2DescrStep[0];
 	}
 
+	private static final ObjectType<dxStepperStage1CallContext> STAGE1_CALL_CONTEXT = 
+			new ObjectType<dxStepperStage1CallContext>() {
+		@Override
+		protected dxStepperStage1CallContext NewObject() {
+			return new dxStepperStage1CallContext();
+		}
+	};
+
+	private static final ObjectType<dxStepperStage0BodiesCallContext> STAGE0_BODIES_CALL_CONTEXT = 
+			new ObjectType<dxStepperStage0BodiesCallContext>() {
+		@Override
+		protected dxStepperStage0BodiesCallContext NewObject() {
+			return new dxStepperStage0BodiesCallContext();
+		}
+	};
+
+	private static final ObjectType<dxStepperStage0JointsCallContext> STAGE0_JOINTS_CALL_CONTEXT = 
+			new ObjectType<dxStepperStage0JointsCallContext>() {
+		@Override
+		protected dxStepperStage0JointsCallContext NewObject() {
+			return new dxStepperStage0JointsCallContext();
+		}
+	};
+
+	private static final ObjectType<dxStepperLocalContext> LOCAL_CONTEXT = 
+			new ObjectType<dxStepperLocalContext>() {
+		@Override
+		protected dxStepperLocalContext NewObject() {
+			return new dxStepperLocalContext();
+		}
+	};
+
+	private static final ObjectType<dxStepperStage2CallContext> STAGE2_CALL_CONTEXT = 
+			new ObjectType<dxStepperStage2CallContext>() {
+		@Override
+		protected dxStepperStage2CallContext NewObject() {
+			return new dxStepperStage2CallContext();
+		}
+	};
+
+	private static final ObjectType<dxStepperStage3CallContext> STAGE3_CALL_CONTEXT = 
+			new ObjectType<dxStepperStage3CallContext>() {
+		@Override
+		protected dxStepperStage3CallContext NewObject() {
+			return new dxStepperStage3CallContext();
+		}
+	};
+
 	//static int dxStepIsland_Stage2a_Callback(Object[] callContext, int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee) {/*TZ*/};
 	//static int dxStepIsland_Stage2aSync_Callback(Object[] callContext, int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee) {/*TZ*/};
 	//static int dxStepIsland_Stage2b_Callback(Object[] callContext, int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee) {/*TZ*/};
@@ -448,17 +543,12 @@ dmaxcallcountestimate_fn_t {
 		int nb = callContext.m_islandBodiesCount();
 		int _nj = callContext.m_islandJointsCount();
 
-		memarena.dummy();
-		double[] invI = new double[3*4*nb];//memarena.AllocateArray<dReal> (3*4*(size_t)nb);
+		double[] invI = memarena.AllocateArrayDReal(3*4*nb);//memarena.AllocateArray<dReal> (3*4*(size_t)nb);
 		// Reserve twice as much memory and start from the middle so that regardless of 
 		// what direction the array grows to there would be sufficient room available.
 		final int ji_reserve_count = 2 * _nj;
-		memarena.dummy();
-		dJointWithInfo1[] jointinfosA = new dJointWithInfo1[ji_reserve_count];//memarena.AllocateArray<dJointWithInfo1>(ji_reserve_count);
-		//TZ: init
-		for (int i = 0; i < jointinfosA.length; i++) {
-			jointinfosA[i] = new dJointWithInfo1();
-		}
+		// (TZ) the elements are reused as well, they are filled in dxStepIsland_Stage0_Joints()
+		dJointWithInfo1[] jointinfosA = memarena.AllocateArray(JOINTINFOS, ji_reserve_count);//memarena.AllocateArray<dJointWithInfo1>(ji_reserve_count);
 		int jointinfosOfs = 0;
 
 		final int allowedThreads = callContext.m_stepperAllowedThreads();
@@ -468,26 +558,25 @@ dmaxcallcountestimate_fn_t {
 
 		//dxStepperStage1CallContext stage1CallContext = (dxStepperStage1CallContext *)memarena->AllocateBlock(sizeof(dxStepperStage1CallContext));
 		//new(stage1CallContext) dxStepperStage1CallContext(callContext, stagesMemArenaState, invI, jointinfos);
-		memarena.dummy();
-		final dxStepperStage1CallContext stage1CallContext = new dxStepperStage1CallContext(callContext, 
-				stagesMemArenaState, invI, jointinfosA, jointinfosOfs);
+		final dxStepperStage1CallContext stage1CallContext = memarena.AllocateObject(STAGE1_CALL_CONTEXT);
+		stage1CallContext.Initialize(callContext, stagesMemArenaState, invI, jointinfosA, jointinfosOfs);
 
 		//dxStepperStage0BodiesCallContext *stage0BodiesCallContext = (dxStepperStage0BodiesCallContext *)memarena->AllocateBlock(sizeof(dxStepperStage0BodiesCallContext));
 		//new(stage0BodiesCallContext) dxStepperStage0BodiesCallContext(callContext, invI);
-		memarena.dummy();
 		final dxStepperStage0BodiesCallContext stage0BodiesCallContext = 
-				new dxStepperStage0BodiesCallContext(callContext, invI);
+				memarena.AllocateObject(STAGE0_BODIES_CALL_CONTEXT);
+		stage0BodiesCallContext.Initialize(callContext, invI);
 
 		//dxStepperStage0JointsCallContext *stage0JointsCallContext = (dxStepperStage0JointsCallContext *)memarena->AllocateBlock(sizeof(dxStepperStage0JointsCallContext));
 		//new(stage0JointsCallContext) dxStepperStage0JointsCallContext(callContext, jointinfos, &stage1CallContext->m_stage0Outputs);
-		memarena.dummy();
 		final dxStepperStage0JointsCallContext stage0JointsCallContext = 
-				new dxStepperStage0JointsCallContext(callContext, jointinfosA, jointinfosOfs, 
-						stage1CallContext.m_stage0Outputs);
+				memarena.AllocateObject(STAGE0_JOINTS_CALL_CONTEXT);
+		stage0JointsCallContext.Initialize(callContext, jointinfosA, jointinfosOfs, 
+				stage1CallContext.m_stage0Outputs);
 
 		if (allowedThreads == 1)
 		{
-			dxStepIsland_Stage0_Bodies(stage0BodiesCallContext);
+			dxStepIsland_Stage0_Bodies(stage0BodiesCallContext, 0);
 			dxStepIsland_Stage0_Joints(stage0JointsCallContext);
 			dxStepIsland_Stage1(stage1CallContext);
 		}
@@ -496,7 +585,7 @@ dmaxcallcountestimate_fn_t {
 			int bodyThreads = allowedThreads;
 			int jointThreads = 1;
 
-			Ref<DCallReleasee> stage1CallReleasee = new Ref<DCallReleasee>();
+			final Ref<DCallReleasee> stage1CallReleasee = stage1CallContext.m_releasee;
 			world.threading().PostThreadedCallForUnawareReleasee(null, stage1CallReleasee, 
 					bodyThreads + jointThreads, callContext.m_finalReleasee(), 
 					null, dxStepIsland_Stage1_Callback, stage1CallContext, 0, 
@@ -511,31 +600,6 @@ dmaxcallcountestimate_fn_t {
 					"StepIsland Stage0-Joints");
 			dIASSERT(jointThreads == 1);
 		}
-//		{
-//			//TODO
-//			try {
-//				dxStepIsland_Stage1(stage1CallContext);
-//				ArrayList<Callable<Boolean>> tasks = new ArrayList<>(); 
-//				for (int i = 0; i < DxQuickStep.THREADS; i++) {
-//					tasks.add(new Callable<Boolean>() {
-//						@Override
-//						public Boolean call() {
-//							//dxStepIsland_Stage1_Callback.run(call_context, i, this_releasee);
-//							//dxStepperStage0BodiesCallContext callContext = (dxStepperStage0BodiesCallContext )_callContext;
-//							dxStepIsland_Stage0_Bodies(stage0BodiesCallContext);
-//							return Boolean.TRUE;
-//						}
-//					});
-//				}
-//				for (Future<Boolean> f: DxQuickStep.POOL.invokeAll(tasks, 1, TimeUnit.HOURS)) {
-//					f.get();
-//				}
-//				dxStepIsland_Stage0_Joints(stage0JointsCallContext);
-//			} catch (InterruptedException e) {
-//				throw new RuntimeException(e);
-//			} catch (ExecutionException e) {
-//				throw new RuntimeException(e);
-//			}
 	}    
 
 	private static dThreadedCallFunction dxStepIsland_Stage0_Bodies_Callback = new dThreadedCallFunction() {
@@ -543,10 +607,9 @@ dmaxcallcountestimate_fn_t {
 		public boolean run(CallContext _callContext, 
 				int/*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
 		{
-			//(void)callInstanceIndex; // unused
 			//(void)callThisReleasee; // unused
 			dxStepperStage0BodiesCallContext callContext = (dxStepperStage0BodiesCallContext )_callContext;
-			dxStepIsland_Stage0_Bodies(callContext);
+			dxStepIsland_Stage0_Bodies(callContext, callInstanceIndex);
 			return true;
 		}
 	};
@@ -554,7 +617,7 @@ dmaxcallcountestimate_fn_t {
 	private
 	static 
 	//void dxStepIsland_Stage0_Bodies(dxStepperStage0BodiesCallContext *callContext)
-	void dxStepIsland_Stage0_Bodies(dxStepperStage0BodiesCallContext callContext)
+	void dxStepIsland_Stage0_Bodies(dxStepperStage0BodiesCallContext callContext, int callInstanceIndex)
 	{
 		DxBody[] bodyA = callContext.m_stepperCallContext.m_islandBodiesStartA();
 		final int bOfs = callContext.m_stepperCallContext.m_islandBodiesStartOfs();
@@ -610,11 +673,12 @@ dmaxcallcountestimate_fn_t {
 		{
 			int invIrowO = 0;
 			double[] invIrowA = callContext.m_invI;
+			final dxStepperInertiaTemps temps = callContext.m_temps[callInstanceIndex];
 			int bodyIndex = ThrsafeIncrementIntUpToLimit(callContext.m_inertiaBodyIndex, nb);
 
 			for (int i = 0; i != nb; invIrowO += 12, ++i) {
 				if (i == bodyIndex) {
-					DMatrix3 tmp = new DMatrix3();
+					DMatrix3 tmp = temps.m_tmp;
 					DxBody b = bodyA[i+bOfs];
 
 					// compute inverse inertia tensor in global frame
@@ -625,7 +689,7 @@ dmaxcallcountestimate_fn_t {
 					// if not flagged or the body is kinematic
 					//if ((b.flags & DxBody.dxBodyGyroscopic)&& (b.invMass>0)) {
 					if (b.isFlagsGyroscopic() && (b.invMass>0)) {
-						DMatrix3 I = new DMatrix3();
+						DMatrix3 I = temps.m_I;
 						// compute inertia tensor in global frame
 						dMultiply2_333 (tmp,b.mass._I,b.posr().R());
 						dMultiply0_333 (I,b.posr().R(),tmp);
@@ -639,7 +703,7 @@ dmaxcallcountestimate_fn_t {
 						//"Stabilizing Gyroscopic Forces in Rigid Multibody Simulations"
 						// (LacoursiÃ¨re 2006)
 						double h = callContext.m_stepperCallContext.m_stepSize(); // Step size
-						DVector3 L = new DVector3(); // Compute angular momentum
+						DVector3 L = temps.m_L; // Compute angular momentum
 						dMultiply0_331(L,I,b.avel);
 
 						// Compute a new effective 'inertia tensor'
@@ -649,7 +713,8 @@ dmaxcallcountestimate_fn_t {
 						// Itild may not be symmetric pos-definite, 
 						// but we can still use it to compute implicit
 						// gyroscopic torques.
-						DMatrix3 Itild=new DMatrix3();//{0};  
+						DMatrix3 Itild=temps.m_Itild;//{0};  
+						Itild.setZero();
 						dSetCrossMatrixMinus(Itild,L);//,4);
 						//for (int ii=0;ii<12;++ii) {
 						//	Itild[ii]=Itild[ii]*h+I[ii];
@@ -661,7 +726,7 @@ dmaxcallcountestimate_fn_t {
 						// a sort of "torque"
 						L.scale(dRecip(h));//dScaleVector3(L,dRecip(h));
 						// Invert the pseudo-tensor
-						DMatrix3 itInv = new DMatrix3();
+						DMatrix3 itInv = temps.m_itInv;
 						// This is a closed-form inversion.
 						// It's probably not numerically stable
 						// when dealing with small masses with
@@ -683,7 +748,7 @@ dmaxcallcountestimate_fn_t {
 							// to the old inertia matrix as explicit
 							// torques with a semi-implicit update
 							// step.
-							DVector3 tau0 = new DVector3();
+							DVector3 tau0 = temps.m_tau0;
 							dMultiply0_331(tau0,Itild,L);
 
 							// Add the gyro torques to the torque 
@@ -723,6 +788,8 @@ dmaxcallcountestimate_fn_t {
 		dJointWithInfo1[] jointinfosA = callContext.m_jointinfosA;
 		int jiP = callContext.m_jointinfosOfs;
 		int _nj = callContext.m_stepperCallContext.m_islandJointsCount();
+		// (TZ) the arena array may be longer than requested
+		final int ji_reserve_count = 2 * _nj;
 
 		// get m = total constraint dimension, nub = number of unbounded variables.
 		// create constraint offset array and number-of-rows array for all joints.
@@ -746,7 +813,7 @@ dmaxcallcountestimate_fn_t {
 			//	      dJointWithInfo1 *jicurr = jointiinfos + lcp_end;
 			//	      dxJoint *const *const _jend = _joint + _nj;
 			//	      dxJoint *const *_jcurr = _joint;
-			dJointWithInfo1 jicurrO = jointinfosA.length > 0 ? jointinfosA[lcp_end+jiP] : null;
+			dJointWithInfo1 jicurrO = ji_reserve_count > 0 ? jointinfosA[lcp_end+jiP] : null;
 			int jicurrP = lcp_end;
 			final int _jend = _nj; 
 			int _jcurrP = 0;
@@ -756,7 +823,7 @@ dmaxcallcountestimate_fn_t {
 				// Switch to growing array forward
 				{
 					boolean fwd_end_reached = false;
-					dJointWithInfo1 jimixendO = jointinfosA.length > 0 ? jointinfosA[mix_end+jiP] : null;
+					dJointWithInfo1 jimixendO = ji_reserve_count > 0 ? jointinfosA[mix_end+jiP] : null;
 					int jimixendP = mix_end;
 					while (true) {  // jicurr=dest, _jcurr=src
 						if (_jcurrP == _jend) {
@@ -773,7 +840,7 @@ dmaxcallcountestimate_fn_t {
 							if (jicurrO.info.nub == 0) { // A lcp info - a correct guess!!!
 								jicurrO.joint = j;
 								++jicurrP;
-								jicurrO = (jicurrP+jiP) < jointinfosA.length ? jointinfosA[jicurrP+jiP] : null;//TZ
+								jicurrO = (jicurrP+jiP) < ji_reserve_count ? jointinfosA[jicurrP+jiP] : null;//TZ
 							} else if (jicurrO.info.nub < jicurrO.info.m) { // A mixed case
 								if (unb_start == mix_start) { // no unbounded infos yet - just move to opposite side of mixed-s
 									unb_start = mix_start = mix_start - 1;
@@ -970,8 +1037,7 @@ dmaxcallcountestimate_fn_t {
 		// if there are constraints, compute cforce
 		if (m > 0) {
 			//mindex = memarena->AllocateArray<unsigned int>((size_t)(nj + 1));
-			memarena.dummy();
-			mindex = new int[nj + 1];
+			mindex = memarena.AllocateArrayInt(nj + 1);
 			{
 				//unsigned int *mcurr = mindex;
 				int[] mcurrA = mindex;
@@ -1003,29 +1069,21 @@ dmaxcallcountestimate_fn_t {
 			//	        J = memarena->AllocateArray<dReal>(2 * 8 * (size_t)m);
 			//	        A = memarena->AllocateArray<dReal>(m * (size_t)dPAD(m));
 			//	        rhs = memarena->AllocateArray<dReal>(m);
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			memarena.dummy();
-			findex = new int[m];
-			lo = new double[m];
-			hi = new double[m];
-			J = new double[2 * 8 * m];
-			A = new double[m * dPAD(m)];
-			rhs = new double[m];
+			findex = memarena.AllocateArrayInt(m);
+			lo = memarena.AllocateArrayDReal(m);
+			hi = memarena.AllocateArrayDReal(m);
+			J = memarena.AllocateArrayDReal(2 * 8 * m);
+			A = memarena.AllocateArrayDReal(m * dPAD(m));
+			rhs = memarena.AllocateArrayDReal(m);
 		}
 
 		//dxStepperLocalContext *localContext = (dxStepperLocalContext *)memarena->AllocateBlock(sizeof(dxStepperLocalContext));
-		memarena.dummy();
-		dxStepperLocalContext localContext = new dxStepperLocalContext();
+		dxStepperLocalContext localContext = memarena.AllocateObject(LOCAL_CONTEXT);
 		localContext.Initialize(invI, jointinfosA, jiP, nj, m, nub, mindex, findex, lo, hi, J, A, rhs);
 
 		BlockPointer stage1MemarenaState = memarena.SaveState();
 		//dxStepperStage3CallContext *stage3CallContext = (dxStepperStage3CallContext*)memarena->AllocateBlock(sizeof(dxStepperStage3CallContext));
-		memarena.dummy();
-		dxStepperStage3CallContext stage3CallContext = new dxStepperStage3CallContext();
+		dxStepperStage3CallContext stage3CallContext = memarena.AllocateObject(STAGE3_CALL_CONTEXT);
 		stage3CallContext.Initialize(callContext, localContext, stage1MemarenaState);
 
 		if (m > 0) {
@@ -1033,18 +1091,15 @@ dmaxcallcountestimate_fn_t {
 			// force mixing vector `cfm', and LCP low and high bound vectors, and an
 			// 'findex' vector.
 			//double[] JinvM = memarena->AllocateArray<dReal>(2 * 8 * (size_t)m);
-			memarena.dummy();
-			double[] JinvM = new double[2 * 8 * m];
+			double[] JinvM = memarena.AllocateArrayDReal(2 * 8 * m);
 			final int nb = callContext.m_islandBodiesCount();
 			int cfm_elem = m, rhs_tmp_elem = nb*8;
 			//dReal *cfm = memarena->AllocateArray<dReal>(dMAX(cfm_elem, rhs_tmp_elem));
-			memarena.dummy();
-			double[] cfm = new double[dMAX(cfm_elem, rhs_tmp_elem)];
+			double[] cfm = memarena.AllocateArrayDReal(dMAX(cfm_elem, rhs_tmp_elem));
 			// dReal *rhs_tmp = cfm; // Reuse the same memory since rhs calculations start after cfm is not needed anymore
 
 			//dxStepperStage2CallContext *stage2CallContext = (dxStepperStage2CallContext *)memarena->AllocateBlock(sizeof(dxStepperStage2CallContext));
-			memarena.dummy();
-			dxStepperStage2CallContext stage2CallContext = new dxStepperStage2CallContext();
+			dxStepperStage2CallContext stage2CallContext = memarena.AllocateObject(STAGE2_CALL_CONTEXT);
 			stage2CallContext.Initialize(callContext, localContext, JinvM, cfm);
 
 			int allowedThreads = callContext.m_stepperAllowedThreads();
@@ -1052,27 +1107,29 @@ dmaxcallcountestimate_fn_t {
 
 			if (allowedThreads == 1)
 			{
-				dxStepIsland_Stage2a(stage2CallContext);
+				dxStepIsland_Stage2a(stage2CallContext, 0);
 				dxStepIsland_Stage2b(stage2CallContext);
 				dxStepIsland_Stage2c(stage2CallContext);
 				dxStepIsland_Stage3(stage3CallContext);
 			}
 			else
 			{
-				Ref<DCallReleasee> stage3CallReleasee = new Ref<DCallReleasee>();
-				world.threading().PostThreadedCallForUnawareReleasee(null, stage3CallReleasee, 1, 
+				// (TZ) the releasees are received one after the other in a reused Ref
+				final Ref<DCallReleasee> postReleasee = stage2CallContext.m_releasee;
+				world.threading().PostThreadedCallForUnawareReleasee(null, postReleasee, 1, 
 						callContext.m_finalReleasee(), 
 						null, dxStepIsland_Stage3_Callback, stage3CallContext, 0, "StepIsland Stage3");
+				final DCallReleasee stage3CallReleasee = postReleasee.get();
 
-				Ref<DCallReleasee> stage2bSyncReleasee = new Ref<DCallReleasee>();
-				world.threading().PostThreadedCall(null, stage2bSyncReleasee, 1, stage3CallReleasee.get(), 
+				world.threading().PostThreadedCall(null, postReleasee, 1, stage3CallReleasee, 
 						null, dxStepIsland_Stage2bSync_Callback, stage2CallContext, 0, "StepIsland Stage2b Sync");
+				final DCallReleasee stage2bSyncReleasee = postReleasee.get();
 
-				Ref<DCallReleasee> stage2aSyncReleasee = new Ref<DCallReleasee>();
-				world.threading().PostThreadedCall(null, stage2aSyncReleasee, allowedThreads, stage2bSyncReleasee.get(), 
+				world.threading().PostThreadedCall(null, postReleasee, allowedThreads, stage2bSyncReleasee, 
 						null, dxStepIsland_Stage2aSync_Callback, stage2CallContext, 0, "StepIsland Stage2a Sync");
+				final DCallReleasee stage2aSyncReleasee = postReleasee.get();
 
-				world.threading().PostThreadedCallsGroup(null, allowedThreads, stage2aSyncReleasee.get(), 
+				world.threading().PostThreadedCallsGroup(null, allowedThreads, stage2aSyncReleasee, 
 						dxStepIsland_Stage2a_Callback, stage2CallContext, "StepIsland Stage2a");
 			}
 		}
@@ -1090,16 +1147,18 @@ dmaxcallcountestimate_fn_t {
 		public boolean run(CallContext _stage2CallContext, 
 				int /*dcallindex_t*/ callInstanceIndex, DCallReleasee callThisReleasee)
 		{
-			//(void)callInstanceIndex; // unused
 			//(void)callThisReleasee; // unused
 			dxStepperStage2CallContext stage2CallContext = (dxStepperStage2CallContext )_stage2CallContext;
-			dxStepIsland_Stage2a(stage2CallContext);
+			dxStepIsland_Stage2a(stage2CallContext, callInstanceIndex);
 			return true;
 		}
 	};
 
+	/**
+	 * @param callInstanceIndex index of the calling thread in the group, selects the Jinfo to use
+	 */
 	static 
-	void dxStepIsland_Stage2a(dxStepperStage2CallContext stage2CallContext)
+	void dxStepIsland_Stage2a(dxStepperStage2CallContext stage2CallContext, int callInstanceIndex)
 	{
 		final DxStepperProcessingCallContext callContext = stage2CallContext.m_stepperCallContext;
 		final dxStepperLocalContext localContext = stage2CallContext.m_localContext;
@@ -1140,7 +1199,7 @@ dmaxcallcountestimate_fn_t {
 
 			final double worldERP = world.getERP();
 
-			Info2DescrStep Jinfo = new Info2DescrStep();
+			Info2DescrStep Jinfo = stage2CallContext.m_Jinfos[callInstanceIndex];
 			Jinfo.setRowskip(8);
 			Jinfo.setArrays(J, rhs, cfm, lo, hi, findex); //TZ
 
@@ -1569,8 +1628,7 @@ dmaxcallcountestimate_fn_t {
 
 		if (m > 0) {
 			//lambda = memarena->AllocateArray<dReal>(m);
-			memarena.dummy();
-			lambda = new double[m];
+			lambda = memarena.AllocateArrayDReal(m);
 
 
 			BlockPointer lcpstate = memarena.BEGIN_STATE_SAVE();
@@ -1587,8 +1645,7 @@ dmaxcallcountestimate_fn_t {
 
 		// this will be set to the force due to the constraints
 		//dReal *cforce = memarena->AllocateArray<dReal>((size_t)nb * 8);
-		memarena.dummy();
-		double[] cforce = new double[nb * 8];
+		double[] cforce = memarena.AllocateArrayDReal(nb * 8);
 		//dSetZero (cforce,(size_t)nb*8);
 
 		if (m > 0) {
@@ -1598,6 +1655,7 @@ dmaxcallcountestimate_fn_t {
 				// compute the constraint force `cforce'
 				// compute cforce = J'*lambda
 				int ofsi = 0;
+				double[] data = memarena.AllocateArrayDReal(8);
 				dJointWithInfo1 jicurrO = jointinfosA[jointinfosP];
 				int jicurrP = 0;
 				int jiend = jicurrP + nj;
@@ -1616,7 +1674,6 @@ dmaxcallcountestimate_fn_t {
 						// joint is applying to the bodies. we use a slightly slower
 						// computation that splits out the force components and puts them
 						// in the feedback structure.
-						double[] data=new double[8];
 						Multiply1_8q1 (data, 0, J,JJ, lambda,lambdarow, infom);
 
 						DxBody b1 = joint.node[0].body;
@@ -1670,7 +1727,7 @@ dmaxcallcountestimate_fn_t {
 			double stepsize = callContext.m_stepSize();
 
 			// add fe to cforce and multiply cforce by stepsize
-			double[] data = new double[4];
+			double[] data = memarena.AllocateArrayDReal(4);
 			int invIrowP = 0;//invI;
 			int cforcecurrP = 0;//cforce;
 			//        dxBody *const *const bodyend = body + nb;
@@ -0,0 +1,434 @@
+/**
+ * ----------------------------------------------------------------------------
+ * This source file is part of the ODE4J library (ported to
+ * Java from the GIMPACT Library).
+ * 
+ * For the latest info on ODE4J, see http://www.ode4j.org/
+ * For the latest info on GIMPACT, see http://gimpact.sourceforge.net/
+ * 
+ * Copyright of GIMPACT (c) 2006 Francisco Leon. C.C. 80087371.
+ * email: projectileman@yahoo.com
+ * Copyright of ODE4J (c) 2009-2014 Tilmann Zäschke.
+ * email: ode4j.gmx.de
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of EITHER:
+ *   (1) The GNU Lesser General Public License as published by the Free
+ *       Software Foundation; either version 2.1 of the License, or (at
+ *       your option) any later version. The text of the GNU Lesser
+ *       General Public License is included with this library in the
+ *       file GIMPACT-LICENSE-LGPL.TXT and LICENSE.TXT.
+ *   (2) The BSD-style license that is included with this library in
+ *       the file GIMPACT-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files
+ * GIMPACT-LICENSE-LGPL.TXT, GIMPACT-LICENSE-BSD.TXT, LICENSE.TXT and 
+ * ODE4J-LICENSE-BSD.TXT for more details.
+ * 
+ * ----------------------------------------------------------------------------
+ */
+package org.ode4j.ode.internal.gimpact;
+
+import java.util.Arrays;
+
+import org.ode4j.ode.internal.gimpact.GimGeometry.aabb3f;
+import org.ode4j.ode.internal.gimpact.GimGeometry.vec3f;
+
+/**
+ * (TZ) Static AABB tree of the triangles of a trimesh in mesh (local) 
+ * coordinates.
+ * <p>
+ * The tree is built once from the source vertices and does not depend on the 
+ * transform of the trimesh. When the vertices are changed, the boxes are 
+ * refitted without changing the structure of the tree, see 
+ * {@link #gim_aabbtree_refit(float[], int[], int, int)}. A {@link GimTrimesh} with a local tree transforms 
+ * a query box into mesh space and only transforms the vertices of the 
+ * triangles in the leafs that are hit, see 
+ * {@link GimTrimesh#gim_trimesh_set_local_tree(GimAABBTree)}.
+ * <p>
+ * The nodes are stored in depth first order: every node is followed by its 
+ * first child, <tt>m_escape</tt> is the index after the subtree of the node.
+ * The leafs reference ranges of <tt>m_triangles</tt>.
+ */
+public class GimAABBTree {
+
+	static final int MAX_LEAF_TRIANGLES = 4;
+	// A refitted tree should be rebuilt if its cost exceeds the cost after 
+	// the build by this factor
+	static final float REBUILD_COST_RATIO = 2.0f;
+	// Padding of the boxes in ray queries, relative to the size of the tree
+	static final float RAY_EPSILON = 1e-6f;
+
+	// minX, maxX, minY, maxY, minZ, maxZ for every node, like aabb3f
+	float[] m_bounds;
+	int[] m_first;
+	// number of triangles for leafs, 0 for inner nodes
+	int[] m_count;
+	int[] m_escape;
+	int m_node_count;
+	final int[] m_triangles;
+
+	// build only
+	private float[] m_tri_bounds;
+	private float[] m_centroids;
+
+	// refit only
+	float m_build_cost;
+	boolean[] m_changed;
+
+	GimAABBTree(int triangle_count) {
+		m_triangles = new int[triangle_count];
+		int nodes = Math.max(1, 2 * triangle_count);
+		m_bounds = new float[nodes * 6];
+		m_first = new int[nodes];
+		m_count = new int[nodes];
+		m_escape = new int[nodes];
+	}
+
+	/**
+	 * Builds the tree.
+	 * @param vertices x, y, z of the vertices
+	 * @param indices three vertex indices per triangle
+	 * @return the tree
+	 */
+	public static GimAABBTree gim_aabbtree_build(float[] vertices, int[] indices) {
+		GimAABBTree tree = new GimAABBTree(indices.length / 3);
+		tree.build_nodes(vertices, indices);
+		tree.m_build_cost = tree.cost();
+		return tree;
+	}
+
+	/**
+	 * Builds the nodes in m_bounds, m_first, m_count and m_escape.
+	 */
+	final void build_nodes(float[] vertices, int[] indices) {
+		int triangle_count = m_triangles.length;
+		m_tri_bounds = new float[triangle_count * 6];
+		m_centroids = new float[triangle_count * 3];
+		for (int i = 0; i < triangle_count; i++) {
+			int o = i * 6;
+			int v = indices[i*3] * 3;
+			m_tri_bounds[o] = m_tri_bounds[o + 1] = vertices[v];
+			m_tri_bounds[o + 2] = m_tri_bounds[o + 3] = vertices[v + 1];
+			m_tri_bounds[o + 4] = m_tri_bounds[o + 5] = vertices[v + 2];
+			for (int k = 1; k < 3; k++) {
+				v = indices[i*3 + k] * 3;
+				for (int axis = 0; axis < 3; axis++) {
+					float f = vertices[v + axis];
+					if (f < m_tri_bounds[o + axis*2]) m_tri_bounds[o + axis*2] = f;
+					if (f > m_tri_bounds[o + axis*2 + 1]) m_tri_bounds[o + axis*2 + 1] = f;
+				}
+			}
+			for (int axis = 0; axis < 3; axis++) {
+				m_centroids[i*3 + axis] = 
+					0.5f * (m_tri_bounds[o + axis*2] + m_tri_bounds[o + axis*2 + 1]);
+			}
+			m_triangles[i] = i;
+		}
+		if (triangle_count == 0) {
+			// A single empty leaf with an invalid box
+			Arrays.fill(m_bounds, 0, 6, Float.NaN);
+			m_node_count = 1;
+		} else {
+			build(0, triangle_count);
+		}
+		m_tri_bounds = null;
+		m_centroids = null;
+	}
+
+	private void build(int begin, int end) {
+		int node = m_node_count++;
+		int o = node * 6;
+		float[] centroidBounds = new float[6];
+		for (int i = begin; i < end; i++) {
+			int t = m_triangles[i];
+			for (int k = 0; k < 6; k += 2) {
+				float min = m_tri_bounds[t*6 + k];
+				float max = m_tri_bounds[t*6 + k + 1];
+				float c = m_centroids[t*3 + k/2];
+				if (i == begin) {
+					m_bounds[o + k] = min;
+					m_bounds[o + k + 1] = max;
+					centroidBounds[k] = centroidBounds[k + 1] = c;
+				} else {
+					if (min < m_bounds[o + k]) m_bounds[o + k] = min;
+					if (max > m_bounds[o + k + 1]) m_bounds[o + k + 1] = max;
+					if (c < centroidBounds[k]) centroidBounds[k] = c;
+					if (c > centroidBounds[k + 1]) centroidBounds[k + 1] = c;
+				}
+			}
+		}
+		m_first[node] = begin;
+		if (end - begin <= MAX_LEAF_TRIANGLES) {
+			m_count[node] = end - begin;
+		} else {
+			// Median split on the axis with the largest centroid extent
+			int axis = 0;
+			float extent = centroidBounds[1] - centroidBounds[0];
+			for (int k = 1; k < 3; k++) {
+				float e = centroidBounds[k*2 + 1] - centroidBounds[k*2];
+				if (e > extent) {
+					extent = e;
+					axis = k;
+				}
+			}
+			int mid = (begin + end) >>> 1;
+			select(begin, end - 1, mid, axis);
+			m_count[node] = 0;
+			build(begin, mid);
+			build(mid, end);
+		}
+		m_escape[node] = m_node_count;
+	}
+
+	/**
+	 * Partially sorts m_triangles[left..right] by centroid, so that the 
+	 * triangle at <tt>n</tt> is at its sorted position.
+	 */
+	private void select(int left, int right, int n, int axis) {
+		while (left < right) {
+			float pivot = m_centroids[m_triangles[(left + right) >>> 1]*3 + axis];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (m_centroids[m_triangles[i]*3 + axis] < pivot) i++;
+				while (m_centroids[m_triangles[j]*3 + axis] > pivot) j--;
+				if (i <= j) {
+					int t = m_triangles[i];
+					m_triangles[i] = m_triangles[j];
+					m_triangles[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (n <= j) {
+				right = j;
+			} else if (n >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Refits the boxes of the nodes bottom up after vertices have moved. The 
+	 * structure of the tree is kept, no triangles are sorted. Only the leafs 
+	 * with triangles that use a changed vertex are recomputed.
+	 * @param vertices x, y, z of the vertices
+	 * @param indices three vertex indices per triangle, as used by the build
+	 * @param first_vertex first changed vertex
+	 * @param end_vertex index after the last changed vertex
+	 * @return false if the quality of the tree has degraded so much that it 
+	 * should be rebuilt
+	 */
+	public boolean gim_aabbtree_refit(float[] vertices, int[] indices, int first_vertex, int end_vertex) {
+		if (m_triangles.length == 0) {
+			return true;
+		}
+		if (m_changed == null) {
+			m_changed = new boolean[m_node_count];
+		}
+		boolean all = first_vertex <= 0 && end_vertex*3 >= vertices.length;
+		// The children of a node follow the node
+		for (int node = m_node_count - 1; node >= 0; node--) {
+			boolean changed;
+			if (m_count[node] != 0) {
+				changed = all || usesVertex(indices, m_first[node], m_count[node], first_vertex, end_vertex);
+				if (changed) {
+					refitLeaf(vertices, indices, node);
+				}
+			} else {
+				int left = node + 1;
+				int right = m_escape[left];
+				changed = m_changed[left] || m_changed[right];
+				if (changed) {
+					int o = node * 6;
+					for (int k = 0; k < 6; k += 2) {
+						m_bounds[o + k] = Math.min(m_bounds[left*6 + k], m_bounds[right*6 + k]);
+						m_bounds[o + k + 1] = Math.max(m_bounds[left*6 + k + 1], m_bounds[right*6 + k + 1]);
+					}
+				}
+			}
+			m_changed[node] = changed;
+		}
+		return !m_changed[0] || cost() <= m_build_cost * REBUILD_COST_RATIO;
+	}
+
+	final boolean usesVertex(int[] indices, int first, int count, int first_vertex, int end_vertex) {
+		for (int j = first, end = first + count; j < end; j++) {
+			int t = m_triangles[j] * 3;
+			for (int k = 0; k < 3; k++) {
+				int v = indices[t + k];
+				if (v >= first_vertex && v < end_vertex) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void refitLeaf(float[] vertices, int[] indices, int node) {
+		triangle_bounds(vertices, indices, m_first[node], m_count[node], m_bounds, node * 6);
+	}
+
+	/**
+	 * Computes the box of a range of m_triangles.
+	 * @param bounds receives minX, maxX, minY, maxY, minZ, maxZ at <tt>o</tt>
+	 */
+	final void triangle_bounds(float[] vertices, int[] indices, int first, int count, 
+			float[] bounds, int o) {
+		for (int j = first, end = first + count; j < end; j++) {
+			int t = m_triangles[j] * 3;
+			for (int k = 0; k < 3; k++) {
+				int v = indices[t + k] * 3;
+				for (int axis = 0; axis < 3; axis++) {
+					float f = vertices[v + axis];
+					if (j == first && k == 0) {
+						bounds[o + axis*2] = bounds[o + axis*2 + 1] = f;
+					} else {
+						if (f < bounds[o + axis*2]) bounds[o + axis*2] = f;
+						if (f > bounds[o + axis*2 + 1]) bounds[o + axis*2 + 1] = f;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the surface areas of all nodes relative to the area of the 
+	 * root, the expected number of nodes visited by a query
+	 */
+	float cost() {
+		float root = area(0);
+		if (!(root > 0)) {
+			return m_node_count;
+		}
+		float sum = 0;
+		for (int node = 0; node < m_node_count; node++) {
+			sum += area(node);
+		}
+		return sum / root;
+	}
+
+	private float area(int node) {
+		int o = node * 6;
+		return area(m_bounds[o + 1] - m_bounds[o], m_bounds[o + 3] - m_bounds[o + 2], 
+				m_bounds[o + 5] - m_bounds[o + 4]);
+	}
+
+	static float area(float x, float y, float z) {
+		return x*y + y*z + z*x;
+	}
+
+	/**
+	 * @param aabb the box of the root node in mesh coordinates
+	 */
+	public void gim_aabbtree_get_bound(aabb3f aabb) {
+		aabb.minX = m_bounds[0];
+		aabb.maxX = m_bounds[1];
+		aabb.minY = m_bounds[2];
+		aabb.maxY = m_bounds[3];
+		aabb.minZ = m_bounds[4];
+		aabb.maxZ = m_bounds[5];
+	}
+
+	public int gim_aabbtree_get_triangle_count() {
+		return m_triangles.length;
+	}
+
+	/**
+	 * Finds the triangles whose boxes overlap a box. The triangles are 
+	 * appended in tree order.
+	 * @param test_aabb box in mesh coordinates
+	 * @param collided indices of the triangles
+	 */
+	void gim_aabbtree_box_collision(aabb3f test_aabb, GimDynArrayInt collided) {
+		float[] bounds = m_bounds;
+		int i = 0;
+		while (i < m_node_count) {
+			int o = i * 6;
+			// NaN bounds of an empty tree fail the test as well
+			if (!(bounds[o] <= test_aabb.maxX && bounds[o + 1] >= test_aabb.minX &&
+					bounds[o + 2] <= test_aabb.maxY && bounds[o + 3] >= test_aabb.minY &&
+					bounds[o + 4] <= test_aabb.maxZ && bounds[o + 5] >= test_aabb.minZ)) {
+				i = m_escape[i];
+				continue;
+			}
+			for (int j = m_first[i], end = j + m_count[i]; j < end; j++) {
+				collided.GIM_DYNARRAY_PUSH_ITEM(m_triangles[j]);
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Finds the triangles whose boxes are hit by a ray. The triangles are 
+	 * appended in tree order.
+	 * @param origin origin of the ray in mesh coordinates
+	 * @param dir direction of the ray in mesh coordinates
+	 * @param tmax length of the ray
+	 * @param collided indices of the triangles
+	 */
+	void gim_aabbtree_ray_collision(vec3f origin, vec3f dir, float tmax, GimDynArrayInt collided) {
+		float[] bounds = m_bounds;
+		float pad = ray_padding(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]);
+		int i = 0;
+		while (i < m_node_count) {
+			int o = i * 6;
+			if (!ray_intersects_box(bounds[o], bounds[o + 1], bounds[o + 2], bounds[o + 3], 
+					bounds[o + 4], bounds[o + 5], pad, origin, dir, tmax)) {
+				i = m_escape[i];
+				continue;
+			}
+			for (int j = m_first[i], end = j + m_count[i]; j < end; j++) {
+				collided.GIM_DYNARRAY_PUSH_ITEM(m_triangles[j]);
+			}
+			i++;
+		}
+	}
+
+	static float ray_padding(float minX, float maxX, float minY, float maxY, float minZ, float maxZ) {
+		float size = Math.max(Math.max(Math.abs(minX), Math.abs(maxX)), 
+				Math.max(Math.max(Math.abs(minY), Math.abs(maxY)), 
+						Math.max(Math.abs(minZ), Math.abs(maxZ))));
+		return size * RAY_EPSILON;
+	}
+
+	/**
+	 * Slab test of a ray segment against a box that is enlarged by 
+	 * <tt>pad</tt>. Fails for NaN boxes.
+	 */
+	static boolean ray_intersects_box(float minX, float maxX, float minY, float maxY, 
+			float minZ, float maxZ, float pad, vec3f origin, vec3f dir, float tmax) {
+		float tfirst = 0;
+		float tlast = tmax;
+		for (int axis = 0; axis < 3; axis++) {
+			float min = (axis == 0 ? minX : axis == 1 ? minY : minZ) - pad;
+			float max = (axis == 0 ? maxX : axis == 1 ? maxY : maxZ) + pad;
+			float o = origin.f[axis];
+			float d = dir.f[axis];
+			if (d == 0) {
+				if (!(o >= min && o <= max)) {
+					return false;
+				}
+				continue;
+			}
+			float t1 = (min - o) / d;
+			float t2 = (max - o) / d;
+			if (t1 > t2) {
+				float t = t1;
+				t1 = t2;
+				t2 = t;
+			}
+			if (t1 > tfirst) tfirst = t1;
+			if (t2 < tlast) tlast = t2;
+			if (!(tfirst <= tlast)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
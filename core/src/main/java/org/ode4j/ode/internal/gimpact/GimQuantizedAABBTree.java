@@ -0,0 +1,271 @@
+/**
+ * ----------------------------------------------------------------------------
+ * This source file is part of the ODE4J library (ported to
+ * Java from the GIMPACT Library).
+ * 
+ * For the latest info on ODE4J, see http://www.ode4j.org/
+ * For the latest info on GIMPACT, see http://gimpact.sourceforge.net/
+ * 
+ * Copyright of GIMPACT (c) 2006 Francisco Leon. C.C. 80087371.
+ * email: projectileman@yahoo.com
+ * Copyright of ODE4J (c) 2009-2014 Tilmann Zäschke.
+ * email: ode4j.gmx.de
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of EITHER:
+ *   (1) The GNU Lesser General Public License as published by the Free
+ *       Software Foundation; either version 2.1 of the License, or (at
+ *       your option) any later version. The text of the GNU Lesser
+ *       General Public License is included with this library in the
+ *       file GIMPACT-LICENSE-LGPL.TXT and LICENSE.TXT.
+ *   (2) The BSD-style license that is included with this library in
+ *       the file GIMPACT-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files
+ * GIMPACT-LICENSE-LGPL.TXT, GIMPACT-LICENSE-BSD.TXT, LICENSE.TXT and 
+ * ODE4J-LICENSE-BSD.TXT for more details.
+ * 
+ * ----------------------------------------------------------------------------
+ */
+package org.ode4j.ode.internal.gimpact;
+
+import org.ode4j.ode.internal.gimpact.GimGeometry.aabb3f;
+import org.ode4j.ode.internal.gimpact.GimGeometry.vec3f;
+
+/**
+ * (TZ) Compact AABB tree of the triangles of a trimesh in mesh coordinates, 
+ * in the style of the quantized trees of OPCODE.
+ * <p>
+ * The tree is built like a {@link GimAABBTree}, then the node boxes are 
+ * quantized to 16 bit integers relative to the box of the root and the float 
+ * nodes are dropped. A node uses 20 bytes: six unsigned shorts in 
+ * <tt>m_qbounds</tt> and two ints in <tt>m_qnodes</tt>. The quantized boxes 
+ * enclose the exact boxes. Box queries are quantized and compared as 
+ * integers, the traversal is stackless with the escape indices.
+ */
+public class GimQuantizedAABBTree extends GimAABBTree {
+
+	private static final int QUANTIZED_MAX = 0xFFFF;
+	private static final int COUNT_BITS = 3;
+	private static final int COUNT_MASK = (1 << COUNT_BITS) - 1;
+
+	// Box of the root, minX, maxX, minY, maxY, minZ, maxZ
+	private final float[] m_root = new float[6];
+	// Quantization: q = (v - min) * scale, v = min + q * inv_scale
+	private final double[] m_scale = new double[3];
+	private final double[] m_inv_scale = new double[3];
+	// minX, maxX, minY, maxY, minZ, maxZ for every node, unsigned
+	private short[] m_qbounds;
+	// escape index and first triangle << COUNT_BITS | triangle count for every node
+	private int[] m_qnodes;
+
+	private final float[] m_leaf_bounds = new float[6];
+
+	private GimQuantizedAABBTree(int triangle_count) {
+		super(triangle_count);
+		assert(MAX_LEAF_TRIANGLES <= COUNT_MASK);
+	}
+
+	/**
+	 * Builds the tree.
+	 * @param vertices x, y, z of the vertices
+	 * @param indices three vertex indices per triangle
+	 * @return the tree
+	 */
+	public static GimQuantizedAABBTree gim_quantized_aabbtree_build(float[] vertices, int[] indices) {
+		GimQuantizedAABBTree tree = new GimQuantizedAABBTree(indices.length / 3);
+		tree.build_nodes(vertices, indices);
+		tree.quantize();
+		tree.m_build_cost = tree.cost();
+		return tree;
+	}
+
+	private void quantize() {
+		System.arraycopy(m_bounds, 0, m_root, 0, 6);
+		for (int axis = 0; axis < 3; axis++) {
+			double extent = (double)m_root[axis*2 + 1] - m_root[axis*2];
+			m_scale[axis] = extent > 0 ? QUANTIZED_MAX / extent : 0;
+			m_inv_scale[axis] = extent / QUANTIZED_MAX;
+		}
+		m_qbounds = new short[m_node_count * 6];
+		m_qnodes = new int[m_node_count * 2];
+		for (int node = 0; node < m_node_count; node++) {
+			quantize_node(m_bounds, node*6, node);
+			m_qnodes[node*2] = m_escape[node];
+			m_qnodes[node*2 + 1] = (m_first[node] << COUNT_BITS) | m_count[node];
+		}
+		// The float nodes are not used anymore
+		m_bounds = null;
+		m_first = null;
+		m_count = null;
+		m_escape = null;
+	}
+
+	/**
+	 * Stores the quantized box of a node, rounded outwards.
+	 * @return false if the box is not inside the box of the root
+	 */
+	private boolean quantize_node(float[] bounds, int o, int node) {
+		boolean inside = true;
+		for (int k = 0; k < 6; k += 2) {
+			int qmin = quantize_min(bounds[o + k], k/2) - 1;
+			int qmax = quantize_max(bounds[o + k + 1], k/2) + 1;
+			if (qmin < -1 || qmax > QUANTIZED_MAX + 1) {
+				inside = false;
+			}
+			m_qbounds[node*6 + k] = (short) Math.max(qmin, 0);
+			m_qbounds[node*6 + k + 1] = (short) Math.min(qmax, QUANTIZED_MAX);
+		}
+		return inside;
+	}
+
+	/**
+	 * @return floor((v - min) * scale), clamped to [-2, QUANTIZED_MAX + 2]
+	 */
+	private int quantize_min(float v, int axis) {
+		double q = Math.floor((v - (double)m_root[axis*2]) * m_scale[axis]);
+		return (int) Math.max(-2, Math.min(q, QUANTIZED_MAX + 2));
+	}
+
+	/**
+	 * @return ceil((v - min) * scale), clamped to [-2, QUANTIZED_MAX + 2]
+	 */
+	private int quantize_max(float v, int axis) {
+		double q = Math.ceil((v - (double)m_root[axis*2]) * m_scale[axis]);
+		return (int) Math.max(-2, Math.min(q, QUANTIZED_MAX + 2));
+	}
+
+	private float dequantize(int node, int k) {
+		return (float) (m_root[k & ~1] + (m_qbounds[node*6 + k] & 0xFFFF) * m_inv_scale[k/2]);
+	}
+
+	@Override
+	public void gim_aabbtree_get_bound(aabb3f aabb) {
+		aabb.minX = m_root[0];
+		aabb.maxX = m_root[1];
+		aabb.minY = m_root[2];
+		aabb.maxY = m_root[3];
+		aabb.minZ = m_root[4];
+		aabb.maxZ = m_root[5];
+	}
+
+	@Override
+	void gim_aabbtree_box_collision(aabb3f test_aabb, GimDynArrayInt collided) {
+		if (m_triangles.length == 0) {
+			return;
+		}
+		int minX = quantize_min(test_aabb.minX, 0);
+		int maxX = quantize_max(test_aabb.maxX, 0);
+		int minY = quantize_min(test_aabb.minY, 1);
+		int maxY = quantize_max(test_aabb.maxY, 1);
+		int minZ = quantize_min(test_aabb.minZ, 2);
+		int maxZ = quantize_max(test_aabb.maxZ, 2);
+		short[] qbounds = m_qbounds;
+		int[] qnodes = m_qnodes;
+		int i = 0;
+		while (i < m_node_count) {
+			int o = i * 6;
+			if ((qbounds[o] & 0xFFFF) > maxX || (qbounds[o + 1] & 0xFFFF) < minX ||
+					(qbounds[o + 2] & 0xFFFF) > maxY || (qbounds[o + 3] & 0xFFFF) < minY ||
+					(qbounds[o + 4] & 0xFFFF) > maxZ || (qbounds[o + 5] & 0xFFFF) < minZ) {
+				i = qnodes[i*2];
+				continue;
+			}
+			int data = qnodes[i*2 + 1];
+			for (int j = data >>> COUNT_BITS, end = j + (data & COUNT_MASK); j < end; j++) {
+				collided.GIM_DYNARRAY_PUSH_ITEM(m_triangles[j]);
+			}
+			i++;
+		}
+	}
+
+	@Override
+	void gim_aabbtree_ray_collision(vec3f origin, vec3f dir, float tmax, GimDynArrayInt collided) {
+		if (m_triangles.length == 0) {
+			return;
+		}
+		float pad = ray_padding(m_root[0], m_root[1], m_root[2], m_root[3], m_root[4], m_root[5]);
+		int[] qnodes = m_qnodes;
+		int i = 0;
+		while (i < m_node_count) {
+			if (!ray_intersects_box(dequantize(i, 0), dequantize(i, 1), dequantize(i, 2), 
+					dequantize(i, 3), dequantize(i, 4), dequantize(i, 5), pad, origin, dir, tmax)) {
+				i = qnodes[i*2];
+				continue;
+			}
+			int data = qnodes[i*2 + 1];
+			for (int j = data >>> COUNT_BITS, end = j + (data & COUNT_MASK); j < end; j++) {
+				collided.GIM_DYNARRAY_PUSH_ITEM(m_triangles[j]);
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Refits the quantized boxes, see {@link GimAABBTree#gim_aabbtree_refit(float[], int[], int, int)}.
+	 * @return false as well if a triangle has left the box of the root, the 
+	 * quantization needs a rebuild then
+	 */
+	@Override
+	public boolean gim_aabbtree_refit(float[] vertices, int[] indices, int first_vertex, int end_vertex) {
+		if (m_triangles.length == 0) {
+			return true;
+		}
+		if (m_changed == null) {
+			m_changed = new boolean[m_node_count];
+		}
+		boolean all = first_vertex <= 0 && end_vertex*3 >= vertices.length;
+		boolean inside = true;
+		for (int node = m_node_count - 1; node >= 0; node--) {
+			boolean changed;
+			int data = m_qnodes[node*2 + 1];
+			int count = data & COUNT_MASK;
+			if (count != 0) {
+				int first = data >>> COUNT_BITS;
+				changed = all || usesVertex(indices, first, count, first_vertex, end_vertex);
+				if (changed) {
+					triangle_bounds(vertices, indices, first, count, m_leaf_bounds, 0);
+					inside &= quantize_node(m_leaf_bounds, 0, node);
+				}
+			} else {
+				int left = node + 1;
+				int right = m_qnodes[left*2];
+				changed = m_changed[left] || m_changed[right];
+				if (changed) {
+					int o = node * 6;
+					for (int k = 0; k < 6; k += 2) {
+						m_qbounds[o + k] = (short) Math.min(m_qbounds[left*6 + k] & 0xFFFF, 
+								m_qbounds[right*6 + k] & 0xFFFF);
+						m_qbounds[o + k + 1] = (short) Math.max(m_qbounds[left*6 + k + 1] & 0xFFFF, 
+								m_qbounds[right*6 + k + 1] & 0xFFFF);
+					}
+				}
+			}
+			m_changed[node] = changed;
+		}
+		return inside && (!m_changed[0] || cost() <= m_build_cost * REBUILD_COST_RATIO);
+	}
+
+	@Override
+	float cost() {
+		float root = area(0);
+		if (!(root > 0)) {
+			return m_node_count;
+		}
+		float sum = 0;
+		for (int node = 0; node < m_node_count; node++) {
+			sum += area(node);
+		}
+		return sum / root;
+	}
+
+	private float area(int node) {
+		int o = node * 6;
+		return area(
+				(float) (((m_qbounds[o + 1] & 0xFFFF) - (m_qbounds[o] & 0xFFFF)) * m_inv_scale[0]), 
+				(float) (((m_qbounds[o + 3] & 0xFFFF) - (m_qbounds[o + 2] & 0xFFFF)) * m_inv_scale[1]), 
+				(float) (((m_qbounds[o + 5] & 0xFFFF) - (m_qbounds[o + 4] & 0xFFFF)) * m_inv_scale[2]));
+	}
+}
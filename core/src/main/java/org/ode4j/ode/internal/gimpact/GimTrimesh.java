@@ -33,8 +33,12 @@ package org.ode4j.ode.internal.gimpact;
 
 import static org.ode4j.ode.internal.gimpact.GimGeometry.*;
 
+import java.util.Arrays;
+
 import org.ode4j.ode.internal.cpp4j.java.IntArray;
 import org.ode4j.ode.internal.cpp4j.java.ObjArray;
+import org.ode4j.ode.internal.cpp4j.java.RefBoolean;
+import org.ode4j.ode.internal.cpp4j.java.RefFloat;
 import org.ode4j.ode.internal.gimpact.GimBufferArrayFloat.GIM_PROCESS_BUFFER_ARRAY_FN;
 import org.ode4j.ode.internal.gimpact.GimTriCollision.GIM_TRIANGLE_DATA;
 import org.ode4j.ode.internal.gimpact.GimTriCollision.GIM_TRIANGLE_RAY_CONTACT_DATA;
@@ -164,6 +168,52 @@ public class GimTrimesh implements GimConstants {
 	gim_update_trimesh_function m_update_callback;//! If null, then m_transform is applied.
 	mat4f m_transform = new mat4f();
 
+	// (TZ) Local space mode, see gim_trimesh_set_local_tree()
+	private GimAABBTree m_local_tree;
+	// Incremented when the transform changes
+	private int m_transform_stamp;
+	// Transform stamps of the transformed vertices and of the planes caches
+	private int[] m_vertex_stamps;
+	private int[] m_triangle_stamps;
+	// Transform stamps of all transformed vertices and of the boxes in m_aabbset
+	private int m_vertices_stamp;
+	private int m_aabbset_stamp;
+	// Incremented when the source vertices or the tree change, for GIM_TC_CACHE
+	private int m_source_stamp;
+	// Temporaries of the local space mode. The queries are synchronized, the 
+	// bound is only updated while the trimesh is not queried.
+	private final aabb3f m_tmp_aabb = new aabb3f();
+	private final aabb3f m_tmp_tri_aabb = new aabb3f();
+	private final float[] m_tmp_center = new float[3];
+	private final float[] m_tmp_extents = new float[3];
+	private final vec3f m_tmp_v1 = new vec3f();
+	private final vec3f m_tmp_v2 = new vec3f();
+	private final vec3f m_tmp_v3 = new vec3f();
+	private final vec3f m_tmp_origin = new vec3f();
+	private final vec3f m_tmp_dir = new vec3f();
+	private final RefBoolean m_tmp_intersected = new RefBoolean(false);
+	private final RefFloat m_tmp_tparam = new RefFloat();
+
+	/*!
+	(TZ) Temporal coherence cache of a geom that collides with a trimesh 
+	repeatedly, see gim_trimesh_box_collision(). It keeps the triangles of an 
+	enlarged box around a query in mesh coordinates, the box stands for the 
+	pose of the geom relative to the trimesh. As long as the geom moves 
+	within the enlarged box, the triangles are taken from the cache instead 
+	of traversing the tree.
+	*/
+	public static class GIM_TC_CACHE
+	{
+		private final aabb3f m_box = new aabb3f();
+		private GimAABBTree m_tree;
+		private int m_source_stamp;
+		private int[] m_triangles = new int[GimDynArray.G_ARRAY_GROW_SIZE];
+		private int m_count;
+	}
+
+	// Slack of a GIM_TC_CACHE box relative to the size of the query box
+	private static final float TC_SLACK = 0.25f;
+
 
 
 	/**
@@ -224,6 +274,8 @@ public class GimTrimesh implements GimConstants {
 	//* @param trimesh1 Collider
 	//void gim_trimesh_trimesh_collision(GimTrimesh * trimesh1, GimTrimesh * trimesh2, GDYNAMIC_ARRAY * contacts);
 	public void gim_trimesh_trimesh_collision(GimTrimesh trimesh2, GimDynArray<GimContact> contacts) {
+		gim_trimesh_update_all();
+		trimesh2.gim_trimesh_update_all();
 		GimTrimeshTrimeshCol.gim_trimesh_trimesh_collision(this, trimesh2, contacts);
 	}
 
@@ -286,7 +338,13 @@ public class GimTrimesh implements GimConstants {
 	*/
 	//void gim_trimesh_sphere_collision(GimTrimesh * trimesh,vec3f center,GREAL radius, GDYNAMIC_ARRAY * contacts);
 	public void gim_trimesh_sphere_collision(vec3f center,float radius, GimDynArray<GimContact> contacts) {
-		GimTrimeshSphereCollision.gim_trimesh_sphere_collision(this, center, radius, contacts);
+		GimTrimeshSphereCollision.gim_trimesh_sphere_collision(this, center, radius, contacts, null);
+	}
+
+	//! (TZ) Trimesh Sphere Collisions with the temporal coherence cache of the sphere or null
+	public void gim_trimesh_sphere_collision(vec3f center,float radius, GimDynArray<GimContact> contacts, 
+			GIM_TC_CACHE tc_cache) {
+		GimTrimeshSphereCollision.gim_trimesh_sphere_collision(this, center, radius, contacts, tc_cache);
 	}
 
 
@@ -349,7 +407,13 @@ public class GimTrimesh implements GimConstants {
 	*/
 	//void gim_trimesh_capsule_collision(GimTrimesh * trimesh, GIM_CAPSULE_DATA * capsule, GDYNAMIC_ARRAY * contacts);
 	public void gim_trimesh_capsule_collision(GIM_CAPSULE_DATA capsule, GimDynArray<GimContact> contacts) {
-		GimTrimeshCapsuleCollision.gim_trimesh_capsule_collision(this, capsule, contacts);
+		GimTrimeshCapsuleCollision.gim_trimesh_capsule_collision(this, capsule, contacts, null);
+	}
+
+	//! (TZ) Trimesh Capsule collision with the temporal coherence cache of the capsule or null
+	public void gim_trimesh_capsule_collision(GIM_CAPSULE_DATA capsule, GimDynArray<GimContact> contacts, 
+			GIM_TC_CACHE tc_cache) {
+		GimTrimeshCapsuleCollision.gim_trimesh_capsule_collision(this, capsule, contacts, tc_cache);
 	}
 
 
@@ -417,6 +481,7 @@ public class GimTrimesh implements GimConstants {
 	*/
 	//void gim_trimesh_plane_collision(GimTrimesh * trimesh,vec4f plane, GDYNAMIC_ARRAY * contacts);
 	public void gim_trimesh_plane_collision(vec4f plane, GimDynArray<vec4f> contacts) {
+		gim_trimesh_update_all_vertices();
 		GimTrimeshTrimeshCol.gim_trimesh_plane_collision(this, plane, contacts);
 	}
 
@@ -740,6 +805,28 @@ public class GimTrimesh implements GimConstants {
 	    m_mask |= GIM_TRIMESH_NEED_UPDATE;
 	}
 
+	/*!
+	(TZ) Copies changed vertices into the source vertices, for deformable 
+	trimeshes.
+	\post This function calls to gim_trimesh_post_update
+	\param vertices x, y, z of all vertices
+	\param first_vertex first changed vertex
+	\param end_vertex index after the last changed vertex
+	*/
+	public void gim_trimesh_update_source_vertices(float[] vertices, int first_vertex, int end_vertex)
+	{
+	    ObjArray<vec3f> source_vertices = m_source_vertex_buffer.GIM_BUFFER_ARRAY_POINTER(0);
+	    for (int i = first_vertex; i < end_vertex; i++)
+	    {
+	        float[] v = source_vertices.at(i).f;
+	        v[0] = vertices[i*3];
+	        v[1] = vertices[i*3 + 1];
+	        v[2] = vertices[i*3 + 2];
+	    }
+	    m_source_stamp++;
+	    gim_trimesh_post_update();
+	}
+
 	//kernel
 	//#define MULT_MAT_VEC4_KERNEL(_mat,_src,_dst) MAT_DOT_VEC_3X4((_dst),(_mat),(_src))
 	private final GIM_PROCESS_BUFFER_ARRAY_FN MULT_MAT_VEC4_KERNEL = 
@@ -813,6 +900,21 @@ public class GimTrimesh implements GimConstants {
 	public void gim_trimesh_update()
 	{
 		if(gim_trimesh_needs_update()==false) return;
+		if(m_local_tree!=null)
+		{
+			// (TZ) Only the global bound, the triangles are transformed when they are needed
+			gim_trimesh_update_local_bound();
+			if(++m_transform_stamp == 0)
+			{
+				Arrays.fill(m_vertex_stamps, 0);
+				Arrays.fill(m_triangle_stamps, 0);
+				m_vertices_stamp = 0;
+				m_aabbset_stamp = 0;
+				m_transform_stamp = 1;
+			}
+			m_mask &= ~GIM_TRIMESH_NEED_UPDATE;
+			return;
+		}
 		gim_trimesh_update_vertices();
 		gim_trimesh_locks_work_data();
 		gim_trimesh_update_aabbset();
@@ -823,6 +925,333 @@ public class GimTrimesh implements GimConstants {
 	}
 
 	//! Set the transform of a trimesh
+	/*!
+	(TZ) Switches the trimesh to the local space mode, or back if tree is null.
+	In local space mode gim_trimesh_update() does not transform the vertices 
+	and does not update the boxes of m_aabbset. The global bound is computed 
+	from the root box of the tree, box queries are transformed into mesh space 
+	and the vertices of a triangle are transformed when the triangle is 
+	accessed. The routines that work on all triangles (trimesh/trimesh and 
+	plane collisions) update everything first, see gim_trimesh_update_all().
+	The boxes of m_aabbset are only allocated for trimesh/trimesh collisions.
+	\pre The trimesh must have a transformed reply, the tree must have been built 
+	from the source vertices of the trimesh.
+	\param tree A tree of the source vertices or null.
+	*/
+	public void gim_trimesh_set_local_tree(GimAABBTree tree)
+	{
+		if(tree == m_local_tree) return;
+		if(tree != null)
+		{
+			assert(gim_trimesh_has_tranformed_reply());
+			assert(tree.gim_aabbtree_get_triangle_count() == gim_trimesh_get_triangle_count());
+			m_vertex_stamps = new int[m_source_vertex_buffer.size()];
+			m_triangle_stamps = new int[gim_trimesh_get_triangle_count()];
+			m_aabbset = GimAABBSet.gim_aabbset_alloc(0);
+		}
+		else
+		{
+			m_vertex_stamps = null;
+			m_triangle_stamps = null;
+			m_aabbset = GimAABBSet.gim_aabbset_alloc(gim_trimesh_get_triangle_count());
+		}
+		m_local_tree = tree;
+		m_source_stamp++;
+		m_transform_stamp = 1;
+		m_vertices_stamp = 0;
+		m_aabbset_stamp = 0;
+		m_planes_cache_bitset.GIM_BITSET_CLEAR_ALL();
+		gim_trimesh_post_update();
+	}
+
+	public boolean gim_trimesh_has_local_tree()
+	{
+		return m_local_tree != null;
+	}
+
+	/*!
+	Computes the global bound from the root box of the local tree. The result 
+	encloses the transformed root box, it is larger than the bound of the 
+	transformed vertices for rotated trimeshes.
+	*/
+	private void gim_trimesh_update_local_bound()
+	{
+		aabb3f global_bound = m_aabbset.m_global_bound;
+		aabb3f local_bound = m_tmp_aabb;
+		m_local_tree.gim_aabbtree_get_bound(local_bound);
+		if(!(local_bound.minX <= local_bound.maxX))
+		{
+			INVALIDATE_AABB(global_bound);
+			return;
+		}
+		float[] m = m_transform.f;
+		float cx = 0.5f*(local_bound.minX + local_bound.maxX);
+		float cy = 0.5f*(local_bound.minY + local_bound.maxY);
+		float cz = 0.5f*(local_bound.minZ + local_bound.maxZ);
+		float ex = 0.5f*(local_bound.maxX - local_bound.minX);
+		float ey = 0.5f*(local_bound.maxY - local_bound.minY);
+		float ez = 0.5f*(local_bound.maxZ - local_bound.minZ);
+		float[] c = m_tmp_center;
+		float[] e = m_tmp_extents;
+		for (int i = 0; i < 3; i++)
+		{
+			c[i] = m[i*4]*cx + m[i*4 + 1]*cy + m[i*4 + 2]*cz + m[i*4 + 3];
+			e[i] = Math.abs(m[i*4])*ex + Math.abs(m[i*4 + 1])*ey + Math.abs(m[i*4 + 2])*ez;
+			// Rounding of the vertex transform
+			e[i] += (Math.abs(c[i]) + e[i])*LOCAL_TREE_EPSILON;
+		}
+		global_bound.minX = c[0] - e[0];
+		global_bound.maxX = c[0] + e[0];
+		global_bound.minY = c[1] - e[1];
+		global_bound.maxY = c[1] + e[1];
+		global_bound.minZ = c[2] - e[2];
+		global_bound.maxZ = c[2] + e[2];
+	}
+
+	private static final float LOCAL_TREE_EPSILON = 1e-6f;
+
+	/*!
+	(TZ) In local space mode, transforms all vertices and updates the boxes of 
+	m_aabbset if the transform has changed since the last call. Does nothing 
+	otherwise.
+	*/
+	public synchronized void gim_trimesh_update_all()
+	{
+		if(m_local_tree == null || m_aabbset_stamp == m_transform_stamp) return;
+		int facecount = gim_trimesh_get_triangle_count();
+		if(m_aabbset.m_count != facecount)
+		{
+			m_aabbset = GimAABBSet.gim_aabbset_alloc(facecount);
+		}
+		gim_trimesh_update_all_vertices();
+		gim_trimesh_update_aabbset();
+		Arrays.fill(m_triangle_stamps, m_transform_stamp);
+		m_aabbset_stamp = m_transform_stamp;
+	}
+
+	/*!
+	(TZ) In local space mode, transforms all vertices if the transform has 
+	changed since the last call. Does nothing otherwise.
+	*/
+	public synchronized void gim_trimesh_update_all_vertices()
+	{
+		if(m_local_tree == null || m_vertices_stamp == m_transform_stamp) return;
+		gim_trimesh_update_vertices();
+		Arrays.fill(m_vertex_stamps, m_transform_stamp);
+		m_vertices_stamp = m_transform_stamp;
+	}
+
+	/*!
+	(TZ) In local space mode, transforms the vertices of a triangle and 
+	invalidates its planes cache if the transform has changed since the 
+	triangle has been accessed last.
+	*/
+	private synchronized void gim_trimesh_update_triangle(int triangle_index)
+	{
+		if(m_triangle_stamps[triangle_index] == m_transform_stamp) return;
+		ObjArray<vec3f> source_vertices = m_source_vertex_buffer.GIM_BUFFER_ARRAY_POINTER(0);
+		ObjArray<vec3f> transformed_vertices = m_transformed_vertex_buffer.GIM_BUFFER_ARRAY_POINTER(0);
+		IntArray triangle_indices = m_tri_index_buffer.GIM_BUFFER_ARRAY_POINTER(triangle_index*3);
+		for (int i = 0; i < 3; i++)
+		{
+			int v = triangle_indices.at(i);
+			if(m_vertex_stamps[v] != m_transform_stamp)
+			{
+				MAT_DOT_VEC_3X4(transformed_vertices.at(v), m_transform, source_vertices.at(v));
+				m_vertex_stamps[v] = m_transform_stamp;
+			}
+		}
+		m_planes_cache_bitset.GIM_BITSET_CLEAR(triangle_index);
+		m_triangle_stamps[triangle_index] = m_transform_stamp;
+	}
+
+	/*!
+	Finds the triangles whose boxes collide with a box, in ascending order.
+	In local space mode the box is transformed into mesh space and only the 
+	triangles in the leafs of the tree that are hit are transformed. 
+	Triangles that do not collide with the box are not reported even if their 
+	box does.
+	\param test_aabb Box in world coordinates
+	\param collided Indices of the triangles
+	*/
+	public void gim_trimesh_box_collision(aabb3f test_aabb, GimDynArrayInt collided)
+	{
+		gim_trimesh_box_collision(test_aabb, collided, null);
+	}
+
+	/*!
+	Finds the triangles whose boxes collide with a box, see 
+	gim_trimesh_box_collision(aabb3f, GimDynArrayInt). In local space mode 
+	the tree is only traversed if the box has left the box of the cache.
+	\param test_aabb Box in world coordinates
+	\param collided Indices of the triangles
+	\param tc_cache Cache of the colliding geom or null
+	*/
+	public synchronized void gim_trimesh_box_collision(aabb3f test_aabb, GimDynArrayInt collided, 
+			GIM_TC_CACHE tc_cache)
+	{
+		if(m_local_tree == null)
+		{
+			m_aabbset.gim_aabbset_box_collision(test_aabb, collided);
+			return;
+		}
+		collided.m_size = 0;
+		if(AABBCOLLISION(m_aabbset.m_global_bound, test_aabb) == false) return;
+
+		// Box in mesh coordinates that encloses the test box, the rotation 
+		// of the transform is orthonormal
+		float[] m = m_transform.f;
+		float cx = 0.5f*(test_aabb.minX + test_aabb.maxX) - m[3];
+		float cy = 0.5f*(test_aabb.minY + test_aabb.maxY) - m[7];
+		float cz = 0.5f*(test_aabb.minZ + test_aabb.maxZ) - m[11];
+		float ex = 0.5f*(test_aabb.maxX - test_aabb.minX);
+		float ey = 0.5f*(test_aabb.maxY - test_aabb.minY);
+		float ez = 0.5f*(test_aabb.maxZ - test_aabb.minZ);
+		float[] c = m_tmp_center;
+		float[] e = m_tmp_extents;
+		for (int i = 0; i < 3; i++)
+		{
+			c[i] = m[i]*cx + m[4 + i]*cy + m[8 + i]*cz;
+			e[i] = Math.abs(m[i])*ex + Math.abs(m[4 + i])*ey + Math.abs(m[8 + i])*ez;
+			e[i] += (Math.abs(c[i]) + e[i])*LOCAL_TREE_EPSILON;
+		}
+		aabb3f local_aabb = m_tmp_aabb;
+		local_aabb.minX = c[0] - e[0];
+		local_aabb.maxX = c[0] + e[0];
+		local_aabb.minY = c[1] - e[1];
+		local_aabb.maxY = c[1] + e[1];
+		local_aabb.minZ = c[2] - e[2];
+		local_aabb.maxZ = c[2] + e[2];
+		if(tc_cache == null)
+		{
+			m_local_tree.gim_aabbtree_box_collision(local_aabb, collided);
+		}
+		else
+		{
+			gim_trimesh_tc_box_collision(tc_cache, local_aabb, collided);
+		}
+
+		// Same test as gim_aabbset_box_collision() with the transformed triangles
+		int[] triangles = collided.GIM_DYNARRAY_POINTER();
+		int count = collided.size();
+		Arrays.sort(triangles, 0, count);
+		vec3f v1 = m_tmp_v1;
+		vec3f v2 = m_tmp_v2;
+		vec3f v3 = m_tmp_v3;
+		aabb3f tri_aabb = m_tmp_tri_aabb;
+		int n = 0;
+		for (int i = 0; i < count; i++)
+		{
+			gim_trimesh_get_triangle_vertices(triangles[i], v1, v2, v3);
+			COMPUTEAABB_FOR_TRIANGLE(tri_aabb, v1, v2, v3);
+			if(AABBCOLLISION(tri_aabb, test_aabb))
+			{
+				triangles[n++] = triangles[i];
+			}
+		}
+		collided.m_size = n;
+	}
+
+	/*!
+	Takes the triangles of a box in mesh coordinates from the cache, or 
+	traverses the tree with an enlarged box and fills the cache.
+	*/
+	private void gim_trimesh_tc_box_collision(GIM_TC_CACHE tc_cache, aabb3f local_aabb, 
+			GimDynArrayInt collided)
+	{
+		aabb3f box = tc_cache.m_box;
+		if(tc_cache.m_tree == m_local_tree && tc_cache.m_source_stamp == m_source_stamp && 
+				box.minX <= local_aabb.minX && box.maxX >= local_aabb.maxX && 
+				box.minY <= local_aabb.minY && box.maxY >= local_aabb.maxY && 
+				box.minZ <= local_aabb.minZ && box.maxZ >= local_aabb.maxZ)
+		{
+			int[] triangles = tc_cache.m_triangles;
+			for (int i = 0; i < tc_cache.m_count; i++)
+			{
+				collided.GIM_DYNARRAY_PUSH_ITEM(triangles[i]);
+			}
+			return;
+		}
+
+		float slack = TC_SLACK*Math.max(local_aabb.maxX - local_aabb.minX, 
+				Math.max(local_aabb.maxY - local_aabb.minY, local_aabb.maxZ - local_aabb.minZ));
+		box.minX = local_aabb.minX - slack;
+		box.maxX = local_aabb.maxX + slack;
+		box.minY = local_aabb.minY - slack;
+		box.maxY = local_aabb.maxY + slack;
+		box.minZ = local_aabb.minZ - slack;
+		box.maxZ = local_aabb.maxZ + slack;
+		m_local_tree.gim_aabbtree_box_collision(box, collided);
+
+		int count = collided.size();
+		if(tc_cache.m_triangles.length < count)
+		{
+			tc_cache.m_triangles = new int[Math.max(count, 2*tc_cache.m_triangles.length)];
+		}
+		System.arraycopy(collided.GIM_DYNARRAY_POINTER(), 0, tc_cache.m_triangles, 0, count);
+		tc_cache.m_count = count;
+		tc_cache.m_tree = m_local_tree;
+		tc_cache.m_source_stamp = m_source_stamp;
+	}
+
+	/*!
+	Finds the triangles whose boxes are hit by a ray, in ascending order.
+	In local space mode the ray is transformed into mesh space and only the 
+	triangles in the leafs of the tree that are hit are transformed.
+	\param origin Origin of the ray in world coordinates
+	\param dir Direction of the ray in world coordinates
+	\param tmax Length of the ray
+	\param collided Indices of the triangles
+	*/
+	synchronized void gim_trimesh_ray_candidates(vec3f origin, vec3f dir, float tmax, GimDynArrayInt collided)
+	{
+		if(m_local_tree == null)
+		{
+			m_aabbset.gim_aabbset_ray_collision(origin, dir, tmax, collided);
+			return;
+		}
+		collided.m_size = 0;
+		RefBoolean intersected = m_tmp_intersected;
+		RefFloat tparam = m_tmp_tparam;
+		BOX_INTERSECTS_RAY(m_aabbset.m_global_bound, origin, dir, tparam, tmax, intersected);
+		if(intersected.b == false) return;
+
+		// Ray in mesh coordinates, the rotation of the transform is orthonormal
+		float[] m = m_transform.f;
+		float ox = origin.f[0] - m[3];
+		float oy = origin.f[1] - m[7];
+		float oz = origin.f[2] - m[11];
+		vec3f local_origin = m_tmp_origin;
+		vec3f local_dir = m_tmp_dir;
+		for (int i = 0; i < 3; i++)
+		{
+			local_origin.f[i] = m[i]*ox + m[4 + i]*oy + m[8 + i]*oz;
+			local_dir.f[i] = m[i]*dir.f[0] + m[4 + i]*dir.f[1] + m[8 + i]*dir.f[2];
+		}
+		m_local_tree.gim_aabbtree_ray_collision(local_origin, local_dir, tmax, collided);
+
+		// Same test as gim_aabbset_ray_collision() with the transformed triangles
+		int[] triangles = collided.GIM_DYNARRAY_POINTER();
+		int count = collided.size();
+		Arrays.sort(triangles, 0, count);
+		vec3f v1 = m_tmp_v1;
+		vec3f v2 = m_tmp_v2;
+		vec3f v3 = m_tmp_v3;
+		aabb3f tri_aabb = m_tmp_tri_aabb;
+		int n = 0;
+		for (int i = 0; i < count; i++)
+		{
+			gim_trimesh_get_triangle_vertices(triangles[i], v1, v2, v3);
+			COMPUTEAABB_FOR_TRIANGLE(tri_aabb, v1, v2, v3);
+			BOX_INTERSECTS_RAY(tri_aabb, origin, dir, tparam, tmax, intersected);
+			if(intersected.b)
+			{
+				triangles[n++] = triangles[i];
+			}
+		}
+		collided.m_size = n;
+	}
+
 	/*!
 	\post This function calls to gim_trimesh_post_update
 	*/
@@ -855,6 +1284,7 @@ public class GimTrimesh implements GimConstants {
 	void gim_trimesh_get_triangle_data(int triangle_index, 
 			final GIM_TRIANGLE_DATA tri_data)
 	{
+	    if(m_local_tree != null) gim_trimesh_update_triangle(triangle_index);
 	    ObjArray<vec3f> transformed_vertices = m_transformed_vertex_buffer.GIM_BUFFER_ARRAY_POINTER(0);
 
 	    IntArray triangle_indices = m_tri_index_buffer.GIM_BUFFER_ARRAY_POINTER(triangle_index*3);
@@ -907,6 +1337,7 @@ public class GimTrimesh implements GimConstants {
 	public void gim_trimesh_get_triangle_vertices( 
 			int triangle_index, vec3f v1, vec3f v2, vec3f v3)
 	{
+		if(m_local_tree != null) gim_trimesh_update_triangle(triangle_index);
 		//vec3f[] transformed_vertices = GIM_BUFFER_ARRAY_POINTER(vec3f.class,trimesh.m_transformed_vertex_buffer,0);
 		ObjArray<vec3f> transformed_vertices = m_transformed_vertex_buffer.GIM_BUFFER_ARRAY_POINTER(0);
 
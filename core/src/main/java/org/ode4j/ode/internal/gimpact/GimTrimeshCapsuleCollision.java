@@ -35,6 +35,7 @@ import static org.ode4j.ode.internal.gimpact.GimGeometry.*;
 
 import org.ode4j.ode.internal.cpp4j.java.ObjArray;
 import org.ode4j.ode.internal.gimpact.GimTriCollision.GIM_TRIANGLE_DATA;
+import org.ode4j.ode.internal.gimpact.GimTrimesh.GIM_TC_CACHE;
 
 /**
  * Ported to Java by Tilmann Zaeschke
@@ -296,8 +297,10 @@ public class GimTrimeshCapsuleCollision {
 	 * @param capsule
 	 * @param contact
 	 * @param contacts A GIM_CONTACT array. Must be initialized
+	 * @param tc_cache (TZ) Temporal coherence cache of the capsule or null
 	 */
-	static void gim_trimesh_capsule_collision(GimTrimesh trimesh, GIM_CAPSULE_DATA capsule, GimDynArray<GimContact> contacts)
+	static void gim_trimesh_capsule_collision(GimTrimesh trimesh, GIM_CAPSULE_DATA capsule, 
+			GimDynArray<GimContact> contacts, GIM_TC_CACHE tc_cache)
 	{
 	    contacts.m_size = 0;
 
@@ -306,7 +309,7 @@ public class GimTrimeshCapsuleCollision {
 
 		GimDynArrayInt collision_result = GimDynArrayInt.GIM_CREATE_BOXQUERY_LIST();
 
-		trimesh.m_aabbset.gim_aabbset_box_collision(test_aabb, collision_result);
+		trimesh.gim_trimesh_box_collision(test_aabb, collision_result, tc_cache);
 
 		if(collision_result.size()==0)
 		{
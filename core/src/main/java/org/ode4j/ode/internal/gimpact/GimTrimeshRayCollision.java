@@ -66,7 +66,7 @@ public class GimTrimeshRayCollision {
 	{
 	    GimDynArrayInt collision_result = GimDynArrayInt.GIM_CREATE_BOXQUERY_LIST();
 
-	    trimesh.m_aabbset.gim_aabbset_ray_collision(origin,dir,tmax,collision_result);
+	    trimesh.gim_trimesh_ray_candidates(origin,dir,tmax,collision_result);
 
 		if(collision_result.size()==0)
 		{
@@ -135,7 +135,7 @@ public class GimTrimeshRayCollision {
 	{
 	    GimDynArrayInt collision_result = GimDynArrayInt.GIM_CREATE_BOXQUERY_LIST();
 
-		trimesh.m_aabbset.gim_aabbset_ray_collision(origin,dir,tmax,collision_result);
+		trimesh.gim_trimesh_ray_candidates(origin,dir,tmax,collision_result);
 
 		if(collision_result.size()==0)
 		{
@@ -35,6 +35,7 @@ import org.ode4j.ode.internal.gimpact.GimGeometry.aabb3f;
 import org.ode4j.ode.internal.gimpact.GimGeometry.vec3f;
 import org.ode4j.ode.internal.gimpact.GimTriCollision.GIM_TRIANGLE_CONTACT_DATA;
 import org.ode4j.ode.internal.gimpact.GimTriCollision.GIM_TRIANGLE_DATA;
+import org.ode4j.ode.internal.gimpact.GimTrimesh.GIM_TC_CACHE;
 
 import static org.ode4j.ode.internal.gimpact.GimGeometry.*;
 
@@ -159,11 +160,12 @@ public class GimTrimeshSphereCollision {
 	 * @param center
 	 * @param radius
 	 * @param contacts A GIM_CONTACT array. Must be initialized
+	 * @param tc_cache (TZ) Temporal coherence cache of the sphere or null
 	 */
 //	void gim_trimesh_sphere_collision(GIM_TRIMESH * trimesh,vec3f center,GREAL radius, GDYNAMIC_ARRAY * contacts)
 //	{
 	static void gim_trimesh_sphere_collision(final GimTrimesh trimesh, final vec3f center,
-			final float radius, final GimDynArray<GimContact> contacts)
+			final float radius, final GimDynArray<GimContact> contacts, final GIM_TC_CACHE tc_cache)
 	{
 	    contacts.m_size = 0;
 
@@ -177,7 +179,7 @@ public class GimTrimeshSphereCollision {
 
 		GimDynArrayInt collision_result = GimDynArrayInt.GIM_CREATE_BOXQUERY_LIST();
 
-		trimesh.m_aabbset.gim_aabbset_box_collision(test_aabb, collision_result);
+		trimesh.gim_trimesh_box_collision(test_aabb, collision_result, tc_cache);
 
 		if(collision_result.size()==0)
 		{
@@ -128,7 +128,7 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
     // info returned by getSureMaxInfo function. 
     // The information is used for memory reservation in calculations.
 
-    static class SureMaxInfo
+    public static class SureMaxInfo
     {
       // The value of `max_m' must ALWAYS be not less than the value of `m'
       // the getInfo1 call can generate in current joint state. Another 
@@ -142,7 +142,7 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 
       //int8 max_m; // Estimate of maximal `m' in Info1
         //TODO byte?! (TZ)
-        int max_m; // Estimate of maximal `m' in Info1
+        public int max_m; // Estimate of maximal `m' in Info1
     };
 
 
@@ -168,6 +168,15 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
     // This call quickly!!! estimates maximum value of "m" that could be returned by getInfo1()
     // See comments at definition of SureMaxInfo for defails.
     abstract void getSureMaxInfo( SureMaxInfo info );
+    /**
+     * (TZ) Used for estimating the cost of islands when scheduling them.
+     * @param info Temporary info structure
+     * @return Estimate of maximal `m' in Info1, see getSureMaxInfo()
+     */
+    public final int dxGetSureMaxRows( SureMaxInfo info ) {
+        getSureMaxInfo( info );
+        return info.max_m;
+    }
 //	abstract dJointType type();// const = 0;
 //	abstract int size();
 
@@ -807,6 +816,8 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 			node[0].next = null;
 		}
 
+		world.islands.jointConnected(this);
+
 		// Since the bodies are now set.
 		// Calculate the values depending on the bodies.
 		// Only need to calculate relative value if a body exist
@@ -826,12 +837,18 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 	public void enable()
 	{
 		flags &= ~dJOINT_DISABLED;
+		if (world != null) {
+			world.islands.jointConnected(this);
+		}
 	}
 
 	//void dJointDisable ()
 	@Override
 	public void disable()
 	{
+		if (world != null) {
+			world.islands.jointDisconnecting(this);
+		}
 		flags |= dJOINT_DISABLED;
 	}
 
@@ -853,6 +870,9 @@ public abstract class DxJoint extends DObject implements DJoint, Cloneable {
 //	public static void removeJointReferencesFromAttachedBodies (dxJoint j)
 	public void removeJointReferencesFromAttachedBodies ()
 	{
+		if (world != null) {
+			world.islands.jointDisconnecting(this);
+		}
 		for (int i=0; i<2; i++) {
 			DxBody body = node[i].body;
 			if (body != null) {
@@ -33,7 +33,6 @@ import org.ode4j.ode.internal.cpp4j.java.Ref;
 import org.ode4j.ode.internal.joints.DxJoint;
 import org.ode4j.ode.internal.processmem.DxStepperProcessingCallContext.dstepper_fn_t;
 import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
-import org.ode4j.ode.threading.ThreadingUtils;
 import org.ode4j.ode.threading.Threading_H.CallContext;
 import org.ode4j.ode.threading.Threading_H.DCallReleasee;
 import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
@@ -41,19 +40,36 @@ import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
 public class DxIslandsProcessingCallContext implements CallContext {
 
 	public DxIslandsProcessingCallContext(DxWorld world, DxWorldProcessIslandsInfo islandsInfo, 
-			double stepSize, dstepper_fn_t stepper) {
+			double stepSize, long stepSeed, dstepper_fn_t stepper) {
 		m_world = world;
 		m_islandsInfo = islandsInfo;
 		m_stepSize = stepSize;
+		m_stepSeed = stepSeed;
 		m_stepper = stepper;
 		m_groupReleasee = null;
 		//m_islandToProcessStorage = 0;
 		m_stepperAllowedThreads = 0;
+		m_largeIslandCost = 1;
+		m_islandsBatchCost = 0;
 	}
 
 	public void AssignGroupReleasee(DCallReleasee groupReleasee) { m_groupReleasee = groupReleasee; }
 	public void SetStepperAllowedThreads(int allowedThreadsLimit) { m_stepperAllowedThreads = allowedThreadsLimit; }
 
+	/**
+	 * (TZ) Sets the limits for scheduling the islands over the jobs. 
+	 * An island that costs at least the fair share of a job is stepped with 
+	 * the stepper allowed threads, smaller islands are stepped with a single 
+	 * thread and are batched together up to a fraction of the fair share.
+	 * @param jobCount number of jobs that step islands
+	 */
+	public void AssignIslandsScheduling(int jobCount)
+	{
+		int fairShare = m_islandsInfo.GetTotalCost() / jobCount;
+		m_largeIslandCost = Math.max(fairShare, 1);
+		m_islandsBatchCost = fairShare / ISLANDS_BATCHES_PER_JOB;
+	}
+
 //    static int ThreadedProcessGroup_Callback(void callContext, 
 //    		dcallindex_t callInstanceIndex, DCallReleasee callThisReleasee);
 //    boolean ThreadedProcessGroup();
@@ -75,11 +91,18 @@ public class DxIslandsProcessingCallContext implements CallContext {
     final DxWorld                   m_world;
     final DxWorldProcessIslandsInfo m_islandsInfo;
     final double                    m_stepSize;
+    final long                      m_stepSeed;
     final dstepper_fn_t             m_stepper;
     DCallReleasee                 m_groupReleasee;
     //volatile int                  m_islandToProcessStorage;
     final AtomicInteger             m_islandToProcessStorage = new AtomicInteger();
     int                        m_stepperAllowedThreads;
+    int                        m_largeIslandCost;
+    int                        m_islandsBatchCost;
+
+    // (TZ) The small islands are split into this many batches per job, so that 
+    // the jobs can still balance the load at the end of the step.
+    private static final int ISLANDS_BATCHES_PER_JOB = 4;
 
     
     public static dThreadedCallFunction ThreadedProcessGroup_Callback = new dThreadedCallFunction() {
@@ -157,51 +180,44 @@ public class DxIslandsProcessingCallContext implements CallContext {
         final DxWorldProcessIslandsInfo islandsInfo = m_islandsInfo;
         int[] islandSizes = islandsInfo.GetIslandSizes();
 
-        final int islandsCount = islandsInfo.GetIslandsCount();
-        int islandToProcess = ObtainNextIslandToBeProcessed(islandsCount);
-
-        if (islandToProcess != islandsCount) {
-            // First time, the counts are zeros and on next passes, adding counts will skip island that has just been processed by stepper
-            DxBody[] islandBodiesStartA = stepperCallContext.GetSelectedIslandBodiesA();
-            int islandBodiesStartP = stepperCallContext.GetSelectedIslandBodiesEndP();
-            DxJoint[] islandJointsStartA = stepperCallContext.GetSelectedIslandJointsA();
-            int islandJointsStartP = stepperCallContext.GetSelectedIslandJointsEndP();
-            int islandIndex = stepperCallContext.m_islandIndex;
-
-            for (; ; ++islandIndex) {
-                int bcount = islandSizes[islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_BODIES_COUNT];
-                int jcount = islandSizes[islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_JOINTS_COUNT];
-
-                if (islandIndex == islandToProcess) {
-                    // Store selected island details
-                    stepperCallContext.AssignIslandSelection(
-                    		islandBodiesStartA, islandBodiesStartP, 
-                    		islandJointsStartA, islandJointsStartP, bcount, jcount);
-
-                    // Store next island index to continue search from
-                    ++islandIndex;
-                    stepperCallContext.AssignIslandSearchProgress(islandIndex);
-
-                    // Restore saved stepper memory arena position
-                    stepperCallContext.RestoreSavedMemArenaStateForStepper();
-
-                    Ref<DCallReleasee> nextSearchReleasee = new Ref<DCallReleasee>();
-
-                    // Summary fault flag may be omitted as any failures will automatically propagate to dependent releasee (i.e. to m_groupReleasee)
-                    m_world.threading().PostThreadedCallForUnawareReleasee(null, nextSearchReleasee, 1, m_groupReleasee, null, 
-                        DxIslandsProcessingCallContext.ThreadedProcessIslandSearch_Callback, stepperCallContext, 0, "World Islands Stepping Selection");
-
-                    stepperCallContext.AssignStepperCallFinalReleasee(nextSearchReleasee.get());
-
-                    m_world.threading().PostThreadedCall(null, null, 0, nextSearchReleasee.get(), null, 
-                        DxIslandsProcessingCallContext.ThreadedProcessIslandStepper_Callback, stepperCallContext, 0, "Island Stepping Job Start");
-
-                    break;
-                }
+        // (TZ) Take the next island of the batch of this job, or a new batch. 
+        // The islands are taken in the order of decreasing cost.
+        int orderPosition = stepperCallContext.ObtainNextIslandOfBatch();
+        if (orderPosition == -1 && ObtainNextIslandsToBeProcessed(stepperCallContext)) {
+            orderPosition = stepperCallContext.ObtainNextIslandOfBatch();
+        }
 
-                islandBodiesStartP += bcount;
-                islandJointsStartP += jcount;
-            }
+        if (orderPosition != -1) {
+            int islandIndex = islandsInfo.GetIslandOrder()[orderPosition];
+            int sizesP = islandIndex * DxWorldProcessIslandsInfo.dxISE__MAX;
+            int bcount = islandSizes[sizesP + DxWorldProcessIslandsInfo.dxISE_BODIES_COUNT];
+            int jcount = islandSizes[sizesP + DxWorldProcessIslandsInfo.dxISE_JOINTS_COUNT];
+            int islandBodiesStartP = islandsInfo.GetBodiesArrayP() + islandSizes[sizesP + DxWorldProcessIslandsInfo.dxISE_BODIES_START];
+            int islandJointsStartP = islandsInfo.GetJointsArrayP() + islandSizes[sizesP + DxWorldProcessIslandsInfo.dxISE_JOINTS_START];
+            // Only islands that are large compared to the others are split into stage threads, 
+            // the threads are better used for other islands otherwise.
+            int stepperAllowedThreads = islandSizes[sizesP + DxWorldProcessIslandsInfo.dxISE_COST] >= m_largeIslandCost 
+                    ? m_stepperAllowedThreads : 1;
+
+            // Store selected island details
+            stepperCallContext.AssignIslandSelection(islandIndex, 
+                    islandsInfo.GetBodiesArray(), islandBodiesStartP, 
+                    islandsInfo.GetJointsArray(), islandJointsStartP, bcount, jcount, 
+                    stepperAllowedThreads);
+
+            // Restore saved stepper memory arena position
+            stepperCallContext.RestoreSavedMemArenaStateForStepper();
+
+            Ref<DCallReleasee> nextSearchReleasee = new Ref<DCallReleasee>();
+
+            // Summary fault flag may be omitted as any failures will automatically propagate to dependent releasee (i.e. to m_groupReleasee)
+            m_world.threading().PostThreadedCallForUnawareReleasee(null, nextSearchReleasee, 1, m_groupReleasee, null, 
+                DxIslandsProcessingCallContext.ThreadedProcessIslandSearch_Callback, stepperCallContext, 0, "World Islands Stepping Selection");
+
+            stepperCallContext.AssignStepperCallFinalReleasee(nextSearchReleasee.get());
+
+            m_world.threading().PostThreadedCall(null, null, 0, nextSearchReleasee.get(), null, 
+                DxIslandsProcessingCallContext.ThreadedProcessIslandStepper_Callback, stepperCallContext, 0, "Island Stepping Job Start");
         }
         else {
             finalizeJob = true;
@@ -235,9 +251,39 @@ public class DxIslandsProcessingCallContext implements CallContext {
         m_stepper.run(stepperCallContext.m_stepperCallContext);
     }
 
-    int ObtainNextIslandToBeProcessed(int islandsCount)
+    /**
+     * (TZ) Assigns the next batch of islands to a job. Islands are taken one 
+     * by one while they are larger than the batch cost, the small islands at the
+     * end of the order are taken together, so that the jobs advance the shared 
+     * cursor once per batch instead of once per island. Each island of the 
+     * batch is still stepped by its own posted search and stepper calls.
+     * @return false if all islands have been taken.
+     */
+    boolean ObtainNextIslandsToBeProcessed(DxSingleIslandCallContext stepperCallContext)
     {
-        return ThreadingUtils.ThrsafeIncrementSizeUpToLimit(m_islandToProcessStorage, islandsCount);
+        final int islandsCount = m_islandsInfo.GetIslandsCount();
+        final int[] islandOrder = m_islandsInfo.GetIslandOrder();
+        final int[] islandSizes = m_islandsInfo.GetIslandSizes();
+        while (true) {
+            int batchStart = m_islandToProcessStorage.get();
+            if (batchStart == islandsCount) {
+                return false;
+            }
+            int batchCost = islandSizes[islandOrder[batchStart] * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_COST];
+            int batchEnd = batchStart + 1;
+            while (batchEnd != islandsCount) {
+                int islandCost = islandSizes[islandOrder[batchEnd] * DxWorldProcessIslandsInfo.dxISE__MAX + DxWorldProcessIslandsInfo.dxISE_COST];
+                if (batchCost + islandCost > m_islandsBatchCost) {
+                    break;
+                }
+                batchCost += islandCost;
+                batchEnd++;
+            }
+            if (m_islandToProcessStorage.compareAndSet(batchStart, batchEnd)) {
+                stepperCallContext.AssignIslandsBatch(batchStart, batchEnd);
+                return true;
+            }
+        }
     }
 
 
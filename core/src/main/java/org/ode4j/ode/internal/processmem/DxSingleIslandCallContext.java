@@ -35,11 +35,13 @@ public class DxSingleIslandCallContext implements CallContext {
 			DxBody[] islandBodiesStart, 
 			DxJoint[] islandJointsStart) {
 		m_islandsProcessingContext = islandsProcessingContext;
-		m_islandIndex = 0; 
+		m_batchNext = 0;
+		m_batchEnd = 0;
 		m_stepperArena = stepperArena;
 		m_arenaInitialState = arenaInitialState; 
 		m_stepperCallContext = new DxStepperProcessingCallContext(islandsProcessingContext.m_world, 
 				islandsProcessingContext.m_stepSize, 
+				islandsProcessingContext.m_stepSeed, 
 				islandsProcessingContext.m_stepperAllowedThreads, 
 				stepperArena, 
 				islandBodiesStart, islandJointsStart);
@@ -50,18 +52,33 @@ public class DxSingleIslandCallContext implements CallContext {
 		//nothing
 	}
 	
-	void AssignIslandSearchProgress(int islandIndex)
+	/**
+	 * (TZ) Assigns a batch of islands to this job.
+	 * @param batchStart first position in the island order
+	 * @param batchEnd end position in the island order
+	 */
+	void AssignIslandsBatch(int batchStart, int batchEnd)
 	{
-		m_islandIndex = islandIndex; 
+		m_batchNext = batchStart;
+		m_batchEnd = batchEnd;
 	}
 
-	void AssignIslandSelection(DxBody[] islandBodiesStartA, int islandBodiesStartP, 
+	/**
+	 * @return position of the next island in the island order, or -1 if 
+	 * the batch is done.
+	 */
+	int ObtainNextIslandOfBatch()
+	{
+		return m_batchNext != m_batchEnd ? m_batchNext++ : -1;
+	}
+
+	void AssignIslandSelection(int islandIndex, DxBody[] islandBodiesStartA, int islandBodiesStartP, 
 			DxJoint[] islandJointsStartA, int islandJointsStartP, 
-			int islandBodiesCount, int islandJointsCount)
+			int islandBodiesCount, int islandJointsCount, int stepperAllowedThreads)
 	{
-		m_stepperCallContext.AssignIslandSelection(islandBodiesStartA, islandBodiesStartP, 
+		m_stepperCallContext.AssignIslandSelection(islandIndex, islandBodiesStartA, islandBodiesStartP, 
 				islandJointsStartA, islandJointsStartP, 
-				islandBodiesCount, islandJointsCount);
+				islandBodiesCount, islandJointsCount, stepperAllowedThreads);
 	}
 
 	DxBody[] GetSelectedIslandBodiesA() { 
@@ -88,7 +105,8 @@ public class DxSingleIslandCallContext implements CallContext {
 	}
 
 	DxIslandsProcessingCallContext  m_islandsProcessingContext;
-	int                          	m_islandIndex;
+	int                          	m_batchNext;	// next position in the island order
+	int                          	m_batchEnd;
 	DxWorldProcessMemArena          m_stepperArena;
 	DxUtil.BlockPointer            	m_arenaInitialState;
 	DxStepperProcessingCallContext  m_stepperCallContext;
@@ -25,6 +25,7 @@
 package org.ode4j.ode.internal.processmem;
 
 import org.ode4j.ode.internal.DxBody;
+import org.ode4j.ode.internal.DxRandom;
 import org.ode4j.ode.internal.DxWorld;
 import org.ode4j.ode.internal.joints.DxJoint;
 import org.ode4j.ode.threading.Threading_H.DCallReleasee;
@@ -42,14 +43,16 @@ public final class DxStepperProcessingCallContext {
 
 	
 	
-	DxStepperProcessingCallContext(DxWorld world, double stepSize, int stepperAllowedThreads, 
+	DxStepperProcessingCallContext(DxWorld world, double stepSize, long stepSeed, int stepperAllowedThreads, 
 			DxWorldProcessMemArena stepperArena, 
 			DxBody[] islandBodiesStart,
 			DxJoint[] islandJointsStart) {
 		m_world = world;
 		m_stepSize = stepSize;
+		m_stepSeed = stepSeed;
 		m_stepperArena = stepperArena;
 		m_finalReleasee = null; 
+		m_islandIndex = 0;
 		m_islandBodiesStartA = islandBodiesStart;
 		m_islandBodiesStartOfs = 0;
 		m_islandJointsStartA = islandJointsStart;
@@ -59,16 +62,19 @@ public final class DxStepperProcessingCallContext {
 		m_stepperAllowedThreads = stepperAllowedThreads;
 	}
 
-	void AssignIslandSelection(DxBody[] islandBodiesStartA, int islandBodiesStartOfs,
+	void AssignIslandSelection(int islandIndex, DxBody[] islandBodiesStartA, int islandBodiesStartOfs,
 			DxJoint[] islandJointsStartA, int islandJointsStartOfs,
-			int islandBodiesCount, int islandJointsCount)
+			int islandBodiesCount, int islandJointsCount, int stepperAllowedThreads)
 	{
+		m_islandIndex = islandIndex;
+		m_rand.seedIsland(m_stepSeed, islandIndex);
 		m_islandBodiesStartA = islandBodiesStartA;
 		m_islandBodiesStartOfs = islandBodiesStartOfs;
 		m_islandJointsStartA = islandJointsStartA;
 		m_islandJointsStartOfs = islandJointsStartOfs;
 		m_islandBodiesCount = islandBodiesCount;
 		m_islandJointsCount = islandJointsCount;
+		m_stepperAllowedThreads = stepperAllowedThreads;
 	}
 
 	int/*DxBody[]*/ GetSelectedIslandBodiesEnd() { return m_islandBodiesStartOfs + m_islandBodiesCount; }
@@ -81,8 +87,11 @@ public final class DxStepperProcessingCallContext {
 
 	private DxWorld            m_world;
 	private double             m_stepSize;
+	private long               m_stepSeed;
+	private final DxRandom     m_rand = new DxRandom();
 	private DxWorldProcessMemArena  m_stepperArena;
 	private DCallReleasee         m_finalReleasee;
+	private int                m_islandIndex;
 	private DxBody[]           m_islandBodiesStartA;
 	private int         	   m_islandBodiesStartOfs;
 	private DxJoint[]          m_islandJointsStartA;
@@ -99,6 +108,22 @@ public final class DxStepperProcessingCallContext {
 		return m_world;
 	}
 
+	/**
+	 * @return the index of the island in the current step, in the order of 
+	 * island detection.
+	 */
+	public int m_islandIndex() {
+		return m_islandIndex;
+	}
+
+	/**
+	 * @return the random number generator of the island, seeded from the 
+	 * world's generator and the island index.
+	 */
+	public DxRandom m_rand() {
+		return m_rand;
+	}
+
 	public int m_islandBodiesCount() {
 		return m_islandBodiesCount;
 	}
@@ -24,8 +24,11 @@
  *************************************************************************/
 package org.ode4j.ode.internal.processmem;
 
+import java.util.Arrays;
+
 import org.ode4j.ode.internal.Common;
 import org.ode4j.ode.internal.DxBody;
+import org.ode4j.ode.internal.DxIslandTracker;
 import org.ode4j.ode.internal.DxWorld;
 import org.ode4j.ode.internal.joints.DxJoint;
 import org.ode4j.ode.internal.joints.DxJointNode;
@@ -34,10 +37,13 @@ import static org.ode4j.ode.internal.ErrorHandler.*;
 
 public class DxWorldProcessIslandsInfo {
 
-    void AssignInfo(int islandcount, int[] islandsizes, DxBody[] bodies, DxJoint[] joints)
+    void AssignInfo(int islandcount, int[] islandsizes, int[] islandorder, int totalcost, 
+            DxBody[] bodies, DxJoint[] joints)
     {
         m_IslandCount = islandcount;
         m_pIslandSizes = islandsizes;
+        m_pIslandOrder = islandorder;
+        m_TotalCost = totalcost;
         m_pBodies = bodies;
         m_pBodiesP = 0;
         m_pJoints = joints;
@@ -46,6 +52,10 @@ public class DxWorldProcessIslandsInfo {
 
     public int GetIslandsCount() { return m_IslandCount; }
     public int[] GetIslandSizes() { return m_pIslandSizes; }
+    /** @return The island indices, sorted by decreasing cost (TZ). */
+    public int[] GetIslandOrder() { return m_pIslandOrder; }
+    /** @return The sum of the costs of all islands (TZ). */
+    public int GetTotalCost() { return m_TotalCost; }
     public DxBody[] GetBodiesArray() { return m_pBodies; }
     public int GetBodiesArrayP() { return m_pBodiesP; }
     public DxJoint[] GetJointsArray() { return m_pJoints; }
@@ -54,6 +64,8 @@ public class DxWorldProcessIslandsInfo {
     //private:
     private int m_IslandCount;
     private int[] m_pIslandSizes;
+    private int[] m_pIslandOrder;
+    private int m_TotalCost;
     private DxBody[] m_pBodies;
     private int m_pBodiesP;
     private DxJoint[] m_pJoints;
@@ -75,22 +87,62 @@ public class DxWorldProcessIslandsInfo {
 	//{
 	static final int dxISE_BODIES_COUNT = 0;
 	static final int dxISE_JOINTS_COUNT = 1;
-	static final int dxISE__MAX = 2;
+	// (TZ) start of the island in the body/joint arrays and the estimated cost 
+	// of stepping it (bodies + maximal joint rows), for scheduling the islands.
+	static final int dxISE_BODIES_START = 2;
+	static final int dxISE_JOINTS_START = 3;
+	static final int dxISE_COST = 4;
+	static final int dxISE__MAX = 5;
 	//};
 	
+    private static final DxWorldProcessMemArena.ObjectType<DxJoint.SureMaxInfo> SURE_MAX_INFO = 
+            new DxWorldProcessMemArena.ObjectType<DxJoint.SureMaxInfo>() {
+        @Override
+        protected DxJoint.SureMaxInfo NewObject() {
+            return new DxJoint.SureMaxInfo();
+        }
+    };
+
     static int BuildIslandsAndEstimateStepperMemoryRequirements(
             DxWorldProcessIslandsInfo islandsinfo, DxWorldProcessMemArena memarena, 
             DxWorld world, double stepsize, dmemestimate_fn_t stepperestimate)
     {
         int maxreq = 0;
 
+        // (TZ) split the islands that may have been disconnected and get the awake 
+        // islands. Islands without enabled bodies are not visited at all.
+        final DxIslandTracker islands = world.islands;
+        int awakecount = islands.update();
+
         // handle auto-disabling of bodies
         world.dInternalHandleAutoDisabling (stepsize);
 
-        int nb = world.nb, nj = world.nj;
+        // count the bodies and the joints of the islands that are still awake
+        int nb = 0, nj = 0, islandcount = 0;
+        for (int i = 0; i < awakecount; i++) {
+            DxBody root = islands.getAwakeIsland(i);
+            if (islands.isAwake(root)) {
+                islandcount++;
+                DxBody b = root;
+                do {
+                    nb++;
+                    for (DxJointNode n=b.firstjoint.get(); n!=null; n=n.next) {
+                        // every joint is in the list of its first body as node[1]
+                        if (n == n.joint.node[1] && n.joint.isEnabled()) {
+                            nj++;
+                        }
+                    }
+                    b = islands.nextIslandBody(b);
+                } while (b != root);
+            }
+        }
+
         // Make array for island body/joint counts
-        int[] islandsizes = memarena.AllocateArrayInt(2 * nb);
+        int[] islandsizes = memarena.AllocateArrayInt(dxISE__MAX * islandcount);
         int sizescurrP;
+        int[] islandorder = memarena.AllocateArrayInt(islandcount);
+        int totalcost = 0;
+        DxJoint.SureMaxInfo sureMaxInfo = memarena.AllocateObject(SURE_MAX_INFO);
 
         // make arrays for body and joint lists (for a single island) to go into
         DxBody[] body = memarena.AllocateArrayDxBody(nb);
@@ -105,86 +157,124 @@ public class DxWorldProcessIslandsInfo {
             int stackalloc = (nj < nb) ? nj : nb;
             DxBody[] stack = memarena.AllocateArrayDxBody(stackalloc);
 
-            {
-                // set all body/joint tags to 0
-                for (DxBody b=world.firstbody.get(); b!=null; b=(DxBody)b.getNext()) b.tag = 0;
-                for (DxJoint j=world.firstjoint.get(); j!=null; j=(DxJoint)j.getNext()) j.tag = 0;
+            // set all body/joint tags of the awake islands to 0
+            //for (DxBody b=world.firstbody.get(); b!=null; b=(DxBody)b.getNext()) b.tag = 0;
+            //for (DxJoint j=world.firstjoint.get(); j!=null; j=(DxJoint)j.getNext()) j.tag = 0;
+            for (int i = 0; i < awakecount; i++) {
+                DxBody root = islands.getAwakeIsland(i);
+                if (!islands.isAwake(root)) {
+                    continue;
+                }
+                DxBody b = root;
+                do {
+                    b.tag = 0;
+                    for (DxJointNode n=b.firstjoint.get(); n!=null; n=n.next) n.joint.tag = 0;
+                    b = islands.nextIslandBody(b);
+                } while (b != root);
             }
 
             sizescurrP = 0;//islandsizes;
             int bodystart = 0;//body;
             int jointstart = 0;//joint;
-            for (DxBody bb=world.firstbody.get(); bb!=null; bb=(DxBody) bb.getNext()) {
-                // get bb = the next enabled, untagged body, and tag it
-                if (bb.tag==0) {
-                    if (bb.dBodyIsEnabled()) {
-                        bb.tag = 1;
-
-                        int bodycurr = bodystart;
-                        int jointcurr = jointstart;
-
-                        // tag all bodies and joints starting from bb.
-                        //*bodycurr++ = bb;
-                        body[bodycurr++] = bb;
-
-                        int stacksize = 0;
-                        DxBody b = bb;
-
-                        while (true) {
-                            // traverse and tag all body's joints, add untagged connected bodies
-                            // to stack
-                            for (DxJointNode n=b.firstjoint.get(); n!=null; n=n.next) {
-                                DxJoint njoint = n.joint;
-                                if (njoint.tag==0) {
-                                    if (njoint.isEnabled()) {
-                                        njoint.tag = 1;
-                                        //*jointcurr++ = njoint;
-                                        joint[jointcurr++] = njoint;
-
-                                        DxBody nbody = n.body;
-                                        // Body disabled flag is not checked here. This is how auto-enable works.
-                                        if (nbody!=null && nbody.tag <= 0) {
-                                            nbody.tag = 1;
-                                            // Make sure all bodies are in the enabled state.
-                                            nbody.dBodyEnable_noAdis();
-                                            //nbody.flags &= ~DxBody.dxBodyDisabled;
-                                            stack[stacksize++] = nbody;
+            for (int i = 0; i < awakecount; i++) {
+                DxBody root = islands.getAwakeIsland(i);
+                if (!islands.isAwake(root)) {
+                    continue;
+                }
+                // (TZ) all bodies of the island are found from its first enabled body
+                DxBody bb = root;
+                do {
+                    // get bb = the next enabled, untagged body, and tag it
+                    if (bb.tag==0) {
+                        if (bb.dBodyIsEnabled()) {
+                            bb.tag = 1;
+
+                            int bodycurr = bodystart;
+                            int jointcurr = jointstart;
+
+                            // tag all bodies and joints starting from bb.
+                            //*bodycurr++ = bb;
+                            body[bodycurr++] = bb;
+
+                            int stacksize = 0;
+                            DxBody b = bb;
+                            int islandcost = 0;
+
+                            while (true) {
+                                // traverse and tag all body's joints, add untagged connected bodies
+                                // to stack
+                                for (DxJointNode n=b.firstjoint.get(); n!=null; n=n.next) {
+                                    DxJoint njoint = n.joint;
+                                    if (njoint.tag==0) {
+                                        if (njoint.isEnabled()) {
+                                            njoint.tag = 1;
+                                            //*jointcurr++ = njoint;
+                                            joint[jointcurr++] = njoint;
+                                            islandcost += njoint.dxGetSureMaxRows(sureMaxInfo);
+
+                                            DxBody nbody = n.body;
+                                            // Body disabled flag is not checked here. This is how auto-enable works.
+                                            if (nbody!=null && nbody.tag <= 0) {
+                                                nbody.tag = 1;
+                                                // Make sure all bodies are in the enabled state.
+                                                nbody.dBodyEnable_noAdis();
+                                                //nbody.flags &= ~DxBody.dxBodyDisabled;
+                                                stack[stacksize++] = nbody;
+                                            }
+                                        } else {
+                                            njoint.tag = -1; // Used in Step to prevent search over disabled joints (not needed for QuickStep so far)
                                         }
-                                    } else {
-                                        njoint.tag = -1; // Used in Step to prevent search over disabled joints (not needed for QuickStep so far)
                                     }
                                 }
-                            }
-                            Common.dIASSERT(stacksize <= world.nb);
-                            Common.dIASSERT(stacksize <= world.nj);
+                                Common.dIASSERT(stacksize <= world.nb);
+                                Common.dIASSERT(stacksize <= world.nj);
 
-                            if (stacksize == 0) {
-                                break;
-                            }
+                                if (stacksize == 0) {
+                                    break;
+                                }
 
-                            b = stack[--stacksize]; // pop body off stack
-                            body[bodycurr++] = b;//*bodycurr++ = b;    // put body on body list
-                        }
+                                b = stack[--stacksize]; // pop body off stack
+                                body[bodycurr++] = b;//*bodycurr++ = b;    // put body on body list
+                            }
 
-                        int bcount = bodycurr - bodystart;
-                        int jcount = jointcurr - jointstart;
-                        Common.dIASSERT((bodycurr - bodystart) <= Integer.MAX_VALUE);//UINT_MAX);
-                        Common.dIASSERT((jointcurr - jointstart) <= Integer.MAX_VALUE);//UINT_MAX);
+                            int bcount = bodycurr - bodystart;
+                            int jcount = jointcurr - jointstart;
+                            Common.dIASSERT((bodycurr - bodystart) <= Integer.MAX_VALUE);//UINT_MAX);
+                            Common.dIASSERT((jointcurr - jointstart) <= Integer.MAX_VALUE);//UINT_MAX);
 
-                        islandsizes[sizescurrP+dxISE_BODIES_COUNT] = bcount;
-                        islandsizes[sizescurrP+dxISE_JOINTS_COUNT] = jcount;
-                        sizescurrP += dxISE__MAX;
+                            islandsizes[sizescurrP+dxISE_BODIES_COUNT] = bcount;
+                            islandsizes[sizescurrP+dxISE_JOINTS_COUNT] = jcount;
+                            islandsizes[sizescurrP+dxISE_BODIES_START] = bodystart;
+                            islandsizes[sizescurrP+dxISE_JOINTS_START] = jointstart;
+                            islandcost += bcount;
+                            islandsizes[sizescurrP+dxISE_COST] = islandcost;
+                            totalcost += islandcost;
+                            sizescurrP += dxISE__MAX;
 
-                        int islandreq = stepperestimate.dxEstimateMemoryRequirements(
-                                body, bodystart, bcount, joint, jointstart, jcount);
-                        maxreq = (maxreq > islandreq) ? maxreq : islandreq;
+                            int islandreq = stepperestimate.dxEstimateMemoryRequirements(
+                                    body, bodystart, bcount, joint, jointstart, jcount);
+                            maxreq = (maxreq > islandreq) ? maxreq : islandreq;
 
-                        bodystart = bodycurr;
-                        jointstart = jointcurr;
-                    } else {
-                        bb.tag = -1; // Not used so far (assigned to retain consistency with joints)
+                            bodystart = bodycurr;
+                            jointstart = jointcurr;
+                        } else {
+                            bb.tag = -1; // Not used so far (assigned to retain consistency with joints)
+                        }
                     }
-                }
+                    bb = islands.nextIslandBody(bb);
+                } while (bb != root);
+            }
+
+            // (TZ) sort the islands by decreasing cost, so that the large islands 
+            // are stepped first and the small ones fill the gaps at the end. 
+            // Islands with the same cost keep their order.
+            long[] sortkeys = memarena.AllocateArrayLong(islandcount);
+            for (int i = 0; i < islandcount; i++) {
+                sortkeys[i] = ((long)islandsizes[i*dxISE__MAX+dxISE_COST] << 32) | (islandcount - 1 - i);
+            }
+            Arrays.sort(sortkeys, 0, islandcount);
+            for (int i = 0; i < islandcount; i++) {
+                islandorder[i] = islandcount - 1 - (int)sortkeys[islandcount - 1 - i];
             }
         } //END_STATE_SAVE(memarena, stackstate);
         memarena.END_STATE_SAVE(stackstate);
@@ -193,32 +283,38 @@ public class DxWorldProcessIslandsInfo {
             // if debugging, check that all objects (except for disabled bodies,
             // unconnected joints, and joints that are connected to disabled bodies)
             // were tagged.
-            {
-                for (DxBody b=world.firstbody.get(); b!=null; b=(DxBody)b.getNext()) {
+            // (TZ) only the objects of the awake islands have been tagged, all 
+            // their bodies have been enabled.
+            for (int i = 0; i < awakecount; i++) {
+                DxBody root = islands.getAwakeIsland(i);
+                if (!islands.isAwake(root)) {
+                    continue;
+                }
+                DxBody b = root;
+                do {
                     if (!b.isEnabled()) {
                         if (b.tag > 0) dDebug (0,"disabled body tagged");
                     }
                     else {
                         if (b.tag <= 0) dDebug (0,"enabled body not tagged");
                     }
-                }
-                for (DxJoint j=world.firstjoint.get(); j!=null; j=(DxJoint)j.getNext()) {
-                    if ( (( j.node[0].body!=null && j.node[0].body.isEnabled() ) ||
-                            (j.node[1].body!=null && j.node[1].body.isEnabled() ))
-                            && 
-                            j.isEnabled() ) {
-                        if (j.tag <= 0) dDebug (0,"attached enabled joint not tagged");
-                    }
-                    else {
-                        if (j.tag > 0) dDebug (0,"unattached or disabled joint tagged");
+                    for (DxJointNode n=b.firstjoint.get(); n!=null; n=n.next) {
+                        DxJoint j = n.joint;
+                        if (j.isEnabled()) {
+                            if (j.tag <= 0) dDebug (0,"attached enabled joint not tagged");
+                        }
+                        else {
+                            if (j.tag > 0) dDebug (0,"unattached or disabled joint tagged");
+                        }
                     }
-                }
+                    b = islands.nextIslandBody(b);
+                } while (b != root);
             }
         }//# endif
 
         //int islandcount = ((size_t)(sizescurr - islandsizes) / sizeelements);
-        int islandcount = sizescurrP / dxISE__MAX;
-        islandsinfo.AssignInfo(islandcount, islandsizes, body, joint);
+        Common.dIASSERT(islandcount == sizescurrP / dxISE__MAX);
+        islandsinfo.AssignInfo(islandcount, islandsizes, islandorder, totalcost, body, joint);
 
         return maxreq;
     }
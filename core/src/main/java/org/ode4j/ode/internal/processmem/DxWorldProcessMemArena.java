@@ -24,6 +24,9 @@
  *************************************************************************/
 package org.ode4j.ode.internal.processmem;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.ode4j.ode.internal.Common;
 import org.ode4j.ode.internal.DxBody;
 import org.ode4j.ode.internal.joints.DxJoint;
@@ -71,17 +74,20 @@ public final class DxWorldProcessMemArena {
 
     public BlockPointer SaveState() //const
     {
-        return m_pAllocCurrentOrNextArena;
+        //TZ return m_pAllocCurrentOrNextArena;
+        return SaveStackState();
     }
 
     public void RestoreState(BlockPointer state)
     {
-    	m_pAllocCurrentOrNextArena = state;
+    	//TZ m_pAllocCurrentOrNextArena = state;
+    	RestoreStackState((StackState) state);
     }
 
     void ResetState()
     {
     	m_pAllocCurrentOrNextArena = m_pAllocBegin;
+    	ResetStackState();
     }
 
     public BlockPointer PeekBufferRemainder() //const
@@ -148,6 +154,7 @@ public final class DxWorldProcessMemArena {
 
         int nOldArenaSize = 0; 
         BlockPointer pOldArenaBuffer = null;
+        BlockStack[] oldStacks = null;
 
         do {
             int oldmemsize = oldarena!=null ? oldarena.GetMemorySize() : 0;
@@ -164,6 +171,7 @@ public final class DxWorldProcessMemArena {
                 int memreq_with_reserve = memreq + (arenareq_with_reserve - arenareq);
 
                 if (oldarena != null) {
+                    oldStacks = oldarena.m_stacks;
                     oldarena.m_pArenaMemMgr.m_fnFree.run(pOldArenaBuffer, nOldArenaSize);
                     oldarena = null;
 
@@ -188,6 +196,10 @@ public final class DxWorldProcessMemArena {
                 arena.m_pArenaBegin = pNewArenaBuffer;
                 arena.m_pAllocCurrentOrNextArena.setTo(null);
                 arena.m_pArenaMemMgr = memmgr;
+                if (oldStacks != null) {
+                    // Java: keep the arrays of the old arena
+                    arena.m_stacks = oldStacks;
+                }
             }
 
             allocsuccess = true;
@@ -201,6 +213,10 @@ public final class DxWorldProcessMemArena {
             }
             arena = null;
         }
+        else {
+            // Java: the arrays grow by the same factor as the arena
+            arena.m_fReserveFactor = rsrvfactor;
+        }
 
         return arena;
     }
@@ -250,13 +266,273 @@ public final class DxWorldProcessMemArena {
     // ***********************************************
     // Java methods to simulate the C++ manager (TZ)
     // ***********************************************
+    //
+    // The arena keeps the arrays and objects it has handed out. Once the state
+    // has been restored to a point before their allocation, they are handed out
+    // again, so that stepping does not allocate any memory in the steady state.
+    // Every type has its own stack, this way islands that allocate different
+    // sequences of arrays do not evict each other's arrays.
+    // Arrays may be longer than requested. Like with 'new', the requested
+    // elements of primitive and DxBody/DxJoint arrays are cleared.
+    // When an array has to be replaced, the new one is made larger by the
+    // reserve factor of the world, so that slowly growing islands do not 
+    // allocate a new array in every step.
+
+    private static final int STACK_DREAL = 0;
+    private static final int STACK_INT = 1;
+    private static final int STACK_LONG = 2;
+    private static final int STACK_BOOL = 3;
+    private static final int STACK_DREAL_DREAL = 4;
+    private static final int STACK_DXBODY = 5;
+    private static final int STACK_DXJOINT = 6;
+    private static final int STACK__MAX = 7;
+
+    private static final AtomicInteger s_stackCount = new AtomicInteger(STACK__MAX);
+
+    /**
+     * Type of objects that are allocated from an arena, see
+     * {@link DxWorldProcessMemArena#AllocateObject(ObjectType)}.
+     * Instances should be constants, each one gets its own stack in every arena.
+     */
+    public static abstract class ObjectType<T> {
+        private final int m_stack = s_stackCount.getAndIncrement();
+
+        /**
+         * @return a new object, called when the arena has none to reuse
+         */
+        protected abstract T NewObject();
+    }
+
+    /**
+     * Type of object arrays that are allocated from an arena, see
+     * {@link DxWorldProcessMemArena#AllocateArray(ArrayType, int)}.
+     * Instances should be constants, each one gets its own stack in every arena.
+     */
+    public static abstract class ArrayType<T> {
+        private final int m_stack = s_stackCount.getAndIncrement();
+
+        /**
+         * @return a new array, called when the arena has none to reuse
+         */
+        protected abstract T[] NewArray(int size);
+    }
+
+    private static final class BlockStack {
+        private Object[] m_blocks = new Object[8];
+        private int m_top = 0;
+
+        Object PeekBlock() {
+            return m_top < m_blocks.length ? m_blocks[m_top] : null;
+        }
+
+        void PushBlock(Object block) {
+            if (m_top == m_blocks.length) {
+                m_blocks = Arrays.copyOf(m_blocks, m_top * 2);
+            }
+            m_blocks[m_top++] = block;
+        }
+    }
+
+    /**
+     * State returned by SaveState(): the tops of all stacks. States are reused
+     * as well, restoring a state releases the states saved after it.
+     */
+    private static final class StackState extends BlockPointer {
+        private final int m_index;
+        private int[] m_tops = new int[STACK__MAX];
+
+        StackState(DxWorldProcessMemArena arena, int index) {
+            super(arena, index);
+            m_index = index;
+        }
+    }
+
+    private BlockStack[] m_stacks = new BlockStack[STACK__MAX];
+    private StackState[] m_states = new StackState[8];
+    private int m_stateCount = 0;
+    private double m_fReserveFactor = 1.0;
+
+    /**
+     * @return the length of a new array for the requested size, including the reserve
+     */
+    private int ReserveSize(int size) {
+        double scaledsize = size * m_fReserveFactor;
+        return (scaledsize < Integer.MAX_VALUE) ? Math.max(size, (int)scaledsize) : Integer.MAX_VALUE;
+    }
+
+    private BlockStack GetStack(int stackIndex) {
+        if (stackIndex >= m_stacks.length) {
+            m_stacks = Arrays.copyOf(m_stacks, Math.max(stackIndex + 1, 2 * m_stacks.length));
+        }
+        BlockStack stack = m_stacks[stackIndex];
+        if (stack == null) {
+            stack = new BlockStack();
+            m_stacks[stackIndex] = stack;
+        }
+        return stack;
+    }
+
+    private StackState SaveStackState() {
+        if (m_stateCount == m_states.length) {
+            m_states = Arrays.copyOf(m_states, 2 * m_stateCount);
+        }
+        StackState state = m_states[m_stateCount];
+        if (state == null) {
+            state = new StackState(this, m_stateCount);
+            m_states[m_stateCount] = state;
+        }
+        ++m_stateCount;
+
+        if (state.m_tops.length < m_stacks.length) {
+            state.m_tops = new int[m_stacks.length];
+        }
+        int[] tops = state.m_tops;
+        for (int i = 0; i < tops.length; i++) {
+            BlockStack stack = i < m_stacks.length ? m_stacks[i] : null;
+            tops[i] = stack != null ? stack.m_top : 0;
+        }
+        return state;
+    }
+
+    private void RestoreStackState(StackState state) {
+        Common.dIASSERT(state.m_index < m_stateCount && m_states[state.m_index] == state);
+        int[] tops = state.m_tops;
+        for (int i = 0; i < m_stacks.length; i++) {
+            BlockStack stack = m_stacks[i];
+            if (stack != null) {
+                // Stacks created after the state was saved were empty
+                stack.m_top = i < tops.length ? tops[i] : 0;
+            }
+        }
+        m_stateCount = state.m_index + 1;
+    }
+
+    private void ResetStackState() {
+        for (BlockStack stack: m_stacks) {
+            if (stack != null) {
+                stack.m_top = 0;
+            }
+        }
+        m_stateCount = 0;
+    }
 
     public final double[] AllocateArrayDReal(int size) {
-        return new double[size];
+        BlockStack stack = GetStack(STACK_DREAL);
+        double[] a = (double[]) stack.PeekBlock();
+        if (a == null || a.length < size) {
+            a = new double[ReserveSize(size)];
+        } else {
+            Arrays.fill(a, 0, size, 0);
+        }
+        stack.PushBlock(a);
+        return a;
     }
 
     public final int[] AllocateArrayInt(int size) {
-        return new int[size];
+        BlockStack stack = GetStack(STACK_INT);
+        int[] a = (int[]) stack.PeekBlock();
+        if (a == null || a.length < size) {
+            a = new int[ReserveSize(size)];
+        } else {
+            Arrays.fill(a, 0, size, 0);
+        }
+        stack.PushBlock(a);
+        return a;
+    }
+
+    public final long[] AllocateArrayLong(int size) {
+        BlockStack stack = GetStack(STACK_LONG);
+        long[] a = (long[]) stack.PeekBlock();
+        if (a == null || a.length < size) {
+            a = new long[ReserveSize(size)];
+        } else {
+            Arrays.fill(a, 0, size, 0);
+        }
+        stack.PushBlock(a);
+        return a;
+    }
+
+    public final boolean[] AllocateArrayBool(int size) {
+        BlockStack stack = GetStack(STACK_BOOL);
+        boolean[] a = (boolean[]) stack.PeekBlock();
+        if (a == null || a.length < size) {
+            a = new boolean[ReserveSize(size)];
+        } else {
+            Arrays.fill(a, 0, size, false);
+        }
+        stack.PushBlock(a);
+        return a;
+    }
+
+    public final double[][] AllocateArrayDRealDReal(int size) {
+        BlockStack stack = GetStack(STACK_DREAL_DREAL);
+        double[][] a = (double[][]) stack.PeekBlock();
+        if (a == null || a.length < size) {
+            a = new double[ReserveSize(size)][];
+        } else {
+            Arrays.fill(a, 0, size, null);
+        }
+        stack.PushBlock(a);
+        return a;
+    }
+
+    public final DxBody[] AllocateArrayDxBody(int size) {
+        BlockStack stack = GetStack(STACK_DXBODY);
+        DxBody[] a = (DxBody[]) stack.PeekBlock();
+        if (a == null || a.length < size) {
+            a = new DxBody[ReserveSize(size)];
+        } else {
+            Arrays.fill(a, 0, size, null);
+        }
+        stack.PushBlock(a);
+        return a;
+    }
+
+    public final DxJoint[] AllocateArrayDxJoint(int size) {
+        BlockStack stack = GetStack(STACK_DXJOINT);
+        DxJoint[] a = (DxJoint[]) stack.PeekBlock();
+        if (a == null || a.length < size) {
+            a = new DxJoint[ReserveSize(size)];
+        } else {
+            Arrays.fill(a, 0, size, null);
+        }
+        stack.PushBlock(a);
+        return a;
+    }
+
+    /**
+     * Allocates an object array. Unlike with the other arrays, the elements
+     * are not cleared, they are the ones the array contained when it was
+     * allocated before. This way the elements can be reused as well.
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> T[] AllocateArray(ArrayType<T> type, int size) {
+        BlockStack stack = GetStack(type.m_stack);
+        T[] a = (T[]) stack.PeekBlock();
+        if (a == null || a.length < size) {
+            T[] old = a;
+            a = type.NewArray(ReserveSize(size));
+            if (old != null) {
+                System.arraycopy(old, 0, a, 0, old.length);
+            }
+        }
+        stack.PushBlock(a);
+        return a;
+    }
+
+    /**
+     * Allocates an object. The object is not reset, it is the one that was
+     * allocated before (if any), the caller has to initialize all fields.
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> T AllocateObject(ObjectType<T> type) {
+        BlockStack stack = GetStack(type.m_stack);
+        T o = (T) stack.PeekBlock();
+        if (o == null) {
+            o = type.NewObject();
+        }
+        stack.PushBlock(o);
+        return o;
     }
 
     /**
@@ -276,16 +552,7 @@ public final class DxWorldProcessMemArena {
     public final void ShrinkArrayDJointWithInfo1(
             Object[] jointiinfos,
             int _nj, int njXXX) {
-        // TODO Auto-generated method stub
-
-    }
-
-    public final double[][] AllocateArrayDRealDReal(int n) {
-        return new double[n][];
-    }
-
-    public final boolean[] AllocateArrayBool(int n) {
-        return new boolean[n];
+        // Nothing to do, the array stays in the arena
     }
 
     public BlockPointer BEGIN_STATE_SAVE() {
@@ -306,12 +573,4 @@ public final class DxWorldProcessMemArena {
 
     }
 
-    public DxBody[] AllocateArrayDxBody(int nb) {
-        return new DxBody[nb];
-    }
-
-    public DxJoint[] AllocateArrayDxJoint(int nj) {
-        return new DxJoint[nj];
-    }
-
 }
@@ -30,7 +30,6 @@ import org.ode4j.ode.threading.Threading_H.DThreadingFunctionsInfo;
 /**
  * 
  * @author Tilmann Zäschke
- * @Deprecated Not supported in ode4j.
  */
 public abstract class DThreadingImplementation {
 	
@@ -125,7 +124,11 @@ public abstract class DThreadingImplementation {
 
 	//typedef void (dThreadReadyToServeCallback)(void *callback_context);
 	public interface DThreadReadyToServeCallback {
-		
+		/**
+		 * @param callback_context The value passed to 
+		 * {@link DThreadingImplementation#dExternalThreadingServeMultiThreadedImplementation}
+		 */
+		void run(CallContext callback_context);
 	}
 
 	/**
@@ -24,11 +24,11 @@
  *************************************************************************/
 package org.ode4j.ode.threading;
 
+import java.util.concurrent.Executor;
 
 /**
  * 
  * @author Tilmann Zäschke
- * @Deprecated Not supported in ode4j.
  */
 public abstract class DThreadingThreadPool {
 
@@ -36,18 +36,13 @@ public abstract class DThreadingThreadPool {
 	 * Creates an instance of built-in thread pool object that can be used to serve
 	 * multi-threaded threading implementations.
 	 *
-	 * The threads allocated inherit priority of caller thread. Their affinity is not
-	 * explicitly adjusted and gets the value the system assigns by default. Threads 
-	 * have their stack memory fully committed immediately on start. On POSIX platforms 
-	 * threads are started with all the possible signals blocked. Threads execute 
+	 * The threads allocated inherit priority of caller thread. They are daemon 
+	 * threads, so they do not prevent the JVM from exiting. Threads execute 
 	 * calls to {@code dAllocateODEDataForThread} with {@code ode_data_allocate_flags} 
 	 * on initialization.
-	 *
-	 * On POSIX platforms this function must be called with signals masked 
-	 * or other measures must be taken to prevent reception of signals by calling thread 
-	 * for the duration of the call.
 	 * 
-	 * @param thread_count Number of threads to start in pool
+	 * @param thread_count Number of threads to start in pool or 0 for the number of 
+	 * available processors
 	 * @param stack_size Size of stack to be used for every thread or 0 for system default value
 	 * @param ode_data_allocate_flags Flags to be passed to @c dAllocateODEDataForThread on behalf of each thread
 	 * @return ID of object allocated or NULL on failure
@@ -58,7 +53,44 @@ public abstract class DThreadingThreadPool {
 	 */
 	public static DThreadingThreadPool allocateThreadPool(int thread_count, 
 	  int stack_size, int ode_data_allocate_flags, Object[][] reserved/*=NULL*/) {
-		throw new UnsupportedOperationException();
+		//(void)reserved; // unused
+		return DxThreadingThreadPool.AllocateInstance(null, thread_count, stack_size, ode_data_allocate_flags);
+	}
+
+	/**
+	 * Creates an instance of built-in thread pool object that runs its threads 
+	 * as tasks of an executor, for example a {@code ForkJoinPool} or an executor 
+	 * that starts virtual threads.
+	 * <p>
+	 * Every pool thread is a long running task that blocks while it waits for 
+	 * work, so the executor must be able to run {@code thread_count} tasks at 
+	 * the same time. The executor is not shut down by the pool.
+	 * 
+	 * @param executor Executor to run the pool threads on
+	 * @param thread_count Number of threads to start in pool or 0 for the number of 
+	 * available processors
+	 * @param ode_data_allocate_flags Flags to be passed to @c dAllocateODEDataForThread on behalf of each thread
+	 * @return ID of object allocated or NULL on failure, e.g. if the executor 
+	 * rejected a task
+	 *
+	 * @see #allocateThreadPool(int, int, int, Object[][])
+	 */
+	public static DThreadingThreadPool allocateThreadPool(Executor executor, int thread_count, 
+			int ode_data_allocate_flags) {
+		return DxThreadingThreadPool.AllocateInstance(executor, thread_count, 0, ode_data_allocate_flags);
+	}
+
+	/**
+	 * Frees all thread pools that have not been freed yet. The threading 
+	 * implementations they are serving are shut down before.
+	 * <p>
+	 * This is called by {@code dCloseODE}, so that no pool threads are left 
+	 * running when ODE is closed.
+	 *
+	 * @see #freeThreadPool()
+	 */
+	public static void freeAllThreadPools() {
+		DxThreadingThreadPool.FreeAllInstances();
 	}
 
 	/**
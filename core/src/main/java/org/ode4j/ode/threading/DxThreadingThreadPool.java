@@ -0,0 +1,403 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine, Copyright (C) 2001-2003 Russell L. Smith.       *
+ * All rights reserved.  Email: russ@q12.org   Web: www.q12.org          *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * Threading POSIX thread pool implementation file.                      *
+ * Copyright (C) 2011-2012 Oleh Derevenko. All rights reserved.          *
+ * e-mail: odar@eleks.com (change all "a" to "e")                        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file LICENSE-BSD.TXT.                                       *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT and LICENSE-BSD.TXT for more details.                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.ode.threading;
+
+import static org.ode4j.ode.internal.Common.dIASSERT;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.ode4j.ode.internal.OdeInit;
+import org.ode4j.ode.threading.DThreadingImplementation.DThreadReadyToServeCallback;
+import org.ode4j.ode.threading.ThreadingJava.dxEventWakeup;
+import org.ode4j.ode.threading.Threading_H.CallContext;
+
+/**
+ * Built-in thread pool. Every pool thread is a daemon thread that idles until
+ * it is commanded to serve a multi-threaded threading implementation or to exit.
+ * <p>
+ * Instead of starting its own threads, the pool can run its thread loops as 
+ * long running tasks of an {@link Executor}, e.g. a ForkJoinPool or an executor 
+ * of virtual threads. All pools that have not been freed are freed by 
+ * {@code dCloseODE}.
+ *
+ * @author Tilmann Zaeschke
+ */
+class DxThreadingThreadPool extends DThreadingThreadPool {
+
+	private enum dxTHREAD_COMMAND
+	{
+		dxTHREAD_COMMAND_EXIT,
+		dxTHREAD_COMMAND_NOOP,
+		dxTHREAD_COMMAND_SERVE_IMPLEMENTATION,
+	};
+
+	private static class dxServeImplementationParams implements CallContext
+	{
+		dxServeImplementationParams(DThreadingImplementation impl, dxEventWakeup ready_wait_event)
+		{
+			m_impl = impl;
+			m_ready_wait_event = ready_wait_event;
+		}
+
+		final DThreadingImplementation m_impl;
+		final dxEventWakeup m_ready_wait_event;
+	};
+
+
+	/************************************************************************/
+	/* dxThreadPoolThreadInfo class                                         */
+	/************************************************************************/
+
+	private static class dxThreadPoolThreadInfo implements Runnable
+	{
+		//public:
+		dxThreadPoolThreadInfo(int ode_data_allocate_flags)
+		{
+			m_ode_data_allocate_flags = ode_data_allocate_flags;
+			m_command_code = dxTHREAD_COMMAND.dxTHREAD_COMMAND_NOOP;
+			m_command_param = null;
+			m_thread_allocation_succeeded = false;
+		}
+
+		boolean Initialize(Executor executor, int stack_size, int thread_index)
+		{
+			if (executor != null)
+			{
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					return false;
+				}
+			}
+			else
+			{
+				m_thread = new Thread(null, this, "ode4j-pool-" + thread_index, stack_size);
+				m_thread.setDaemon(true);
+				m_thread.start();
+			}
+			m_started = true;
+
+			// Wait until the thread reports its readiness
+			m_acknowledgement_event.WaitWakeup(null);
+			return m_thread_allocation_succeeded;
+		}
+
+		void Finalize()
+		{
+			if (m_started)
+			{
+				// Threads that failed to allocate their data have already left the command loop
+				if (m_thread_allocation_succeeded)
+				{
+					ExecuteThreadCommand(dxTHREAD_COMMAND.dxTHREAD_COMMAND_EXIT, null, true);
+				}
+				WaitAndCloseThreadHandle();
+			}
+			m_thread = null;
+			m_started = false;
+		}
+
+		void ExecuteThreadCommand(dxTHREAD_COMMAND command, Object param, boolean wait_response)
+		{
+			m_command_param = param;
+			m_command_code = command;
+			m_command_event.WakeupAThread();
+
+			if (wait_response)
+			{
+				m_acknowledgement_event.WaitWakeup(null);
+			}
+		}
+
+		void WaitIdleState()
+		{
+			m_idle_event.WaitWakeup(null);
+		}
+
+		private void WaitAndCloseThreadHandle()
+		{
+			if (m_thread == null)
+			{
+				// The task of an executor can not be joined
+				m_exit_event.WaitWakeup(null);
+				return;
+			}
+			try {
+				m_thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			try {
+				m_thread_allocation_succeeded = OdeInit.dAllocateODEDataForThread(m_ode_data_allocate_flags);
+			} catch (RuntimeException e) {
+				m_thread_allocation_succeeded = false;
+			}
+			m_idle_event.WakeupAllThreads();
+			m_acknowledgement_event.WakeupAThread();
+
+			try {
+				if (m_thread_allocation_succeeded)
+				{
+					RunCommandHandlingLoop();
+				}
+			} finally {
+				m_exit_event.WakeupAllThreads();
+			}
+		}
+
+		private void RunCommandHandlingLoop()
+		{
+			boolean exit_requested = false;
+
+			while (!exit_requested)
+			{
+				m_command_event.WaitWakeup(null);
+
+				final dxTHREAD_COMMAND command_code = m_command_code;
+				switch (command_code)
+				{
+				case dxTHREAD_COMMAND_EXIT:
+				{
+					m_acknowledgement_event.WakeupAThread();
+
+					exit_requested = true;
+					break;
+				}
+
+				case dxTHREAD_COMMAND_NOOP:
+				{
+					m_acknowledgement_event.WakeupAThread();
+
+					// Do nothing
+					break;
+				}
+
+				case dxTHREAD_COMMAND_SERVE_IMPLEMENTATION:
+				{
+					final dxServeImplementationParams serve_params = (dxServeImplementationParams)m_command_param;
+					// Reset the idle state before acknowledging the command
+					m_idle_event.ResetWakeup();
+					m_acknowledgement_event.WakeupAThread();
+
+					serve_params.m_impl.dExternalThreadingServeMultiThreadedImplementation(
+							ReportSelfReadyToServe_Callback, serve_params);
+
+					m_idle_event.WakeupAllThreads();
+					break;
+				}
+
+				default:
+					dIASSERT(false); // Command not implemented
+				}
+			}
+		}
+
+		private static final DThreadReadyToServeCallback ReportSelfReadyToServe_Callback =
+				new DThreadReadyToServeCallback() {
+			@Override
+			public void run(CallContext callback_context) {
+				((dxServeImplementationParams)callback_context).m_ready_wait_event.WakeupAThread();
+			}
+		};
+
+		//private:
+		private Thread                      m_thread;		// null for tasks of an executor
+		private boolean                     m_started;
+		private final int                   m_ode_data_allocate_flags;
+		private volatile dxTHREAD_COMMAND   m_command_code;
+		private volatile Object             m_command_param;
+		private volatile boolean            m_thread_allocation_succeeded;
+		private final dxEventWakeup         m_command_event = new dxEventWakeup();
+		private final dxEventWakeup         m_acknowledgement_event = new dxEventWakeup();
+		private final dxEventWakeup         m_idle_event = new dxEventWakeup();
+		private final dxEventWakeup         m_exit_event = new dxEventWakeup();
+	};
+
+
+	/************************************************************************/
+	/* dxThreadingThreadPool class                                          */
+	/************************************************************************/
+
+	private DxThreadingThreadPool()
+	{
+		m_thread_infos = null;
+	}
+
+	/**
+	 * @param executor executor to run the thread loops on or null to start threads
+	 * @param thread_count number of threads or 0 for the number of available processors
+	 */
+	static DxThreadingThreadPool AllocateInstance(Executor executor, int thread_count, int stack_size,
+			int ode_data_allocate_flags)
+	{
+		if (thread_count == 0)
+		{
+			thread_count = Runtime.getRuntime().availableProcessors();
+		}
+
+		DxThreadingThreadPool thread_pool = new DxThreadingThreadPool();
+		if (!thread_pool.InitializeThreads(executor, thread_count, stack_size, ode_data_allocate_flags))
+		{
+			thread_pool.FinalizeThreads();
+			thread_pool = null;
+		}
+		else
+		{
+			synchronized (g_instances)
+			{
+				g_instances.add(thread_pool);
+			}
+		}
+
+		return thread_pool;
+	}
+
+	/**
+	 * Frees all pools that have not been freed yet, called by {@code dCloseODE}.
+	 * The implementations the pools are serving are shut down first.
+	 */
+	static void FreeAllInstances()
+	{
+		DxThreadingThreadPool[] instances;
+		synchronized (g_instances)
+		{
+			instances = g_instances.toArray(new DxThreadingThreadPool[g_instances.size()]);
+		}
+		for (DxThreadingThreadPool thread_pool: instances)
+		{
+			thread_pool.ShutdownServedImplementation();
+			thread_pool.freeThreadPool();
+		}
+	}
+
+	/**
+	 * Releases the pool threads from the implementation they might be serving, 
+	 * a pool can not be freed before.
+	 */
+	private synchronized void ShutdownServedImplementation()
+	{
+		if (m_served_impl != null)
+		{
+			m_served_impl.shutdownProcessing();
+		}
+	}
+
+	private boolean InitializeThreads(Executor executor, int thread_count, int stack_size, 
+			int ode_data_allocate_flags)
+	{
+		dIASSERT(m_thread_infos == null);
+
+		m_thread_infos = new dxThreadPoolThreadInfo[thread_count];
+
+		boolean any_fault = false;
+
+		for (int thread_index = 0; thread_index != thread_count; ++thread_index)
+		{
+			dxThreadPoolThreadInfo thread_info = new dxThreadPoolThreadInfo(ode_data_allocate_flags);
+			m_thread_infos[thread_index] = thread_info;
+
+			if (!thread_info.Initialize(executor, stack_size, thread_index))
+			{
+				any_fault = true;
+				break;
+			}
+		}
+
+		return !any_fault;
+	}
+
+	private void FinalizeThreads()
+	{
+		if (m_thread_infos != null)
+		{
+			for (dxThreadPoolThreadInfo thread_info: m_thread_infos)
+			{
+				if (thread_info != null)
+				{
+					thread_info.Finalize();
+				}
+			}
+
+			m_thread_infos = null;
+		}
+	}
+
+	@Override
+	public synchronized void serveMultiThreadedImplementation(DThreadingImplementation impl)
+	{
+		m_served_impl = impl;
+		dxEventWakeup ready_wait_event = new dxEventWakeup();
+		dxServeImplementationParams params = new dxServeImplementationParams(impl, ready_wait_event);
+
+		for (dxThreadPoolThreadInfo thread_info: m_thread_infos)
+		{
+			thread_info.ExecuteThreadCommand(dxTHREAD_COMMAND.dxTHREAD_COMMAND_SERVE_IMPLEMENTATION,
+					params, true);
+			// Wait until the thread has registered within the implementation
+			ready_wait_event.WaitWakeup(null);
+		}
+	}
+
+	@Override
+	public synchronized void waitIdleState()
+	{
+		if (m_thread_infos == null)
+		{
+			return; // already freed
+		}
+		for (dxThreadPoolThreadInfo thread_info: m_thread_infos)
+		{
+			thread_info.WaitIdleState();
+		}
+		m_served_impl = null;
+	}
+
+	@Override
+	public synchronized void freeThreadPool()
+	{
+		synchronized (g_instances)
+		{
+			g_instances.remove(this);
+		}
+		waitIdleState();
+		FinalizeThreads();
+	}
+
+	//private:
+	private dxThreadPoolThreadInfo[] m_thread_infos;
+	private DThreadingImplementation m_served_impl;	// last implementation served
+	private static final ArrayList<DxThreadingThreadPool> g_instances = new ArrayList<DxThreadingThreadPool>();
+}
@@ -118,6 +118,23 @@ public class ThreadingAtomics {
 	    }
 	};
 
+	/************************************************************************/
+	/* Java atomics provider class implementation                           */
+	/************************************************************************/
+
+	/**
+	 * (TZ) Atomics provider for the job lists that are accessed by several 
+	 * threads, the Java counterpart of dxOUAtomicsProvider.
+	 */
+	static class dxJavaAtomicsProvider
+	{
+	    public static <T> boolean CompareExchangeTargetPtr(AtomicReference<T> pointer_storage_ptr, 
+		        T comparand_value, T new_value)
+	    {
+	        return pointer_storage_ptr.compareAndSet(comparand_value, new_value);
+	    }
+	};
+
 //TZ TODO implement
 //	#if dBUILTIN_THREADING_IMPL_ENABLED
 //
@@ -61,7 +61,8 @@ public class ThreadingFake {
 	//public:
 	    @Override
 		public void ResetWakeup() { m_wakeup_state = false; m_state_is_permanent = false; }
-	    public void WakeupAThread() { dIASSERT(!m_state_is_permanent); m_wakeup_state = true; } // Wakeup should not be used after permanent signal
+	    @Override
+		public void WakeupAThread() { dIASSERT(!m_state_is_permanent); m_wakeup_state = true; } // Wakeup should not be used after permanent signal
 	    @Override
 		public void WakeupAllThreads() { m_wakeup_state = true; m_state_is_permanent = true; }
 
@@ -31,11 +31,13 @@ import static org.ode4j.ode.internal.Common.*;
 
 import java.util.List;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.ode4j.ode.threading.ThreadingTemplates.tThreadLull;
 import org.ode4j.ode.threading.ThreadingTemplates.tThreadMutex;
 import org.ode4j.ode.threading.ThreadingTemplates.tThreadWakeup;
 import org.ode4j.ode.threading.Threading_H.DThreadedWaitTime;
+import org.ode4j.ode.threading.Threading_H.DxThreadedWaitTime;
 
 /*
  *  Self-wakeup implementation for built-in threading support provider.
@@ -64,7 +66,8 @@ public class ThreadingJava {
 	//public:
 	    @Override
 		public void ResetWakeup() { m_wakeup_state = false; m_state_is_permanent = false; }
-	    public void WakeupAThread() { dIASSERT(!m_state_is_permanent); m_wakeup_state = true; } // Wakeup should not be used after permanent signal
+	    @Override
+		public void WakeupAThread() { dIASSERT(!m_state_is_permanent); m_wakeup_state = true; } // Wakeup should not be used after permanent signal
 	    @Override
 		public void WakeupAllThreads() { m_wakeup_state = true; m_state_is_permanent = true; }
 
@@ -171,6 +174,109 @@ public class ThreadingJava {
 	};
 
 
-//	#endif // #ifndef _ODE_THREADING_FAKE_SYNC_H_
+/************************************************************************/
+	/* dxEventWakeup class implementation                                   */
+	/************************************************************************/
+
+	/**
+	 * Auto-reset event: {@code WakeupAThread()} releases a single waiter (or the next 
+	 * thread to wait), {@code WakeupAllThreads()} leaves the event signaled until reset.
+	 */
+	static class dxEventWakeup implements tThreadWakeup
+	{
+	//public:
+		public dxEventWakeup() {
+			m_wakeup_state = false;
+			m_state_is_permanent = false;
+		}
+
+		@Override
+		public boolean InitializeObject() { return true; }
+
+	//public:
+		@Override
+		public synchronized void ResetWakeup() {
+			m_wakeup_state = false;
+			m_state_is_permanent = false;
+		}
+
+		@Override
+		public synchronized void WakeupAThread() {
+			dIASSERT(!m_state_is_permanent); // Wakeup should not be used after permanent signal
+			m_wakeup_state = true;
+			notify();
+		}
+
+		@Override
+		public synchronized void WakeupAllThreads() {
+			m_wakeup_state = true;
+			m_state_is_permanent = true;
+			notifyAll();
+		}
+
+		/**
+		 * @param timeout_time_ptr relative timeout or {@code null} to wait infinitely
+		 * @return {@code false} if the timeout expired before the event was signaled
+		 */
+		@Override
+		public synchronized boolean WaitWakeup(final DThreadedWaitTime timeout_time_ptr) {
+			try {
+				if (timeout_time_ptr == null) {
+					while (!m_wakeup_state) {
+						wait();
+					}
+				} else {
+					DxThreadedWaitTime wait_time = (DxThreadedWaitTime) timeout_time_ptr;
+					long remaining_nsec = wait_time.wait_sec * 1000000000L + wait_time.wait_nsec;
+					final long deadline_nsec = System.nanoTime() + remaining_nsec;
+					while (!m_wakeup_state && remaining_nsec > 0) {
+						wait(remaining_nsec / 1000000L, (int) (remaining_nsec % 1000000L));
+						remaining_nsec = deadline_nsec - System.nanoTime();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+
+			boolean wait_result = m_wakeup_state;
+			if (m_wakeup_state) {
+				m_wakeup_state = m_state_is_permanent;
+			}
+			return wait_result;
+		}
+
+	//private:
+		private boolean          m_wakeup_state;
+		private boolean          m_state_is_permanent;
+	}
+
+
+	/************************************************************************/
+	/* dxCriticalSectionMutex class implementation                          */
+	/************************************************************************/
+
+	static class dxCriticalSectionMutex implements tThreadMutex {
+		private final ReentrantLock m_lock = new ReentrantLock();
+
+		public dxCriticalSectionMutex() {}
+
+		@Override
+		public boolean InitializeObject() { return true; }
+
+		@Override
+		public void LockMutex() { m_lock.lock(); }
+
+		@Override
+		public boolean TryLockMutex() { return m_lock.tryLock(); }
+
+		@Override
+		public void UnlockMutex() { m_lock.unlock(); }
+
+		@Override
+		public void DESTRUCTOR() {
+			//
+		}
+	}
 
 }
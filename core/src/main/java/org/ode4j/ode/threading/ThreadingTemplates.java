@@ -30,9 +30,10 @@ package org.ode4j.ode.threading;
 
 import static org.ode4j.ode.internal.Common.dAASSERT;
 import static org.ode4j.ode.internal.Common.dIASSERT;
-import static org.ode4j.ode.threading.ThreadingAtomics.dxFakeAtomicsProvider.CompareExchangeTargetPtr;
+import static org.ode4j.ode.threading.ThreadingAtomics.dxJavaAtomicsProvider.CompareExchangeTargetPtr;
 import static org.ode4j.ode.threading.ThreadingImpl_H.THREAD_FACTORY;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.ode4j.ode.internal.DBase;
@@ -41,6 +42,7 @@ import org.ode4j.ode.internal.cpp4j.java.RefBoolean;
 import org.ode4j.ode.internal.cpp4j.java.RefInt;
 import org.ode4j.ode.internal.processmem.DxWorldProcessContext.dxProcessContextMutex;
 import org.ode4j.ode.threading.DThreadingImplementation.DThreadReadyToServeCallback;
+import org.ode4j.ode.threading.ThreadingImpl_H.ThreadFactory;
 import org.ode4j.ode.threading.ThreadingTemplates.dxtemplateJobListContainer.dWaitSignallingFunction;
 import org.ode4j.ode.threading.Threading_H.CallContext;
 import org.ode4j.ode.threading.Threading_H.DCallReleasee;
@@ -56,7 +58,10 @@ import org.ode4j.ode.threading.Threading_H.dThreadedCallFunction;
 class ThreadingTemplates { 
 
 	//TZ
-	public static class dxCallWait extends dxICallWait {} //<tThreadWakeup> {};
+	public static class dxCallWait extends dxICallWait { //<tThreadWakeup> {};
+		public dxCallWait() { super(); }
+		public dxCallWait(tThreadWakeup wait_wakeup) { super(wait_wakeup); }
+	}
 
 	//TZ
 	public static interface tThreadMutex {
@@ -71,6 +76,7 @@ class ThreadingTemplates {
 	public static interface tThreadWakeup {
 		boolean InitializeObject();
 		void ResetWakeup();
+		void WakeupAThread();
 		void WakeupAllThreads();
 		boolean WaitWakeup(DThreadedWaitTime timeout_time_ptr);
 	}
@@ -101,6 +107,7 @@ class ThreadingTemplates {
 				dxThreadedJobInfo current_job, boolean job_result,
 				dWaitSignallingFunction abstractSignalTheWait,
 				RefBoolean dummy_last_job_flag);
+		boolean IsJobListReadyForShutdown();
 	}
 
 	//TZ
@@ -125,9 +132,10 @@ class ThreadingTemplates {
 	static class dxtemplateMutexGroup implements dIMutexGroup, DMutexGroup
 	{
 		//private:
-		private dxtemplateMutexGroup(int size) {
+		private dxtemplateMutexGroup(int size, ThreadFactory thread_factory) {
 			//TZ
 			m_Mutex_array = new tThreadMutex[size];
+			m_thread_factory = thread_factory;
 		}
 		//~dxtemplateMutexGroup() {}
 		//private void DESTRUCTOR() {};
@@ -164,6 +172,8 @@ class ThreadingTemplates {
 		//		};// m_un;
 
 		final tThreadMutex[]  m_Mutex_array;
+		//TZ replaces the tThreadMutex template parameter
+		private final ThreadFactory m_thread_factory;
 		/************************************************************************/
 		/* Implementation of dxtemplateMutexGroup                               */
 		/************************************************************************/
@@ -172,13 +182,19 @@ class ThreadingTemplates {
 		// /*static */dxtemplateMutexGroup<tThreadMutex> *dxtemplateMutexGroup<tThreadMutex>::
 		public static dxtemplateMutexGroup AllocateInstance(
 				dxProcessContextMutex /*dmutexindex_t*/ Mutex_count)
+		{
+			return AllocateInstance(Mutex_count, THREAD_FACTORY);
+		}
+
+		public static dxtemplateMutexGroup AllocateInstance(
+				dxProcessContextMutex /*dmutexindex_t*/ Mutex_count, ThreadFactory thread_factory)
 		{
 			dAASSERT(Mutex_count != null);
 
 			//TZ const dxtemplateMutexGroup<tThreadMutex> *const dummy_group = (dxtemplateMutexGroup<tThreadMutex> *)(size_t)8;
 			//TZ final int size_requited = ((size_t)(&dummy_group.m_Mutex_array) - (size_t)dummy_group) + Mutex_count * sizeof(tThreadMutex);
 			//dxtemplateMutexGroup<tThreadMutex>[] mutex_group = (dxtemplateMutexGroup<tThreadMutex> *)dAlloc(size_requited);
-			dxtemplateMutexGroup mutex_group = new dxtemplateMutexGroup(Mutex_count.ordinal());
+			dxtemplateMutexGroup mutex_group = new dxtemplateMutexGroup(Mutex_count.ordinal(), thread_factory);
 
 			if (mutex_group != null)
 			{
@@ -231,7 +247,7 @@ class ThreadingTemplates {
 			//				}
 			//			}
 			for (int i = 0; i < m_Mutex_array.length; ++i) {
-				tThreadMutex mutex_storage = THREAD_FACTORY.createThreadMutex();//new tThreadMutex();
+				tThreadMutex mutex_storage = m_thread_factory.createThreadMutex();//new tThreadMutex();
 				m_Mutex_array[i] = mutex_storage;
 				if (!mutex_storage.InitializeObject())
 				{
@@ -277,7 +293,10 @@ class ThreadingTemplates {
 		//public:
 		public dxtemplateCallWait() {
 			//TZ
-			m_wait_wakeup = THREAD_FACTORY.createThreadWakeup();
+			this(THREAD_FACTORY.createThreadWakeup());
+		}
+		public dxtemplateCallWait(tThreadWakeup wait_wakeup) {
+			m_wait_wakeup = wait_wakeup;
 		}
 		//~dxtemplateCallWait() { DoFinalizeObject(); }
 		@Override
@@ -309,49 +328,48 @@ class ThreadingTemplates {
 		};
 
 		//private:
-		private tThreadWakeup           m_wait_wakeup;
+		private final tThreadWakeup     m_wait_wakeup;
 	};
 
 
-	//TODO TZ implement for multi-threading
-	//#if dBUILTIN_THREADING_IMPL_ENABLED
-	//
 	//template<class tThreadWakeup, class tAtomicsProvider, const bool tatomic_test_required>
-	//class dxtemplateThreadedLull
-	//{
-	//public:
-	//    dxtemplateThreadedLull(): m_registrant_count(0), m_alarm_wakeup() {}
-	//    ~dxtemplateThreadedLull() { dIASSERT(m_registrant_count == 0); DoFinalizeObject(); }
-	//
-	//    bool InitializeObject() { return DoInitializeObject(); }
-	//
-	//private:
-	//    bool DoInitializeObject() { return m_alarm_wakeup.InitializeObject(); }
-	//    void DoFinalizeObject() { /* Do nothing */ }
-	//
-	//private:
-	//    typedef typename tAtomicsProvider::atomicord_t atomicord_t;
-	//
-	//public:
-	//    void RegisterToLull() { tAtomicsProvider::IncrementTargetNoRet(&m_registrant_count); }
-	//    void WaitForLullAlarm() { dIASSERT(m_registrant_count != 0); m_alarm_wakeup.WaitWakeup(NULL); }
-	//    void UnregisterFromLull() { tAtomicsProvider::DecrementTargetNoRet(&m_registrant_count); }
-	//
-	//    void SignalLullAlarmIfAnyRegistrants()
-	//    {
-	//        if (tatomic_test_required ? (tAtomicsProvider::QueryTargetValue(&m_registrant_count) != 0) : (m_registrant_count != 0))
-	//        {
-	//            m_alarm_wakeup.WakeupAThread();
-	//        }
-	//    }
-	//
-	//private:
-	//    atomicord_t             m_registrant_count;
-	//    tThreadWakeup           m_alarm_wakeup;
-	//};
-	//
-	//
-	//#endif // #if dBUILTIN_THREADING_IMPL_ENABLED
+	static class dxtemplateThreadedLull implements tThreadLull
+	{
+		//public:
+		public dxtemplateThreadedLull(tThreadWakeup alarm_wakeup) {
+			m_alarm_wakeup = alarm_wakeup;
+		}
+		//~dxtemplateThreadedLull() { dIASSERT(m_registrant_count == 0); DoFinalizeObject(); }
+		public void DESTRUCTOR() { dIASSERT(m_registrant_count.get() == 0); DoFinalizeObject(); }
+
+		@Override
+		public boolean InitializeObject() { return DoInitializeObject(); }
+
+		//private:
+		private boolean DoInitializeObject() { return m_alarm_wakeup.InitializeObject(); }
+		private void DoFinalizeObject() { /* Do nothing */ }
+
+		//public:
+		@Override
+		public void RegisterToLull() { m_registrant_count.incrementAndGet(); }
+		@Override
+		public void WaitForLullAlarm() { dIASSERT(m_registrant_count.get() != 0); m_alarm_wakeup.WaitWakeup(null); }
+		@Override
+		public void UnregisterFromLull() { m_registrant_count.decrementAndGet(); }
+
+		@Override
+		public void SignalLullAlarmIfAnyRegistrants()
+		{
+			if (m_registrant_count.get() != 0)
+			{
+				m_alarm_wakeup.WakeupAThread();
+			}
+		}
+
+		//private:
+		private final AtomicInteger     m_registrant_count = new AtomicInteger();
+		private final tThreadWakeup     m_alarm_wakeup;
+	};
 
 
 	static class dxThreadedJobInfo extends
@@ -390,9 +408,13 @@ class ThreadingTemplates {
 		}
 
 		dxThreadedJobInfo       m_next_job;
-		Ref<dxThreadedJobInfo>   m_prev_job_next_ptr;
+		AtomicReference<dxThreadedJobInfo> m_prev_job_next_ptr;
+		//TZ Java has no pointer to the previous 'm_next_job' field, so the previous 
+		// job is kept instead (null if this job is the list head).
+		dxThreadedJobInfo       m_prev_job;
 
-		int/*ddependencycount_t*/ m_dependencies_count;
+		//TZ volatile: the count is altered under the job's monitor but inspected under the list lock
+		volatile int/*ddependencycount_t*/ m_dependencies_count;
 		dxThreadedJobInfo       m_dependent_job;
 		dxCallWait              m_call_wait;
 		RefInt                  m_fault_accumulator_ptr = new RefInt();
@@ -440,11 +462,15 @@ class ThreadingTemplates {
 	{
 		//public:
 		public dxtemplateJobListContainer() {
+			this(THREAD_FACTORY);
+		}
+
+		public dxtemplateJobListContainer(ThreadFactory thread_factory) {
 			m_job_list.set(null);//(NULL),
 			//m_info_pool = new ((atomicptr_t)NULL);
-			m_pool_access_lock = THREAD_FACTORY.createThreadMutex();//();
-			m_list_access_lock = THREAD_FACTORY.createThreadMutex();//();
-			m_info_wait_lull = THREAD_FACTORY.createThreadLull();//();
+			m_pool_access_lock = thread_factory.createThreadMutex();//();
+			m_list_access_lock = thread_factory.createThreadMutex();//();
+			m_info_wait_lull = thread_factory.createThreadLull();//();
 			m_info_count_known_to_be_preallocated = 0;//(0)
 		}
 
@@ -513,10 +539,14 @@ class ThreadingTemplates {
 		//private boolean DoPreallocateJobInfos(int /*ddependencycount_t*/ required_info_count);
 
 		//public:
+		@Override
 		public boolean IsJobListReadyForShutdown() { return m_job_list.get() == null; }
 
 		//private:
-		private final Ref<dxThreadedJobInfo>       m_job_list = new Ref<dxThreadedJobInfo>();
+		//TZ atomic: the list is altered under the list lock, but IsJobListReadyForShutdown() 
+		// reads it without the lock
+		private final AtomicReference<dxThreadedJobInfo> m_job_list = 
+				new AtomicReference<dxThreadedJobInfo>();
 		//private volatile atomicptr_t    m_info_pool; // dxThreadedJobInfo *
 		private final AtomicReference<dxThreadedJobInfo> m_info_pool = 
 				new AtomicReference<dxThreadedJobInfo>(); // dxThreadedJobInfo *
@@ -554,6 +584,7 @@ class ThreadingTemplates {
 			dxtemplateThreadingLockHelper list_access = new dxtemplateThreadingLockHelper(m_list_access_lock);
 
 			dxThreadedJobInfo picked_job = PickNextPendingJob(out_last_job_flag);
+			list_access.DESTRUCTOR();
 			return picked_job;
 		}
 
@@ -665,6 +696,7 @@ class ThreadingTemplates {
 			dxtemplateThreadingLockHelper list_access = new dxtemplateThreadingLockHelper(m_list_access_lock);
 
 			InsertJobInfoIntoListHead(job_instance);
+			list_access.DESTRUCTOR();
 		}
 
 
@@ -719,11 +751,13 @@ class ThreadingTemplates {
 
 			if (job_list_head != null)
 			{
-				job_list_head.m_prev_job_next_ptr = 
-						new Ref<dxThreadedJobInfo>(job_instance.m_next_job);
+				//TZ job_list_head.m_prev_job_next_ptr = &job_instance.m_next_job;
+				job_list_head.m_prev_job = job_instance;
 			}
 
+			// A non-null m_prev_job_next_ptr indicates that the instance is queued
 			job_instance.m_prev_job_next_ptr = m_job_list;
+			job_instance.m_prev_job = null;
 			m_job_list.set( job_instance );
 		}
 
@@ -734,13 +768,21 @@ class ThreadingTemplates {
 		{
 			if (job_instance.m_next_job != null)
 			{ 
-				job_instance.m_next_job.m_prev_job_next_ptr = job_instance.m_prev_job_next_ptr;
+				job_instance.m_next_job.m_prev_job = job_instance.m_prev_job;
 			}
 
-			job_instance.m_prev_job_next_ptr.set(job_instance.m_next_job);
+			//TZ *job_instance.m_prev_job_next_ptr = job_instance.m_next_job;
+			if (job_instance.m_prev_job != null)
+			{
+				job_instance.m_prev_job.m_next_job = job_instance.m_next_job;
+			}
+			else
+			{
+				m_job_list.set(job_instance.m_next_job);
+			}
 			// Assign NULL to m_prev_job_next_ptr as an indicator that instance has been dequeued
-			//TZ this makes sense if the pointer equals the m_job_list REF.
 			job_instance.m_prev_job_next_ptr = null;
+			job_instance.m_prev_job = null;
 		}
 
 		//template<class tThreadLull, class tThreadMutex, class tAtomicsProvider>
@@ -783,9 +825,11 @@ class ThreadingTemplates {
 					if (CompareExchangeTargetPtr(m_info_pool, head_info, next_info))
 					{
 						result_info = head_info;
+						pool_access.DESTRUCTOR();
 						break;
 					}
 				}
+				pool_access.DESTRUCTOR();
 			}
 
 			m_info_wait_lull.UnregisterFromLull();
@@ -917,76 +961,177 @@ class ThreadingTemplates {
 	//}
 
 
-	//TODO TZ implement for multi-threading
-	//#if dBUILTIN_THREADING_IMPL_ENABLED
-	//
 	//template<class tThreadWakeup, class tJobListContainer>
-	//class dxtemplateJobListThreadedHandler
-	//{
-	//public:
-	//    dxtemplateJobListThreadedHandler(tJobListContainer *list_container_ptr):
-	//        m_job_list_ptr(list_container_ptr),
-	//        m_processing_wakeup(),
-	//        m_active_thread_count(0),
-	//        m_shutdown_requested(0)
-	//    {
-	//    }
-	//
-	//    ~dxtemplateJobListThreadedHandler()
-	//    {
-	//        dIASSERT(m_active_thread_count == 0);
-	//
-	//        DoFinalizeObject();
-	//    }
-	//
-	//    bool InitializeObject() { return DoInitializeObject(); }
-	//
-	//private:
-	//    bool DoInitializeObject() { return m_processing_wakeup.InitializeObject(); }
-	//    void DoFinalizeObject() { /* Do nothing */ }
-	//
-	//public:
-	//    typedef dxtemplateCallWait<tThreadWakeup> dxCallWait;
-	//
-	//public:
-	//    inline void ProcessActiveJobAddition();
-	//    inline void PrepareForWaitingAJobCompletion();
-	//
-	//public:
-	//    inline unsigned RetrieveActiveThreadsCount();
-	//    inline void StickToJobsProcessing(dxThreadReadyToServeCallback *readiness_callback/*=NULL*/, void *callback_context/*=NULL*/);
-	//
-	//private:
-	//    void PerformJobProcessingUntilShutdown();
-	//    void PerformJobProcessingSession();
-	//
-	//    void BlockAsIdleThread();
-	//    void ActivateAnIdleThread();
-	//
-	//public:
-	//    inline void ShutdownProcessing();
-	//    inline void CleanupForRestart();
-	//
-	//private:
-	//    bool IsShutdownRequested() const { return m_shutdown_requested != 0; }
-	//
-	//private:
-	//    typedef typename tJobListContainer::dxAtomicsProvider dxAtomicsProvider;
-	//    typedef typename tJobListContainer::atomicord_t atomicord_t;
-	//
-	//    atomicord_t GetActiveThreadsCount() const { return m_active_thread_count; }
-	//    void RegisterAsActiveThread() { dxAtomicsProvider::template AddValueToTarget<sizeof(atomicord_t)>((volatile void *)&m_active_thread_count, 1); }
-	//    void UnregisterAsActiveThread() { dxAtomicsProvider::template AddValueToTarget<sizeof(atomicord_t)>((volatile void *)&m_active_thread_count, -1); }
-	//
-	//private:
-	//    tJobListContainer       *m_job_list_ptr;
-	//    tThreadWakeup           m_processing_wakeup;
-	//    volatile atomicord_t    m_active_thread_count;
-	//    int                     m_shutdown_requested;
-	//};
-	//
-	//
-	//#endif // #if dBUILTIN_THREADING_IMPL_ENABLED
+	static class dxtemplateJobListThreadedHandler
+	implements tJobListHandler
+	{
+		//public:
+		public dxtemplateJobListThreadedHandler(tJobListContainer list_container_ptr, 
+				tThreadWakeup processing_wakeup)
+		{
+			m_job_list_ptr = list_container_ptr;
+			m_processing_wakeup = processing_wakeup;
+			m_shutdown_requested = false;
+		}
+
+		//~dxtemplateJobListThreadedHandler()
+		public void DESTRUCTOR()
+		{
+			dIASSERT(m_active_thread_count.get() == 0);
+
+			DoFinalizeObject();
+		}
+
+		@Override
+		public boolean InitializeObject() { return DoInitializeObject(); }
+
+		//private:
+		private boolean DoInitializeObject() { return m_processing_wakeup.InitializeObject(); }
+		private void DoFinalizeObject() { /* Do nothing */ }
+
+		//private:
+		private boolean IsShutdownRequested() { return m_shutdown_requested; }
+
+		//private:
+		private int GetActiveThreadsCount() { return m_active_thread_count.get(); }
+		private void RegisterAsActiveThread() { m_active_thread_count.incrementAndGet(); }
+		private void UnregisterAsActiveThread() { m_active_thread_count.decrementAndGet(); }
+
+		//private:
+		private final tJobListContainer m_job_list_ptr;
+		private final tThreadWakeup     m_processing_wakeup;
+		private final AtomicInteger     m_active_thread_count = new AtomicInteger();
+		private volatile boolean        m_shutdown_requested;
+
+		/************************************************************************/
+		/* Implementation of dxtemplateJobListThreadedHandler                   */
+		/************************************************************************/
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		@Override
+		public void ProcessActiveJobAddition()
+		{
+			ActivateAnIdleThread();
+		}
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		@Override
+		public void PrepareForWaitingAJobCompletion()
+		{
+			// Do nothing
+		}
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//unsigned dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		@Override
+		public int RetrieveActiveThreadsCount()
+		{
+			return GetActiveThreadsCount();
+		}
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		@Override
+		public void StickToJobsProcessing(DThreadReadyToServeCallback readiness_callback/*=NULL*/, 
+				CallContext callback_context/*=NULL*/)
+		{
+			RegisterAsActiveThread();
+
+			if (readiness_callback != null)
+			{
+				readiness_callback.run(callback_context);
+			}
+
+			PerformJobProcessingUntilShutdown();
+
+			UnregisterAsActiveThread();
+		}
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		private void PerformJobProcessingUntilShutdown()
+		{
+			while (true)
+			{
+				// It is expected that new jobs will not be queued any longer after shutdown had been requested
+				if (IsShutdownRequested() && m_job_list_ptr.IsJobListReadyForShutdown())
+				{
+					break;
+				}
+
+				PerformJobProcessingSession();
+
+				// It is expected that new jobs will not be queued any longer after shutdown had been requested
+				if (IsShutdownRequested() && m_job_list_ptr.IsJobListReadyForShutdown())
+				{
+					break;
+				}
+
+				BlockAsIdleThread();
+			}
+		}
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		private void PerformJobProcessingSession()
+		{
+			dxThreadedJobInfo current_job = null;
+			boolean job_result = false;
+			RefBoolean last_job_flag = new RefBoolean(false);
+
+			while (true)
+			{
+				current_job = m_job_list_ptr.ReleaseAJobAndPickNextPendingOne(
+						current_job, job_result, dxCallWait.AbstractSignalTheWait, last_job_flag);
+
+				if (current_job == null)
+				{
+					break;
+				}
+
+				if (!last_job_flag.get())
+				{
+					ActivateAnIdleThread();
+				}
+
+				job_result = current_job.InvokeCallFunction();
+			}
+		}
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		private void BlockAsIdleThread()
+		{
+			m_processing_wakeup.WaitWakeup(null);
+		}
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		private void ActivateAnIdleThread()
+		{
+			m_processing_wakeup.WakeupAThread();
+		}
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		@Override
+		public void ShutdownProcessing()
+		{
+			m_shutdown_requested = true;
+			m_processing_wakeup.WakeupAllThreads();
+		}
+
+		//template<class tThreadWakeup, class tJobListContainer>
+		//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::
+		@Override
+		public void CleanupForRestart()
+		{
+			m_shutdown_requested = false;
+			m_processing_wakeup.ResetWakeup();
+		}
+	};
 
 
 	//template<class tThreadWakeup, class tJobListContainer>
@@ -1127,7 +1272,10 @@ class ThreadingTemplates {
 	//struct dIMutexGroup;
 	public static interface dIMutexGroup {}
 	//struct dxICallWait;
-	public static class dxICallWait extends dxtemplateCallWait {}
+	public static class dxICallWait extends dxtemplateCallWait {
+		public dxICallWait() { super(); }
+		public dxICallWait(tThreadWakeup wait_wakeup) { super(wait_wakeup); }
+	}
 
 	abstract static class dxIThreadingImplementation extends DxThreadingImplementation
 	{
@@ -1175,9 +1323,15 @@ class ThreadingTemplates {
 	{
 		//public:
 		public dxtemplateThreadingImplementation() {
+			this(THREAD_FACTORY);
+		}
+
+		//TZ the factory replaces the template parameters
+		public dxtemplateThreadingImplementation(ThreadFactory thread_factory) {
 			super();//dBase();
-			m_list_container = THREAD_FACTORY.createJobListContainer();//();
-			m_list_handler = new dxtemplateJobListSelfHandlertemplate(m_list_container);//(&m_list_container);
+			m_thread_factory = thread_factory;
+			m_list_container = thread_factory.createJobListContainer();//();
+			m_list_handler = thread_factory.createJobListHandler(m_list_container);//(&m_list_container);
 		}
 
 		//virtual ~dxtemplateThreadingImplementation()
@@ -1232,6 +1386,7 @@ class ThreadingTemplates {
 		//private:
 		//TZ final to ensure that simplified constructor is correct
 		//TZ TOD why on earth are there two separate fields?
+		private final ThreadFactory         m_thread_factory;
 		private final tJobListContainer     m_list_container;
 		private final tJobListHandler       m_list_handler;
 
@@ -1254,7 +1409,7 @@ class ThreadingTemplates {
 		@Override
 		public dIMutexGroup AllocMutexGroup(dxProcessContextMutex /*dmutexindex_t*/ Mutex_count)
 		{
-			dxtemplateMutexGroup mutex_group = dxtemplateMutexGroup.AllocateInstance(Mutex_count);
+			dxtemplateMutexGroup mutex_group = dxtemplateMutexGroup.AllocateInstance(Mutex_count, m_thread_factory);
 			return mutex_group;
 		}
 
@@ -1299,7 +1454,7 @@ class ThreadingTemplates {
 		@Override
 		public dxICallWait AllocACallWait()
 		{
-			dxCallWait call_wait = new dxCallWait();
+			dxCallWait call_wait = new dxCallWait(m_thread_factory.createThreadWakeup());
 
 			if (call_wait != null && !call_wait.InitializeObject())
 			{
@@ -1452,125 +1607,6 @@ class ThreadingTemplates {
 
 
 
-	//TODO TZ implement for multi-threading
-	//#if dBUILTIN_THREADING_IMPL_ENABLED
-	//
-	///************************************************************************/
-	///* Implementation of dxtemplateJobListThreadedHandler                   */
-	///************************************************************************/
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::ProcessActiveJobAddition()
-	//{
-	//    ActivateAnIdleThread();
-	//}
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::PrepareForWaitingAJobCompletion()
-	//{
-	//    // Do nothing
-	//}
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//unsigned dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::RetrieveActiveThreadsCount()
-	//{
-	//    return GetActiveThreadsCount();
-	//}
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::StickToJobsProcessing(dxThreadReadyToServeCallback *readiness_callback/*=NULL*/, void *callback_context/*=NULL*/)
-	//{
-	//    RegisterAsActiveThread();
-	//
-	//    if (readiness_callback != NULL)
-	//    {
-	//        (*readiness_callback)(callback_context);
-	//    }
-	//
-	//    PerformJobProcessingUntilShutdown();
-	//
-	//    UnregisterAsActiveThread();
-	//}
-	//
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::PerformJobProcessingUntilShutdown()
-	//{
-	//    while (true)
-	//    {
-	//        // It is expected that new jobs will not be queued any longer after shutdown had been requested
-	//        if (IsShutdownRequested() && m_job_list_ptr->IsJobListReadyForShutdown())
-	//        {
-	//            break;
-	//        }
-	//
-	//        PerformJobProcessingSession();
-	//
-	//        // It is expected that new jobs will not be queued any longer after shutdown had been requested
-	//        if (IsShutdownRequested() && m_job_list_ptr->IsJobListReadyForShutdown())
-	//        {
-	//            break;
-	//        }
-	//
-	//        BlockAsIdleThread();
-	//    }
-	//}
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::PerformJobProcessingSession()
-	//{
-	//    dxThreadedJobInfo *current_job = NULL;
-	//    bool job_result = false;
-	//
-	//    while (true)
-	//    {
-	//        bool last_job_flag;
-	//        current_job = m_job_list_ptr->ReleaseAJobAndPickNextPendingOne(current_job, job_result, &dxCallWait::AbstractSignalTheWait, last_job_flag);
-	//
-	//        if (!current_job)
-	//        {
-	//            break;
-	//        }
-	//
-	//        if (!last_job_flag)
-	//        {
-	//            ActivateAnIdleThread();
-	//        }
-	//
-	//        job_result = current_job->InvokeCallFunction();
-	//    }
-	//}
-	//
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::BlockAsIdleThread()
-	//{
-	//    m_processing_wakeup.WaitWakeup(NULL);
-	//}
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::ActivateAnIdleThread()
-	//{
-	//    m_processing_wakeup.WakeupAThread();
-	//}
-	//
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::ShutdownProcessing()
-	//{
-	//    m_shutdown_requested = true;
-	//    m_processing_wakeup.WakeupAllThreads();
-	//}
-	//
-	//template<class tThreadWakeup, class tJobListContainer>
-	//void dxtemplateJobListThreadedHandler<tThreadWakeup, tJobListContainer>::CleanupForRestart()
-	//{
-	//    m_shutdown_requested = false;
-	//    m_processing_wakeup.ResetWakeup();
-	//}
-	//
-	//
-	//#endif // #if dBUILTIN_THREADING_IMPL_ENABLED
 
 
 
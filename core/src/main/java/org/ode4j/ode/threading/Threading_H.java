@@ -37,7 +37,7 @@ import org.ode4j.ode.internal.processmem.DxWorldProcessContext.dxProcessContextM
  */
 public class Threading_H {
 
-	public static boolean dTHREADING_INTF_DISABLED = true;
+	public static boolean dTHREADING_INTF_DISABLED = false;
 
 //	struct dxThreadingImplementation;
 //	typedef struct dxThreadingImplementation *dThreadingImplementationID;
@@ -180,12 +180,16 @@ public class Threading_H {
 	}
 
 
-	public abstract class DThreadedWaitTime {}
-	public class DxThreadedWaitTime extends DThreadedWaitTime
+	public static abstract class DThreadedWaitTime {}
+	public static class DxThreadedWaitTime extends DThreadedWaitTime
 	{
 	  int          wait_sec;
 	  long   wait_nsec;
 
+	  public DxThreadedWaitTime(int wait_sec, long wait_nsec) {
+		  this.wait_sec = wait_sec;
+		  this.wait_nsec = wait_nsec;
+	  }
 	}
 
 
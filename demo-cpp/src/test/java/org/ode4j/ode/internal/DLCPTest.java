@@ -0,0 +1,100 @@
+package org.ode4j.ode.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.ode4j.ode.internal.Common.dPAD;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
+import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
+
+public class DLCPTest {
+
+	private static class Problem {
+		final int n, nub;
+		final double[] A, b, lo, hi;
+		Problem(Random r, int n, int nub) {
+			this.n = n;
+			this.nub = nub;
+			int nskip = dPAD(n);
+			double[] M = new double[n*n];
+			for (int i = 0; i < M.length; i++) {
+				M[i] = r.nextDouble() - 0.5;
+			}
+			// A = M*M' + I is positive definite
+			A = new double[n*nskip];
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					double sum = i == j ? 1 : 0;
+					for (int k = 0; k < n; k++) {
+						sum += M[i*n + k]*M[j*n + k];
+					}
+					A[i*nskip + j] = sum;
+				}
+			}
+			b = new double[n];
+			lo = new double[n];
+			hi = new double[n];
+			for (int i = 0; i < n; i++) {
+				b[i] = r.nextDouble()*2 - 1;
+				lo[i] = i < nub ? Double.NEGATIVE_INFINITY : -r.nextDouble()*0.1;
+				hi[i] = i < nub ? Double.POSITIVE_INFINITY : r.nextDouble()*0.1;
+			}
+		}
+
+		/** Solves a copy, dSolveLCP() permutes A, b, lo and hi. */
+		double[] solve(DxWorldProcessMemArena arena) {
+			double[] x = new double[n];
+			double[] w = new double[n];
+			DLCP.dSolveLCP(arena, n, A.clone(), x, b.clone(), w, nub, lo.clone(), hi.clone(), null);
+			return x;
+		}
+	}
+
+	@Test
+	public void testReusedSolver() {
+		Random r = new Random(7);
+		Problem[] problems = {
+				new Problem(r, 30, 5), new Problem(r, 12, 0), 
+				new Problem(r, 30, 0), new Problem(r, 7, 3)
+		};
+		double[][] expected = new double[problems.length][];
+		for (int i = 0; i < problems.length; i++) {
+			expected[i] = problems[i].solve(new DxWorldProcessMemArena());
+		}
+
+		// The solver objects and arrays of the previous solves are reused
+		DxWorldProcessMemArena arena = new DxWorldProcessMemArena();
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < problems.length; i++) {
+				BlockPointer state = arena.SaveState();
+				assertArrayEquals(expected[i], problems[i].solve(arena), 0);
+				arena.RestoreState(state);
+			}
+		}
+	}
+
+	@Test
+	public void testSolution() {
+		Problem p = new Problem(new Random(3), 20, 4);
+		double[] x = p.solve(new DxWorldProcessMemArena());
+		int nskip = dPAD(p.n);
+		for (int i = 0; i < p.n; i++) {
+			double w = -p.b[i];
+			for (int j = 0; j < p.n; j++) {
+				w += p.A[i*nskip + j]*x[j];
+			}
+			// w = A*x - b is zero between the limits, >= 0 at lo, <= 0 at hi
+			if (x[i] == p.lo[i]) {
+				assertTrue(w >= -1e-9);
+			} else if (x[i] == p.hi[i]) {
+				assertTrue(w <= 1e-9);
+			} else {
+				assertEquals(0, w, 1e-9);
+			}
+		}
+	}
+}
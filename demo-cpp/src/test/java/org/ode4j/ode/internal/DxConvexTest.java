@@ -0,0 +1,112 @@
+package org.ode4j.ode.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.ode4j.ode.OdeHelper;
+
+public class DxConvexTest {
+
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * Order of the points around the top cap of the prism. Point 3 has only
+	 * neighbours with larger indices on the cap, the smallest index is 0.
+	 */
+	private static final int[] TOP = {10, 12, 3, 14, 8, 1, 15, 6, 11, 2, 13, 4, 9, 0, 7, 5};
+
+	/**
+	 * Creates a prism with 2*SEGMENTS points, the point below TOP[j] is
+	 * SEGMENTS + j.
+	 */
+	private static DxConvex createPrism() {
+		double[] points = new double[2*SEGMENTS*3];
+		double[] planes = new double[(SEGMENTS + 2)*4];
+		int[] polygons = new int[2*(SEGMENTS + 1) + SEGMENTS*5];
+		for (int j = 0; j < SEGMENTS; j++) {
+			double phi = 2*Math.PI*j/SEGMENTS;
+			int t = TOP[j]*3;
+			int b = (SEGMENTS + j)*3;
+			points[t] = points[b] = Math.cos(phi);
+			points[t + 1] = points[b + 1] = Math.sin(phi);
+			points[t + 2] = 0.5;
+			points[b + 2] = -0.5;
+		}
+		int pos = 0;
+		planes[2] = 1;
+		planes[3] = 0.5;
+		polygons[pos++] = SEGMENTS;
+		for (int j = 0; j < SEGMENTS; j++) {
+			polygons[pos++] = TOP[j];
+		}
+		planes[6] = -1;
+		planes[7] = 0.5;
+		polygons[pos++] = SEGMENTS;
+		for (int j = SEGMENTS - 1; j >= 0; j--) {
+			polygons[pos++] = SEGMENTS + j;
+		}
+		for (int j = 0; j < SEGMENTS; j++) {
+			int k = (j + 1) % SEGMENTS;
+			double phi = 2*Math.PI*(j + 0.5)/SEGMENTS;
+			planes[(j + 2)*4] = Math.cos(phi);
+			planes[(j + 2)*4 + 1] = Math.sin(phi);
+			planes[(j + 2)*4 + 3] = Math.cos(Math.PI/SEGMENTS);
+			polygons[pos++] = 4;
+			polygons[pos++] = TOP[j];
+			polygons[pos++] = SEGMENTS + j;
+			polygons[pos++] = SEGMENTS + k;
+			polygons[pos++] = TOP[k];
+		}
+		return (DxConvex) OdeHelper.createConvex(null, planes, SEGMENTS + 2,
+				points, 2*SEGMENTS, polygons);
+	}
+
+	private static int linearSupport(DxConvex c, double x, double y, double z) {
+		double[] p = c.getPoints();
+		int index = 0;
+		double max = p[0]*x + p[1]*y + p[2]*z;
+		for (int i = 1; i < p.length/3; i++) {
+			double dot = p[i*3]*x + p[i*3 + 1]*y + p[i*3 + 2]*z;
+			if (dot > max) {
+				index = i;
+				max = dot;
+			}
+		}
+		return index;
+	}
+
+	@Test
+	public void testSupportPlateau() {
+		DxConvex c = createPrism();
+		// The whole top cap is the support of +z
+		assertEquals(0, c.SupportIndexLocal(0, 0, 1, 3));
+		assertEquals(0, c.SupportIndexLocal(0, 0, 1, -1));
+		for (int j = 0; j < SEGMENTS; j++) {
+			assertEquals(0, c.SupportIndexLocal(0, 0, 1, TOP[j]));
+			assertEquals(SEGMENTS, c.SupportIndexLocal(0, 0, -1, TOP[j]));
+		}
+		c.destroy();
+	}
+
+	@Test
+	public void testSupportMatchesLinearSearch() {
+		DxConvex c = createPrism();
+		Random r = new Random(25);
+		for (int i = 0; i < 1000; i++) {
+			double x = r.nextDouble() - 0.5;
+			double y = r.nextDouble() - 0.5;
+			double z = r.nextDouble() - 0.5;
+			if (i % 2 == 0) {
+				// The support of horizontal directions is a vertical edge 
+				// or a side face, i.e. not unique
+				z = 0;
+			}
+			int expected = linearSupport(c, x, y, z);
+			int start = r.nextInt(2*SEGMENTS + 1) - 1;
+			assertEquals(expected, c.SupportIndexLocal(x, y, z, start));
+		}
+		c.destroy();
+	}
+}
@@ -0,0 +1,105 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DSapSpace;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.internal.DxSAPSpace2;
+import org.ode4j.ode.internal.DxSpace;
+
+/**
+ * Creates the spaces that are tested with the same fixture. The quad tree 
+ * and octree cover the area in which the tests place their geoms.
+ */
+enum SpaceFactory {
+
+	SIMPLE {
+		@Override
+		DSpace create(DSpace parent) {
+			return OdeHelper.createSimpleSpace(parent);
+		}
+	},
+	HASH {
+		@Override
+		DSpace create(DSpace parent) {
+			return OdeHelper.createHashSpace(parent);
+		}
+	},
+	SAP {
+		@Override
+		DSpace create(DSpace parent) {
+			return OdeHelper.createSapSpace(parent, DSapSpace.AXES.XYZ);
+		}
+	},
+	INCREMENTAL_SAP {
+		@Override
+		DSpace create(DSpace parent) {
+			return OdeHelper.createIncrementalSapSpace(parent, DSapSpace.AXES.XZY);
+		}
+	},
+	SAP2 {
+		@Override
+		DSpace create(DSpace parent) {
+			return DxSAPSpace2.dSweepAndPruneSpaceCreate((DxSpace) parent, DSapSpace.AXES.XZY.getCode());
+		}
+	},
+	QUAD_TREE {
+		@Override
+		DSpace create(DSpace parent) {
+			return OdeHelper.createQuadTreeSpace(parent, new DVector3(5, 5, 2), new DVector3(12, 12, 8), 4);
+		}
+	},
+	BVH {
+		@Override
+		DSpace create(DSpace parent) {
+			return OdeHelper.createBvhSpace(parent);
+		}
+	},
+	OCTREE {
+		@Override
+		DSpace create(DSpace parent) {
+			return OdeHelper.createOctreeSpace(parent, new DVector3(5, 5, 2), new DVector3(12, 12, 8), 5);
+		}
+	};
+
+	abstract DSpace create(DSpace parent);
+
+	/**
+	 * @param withSimple whether the simple space is included
+	 * @return The factories as parameters of a <tt>Parameterized</tt> test.
+	 */
+	static Collection<Object[]> parameters(boolean withSimple) {
+		Collection<Object[]> list = new ArrayList<Object[]>();
+		for (SpaceFactory f : values()) {
+			if (withSimple || f != SIMPLE) {
+				list.add(new Object[]{f});
+			}
+		}
+		return list;
+	}
+}
@@ -3,6 +3,7 @@ package org.ode4j.tests;
 import java.util.Random;
 
 import org.junit.Test;
+import org.ode4j.math.DVector3;
 import org.ode4j.ode.DGeom;
 import org.ode4j.ode.DGeom.DNearCallback;
 import org.ode4j.ode.DSapSpace.AXES;
@@ -49,6 +50,10 @@ public class SpacePerformanceTest {
         testSpace(space, iterations, geomnum);
         space = DxSAPSpace2.dSweepAndPruneSpaceCreate(null, AXES.XZY.getCode());
         testSpace(space, iterations, geomnum);
+        space = OdeHelper.createBvhSpace();
+        testSpace(space, iterations, geomnum);
+        space = OdeHelper.createOctreeSpace(new DVector3(50, 50, 50), new DVector3(52, 52, 52), 6);
+        testSpace(space, iterations, geomnum);
     }
     
     private void testSpace(DSpace space, int iterations, int geomnum) {
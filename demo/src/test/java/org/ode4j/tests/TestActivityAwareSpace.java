@@ -0,0 +1,162 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Checks that spaces in activity aware mode report exactly the pairs with 
+ * at least one active geom.
+ */
+@RunWith(Parameterized.class)
+public class TestActivityAwareSpace {
+
+	private static final int N = 300;
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> spaces() {
+		return SpaceFactory.parameters(true);
+	}
+
+	private final SpaceFactory factory;
+
+	public TestActivityAwareSpace(SpaceFactory factory) {
+		this.factory = factory;
+	}
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static boolean isActive(DGeom g) {
+		return g.getBody() != null && g.getBody().isEnabled();
+	}
+
+	private static class PairCollector implements DNearCallback {
+		final TreeSet<String> pairs = new TreeSet<String>();
+		final boolean activeOnly;
+		PairCollector(boolean activeOnly) {
+			this.activeOnly = activeOnly;
+		}
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			if (activeOnly && !isActive(o1) && !isActive(o2)) {
+				return;
+			}
+			int i1 = (Integer) o1.getData();
+			int i2 = (Integer) o2.getData();
+			assertTrue(pairs.add(Math.min(i1, i2) + "-" + Math.max(i1, i2)));
+		}
+	}
+
+	private static DBody[] fill(DSpace space, DWorld world) {
+		Random r = new Random(7);
+		DBody[] bodies = new DBody[N];
+		for (int i = 0; i < N; i++) {
+			DGeom g;
+			if (i == 0) {
+				g = OdeHelper.createPlane(space, 0, 0, 1, 0);
+			} else {
+				g = i % 2 == 0 ? OdeHelper.createSphere(space, 0.4) : OdeHelper.createBox(space, 0.8, 0.5, 0.6);
+				g.setPosition(8 * r.nextDouble(), 8 * r.nextDouble(), 2 * r.nextDouble());
+				// a third of the geoms is static, a third is asleep
+				if (i % 3 != 0) {
+					DBody b = OdeHelper.createBody(world);
+					b.setPosition(g.getPosition());
+					g.setBody(b);
+					if (i % 3 == 2) {
+						b.disable();
+					}
+					bodies[i] = b;
+				}
+			}
+			g.setData(i);
+		}
+		return bodies;
+	}
+
+	private static void check(DSpace space) {
+		DWorld world = OdeHelper.createWorld();
+		DBody[] bodies = fill(space, world);
+		assertFalse(space.isActivityAware());
+
+		PairCollector all = new PairCollector(true);
+		space.collide(null, all);
+		space.setActivityAware(true);
+		assertTrue(space.isActivityAware());
+		PairCollector aware = new PairCollector(false);
+		space.collide(null, aware);
+		assertTrue(all.pairs.size() > 50);
+		assertEquals(all.pairs, aware.pairs);
+
+		// Waking and moving bodies changes the buckets
+		for (int i = 2; i < N; i += 6) {
+			bodies[i].enable();
+		}
+		for (int i = 1; i + 4 < N; i += 9) {
+			bodies[i].setPosition(new DVector3(bodies[i].getPosition()).add(0.3, 0, 0));
+			bodies[i + 4].disable();
+		}
+		all = new PairCollector(true);
+		space.setActivityAware(false);
+		space.collide(null, all);
+		space.setActivityAware(true);
+		aware = new PairCollector(false);
+		space.collide(null, aware);
+		assertEquals(all.pairs, aware.pairs);
+
+		space.destroy();
+		world.destroy();
+	}
+
+	@Test
+	public void testSpace() {
+		check(factory.create(null));
+	}
+}
@@ -0,0 +1,238 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DMatrix3;
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DContactPairCache;
+import org.ode4j.ode.DPlane;
+import org.ode4j.ode.DSphere;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.OdeMath;
+
+public class TestContactPairCache {
+
+	private static final int MAX_CONTACTS = 4;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	@Test
+	public void testReuse() {
+		DPlane plane = OdeHelper.createPlane(null, 0, 0, 1, 0);
+		DSphere sphere = OdeHelper.createSphere(0.5);
+		sphere.setPosition(0, 0, 0.45);
+		DContactPairCache cache = OdeHelper.createContactPairCache();
+		DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+
+		assertEquals(1, cache.collide(sphere, plane, MAX_CONTACTS, contacts));
+		assertEquals(0.05, contacts.get(0).depth, 1e-12);
+		assertEquals(0, cache.getNumHits());
+		assertEquals(1, cache.getNumPairs());
+
+		// Small moves, also when they add up, return the stored contact
+		for (int i = 1; i <= 4; i++) {
+			sphere.setPosition(0, 0, 0.45 + 0.0002 * i);
+			assertEquals(1, cache.collide(sphere, plane, MAX_CONTACTS, contacts));
+			assertEquals(0.05, contacts.get(0).depth, 1e-12);
+			assertEquals(i, cache.getNumHits());
+			cache.update();
+		}
+
+		// Beyond the threshold the contact is generated again
+		sphere.setPosition(0, 0, 0.452);
+		assertEquals(1, cache.collide(sphere, plane, MAX_CONTACTS, contacts));
+		assertEquals(0.048, contacts.get(0).depth, 1e-12);
+		assertEquals(4, cache.getNumHits());
+
+		// Separated pairs are cached as well
+		sphere.setPosition(0, 0, 2);
+		assertEquals(0, cache.collide(sphere, plane, MAX_CONTACTS, contacts));
+		assertEquals(0, cache.collide(sphere, plane, MAX_CONTACTS, contacts));
+		assertEquals(5, cache.getNumHits());
+
+		// Other flags are not served from the cache
+		sphere.setPosition(0, 0, 0.45);
+		assertEquals(1, cache.collide(sphere, plane, MAX_CONTACTS, contacts));
+		assertEquals(1, cache.collide(sphere, plane, 1, contacts));
+		assertEquals(5, cache.getNumHits());
+
+		cache.destroy();
+		sphere.destroy();
+		plane.destroy();
+	}
+
+	@Test
+	public void testReversedPair() {
+		DPlane plane = OdeHelper.createPlane(null, 0, 0, 1, 0);
+		DSphere sphere = OdeHelper.createSphere(0.5);
+		sphere.setPosition(0, 0, 0.45);
+		DContactPairCache cache = OdeHelper.createContactPairCache();
+		DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+		DContactGeomBuffer expected = new DContactGeomBuffer(MAX_CONTACTS);
+
+		assertEquals(1, cache.collide(sphere, plane, MAX_CONTACTS, contacts));
+		assertEquals(1, OdeHelper.collide(plane, sphere, MAX_CONTACTS, expected));
+		assertEquals(1, cache.collide(plane, sphere, MAX_CONTACTS, contacts));
+		assertEquals(1, cache.getNumHits());
+		assertEquals(1, cache.getNumPairs());
+		assertContact(expected.get(0), contacts.get(0));
+
+		// Generated again in the reversed order, served in both orders
+		sphere.setPosition(0, 0, 0.4);
+		assertEquals(1, OdeHelper.collide(plane, sphere, MAX_CONTACTS, expected));
+		assertEquals(1, cache.collide(plane, sphere, MAX_CONTACTS, contacts));
+		assertEquals(1, cache.getNumHits());
+		assertContact(expected.get(0), contacts.get(0));
+		assertEquals(1, cache.collide(plane, sphere, MAX_CONTACTS, contacts));
+		assertContact(expected.get(0), contacts.get(0));
+		assertEquals(1, OdeHelper.collide(sphere, plane, MAX_CONTACTS, expected));
+		assertEquals(1, cache.collide(sphere, plane, MAX_CONTACTS, contacts));
+		assertContact(expected.get(0), contacts.get(0));
+		assertEquals(3, cache.getNumHits());
+		assertEquals(1, cache.getNumPairs());
+
+		cache.destroy();
+		sphere.destroy();
+		plane.destroy();
+	}
+
+	@Test
+	public void testManyPairs() {
+		DSphere[] spheres = new DSphere[40];
+		for (int i = 0; i < spheres.length; i++) {
+			spheres[i] = OdeHelper.createSphere(0.5);
+			spheres[i].setPosition(0.9 * i, 0, 0);
+		}
+		DContactPairCache cache = OdeHelper.createContactPairCache();
+		DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+		for (int i = 1; i < spheres.length; i++) {
+			assertEquals(1, cache.collide(spheres[i - 1], spheres[i], MAX_CONTACTS, contacts));
+		}
+		for (int i = 1; i < spheres.length; i++) {
+			assertEquals(1, cache.collide(spheres[i], spheres[i - 1], MAX_CONTACTS, contacts));
+			assertSame(spheres[i], contacts.get(0).g1);
+		}
+		assertEquals(spheres.length - 1, cache.getNumPairs());
+		assertEquals(spheres.length - 1, cache.getNumHits());
+		cache.update();
+		cache.update();
+		assertEquals(0, cache.getNumPairs());
+
+		cache.destroy();
+		for (DSphere s : spheres) {
+			s.destroy();
+		}
+	}
+
+	private static void assertContact(DContactGeom expected, DContactGeom c) {
+		assertEquals(0, expected.pos.distance(c.pos), 1e-12);
+		assertEquals(0, expected.normal.distance(c.normal), 1e-12);
+		assertEquals(expected.depth, c.depth, 1e-12);
+		assertSame(expected.g1, c.g1);
+		assertSame(expected.g2, c.g2);
+		assertEquals(expected.side1, c.side1);
+		assertEquals(expected.side2, c.side2);
+	}
+
+	@Test
+	public void testRotation() {
+		DBox box = OdeHelper.createBox(1, 1, 1);
+		DPlane plane = OdeHelper.createPlane(null, 0, 0, 1, 0);
+		box.setPosition(0, 0, 0.49);
+		DContactPairCache cache = OdeHelper.createContactPairCache();
+		cache.setThresholds(0.001, 0.01);
+		DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+		assertEquals(4, cache.collide(box, plane, MAX_CONTACTS, contacts));
+
+		DMatrix3 R = new DMatrix3();
+		OdeMath.dRFromAxisAndAngle(R, 1, 0, 0, 0.005);
+		box.setRotation(R);
+		assertEquals(4, cache.collide(box, plane, MAX_CONTACTS, contacts));
+		assertEquals(1, cache.getNumHits());
+
+		OdeMath.dRFromAxisAndAngle(R, 1, 0, 0, 0.02);
+		box.setRotation(R);
+		cache.collide(box, plane, MAX_CONTACTS, contacts);
+		assertEquals(1, cache.getNumHits());
+		cache.destroy();
+		box.destroy();
+		plane.destroy();
+	}
+
+	@Test
+	public void testAgingAndRemove() {
+		DPlane plane = OdeHelper.createPlane(null, 0, 0, 1, 0);
+		DSphere s1 = OdeHelper.createSphere(0.5);
+		DSphere s2 = OdeHelper.createSphere(0.5);
+		s2.setPosition(3, 0, 0);
+		DContactPairCache cache = OdeHelper.createContactPairCache();
+		cache.setMaxAge(2);
+		DContactGeomBuffer contacts = new DContactGeomBuffer(MAX_CONTACTS);
+
+		cache.collide(s1, plane, MAX_CONTACTS, contacts);
+		cache.collide(s2, plane, MAX_CONTACTS, contacts);
+		cache.collide(s1, s2, MAX_CONTACTS, contacts);
+		assertEquals(3, cache.getNumPairs());
+		cache.update();
+		cache.collide(s1, plane, MAX_CONTACTS, contacts);
+		cache.update();
+		assertEquals(3, cache.getNumPairs());
+		cache.update();
+		assertEquals(1, cache.getNumPairs());
+
+		// The remaining pair is still served from the cache
+		cache.collide(s1, plane, MAX_CONTACTS, contacts);
+		assertEquals(2, cache.getNumHits());
+
+		cache.collide(s2, plane, MAX_CONTACTS, contacts);
+		assertEquals(2, cache.getNumPairs());
+		cache.remove(s1);
+		assertEquals(1, cache.getNumPairs());
+		assertTrue(cache.collide(s2, plane, MAX_CONTACTS, contacts) > 0);
+		assertEquals(3, cache.getNumHits());
+		cache.clear();
+		assertEquals(0, cache.getNumPairs());
+
+		cache.destroy();
+		s1.destroy();
+		s2.destroy();
+		plane.destroy();
+	}
+}
@@ -0,0 +1,231 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DMatrix3;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DConvex;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.internal.Rotation;
+
+/**
+ * Compares the contacts of a convex shape with many points, whose support 
+ * queries climb along the vertex adjacency, with the contacts of the same 
+ * shape that is searched linearly.
+ */
+public class TestConvexSupport {
+
+	private static final int RINGS = 12;
+	private static final int SEGMENTS = 16;
+	private static final int MAX_CONTACTS = 8;
+
+	private double[] points;
+	private double[] planes;
+	private int[] polygons;
+	private int polygonCount;
+	private int planeCount;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static int ring(int i, int j) {
+		return 1 + (i - 1)*SEGMENTS + (j % SEGMENTS);
+	}
+
+	/**
+	 * Creates an ellipsoid like shape of RINGS-1 rings and two poles, 
+	 * with triangles at the poles and quads in between.
+	 */
+	private void createShape() {
+		int pointCount = 2 + (RINGS - 1)*SEGMENTS;
+		points = new double[pointCount*3];
+		points[2] = 1.5;
+		points[5] = -1.5;
+		for (int i = 1; i < RINGS; i++) {
+			double theta = Math.PI*i/RINGS;
+			for (int j = 0; j < SEGMENTS; j++) {
+				double phi = 2*Math.PI*j/SEGMENTS;
+				int p = ring(i, j)*3 + 3;
+				points[p] = Math.sin(theta)*Math.cos(phi);
+				points[p + 1] = Math.sin(theta)*Math.sin(phi)*0.8;
+				points[p + 2] = Math.cos(theta)*1.5;
+			}
+		}
+		planeCount = SEGMENTS*RINGS;
+		planes = new double[planeCount*4];
+		polygons = new int[SEGMENTS*2*4 + SEGMENTS*(RINGS - 2)*5];
+		polygonCount = 0;
+		planeCount = 0;
+		for (int j = 0; j < SEGMENTS; j++) {
+			addPolygon(0, ring(1, j) + 1, ring(1, j + 1) + 1);
+			addPolygon(1, ring(RINGS - 1, j + 1) + 1, ring(RINGS - 1, j) + 1);
+			for (int i = 1; i < RINGS - 1; i++) {
+				addPolygon(ring(i, j) + 1, ring(i + 1, j) + 1, ring(i + 1, j + 1) + 1, ring(i, j + 1) + 1);
+			}
+		}
+	}
+
+	private void addPolygon(int... indices) {
+		polygons[polygonCount++] = indices.length;
+		for (int i : indices) {
+			polygons[polygonCount++] = i;
+		}
+		double[] a = new double[3], b = new double[3], n = new double[3];
+		for (int k = 0; k < 3; k++) {
+			a[k] = points[indices[1]*3 + k] - points[indices[0]*3 + k];
+			b[k] = points[indices[2]*3 + k] - points[indices[0]*3 + k];
+		}
+		n[0] = a[1]*b[2] - a[2]*b[1];
+		n[1] = a[2]*b[0] - a[0]*b[2];
+		n[2] = a[0]*b[1] - a[1]*b[0];
+		double l = Math.sqrt(n[0]*n[0] + n[1]*n[1] + n[2]*n[2]);
+		for (int k = 0; k < 3; k++) {
+			planes[planeCount*4 + k] = n[k]/l;
+			planes[planeCount*4 + 3] += n[k]/l*points[indices[0]*3 + k];
+		}
+		planeCount++;
+	}
+
+	/**
+	 * @param linear true to append a copy of the first point that is not 
+	 * part of a polygon, which disables the hill-climbing
+	 */
+	private DConvex createConvex(boolean linear) {
+		int pointCount = points.length/3;
+		double[] p = points;
+		if (linear) {
+			p = new double[points.length + 3];
+			System.arraycopy(points, 0, p, 0, points.length);
+			System.arraycopy(points, 0, p, points.length, 3);
+			pointCount++;
+		}
+		return OdeHelper.createConvex(planes, planeCount, p, pointCount, polygons);
+	}
+
+	private static void setPose(DGeom g, Random r, double range) {
+		g.setPosition(r.nextDouble()*range*2 - range, r.nextDouble()*range*2 - range, 
+				r.nextDouble()*range*2 - range);
+		DMatrix3 R = new DMatrix3();
+		Rotation.dRFromAxisAndAngle(R, r.nextDouble() - 0.5, r.nextDouble() - 0.5, 
+				r.nextDouble() - 0.5, r.nextDouble()*Math.PI);
+		g.setRotation(R);
+	}
+
+	private static DGeom createGeom(int type, Random r) {
+		switch (type) {
+		case 0: return OdeHelper.createSphere(0.3 + r.nextDouble());
+		case 1: return OdeHelper.createBox(0.5 + r.nextDouble(), 0.5 + r.nextDouble(), 0.5 + r.nextDouble());
+		case 2: return OdeHelper.createCapsule(0.3 + r.nextDouble()*0.5, 0.5 + r.nextDouble());
+		default: return OdeHelper.createCylinder(0.3 + r.nextDouble()*0.5, 0.5 + r.nextDouble());
+		}
+	}
+
+	private static int assertSameContacts(DGeom c1, DGeom c2, DGeom g) {
+		DContactGeomBuffer b1 = new DContactGeomBuffer(MAX_CONTACTS);
+		DContactGeomBuffer b2 = new DContactGeomBuffer(MAX_CONTACTS);
+		int n1 = OdeHelper.collide(c1, g, MAX_CONTACTS, b1);
+		int n2 = OdeHelper.collide(c2, g, MAX_CONTACTS, b2);
+		assertEquals(n1, n2);
+		for (int i = 0; i < n1; i++) {
+			DContactGeom a = b1.get(i);
+			DContactGeom b = b2.get(i);
+			assertTrue(a.pos.isEq(b.pos));
+			assertTrue(a.normal.isEq(b.normal));
+			assertEquals(a.depth, b.depth, 0);
+		}
+		return n1;
+	}
+
+	@Test
+	public void testPrimitives() {
+		createShape();
+		Random r = new Random(25);
+		DConvex hull = createConvex(false);
+		DConvex linear = createConvex(true);
+		int contacts = 0;
+		for (int step = 0; step < 200; step++) {
+			setPose(hull, r, 1);
+			linear.setPosition(hull.getPosition());
+			linear.setRotation(hull.getRotation());
+			DGeom g = createGeom(step % 4, r);
+			setPose(g, r, 2);
+			contacts += assertSameContacts(hull, linear, g);
+			g.destroy();
+		}
+		assertTrue(contacts > 50);
+		hull.destroy();
+		linear.destroy();
+	}
+
+	@Test
+	public void testConvexConvex() {
+		createShape();
+		Random r = new Random(26);
+		DConvex hull1 = createConvex(false);
+		DConvex hull2 = createConvex(false);
+		DConvex linear1 = createConvex(true);
+		DConvex linear2 = createConvex(true);
+		int contacts = 0;
+		for (int step = 0; step < 100; step++) {
+			setPose(hull1, r, 1);
+			setPose(hull2, r, 1.5);
+			linear1.setPosition(hull1.getPosition());
+			linear1.setRotation(hull1.getRotation());
+			linear2.setPosition(hull2.getPosition());
+			linear2.setRotation(hull2.getRotation());
+			DContactGeomBuffer b1 = new DContactGeomBuffer(MAX_CONTACTS);
+			DContactGeomBuffer b2 = new DContactGeomBuffer(MAX_CONTACTS);
+			int n1 = OdeHelper.collide(hull1, hull2, MAX_CONTACTS, b1);
+			int n2 = OdeHelper.collide(linear1, linear2, MAX_CONTACTS, b2);
+			assertEquals(n1, n2);
+			for (int i = 0; i < n1; i++) {
+				assertTrue(b1.get(i).pos.isEq(b2.get(i).pos));
+				assertEquals(b1.get(i).depth, b2.get(i).depth, 0);
+			}
+			contacts += n1;
+		}
+		assertTrue(contacts > 20);
+		hull1.destroy();
+		hull2.destroy();
+		linear1.destroy();
+		linear2.destroy();
+	}
+}
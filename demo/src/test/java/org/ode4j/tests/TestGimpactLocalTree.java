@@ -0,0 +1,382 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DMatrix3;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DCapsule;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DSphere;
+import org.ode4j.ode.DTriMesh;
+import org.ode4j.ode.DTriMeshData;
+import org.ode4j.ode.OdeConfig;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.internal.Rotation;
+
+/**
+ * Compares the contacts of a GIMPACT trimesh with preprocessed data, which 
+ * collides in mesh space, with the contacts of the same trimesh without 
+ * preprocessing. The same is done for the quantized trees of 
+ * {@link OdeConfig.TRIMESH#QUANTIZED}.
+ */
+public class TestGimpactLocalTree {
+
+	private static final int N = 24;
+	private static final int MAX_CONTACTS = 32;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static float[] createVertices(double phase) {
+		float[] vertices = new float[N*N*3];
+		for (int y = 0; y < N; y++) {
+			for (int x = 0; x < N; x++) {
+				int p = (x + y*N)*3;
+				vertices[p] = x - N/2;
+				vertices[p + 1] = y - N/2;
+				vertices[p + 2] = (float) (Math.sin(x*0.7 + phase)*Math.cos(y*0.5));
+			}
+		}
+		return vertices;
+	}
+
+	private static DTriMeshData createData(boolean preprocess) {
+		return createData(createVertices(0), preprocess);
+	}
+
+	private static DTriMeshData createData(float[] vertices, boolean preprocess) {
+		return createData(vertices, preprocess, false);
+	}
+
+	private static DTriMeshData createData(float[] vertices, boolean preprocess, boolean quantized) {
+		int[] indices = new int[(N-1)*(N-1)*6];
+		int p = 0;
+		for (int y = 0; y < N-1; y++) {
+			for (int x = 0; x < N-1; x++) {
+				int i = x + y*N;
+				indices[p++] = i;
+				indices[p++] = i + 1;
+				indices[p++] = i + 1 + N;
+				indices[p++] = i;
+				indices[p++] = i + 1 + N;
+				indices[p++] = i + N;
+			}
+		}
+		DTriMeshData data;
+		if (quantized) {
+			OdeConfig.setTrimeshType(OdeConfig.TRIMESH.QUANTIZED);
+			try {
+				data = OdeHelper.createTriMeshData();
+			} finally {
+				OdeConfig.setTrimeshType(OdeConfig.TRIMESH.GIMPACT);
+			}
+		} else {
+			data = OdeHelper.createTriMeshData();
+		}
+		data.build(vertices, indices);
+		if (preprocess) {
+			data.preprocess();
+		}
+		return data;
+	}
+
+	private static void setPose(DGeom g, Random r) {
+		g.setPosition(r.nextDouble()*4 - 2, r.nextDouble()*4 - 2, r.nextDouble()*2 - 1);
+		DMatrix3 R = new DMatrix3();
+		Rotation.dRFromAxisAndAngle(R, r.nextDouble() - 0.5, r.nextDouble() - 0.5, 
+				r.nextDouble() - 0.5, r.nextDouble()*Math.PI);
+		g.setRotation(R);
+	}
+
+	private static DGeom createGeom(int type, Random r) {
+		switch (type) {
+		case 0: return OdeHelper.createSphere(0.3 + r.nextDouble());
+		case 1: return OdeHelper.createBox(0.5 + r.nextDouble(), 0.5 + r.nextDouble(), 0.5 + r.nextDouble());
+		case 2: return OdeHelper.createCapsule(0.3 + r.nextDouble()*0.5, 0.5 + r.nextDouble());
+		case 3: return OdeHelper.createCylinder(0.3 + r.nextDouble()*0.5, 0.5 + r.nextDouble());
+		default: 
+			DGeom ray = OdeHelper.createRay(10);
+			return ray;
+		}
+	}
+
+	private static void assertSameContacts(DTriMesh m1, DTriMesh m2, DGeom g) {
+		DContactGeomBuffer c1 = new DContactGeomBuffer(MAX_CONTACTS);
+		DContactGeomBuffer c2 = new DContactGeomBuffer(MAX_CONTACTS);
+		int n1 = OdeHelper.collide(m1, g, MAX_CONTACTS, c1);
+		int n2 = OdeHelper.collide(m2, g, MAX_CONTACTS, c2);
+		assertEquals(n1, n2);
+		for (int i = 0; i < n1; i++) {
+			DContactGeom a = c1.get(i);
+			DContactGeom b = c2.get(i);
+			assertTrue(a.pos.isEq(b.pos));
+			assertTrue(a.normal.isEq(b.normal));
+			assertEquals(a.depth, b.depth, 0);
+			assertEquals(a.side1, b.side1);
+		}
+	}
+
+	private static void assertEnclosed(DAABBC inner, DAABBC outer) {
+		assertTrue(outer.getMin0() <= inner.getMin0() && outer.getMax0() >= inner.getMax0());
+		assertTrue(outer.getMin1() <= inner.getMin1() && outer.getMax1() >= inner.getMax1());
+		assertTrue(outer.getMin2() <= inner.getMin2() && outer.getMax2() >= inner.getMax2());
+	}
+
+	@Test
+	public void testPrimitives() {
+		testPrimitives(createData(true));
+	}
+
+	@Test
+	public void testQuantizedPrimitives() {
+		testPrimitives(createData(createVertices(0), false, true));
+	}
+
+	private void testPrimitives(DTriMeshData localData) {
+		Random r = new Random(21);
+		DTriMesh plain = OdeHelper.createTriMesh(null, createData(false), null, null, null);
+		DTriMesh local = OdeHelper.createTriMesh(null, localData, null, null, null);
+		int contacts = 0;
+		int largerBounds = 0;
+		for (int step = 0; step < 50; step++) {
+			setPose(plain, r);
+			local.setPosition(plain.getPosition());
+			local.setRotation(plain.getRotation());
+			assertEnclosed(plain.getAABB(), local.getAABB());
+			if (local.getAABB().getMax2() > plain.getAABB().getMax2()) {
+				largerBounds++;
+			}
+			for (int i = 0; i < 20; i++) {
+				DGeom g = createGeom(i % 5, r);
+				setPose(g, r);
+				g.setPosition(plain.getPosition().get0() + r.nextDouble()*16 - 8, 
+						plain.getPosition().get1() + r.nextDouble()*16 - 8, 
+						plain.getPosition().get2() + r.nextDouble()*4 - 2);
+				assertSameContacts(plain, local, g);
+				DContactGeomBuffer c = new DContactGeomBuffer(MAX_CONTACTS);
+				contacts += OdeHelper.collide(plain, g, MAX_CONTACTS, c);
+				g.destroy();
+			}
+			DGeom plane = OdeHelper.createPlane(null, r.nextDouble() - 0.5, r.nextDouble() - 0.5, 1, 
+					plain.getPosition().get2() + r.nextDouble() - 0.5);
+			assertSameContacts(plain, local, plane);
+			plane.destroy();
+		}
+		// The test must have found contacts
+		assertTrue(contacts > 100);
+		// The bounds of the rotated local mesh are computed from its tree
+		assertTrue(largerBounds > 0);
+		plain.destroy();
+		local.destroy();
+	}
+
+	@Test
+	public void testTrimeshTrimesh() {
+		testTrimeshTrimesh(createData(true), createData(true));
+	}
+
+	@Test
+	public void testQuantizedTrimeshTrimesh() {
+		testTrimeshTrimesh(createData(createVertices(0), false, true), 
+				createData(createVertices(0), false, true));
+	}
+
+	private void testTrimeshTrimesh(DTriMeshData localData1, DTriMeshData localData2) {
+		Random r = new Random(22);
+		DTriMesh plain1 = OdeHelper.createTriMesh(null, createData(false), null, null, null);
+		DTriMesh plain2 = OdeHelper.createTriMesh(null, createData(false), null, null, null);
+		DTriMesh local1 = OdeHelper.createTriMesh(null, localData1, null, null, null);
+		DTriMesh local2 = OdeHelper.createTriMesh(null, localData2, null, null, null);
+		int contacts = 0;
+		for (int step = 0; step < 10; step++) {
+			setPose(plain1, r);
+			setPose(plain2, r);
+			local1.setPosition(plain1.getPosition());
+			local1.setRotation(plain1.getRotation());
+			local2.setPosition(plain2.getPosition());
+			local2.setRotation(plain2.getRotation());
+			DContactGeomBuffer c1 = new DContactGeomBuffer(MAX_CONTACTS);
+			DContactGeomBuffer c2 = new DContactGeomBuffer(MAX_CONTACTS);
+			int n1 = OdeHelper.collide(plain1, plain2, MAX_CONTACTS, c1);
+			int n2 = OdeHelper.collide(local1, local2, MAX_CONTACTS, c2);
+			assertEquals(n1, n2);
+			for (int i = 0; i < n1; i++) {
+				assertTrue(c1.get(i).pos.isEq(c2.get(i).pos));
+				assertEquals(c1.get(i).depth, c2.get(i).depth, 0);
+			}
+			contacts += n1;
+			// A primitive between the trimesh collisions uses the lazy path
+			DGeom sphere = OdeHelper.createSphere(1);
+			sphere.setPosition(plain1.getPosition());
+			assertSameContacts(plain1, local1, sphere);
+			sphere.destroy();
+		}
+		assertTrue(contacts > 0);
+		plain1.destroy();
+		plain2.destroy();
+		local1.destroy();
+		local2.destroy();
+	}
+
+	/**
+	 * Moves geoms in small steps relative to a trimesh with temporal coherence 
+	 * caches and compares the contacts with a trimesh without caches. The 
+	 * vertices are changed in between.
+	 */
+	@Test
+	public void testTemporalCoherence() {
+		Random r = new Random(24);
+		float[] vertices = createVertices(0);
+		DTriMeshData data = createData(vertices, true);
+		DTriMesh cached = OdeHelper.createTriMesh(null, data, null, null, null);
+		DTriMesh uncached = OdeHelper.createTriMesh(null, data, null, null, null);
+		uncached.enableTC(DSphere.class, false);
+		uncached.enableTC(DBox.class, false);
+		uncached.enableTC(DCapsule.class, false);
+		assertTrue(cached.isTCEnabled(DSphere.class));
+		assertTrue(!uncached.isTCEnabled(DBox.class));
+		DGeom[] geoms = new DGeom[9];
+		for (int i = 0; i < geoms.length; i++) {
+			geoms[i] = createGeom(i % 3, r);
+			setPose(geoms[i], r);
+			geoms[i].setPosition(r.nextDouble()*16 - 8, r.nextDouble()*16 - 8, r.nextDouble()*2 - 1);
+		}
+		int contacts = 0;
+		for (int step = 0; step < 60; step++) {
+			if (step % 20 == 10) {
+				System.arraycopy(createVertices(step*0.1), 0, vertices, 0, vertices.length);
+				data.updateVertices(0, N*N);
+			}
+			if (step % 15 == 0) {
+				cached.clearTCCache(cached);
+			}
+			if (step % 20 == 0) {
+				// Moves the trimesh relative to all geoms
+				setPose(cached, r);
+			}
+			uncached.setPosition(cached.getPosition());
+			uncached.setRotation(cached.getRotation());
+			for (DGeom g : geoms) {
+				g.setPosition(g.getPosition().get0() + r.nextDouble()*0.1 - 0.05, 
+						g.getPosition().get1() + r.nextDouble()*0.1 - 0.05, 
+						g.getPosition().get2() + r.nextDouble()*0.1 - 0.05);
+				assertSameContacts(uncached, cached, g);
+				DContactGeomBuffer c = new DContactGeomBuffer(MAX_CONTACTS);
+				contacts += OdeHelper.collide(uncached, g, MAX_CONTACTS, c);
+			}
+		}
+		assertTrue(contacts > 100);
+		for (DGeom g : geoms) {
+			g.destroy();
+		}
+		cached.destroy();
+		uncached.destroy();
+	}
+
+	/**
+	 * Changes the vertices of a data in place and compares the contacts with 
+	 * a trimesh that is created from a copy of the vertices.
+	 */
+	@Test
+	public void testUpdateVertices() {
+		testUpdateVertices(false);
+	}
+
+	/**
+	 * The random vertices leave the box of the quantized tree, which has to 
+	 * be rebuilt.
+	 */
+	@Test
+	public void testQuantizedUpdateVertices() {
+		testUpdateVertices(true);
+	}
+
+	private void testUpdateVertices(boolean quantized) {
+		Random r = new Random(23);
+		float[] vertices = createVertices(0);
+		DTriMeshData data = createData(vertices, false, quantized);
+		DTriMesh deformed = OdeHelper.createTriMesh(null, data, null, null, null);
+		int contacts = 0;
+		for (int step = 0; step < 30; step++) {
+			if (step == 20) {
+				// Large changes degrade the tree
+				for (int i = 0; i < vertices.length; i++) {
+					vertices[i] = (float) (r.nextDouble()*N - N/2);
+				}
+				data.updateVertices(0, N*N);
+			} else if (step % 3 == 2) {
+				// Change a range of vertices only
+				int first = r.nextInt(N*N/2);
+				int count = r.nextInt(N*N/2);
+				for (int i = first; i < first + count; i++) {
+					vertices[i*3 + 2] += (float) (r.nextDouble() - 0.5);
+				}
+				data.updateVertices(first, count);
+			} else {
+				System.arraycopy(createVertices(step*0.3), 0, vertices, 0, vertices.length);
+				data.updateVertices(0, N*N);
+			}
+			if (step % 2 == 0) {
+				setPose(deformed, r);
+			}
+			DTriMesh reference = OdeHelper.createTriMesh(null, 
+					createData(vertices.clone(), false), null, null, null);
+			reference.setPosition(deformed.getPosition());
+			reference.setRotation(deformed.getRotation());
+			assertEnclosed(reference.getAABB(), deformed.getAABB());
+			for (int i = 0; i < 20; i++) {
+				DGeom g = createGeom(i % 5, r);
+				setPose(g, r);
+				g.setPosition(deformed.getPosition().get0() + r.nextDouble()*16 - 8, 
+						deformed.getPosition().get1() + r.nextDouble()*16 - 8, 
+						deformed.getPosition().get2() + r.nextDouble()*4 - 2);
+				assertSameContacts(reference, deformed, g);
+				DContactGeomBuffer c = new DContactGeomBuffer(MAX_CONTACTS);
+				contacts += OdeHelper.collide(reference, g, MAX_CONTACTS, c);
+				g.destroy();
+			}
+			reference.destroy();
+		}
+		assertTrue(contacts > 100);
+		deformed.destroy();
+	}
+}
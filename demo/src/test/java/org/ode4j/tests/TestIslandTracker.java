@@ -0,0 +1,171 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DBallJoint;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DJoint;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.internal.DxBody;
+import org.ode4j.ode.internal.DxIslandTracker;
+import org.ode4j.ode.internal.DxWorld;
+
+/**
+ * Checks that the islands tracked between steps follow the creation and 
+ * removal of bodies and joints.
+ */
+public class TestIslandTracker {
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static DBody createBody(DWorld world, double x) {
+		DBody b = OdeHelper.createBody(world);
+		DMass m = OdeHelper.createMass();
+		m.setSphere(1, 0.1);
+		b.setMass(m);
+		b.setPosition(x, 0, 0);
+		return b;
+	}
+
+	private static DJoint connect(DWorld world, DBody b1, DBody b2) {
+		DBallJoint j = OdeHelper.createBallJoint(world);
+		j.attach(b1, b2);
+		j.setAnchor(b1.getPosition().get0() + 0.5, 0, 0);
+		return j;
+	}
+
+	private static int islandSize(DxIslandTracker islands, int index) {
+		DxBody root = islands.getAwakeIsland(index);
+		int n = 0;
+		DxBody b = root;
+		do {
+			n++;
+			b = islands.nextIslandBody(b);
+		} while (b != root);
+		return n;
+	}
+
+	@Test
+	public void testMergeAndSplit() {
+		DWorld world = OdeHelper.createWorld();
+		DxIslandTracker islands = ((DxWorld) world).islands;
+		DBody[] bodies = new DBody[6];
+		for (int i = 0; i < bodies.length; i++) {
+			bodies[i] = createBody(world, i);
+		}
+		assertEquals(6, islands.update());
+
+		DJoint[] joints = new DJoint[5];
+		for (int i = 0; i < joints.length; i++) {
+			joints[i] = connect(world, bodies[i], bodies[i + 1]);
+		}
+		assertEquals(1, islands.update());
+		assertEquals(6, islandSize(islands, 0));
+
+		// the chain falls apart into 0-2 and 3-5
+		joints[2].destroy();
+		assertEquals(2, islands.update());
+		assertEquals(3, islandSize(islands, 0));
+		assertEquals(3, islandSize(islands, 1));
+
+		// disabled joints do not connect bodies, joints to the static 
+		// environment do not change the islands
+		joints[0].disable();
+		connect(world, bodies[5], null);
+		assertEquals(3, islands.update());
+		joints[0].enable();
+		assertEquals(2, islands.update());
+
+		bodies[4].destroy();
+		assertEquals(3, islands.update());
+		world.step(0.01);
+		world.destroy();
+	}
+
+	@Test
+	public void testDisabledIslandsAreSkipped() {
+		DWorld world = OdeHelper.createWorld();
+		DxIslandTracker islands = ((DxWorld) world).islands;
+		DBody[] bodies = new DBody[4];
+		for (int i = 0; i < bodies.length; i++) {
+			bodies[i] = createBody(world, i);
+		}
+		connect(world, bodies[0], bodies[1]);
+		connect(world, bodies[2], bodies[3]);
+		assertEquals(2, islands.update());
+
+		bodies[2].disable();
+		assertEquals(2, islands.update());
+		bodies[3].disable();
+		assertEquals(1, islands.update());
+
+		world.setGravity(0, 0, -9.81);
+		assertTrue(world.quickStep(0.01));
+		assertEquals(-0.01 * 0.01 * 9.81, bodies[0].getPosition().get2(), 1e-12);
+		assertEquals(0, bodies[2].getPosition().get2(), 0);
+
+		// connecting an enabled body wakes up the whole island when stepping
+		connect(world, bodies[1], bodies[2]);
+		assertEquals(1, islands.update());
+		assertEquals(4, islandSize(islands, 0));
+		assertTrue(world.quickStep(0.01));
+		assertTrue(bodies[2].isEnabled());
+		assertTrue(bodies[3].isEnabled());
+
+		// auto-disabling puts the whole island to sleep
+		world.setGravity(0, 0, 0);
+		for (DBody b : bodies) {
+			b.setLinearVel(0, 0, 0);
+			b.setAngularVel(0, 0, 0);
+			b.setAutoDisableFlag(true);
+			b.setAutoDisableSteps(1);
+			b.setAutoDisableTime(0);
+		}
+		// (the joint errors of the connection above take a few steps to settle)
+		for (int i = 0; i < 100; i++) {
+			assertTrue(world.quickStep(0.01));
+		}
+		for (DBody b : bodies) {
+			assertFalse(b.isEnabled());
+		}
+		assertEquals(0, islands.update());
+		world.destroy();
+	}
+}
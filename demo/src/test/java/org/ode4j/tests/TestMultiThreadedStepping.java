@@ -0,0 +1,468 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DVector3C;
+import org.ode4j.ode.DBallJoint;
+import org.ode4j.ode.DBody;
+import org.ode4j.ode.DBox;
+import org.ode4j.ode.DContact;
+import org.ode4j.ode.DContactBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DHingeJoint;
+import org.ode4j.ode.DJoint;
+import org.ode4j.ode.DJointGroup;
+import org.ode4j.ode.DMass;
+import org.ode4j.ode.DMisc;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.threading.DThreadingImplementation;
+import org.ode4j.ode.threading.DThreadingThreadPool;
+
+/**
+ * Steps identical worlds with the self-threaded and the built-in
+ * multi-threaded threading implementation and compares the results.
+ */
+public class TestMultiThreadedStepping {
+
+	private static final int ISLANDS = 24;
+	private static final int STEPS = 50;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static DBody[] createPendulums(DWorld world) {
+		world.setGravity(0, 0, -9.81);
+		DBody[] bodies = new DBody[ISLANDS];
+		for (int i = 0; i < ISLANDS; i++) {
+			DBody b = OdeHelper.createBody(world);
+			DMass m = OdeHelper.createMass();
+			m.setBox(1, 0.2, 0.2, 0.2);
+			b.setMass(m);
+			b.setPosition(i, 0.5 + 0.01 * i, 1);
+			DHingeJoint h = OdeHelper.createHingeJoint(world);
+			h.attach(b, null);
+			h.setAnchor(i, 0, 1);
+			h.setAxis(1, 0, 0);
+			bodies[i] = b;
+		}
+		return bodies;
+	}
+
+	@Test
+	public void testStepMatchesSingleThreaded() {
+		DWorld refWorld = OdeHelper.createWorld();
+		DBody[] refBodies = createPendulums(refWorld);
+
+		DWorld world = OdeHelper.createWorld();
+		DBody[] bodies = createPendulums(world);
+
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		assertNotNull(threading);
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(4, 0, null);
+		assertNotNull(pool);
+		pool.serveMultiThreadedImplementation(threading);
+		world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+
+		for (int i = 0; i < STEPS; i++) {
+			refWorld.step(0.01);
+			world.step(0.01);
+		}
+		// Islands are independent, so the order of processing must not matter
+		for (int i = 0; i < ISLANDS; i++) {
+			DVector3C p0 = refBodies[i].getPosition();
+			DVector3C p1 = bodies[i].getPosition();
+			assertEquals(p0.get0(), p1.get0(), 1e-12);
+			assertEquals(p0.get1(), p1.get1(), 1e-12);
+			assertEquals(p0.get2(), p1.get2(), 1e-12);
+		}
+
+		for (int i = 0; i < STEPS; i++) {
+			assertTrue(world.quickStep(0.01));
+		}
+
+		threading.shutdownProcessing();
+		pool.freeThreadPool();
+		world.setStepThreadingImplementation(null, null);
+		threading.free();
+
+		for (int i = 0; i < ISLANDS; i++) {
+			// The hinge keeps every pendulum at its anchor distance
+			DVector3C p = bodies[i].getPosition();
+			assertEquals(0.5 + 0.01 * i, Math.hypot(p.get1(), p.get2() - 1), 1e-2);
+		}
+
+		world.destroy();
+		refWorld.destroy();
+	}
+
+	@Test
+	public void testQuickStepIsReproducible() {
+		DWorld refWorld = OdeHelper.createWorld();
+		DBody[] refBodies = createPendulums(refWorld);
+		refWorld.setRandomSeed(42);
+
+		DWorld world = OdeHelper.createWorld();
+		DBody[] bodies = createPendulums(world);
+		world.setRandomSeed(42);
+		assertEquals(42, world.getRandomSeed());
+
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(4, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+
+		for (int i = 0; i < STEPS; i++) {
+			assertTrue(refWorld.quickStep(0.01));
+			// Neither the global generator nor other worlds affect the constraint order
+			DMisc.dRandInt(100);
+			assertTrue(world.quickStep(0.01));
+		}
+		assertEquals(refWorld.getRandomSeed(), world.getRandomSeed());
+		for (int i = 0; i < ISLANDS; i++) {
+			DVector3C p0 = refBodies[i].getPosition();
+			DVector3C p1 = bodies[i].getPosition();
+			assertEquals(p0.get0(), p1.get0(), 0);
+			assertEquals(p0.get1(), p1.get1(), 0);
+			assertEquals(p0.get2(), p1.get2(), 0);
+		}
+
+		threading.shutdownProcessing();
+		pool.freeThreadPool();
+		world.setStepThreadingImplementation(null, null);
+		threading.free();
+		world.destroy();
+		refWorld.destroy();
+	}
+
+	private static DBody[] createChain(DWorld world, int links) {
+		world.setGravity(0, 0, -9.81);
+		DBody[] bodies = new DBody[links];
+		for (int i = 0; i < links; i++) {
+			DBody b = OdeHelper.createBody(world);
+			DMass m = OdeHelper.createMass();
+			m.setSphere(1, 0.05);
+			b.setMass(m);
+			b.setPosition(0.1 * (i + 1), 0, 10);
+			DBallJoint j = OdeHelper.createBallJoint(world);
+			j.attach(b, i == 0 ? null : bodies[i - 1]);
+			j.setAnchor(0.1 * i, 0, 10);
+			bodies[i] = b;
+		}
+		return bodies;
+	}
+
+	private static DBody[] runParallelSORChain(int threads) {
+		DWorld world = OdeHelper.createWorld();
+		world.setQuickStepParallelSOR(true);
+		DBody[] bodies = createChain(world, 120);
+
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(threads, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+
+		for (int i = 0; i < STEPS; i++) {
+			assertTrue(world.quickStep(0.01));
+		}
+
+		threading.shutdownProcessing();
+		pool.freeThreadPool();
+		world.setStepThreadingImplementation(null, null);
+		threading.free();
+		return bodies;
+	}
+
+	@Test
+	public void testParallelSORIsIndependentOfThreadCount() {
+		// 120 ball joints give 360 constraint rows in a single island
+		DBody[] b2 = runParallelSORChain(2);
+		DBody[] b4 = runParallelSORChain(4);
+		for (int i = 0; i < b2.length; i++) {
+			DVector3C p2 = b2[i].getPosition();
+			DVector3C p4 = b4[i].getPosition();
+			assertEquals(p2.get0(), p4.get0(), 0);
+			assertEquals(p2.get1(), p4.get1(), 0);
+			assertEquals(p2.get2(), p4.get2(), 0);
+		}
+		// The first link still hangs from its anchor (SOR leaves some stretch with 120 links)
+		DVector3C p = b4[0].getPosition();
+		assertEquals(0.1, Math.hypot(p.get0(), p.get2() - 10), 2e-2);
+		b2[0].getWorld().destroy();
+		b4[0].getWorld().destroy();
+	}
+
+	@Test
+	public void testParallelSORConvergenceTolerance() {
+		final double tolerance = 1e-2;
+		DWorld world = OdeHelper.createWorld();
+		world.setQuickStepParallelSOR(true);
+		createChain(world, 120);
+		world.setQuickStepConvergenceTolerance(tolerance);
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(2, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+		for (int i = 0; i < STEPS; i++) {
+			assertTrue(world.quickStep(0.01));
+			assertEquals(1, world.getQuickStepIslandCount());
+			int iterations = world.getQuickStepIslandIterations(0);
+			assertTrue(iterations >= 1 && iterations <= world.getQuickStepNumIterations());
+			if (iterations < world.getQuickStepNumIterations()) {
+				assertTrue(world.getQuickStepIslandResidual(0) <= tolerance);
+			}
+			if (i == 0) {
+				// The chain starts at rest
+				assertEquals(1, iterations);
+			}
+		}
+		threading.shutdownProcessing();
+		pool.freeThreadPool();
+		world.setStepThreadingImplementation(null, null);
+		threading.free();
+		world.destroy();
+	}
+
+	/**
+	 * Columns of stacked boxes on a plate that lies on a plane, so that 
+	 * all boxes form a single island. With 4 contacts of 3 rows each per 
+	 * box there are enough rows for the parallel SOR.
+	 */
+	private static class BoxStack implements DNearCallback {
+		private static final int COLUMNS = 4;
+		private static final int HEIGHT = 2;
+		private static final int BOXES = 1 + COLUMNS * COLUMNS * HEIGHT;
+		private static final int MAX_CONTACTS = 4;
+		final DWorld world = OdeHelper.createWorld();
+		final DSpace space = OdeHelper.createSimpleSpace();
+		final DJointGroup contactgroup = OdeHelper.createJointGroup();
+		final DBody[] bodies = new DBody[BOXES];
+
+		BoxStack() {
+			world.setGravity(0, 0, -9.81);
+			world.setQuickStepNumIterations(40);
+			world.setRandomSeed(7);
+			OdeHelper.createPlane(space, 0, 0, 1, 0);
+			bodies[0] = createBox(0, 0, 0.25, 1.5 * COLUMNS, 0.5);
+			for (int i = 1; i < BOXES; i++) {
+				int column = (i - 1) / HEIGHT;
+				double x = 1.5 * (column % COLUMNS - 0.5 * (COLUMNS - 1));
+				double y = 1.5 * (column / COLUMNS - 0.5 * (COLUMNS - 1));
+				bodies[i] = createBox(x, y, 1 + (i - 1) % HEIGHT, 1, 1);
+			}
+		}
+
+		private DBody createBox(double x, double y, double z, double size, double height) {
+			DBody b = OdeHelper.createBody(world);
+			DMass m = OdeHelper.createMass();
+			m.setBox(1, size, size, height);
+			b.setMass(m);
+			b.setPosition(x, y, z);
+			DBox box = OdeHelper.createBox(space, size, size, height);
+			box.setBody(b);
+			return b;
+		}
+
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			DContactBuffer contacts = new DContactBuffer(MAX_CONTACTS);
+			int n = OdeHelper.collide(o1, o2, MAX_CONTACTS, contacts.getGeomBuffer());
+			for (int i = 0; i < n; i++) {
+				DContact contact = contacts.get(i);
+				contact.surface.mu = 1;
+				DJoint c = OdeHelper.createContactJoint(world, contactgroup, contact);
+				c.attach(o1.getBody(), o2.getBody());
+			}
+		}
+
+		void run(int steps) {
+			for (int i = 0; i < steps; i++) {
+				OdeHelper.spaceCollide(space, null, this);
+				assertTrue(world.quickStep(0.01));
+				contactgroup.empty();
+			}
+		}
+
+		void destroy() {
+			contactgroup.destroy();
+			space.destroy();
+			world.destroy();
+		}
+	}
+
+	@Test
+	public void testParallelSORMatchesSequentialSOR() {
+		BoxStack ref = new BoxStack();
+		BoxStack stack = new BoxStack();
+		stack.world.setQuickStepParallelSOR(true);
+
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(4, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		stack.world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+
+		ref.run(STEPS);
+		stack.run(STEPS);
+		assertEquals(1, stack.world.getQuickStepIslandCount());
+		// The batches solve the rows in a different order than SOR_LCP, 
+		// so both only converge to about the same solution
+		assertSamePositions(ref.bodies, stack.bodies, 1e-2);
+		// The boxes come to rest without falling over
+		assertEquals(0.25, stack.bodies[0].getPosition().get2(), 0.05);
+		for (int i = 1; i < BoxStack.BOXES; i++) {
+			assertEquals(1 + (i - 1) % BoxStack.HEIGHT, stack.bodies[i].getPosition().get2(), 0.05);
+		}
+
+		threading.shutdownProcessing();
+		pool.freeThreadPool();
+		stack.world.setStepThreadingImplementation(null, null);
+		threading.free();
+		stack.destroy();
+		ref.destroy();
+	}
+
+	private static void assertSamePositions(DBody[] b0, DBody[] b1, double tolerance) {
+		for (int i = 0; i < b0.length; i++) {
+			DVector3C p0 = b0[i].getPosition();
+			DVector3C p1 = b1[i].getPosition();
+			assertEquals(p0.get0(), p1.get0(), tolerance);
+			assertEquals(p0.get1(), p1.get1(), tolerance);
+			assertEquals(p0.get2(), p1.get2(), tolerance);
+		}
+	}
+
+	@Test
+	public void testLargeAndSmallIslands() {
+		// One large island is stepped with stage threads, the pendulums are 
+		// batched and stepped with a single thread each
+		DWorld refWorld = OdeHelper.createWorld();
+		DBody[] refChain = createChain(refWorld, 120);
+		DBody[] refBodies = createPendulums(refWorld);
+
+		DWorld world = OdeHelper.createWorld();
+		DBody[] chain = createChain(world, 120);
+		DBody[] bodies = createPendulums(world);
+
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(4, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+
+		for (int i = 0; i < STEPS; i++) {
+			refWorld.step(0.01);
+			world.step(0.01);
+		}
+		assertSamePositions(refChain, chain, 1e-12);
+		assertSamePositions(refBodies, bodies, 1e-12);
+
+		for (int i = 0; i < STEPS; i++) {
+			assertTrue(refWorld.quickStep(0.01));
+			assertTrue(world.quickStep(0.01));
+		}
+		assertSamePositions(refChain, chain, 1e-12);
+		assertSamePositions(refBodies, bodies, 1e-12);
+
+		threading.shutdownProcessing();
+		pool.freeThreadPool();
+		world.setStepThreadingImplementation(null, null);
+		threading.free();
+		world.destroy();
+		refWorld.destroy();
+	}
+
+	@Test
+	public void testPoolRestart() {
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(2, 0, null);
+		for (int round = 0; round < 3; round++) {
+			pool.serveMultiThreadedImplementation(threading);
+			DWorld world = OdeHelper.createWorld();
+			createPendulums(world);
+			world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+			for (int i = 0; i < 10; i++) {
+				assertTrue(world.quickStep(0.01));
+			}
+			world.setStepThreadingImplementation(null, null);
+			world.destroy();
+			threading.shutdownProcessing();
+			pool.waitIdleState();
+			threading.dThreadingImplementationCleanupForRestart();
+		}
+		pool.freeThreadPool();
+		threading.free();
+	}
+
+	@Test
+	public void testExecutorPool() throws InterruptedException {
+		DWorld refWorld = OdeHelper.createWorld();
+		DBody[] refBodies = createPendulums(refWorld);
+
+		DWorld world = OdeHelper.createWorld();
+		DBody[] bodies = createPendulums(world);
+
+		ExecutorService executor = Executors.newCachedThreadPool();
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		// One pool thread per available processor
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(executor, 0);
+		assertNotNull(pool);
+		pool.serveMultiThreadedImplementation(threading);
+		world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+
+		for (int i = 0; i < STEPS; i++) {
+			assertTrue(refWorld.quickStep(0.01));
+			assertTrue(world.quickStep(0.01));
+		}
+		assertSamePositions(refBodies, bodies, 0);
+		world.setStepThreadingImplementation(null, null);
+
+		// The pool is still serving, freeing all pools (as done by closeODE) 
+		// releases its tasks 
+		DThreadingThreadPool.freeAllThreadPools();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		threading.free();
+
+		world.destroy();
+		refWorld.destroy();
+	}
+}
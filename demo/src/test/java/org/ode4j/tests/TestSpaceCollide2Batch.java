@@ -0,0 +1,183 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DGeomPairBuffer;
+import org.ode4j.ode.DSapSpace.AXES;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.internal.DxSAPSpace2;
+import org.ode4j.ode.threading.DThreadingImplementation;
+import org.ode4j.ode.threading.DThreadingThreadPool;
+
+/**
+ * Compares the pairs of spaceCollide2Batch() with the pairs of 
+ * spaceCollide2() for every query geom.
+ */
+public class TestSpaceCollide2Batch {
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static class PairCollector implements DNearCallback {
+		final List<String> pairs = new ArrayList<String>();
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			if (o1 instanceof DSpace) {
+				OdeHelper.spaceCollide2(o1, o2, data, this);
+				return;
+			}
+			pairs.add(o1.getData() + "-" + o2.getData());
+		}
+	}
+
+	/**
+	 * Fills the space with boxes and spheres, a plane, a disabled geom and 
+	 * a sub-space.
+	 */
+	private static void fillSpace(DSpace space, int n, Random rnd) {
+		for (int i = 0; i < n; i++) {
+			DGeom g = i % 2 == 0 ? OdeHelper.createSphere(space, 0.4) : 
+				OdeHelper.createBox(space, 0.6, 0.3, 0.9);
+			g.setPosition(rnd.nextDouble() * 40, rnd.nextDouble() * 40, rnd.nextDouble() * 5);
+			g.setData(i);
+		}
+		OdeHelper.createPlane(space, 0, 0, 1, 0).setData("plane");
+		DGeom disabled = OdeHelper.createSphere(space, 1);
+		disabled.setPosition(20, 20, 2);
+		disabled.setData("disabled");
+		disabled.disable();
+		DSpace sub = OdeHelper.createSimpleSpace(space);
+		sub.setData("sub");
+		for (int i = 0; i < 3; i++) {
+			DGeom g = OdeHelper.createBox(sub, 1, 1, 1);
+			g.setPosition(10 + i, 10, 1);
+			g.setData("sub" + i);
+		}
+	}
+
+	private static DGeom[] createQueries(int n, Random rnd) {
+		DGeom[] queries = new DGeom[n];
+		for (int i = 0; i < n; i++) {
+			queries[i] = OdeHelper.createSphere(null, 0.5 + rnd.nextDouble());
+			queries[i].setPosition(rnd.nextDouble() * 40, rnd.nextDouble() * 40, rnd.nextDouble() * 5);
+			queries[i].setData("q" + i);
+		}
+		queries[0].setPosition(10, 10, 1);
+		queries[1].setPosition(30, 30, 0);
+		return queries;
+	}
+
+	private static List<String> collide2(DSpace space, DGeom[] queries) {
+		PairCollector c = new PairCollector();
+		for (DGeom q : queries) {
+			OdeHelper.spaceCollide2(space, q, null, c);
+		}
+		return c.pairs;
+	}
+
+	private static List<String> collide2Batch(DSpace space, DGeom[] queries, DWorld world) {
+		DGeomPairBuffer pairs = new DGeomPairBuffer();
+		OdeHelper.spaceCollide2Batch(space, queries, world, pairs);
+		List<String> list = new ArrayList<String>();
+		for (int i = 0; i < pairs.size(); i++) {
+			list.add(pairs.getGeom1(i).getData() + "-" + pairs.getGeom2(i).getData());
+		}
+		return list;
+	}
+
+	private static void check(DSpace space, DWorld world) {
+		Random rnd = new Random(7);
+		fillSpace(space, 6000, rnd);
+		DGeom[] queries = createQueries(500, rnd);
+		List<String> batch = collide2Batch(space, queries, world);
+		List<String> expected = collide2(space, queries);
+		assertEquals(expected, batch);
+		assertTrue(batch.contains("sub0-q0"));
+		assertTrue(batch.contains("plane-q1"));
+
+		// move some geoms, the BVH is rebuilt
+		for (DGeom g : queries) {
+			g.setPosition(rnd.nextDouble() * 40, rnd.nextDouble() * 40, rnd.nextDouble() * 5);
+		}
+		for (int i = 0; i < space.getNumGeoms(); i += 7) {
+			DGeom g = space.getGeom(i);
+			if (!(g instanceof DSpace) && g.getBody() == null && g.getClassID() != DGeom.dPlaneClass) {
+				g.setPosition(rnd.nextDouble() * 40, rnd.nextDouble() * 40, rnd.nextDouble() * 5);
+			}
+		}
+		assertEquals(collide2Batch(space, queries, world), collide2(space, queries));
+
+		for (DGeom g : queries) {
+			g.destroy();
+		}
+		space.destroy();
+	}
+
+	@Test
+	public void testSapSpace2() {
+		check(DxSAPSpace2.dSweepAndPruneSpaceCreate(null, AXES.XZY.getCode()), null);
+	}
+
+	@Test
+	public void testSapSpace2Threaded() {
+		DWorld world = OdeHelper.createWorld();
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(4, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+
+		check(DxSAPSpace2.dSweepAndPruneSpaceCreate(null, AXES.XZY.getCode()), world);
+
+		threading.shutdownProcessing();
+		pool.freeThreadPool();
+		world.setStepThreadingImplementation(null, null);
+		threading.free();
+		world.destroy();
+	}
+
+	@Test
+	public void testHashSpace() {
+		check(OdeHelper.createHashSpace(), null);
+	}
+}
@@ -0,0 +1,221 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.ode4j.ode.OdeMath.dRFromAxisAndAngle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ode4j.math.DMatrix3;
+import org.ode4j.ode.DContactGeom;
+import org.ode4j.ode.DContactGeomBuffer;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DGeom.DParallelNearCallback;
+import org.ode4j.ode.DGeomPairBuffer;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.DSphere;
+import org.ode4j.ode.DWorld;
+import org.ode4j.ode.OdeHelper;
+import org.ode4j.ode.threading.DThreadingImplementation;
+import org.ode4j.ode.threading.DThreadingThreadPool;
+
+/**
+ * Compares the contacts of spaceCollideParallel() and collideBatch() with 
+ * those of spaceCollide() and collide().
+ */
+public class TestSpaceCollideParallel {
+
+	private static final int MAX_CONTACTS = 4;
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static DSpace createScene() {
+		Random r = new Random(42);
+		DSpace space = OdeHelper.createHashSpace();
+		DSpace sub = OdeHelper.createSimpleSpace(space);
+		OdeHelper.createPlane(space, 0, 0, 1, 0);
+		for (int i = 0; i < 600; i++) {
+			DSpace s = i % 5 == 0 ? sub : space;
+			DGeom g;
+			switch (i % 3) {
+			case 0: g = OdeHelper.createSphere(s, 0.3 + 0.3*r.nextDouble()); break;
+			case 1: g = OdeHelper.createBox(s, 0.5, 0.4 + r.nextDouble(), 0.6); break;
+			default: g = OdeHelper.createCapsule(s, 0.2, 0.5 + r.nextDouble()); break;
+			}
+			g.setPosition(10*r.nextDouble(), 10*r.nextDouble(), 3*r.nextDouble());
+			if (i % 3 != 0) {
+				DMatrix3 R = new DMatrix3();
+				dRFromAxisAndAngle(R, r.nextDouble(), r.nextDouble(), 1, r.nextDouble());
+				g.setRotation(R);
+			}
+		}
+		return space;
+	}
+
+	private static String format(DGeom o1, DGeom o2, DContactGeomBuffer contacts, int n) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(System.identityHashCode(o1)).append('/').append(System.identityHashCode(o2));
+		for (int i = 0; i < n; i++) {
+			DContactGeom c = contacts.get(i);
+			sb.append(' ').append(c.pos).append(c.normal).append(c.depth);
+		}
+		return sb.toString();
+	}
+
+	private static class SequentialCallback implements DNearCallback {
+		final List<String> result = new ArrayList<String>();
+		final DContactGeomBuffer buffer = new DContactGeomBuffer(MAX_CONTACTS);
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			if (o1 instanceof DSpace || o2 instanceof DSpace) {
+				OdeHelper.spaceCollide2(o1, o2, data, this);
+				return;
+			}
+			int n = OdeHelper.collide(o1, o2, MAX_CONTACTS, buffer);
+			if (n > 0) {
+				result.add(format(o1, o2, buffer, n));
+			}
+		}
+		void collide(DSpace space) {
+			OdeHelper.spaceCollide(space, null, this);
+			for (DGeom g: space.getGeoms()) {
+				if (g instanceof DSpace) {
+					collide((DSpace) g);
+				}
+			}
+		}
+	}
+
+	private static class ParallelCallback implements DParallelNearCallback {
+		final List<String> result = new ArrayList<String>();
+		boolean acceptSpheres = true;
+		@Override
+		public boolean accept(Object data, DGeom o1, DGeom o2) {
+			assertFalse(o1 instanceof DSpace || o2 instanceof DSpace);
+			return acceptSpheres || !(o1 instanceof DSphere && o2 instanceof DSphere);
+		}
+		@Override
+		public void contacts(Object data, DGeom o1, DGeom o2, DContactGeomBuffer contacts, int n) {
+			assertTrue(n > 0 && n <= MAX_CONTACTS);
+			assertEquals("data", data);
+			result.add(format(o1, o2, contacts, n));
+		}
+	}
+
+	private static List<String> collideParallel(DSpace space, DWorld world) {
+		ParallelCallback cb = new ParallelCallback();
+		OdeHelper.spaceCollideParallel(space, world, MAX_CONTACTS, "data", cb);
+		return cb.result;
+	}
+
+	@Test
+	public void testSameAsSequential() {
+		DSpace space = createScene();
+		SequentialCallback seq = new SequentialCallback();
+		seq.collide(space);
+		assertTrue(seq.result.size() > 100);
+
+		DWorld world = OdeHelper.createWorld();
+		assertEquals(seq.result, collideParallel(space, world));
+
+		DThreadingImplementation threading = OdeHelper.allocateMultiThreaded();
+		DThreadingThreadPool pool = OdeHelper.allocateThreadPool(4, 0, null);
+		pool.serveMultiThreadedImplementation(threading);
+		world.setStepThreadingImplementation(threading.dThreadingImplementationGetFunctions(), threading);
+
+		// The contacts are reported in the same order for any number of threads
+		for (int i = 0; i < 5; i++) {
+			assertEquals(seq.result, collideParallel(space, world));
+		}
+
+		threading.shutdownProcessing();
+		pool.freeThreadPool();
+		world.setStepThreadingImplementation(null, null);
+		threading.free();
+		world.destroy();
+		space.destroy();
+	}
+
+	@Test
+	public void testCollectPairsAndCollideBatch() {
+		DSpace space = createScene();
+		SequentialCallback seq = new SequentialCallback();
+		seq.collide(space);
+
+		DGeomPairBuffer pairs = new DGeomPairBuffer(4);
+		space.collectPairs(pairs);
+		assertTrue(pairs.size() > seq.result.size());
+
+		DContactGeomBuffer contacts = new DContactGeomBuffer(pairs.size() * MAX_CONTACTS);
+		int[] counts = new int[pairs.size()];
+		int total = OdeHelper.collideBatch(pairs, MAX_CONTACTS, contacts, counts);
+		List<String> result = new ArrayList<String>();
+		int first = 0;
+		for (int i = 0; i < pairs.size(); i++) {
+			if (counts[i] > 0) {
+				result.add(format(pairs.getGeom1(i), pairs.getGeom2(i), contacts.createView(first), counts[i]));
+			}
+			first += counts[i];
+		}
+		assertEquals(total, first);
+		assertEquals(seq.result, result);
+
+		// The buffer is reused
+		pairs.clear();
+		assertEquals(0, pairs.size());
+		space.collectPairs(pairs);
+		assertEquals(counts.length, pairs.size());
+		space.destroy();
+	}
+
+	@Test
+	public void testAccept() {
+		DSpace space = createScene();
+		DWorld world = OdeHelper.createWorld();
+		ParallelCallback cb = new ParallelCallback();
+		cb.acceptSpheres = false;
+		OdeHelper.spaceCollideParallel(space, world, MAX_CONTACTS, "data", cb);
+		List<String> all = collideParallel(space, world);
+		assertTrue(cb.result.size() < all.size());
+		assertTrue(all.containsAll(cb.result));
+		world.destroy();
+		space.destroy();
+	}
+}
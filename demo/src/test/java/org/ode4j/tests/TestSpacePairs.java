@@ -0,0 +1,274 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeom.DNearCallback;
+import org.ode4j.ode.DHashSpace;
+import org.ode4j.ode.DOctreeSpace;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Compares the pairs reported by every space with the pairs of a simple 
+ * space while geoms move inside and outside of the space bounds, change 
+ * size, are disabled, added and removed. Every pair must be reported 
+ * exactly once.
+ */
+@RunWith(Parameterized.class)
+public class TestSpacePairs {
+
+	private static final int N = 300;
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> spaces() {
+		return SpaceFactory.parameters(false);
+	}
+
+	private final SpaceFactory factory;
+
+	public TestSpacePairs(SpaceFactory factory) {
+		this.factory = factory;
+	}
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	/**
+	 * Collects the pairs with overlapping AABBs. The sweep and prune spaces 
+	 * report geoms with infinite AABBs with all other geoms.
+	 */
+	private static class PairCollector implements DNearCallback {
+		final TreeSet<String> pairs = new TreeSet<String>();
+		@Override
+		public void call(Object data, DGeom o1, DGeom o2) {
+			DAABBC b1 = o1.getAABB();
+			DAABBC b2 = o2.getAABB();
+			for (int a = 0; a < 3; a++) {
+				if (b1.getMin(a) > b2.getMax(a) || b1.getMax(a) < b2.getMin(a)) {
+					return;
+				}
+			}
+			int i1 = (Integer) o1.getData();
+			int i2 = (Integer) o2.getData();
+			assertTrue("duplicate", pairs.add(Math.min(i1, i2) + "-" + Math.max(i1, i2)));
+		}
+	}
+
+	private static DGeom createGeom(DSpace space, int i) {
+		DGeom g;
+		if (i == 0) {
+			g = OdeHelper.createPlane(space, 0, 0, 1, 0);
+		} else if (i == 1) {
+			// larger than the root cell of the trees
+			g = OdeHelper.createBox(space, 30, 1, 1);
+		} else if (i % 50 == 0) {
+			g = OdeHelper.createBox(space, 6, 6, 6);
+		} else if (i % 3 == 0) {
+			g = OdeHelper.createSphere(space, 0.3);
+		} else if (i % 3 == 1) {
+			g = OdeHelper.createBox(space, 0.5, 0.2, 0.4);
+		} else {
+			// small geoms that are stored deep in the trees
+			g = OdeHelper.createSphere(space, 0.02);
+		}
+		g.setData(i);
+		return g;
+	}
+
+	private static void move(DGeom a, DGeom b, double x, double y, double z) {
+		a.setPosition(x, y, z);
+		b.setPosition(x, y, z);
+	}
+
+	/**
+	 * @return The number of pairs.
+	 */
+	private static int assertSamePairs(DSpace space, DSpace simple) {
+		PairCollector c1 = new PairCollector();
+		PairCollector c2 = new PairCollector();
+		space.collide(null, c1);
+		simple.collide(null, c2);
+		assertEquals(c2.pairs, c1.pairs);
+		return c1.pairs.size();
+	}
+
+	@Test
+	public void testSameAsSimpleSpace() {
+		DSpace space = factory.create(null);
+		DSpace simple = OdeHelper.createSimpleSpace();
+		DGeom[] g1 = new DGeom[N];
+		DGeom[] g2 = new DGeom[N];
+		Random rnd = new Random(42);
+		for (int i = 0; i < N; i++) {
+			g1[i] = createGeom(space, i);
+			g2[i] = createGeom(simple, i);
+			if (i != 0) {
+				move(g1[i], g2[i], rnd.nextDouble() * 10, rnd.nextDouble() * 10, rnd.nextDouble() * 4);
+			}
+		}
+		DGeom probe = OdeHelper.createSphere(null, 1.5);
+		probe.setData(-1);
+
+		int totalPairs = 0;
+		for (int step = 0; step < 60; step++) {
+			// move some geoms, some of them far and out of the space bounds
+			for (int k = 0; k < 30; k++) {
+				int i = 1 + rnd.nextInt(N - 1);
+				if (g1[i] == null) {
+					continue;
+				}
+				double d = rnd.nextInt(4) == 0 ? 6 : 0.05;
+				move(g1[i], g2[i], 
+						g1[i].getPosition().get0() + (rnd.nextDouble() - 0.5) * d, 
+						g1[i].getPosition().get1() + (rnd.nextDouble() - 0.5) * d, 
+						g1[i].getPosition().get2() + (rnd.nextDouble() - 0.5) * d);
+			}
+			if (step == 10) {
+				// disable and remove some geoms, stack others
+				g1[5].disable();
+				g2[5].disable();
+				space.remove(g1[7]);
+				simple.remove(g2[7]);
+				g1[9].destroy();
+				g2[9].destroy();
+				g1[9] = g2[9] = null;
+				for (int i = 10; i < 20; i++) {
+					move(g1[i], g2[i], 5, 5, 3);
+				}
+			}
+			if (step == 11) {
+				// remove the stacked geoms together
+				for (int i = 10; i < 20; i++) {
+					g1[i].destroy();
+					g2[i].destroy();
+					g1[i] = g2[i] = null;
+				}
+			}
+			if (step == 20) {
+				g1[5].enable();
+				g2[5].enable();
+				space.add(g1[7]);
+				simple.add(g2[7]);
+				for (int i = 10; i < 20; i++) {
+					g1[i] = createGeom(space, i);
+					g2[i] = createGeom(simple, i);
+					move(g1[i], g2[i], 5, 5 + i * 0.1, 3);
+				}
+			}
+			if (step == 30 || step == 40) {
+				// settings that change the layout of the space
+				if (space instanceof DHashSpace) {
+					((DHashSpace) space).setLevels(step == 30 ? -3 : -2, step == 30 ? 10 : 2);
+				} else if (space instanceof DOctreeSpace) {
+					((DOctreeSpace) space).setLooseness(step == 30 ? 1.5 : 3);
+				}
+			}
+
+			totalPairs += assertSamePairs(space, simple);
+
+			probe.setPosition(rnd.nextDouble() * 10, rnd.nextDouble() * 10, rnd.nextDouble() * 4);
+			PairCollector c1 = new PairCollector();
+			PairCollector c2 = new PairCollector();
+			OdeHelper.spaceCollide2(space, probe, null, c1);
+			OdeHelper.spaceCollide2(simple, probe, null, c2);
+			assertEquals(c2.pairs, c1.pairs);
+		}
+		assertTrue(totalPairs > 0);
+
+		probe.destroy();
+		space.destroy();
+		simple.destroy();
+	}
+
+	@Test
+	public void testTallStack() {
+		// a column of boxes, the trees subdivide all axes
+		DSpace space = factory.create(null);
+		DSpace simple = OdeHelper.createSimpleSpace();
+		for (int i = 0; i < 40; i++) {
+			DGeom a = OdeHelper.createBox(space, 0.2, 0.2, 0.25);
+			DGeom b = OdeHelper.createBox(simple, 0.2, 0.2, 0.25);
+			a.setData(i);
+			b.setData(i);
+			move(a, b, 3, 3, 0.125 + i * 0.249);
+		}
+		PairCollector c = new PairCollector();
+		simple.collide(null, c);
+		assertEquals(39, c.pairs.size());
+		assertSamePairs(space, simple);
+
+		space.destroy();
+		simple.destroy();
+	}
+
+	@Test
+	public void testNestedSpace() {
+		DSpace top = OdeHelper.createSimpleSpace();
+		DSpace space = factory.create(top);
+		space.setData(-2);
+		DGeom a = OdeHelper.createSphere(space, 1);
+		a.setData(1);
+		DGeom b = OdeHelper.createSphere(top, 1);
+		b.setData(2);
+		b.setPosition(5, 0, 0);
+
+		PairCollector c = new PairCollector();
+		top.collide(null, c);
+		if (factory != SpaceFactory.QUAD_TREE) {
+			// the quad tree space does not compute its AABB
+			assertEquals(0, c.pairs.size());
+		}
+		c.pairs.clear();
+
+		a.setPosition(4, 0, 0);
+		top.collide(null, c);
+		assertEquals("[-2-2]", c.pairs.toString());
+		c.pairs.clear();
+		OdeHelper.spaceCollide2(space, b, null, c);
+		assertEquals("[1-2]", c.pairs.toString());
+
+		top.destroy();
+	}
+}
@@ -0,0 +1,173 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.ode4j.math.DVector3;
+import org.ode4j.ode.DAABB;
+import org.ode4j.ode.DAABBC;
+import org.ode4j.ode.DGeom;
+import org.ode4j.ode.DGeomBuffer;
+import org.ode4j.ode.DSpace;
+import org.ode4j.ode.OdeHelper;
+
+/**
+ * Compares the geoms found by queryAABB() and querySphere() of every space 
+ * with a test of all geoms.
+ */
+@RunWith(Parameterized.class)
+public class TestSpaceQuery {
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> spaces() {
+		return SpaceFactory.parameters(true);
+	}
+
+	private final SpaceFactory factory;
+
+	public TestSpaceQuery(SpaceFactory factory) {
+		this.factory = factory;
+	}
+
+	@BeforeClass
+	public static void beforeClass() {
+		OdeHelper.initODE2(0);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		OdeHelper.closeODE();
+	}
+
+	private static void check(DSpace space) {
+		Random rnd = new Random(3);
+		List<DGeom> all = new ArrayList<DGeom>();
+		for (int i = 0; i < 300; i++) {
+			DGeom g = i % 2 == 0 ? OdeHelper.createSphere(space, 0.05 + rnd.nextDouble() * 0.5) : 
+				OdeHelper.createBox(space, 0.3, 1.2 * rnd.nextDouble() + 0.01, 0.4);
+			g.setPosition(rnd.nextDouble() * 20 - 2, rnd.nextDouble() * 20 - 2, rnd.nextDouble() * 4);
+			g.setData(i);
+			all.add(g);
+		}
+		DGeom big = OdeHelper.createBox(space, 5000, 1, 1);
+		big.setPosition(5, 5, 2);
+		big.setData("big");
+		all.add(big);
+		DGeom plane = OdeHelper.createPlane(space, 0, 0, 1, 0);
+		plane.setData("plane");
+		all.add(plane);
+		DGeom disabled = OdeHelper.createSphere(space, 1);
+		disabled.setPosition(8, 8, 2);
+		disabled.setData("disabled");
+		disabled.disable();
+		DSpace sub = OdeHelper.createSimpleSpace(space);
+		for (int i = 0; i < 3; i++) {
+			DGeom g = OdeHelper.createBox(sub, 1, 1, 1);
+			g.setPosition(3 * i, 3, 1);
+			g.setData("sub" + i);
+			all.add(g);
+		}
+
+		DGeomBuffer buffer = new DGeomBuffer(4);
+		DAABB box = new DAABB();
+		int hits = 0;
+		for (int step = 0; step < 200; step++) {
+			if (step % 10 == 0) {
+				// move some geoms
+				for (int i = 0; i < 30; i++) {
+					all.get(rnd.nextInt(300)).setPosition(rnd.nextDouble() * 20 - 2, 
+							rnd.nextDouble() * 20 - 2, rnd.nextDouble() * 4);
+				}
+			}
+			double x = rnd.nextDouble() * 20 - 2;
+			double y = rnd.nextDouble() * 20 - 2;
+			double z = rnd.nextDouble() * 4 - 1;
+			double s = step % 20 == 0 ? 40 : rnd.nextDouble() * 3;
+			box.set(x, x + s, y, y + s * rnd.nextDouble(), z, z + s);
+			buffer.clear();
+			space.queryAABB(box, buffer);
+			assertEquals(expected(all, box, null, 0), found(buffer));
+
+			DVector3 center = new DVector3(x, y, z);
+			double r = s * 0.7;
+			buffer.clear();
+			space.querySphere(center, r, buffer);
+			assertEquals(expected(all, null, center, r), found(buffer));
+			hits += buffer.size();
+		}
+		assertTrue(hits > 0);
+		space.destroy();
+	}
+
+	private static TreeSet<String> found(DGeomBuffer buffer) {
+		TreeSet<String> set = new TreeSet<String>();
+		for (int i = 0; i < buffer.size(); i++) {
+			assertTrue("duplicate", set.add(String.valueOf(buffer.get(i).getData())));
+		}
+		return set;
+	}
+
+	private static TreeSet<String> expected(List<DGeom> all, DAABBC box, DVector3 center, double r) {
+		TreeSet<String> set = new TreeSet<String>();
+		for (DGeom g : all) {
+			DAABBC bb = g.getAABB();
+			boolean hit = true;
+			for (int a = 0; a < 3; a++) {
+				if (box != null) {
+					hit &= bb.getMin(a) <= box.getMax(a) && bb.getMax(a) >= box.getMin(a);
+				}
+			}
+			if (center != null) {
+				double d2 = 0;
+				for (int a = 0; a < 3; a++) {
+					double d = Math.max(0, Math.max(bb.getMin(a) - center.get(a), center.get(a) - bb.getMax(a)));
+					d2 += d * d;
+				}
+				hit &= d2 <= r * r;
+			}
+			if (hit) {
+				set.add(String.valueOf(g.getData()));
+			}
+		}
+		return set;
+	}
+
+	@Test
+	public void testSpace() {
+		check(factory.create(null));
+	}
+}
@@ -0,0 +1,92 @@
+/*************************************************************************
+ *                                                                       *
+ * Open Dynamics Engine 4J, Copyright (C) 2009-2014 Tilmann Zaeschke     *
+ * All rights reserved.  Email: ode4j@gmx.de   Web: www.ode4j.org        *
+ *                                                                       *
+ * This library is free software; you can redistribute it and/or         *
+ * modify it under the terms of EITHER:                                  *
+ *   (1) The GNU Lesser General Public License as published by the Free  *
+ *       Software Foundation; either version 2.1 of the License, or (at  *
+ *       your option) any later version. The text of the GNU Lesser      *
+ *       General Public License is included with this library in the     *
+ *       file LICENSE.TXT.                                               *
+ *   (2) The BSD-style license that is included with this library in     *
+ *       the file ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT.         *
+ *                                                                       *
+ * This library is distributed in the hope that it will be useful,       *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the files    *
+ * LICENSE.TXT, ODE-LICENSE-BSD.TXT and ODE4J-LICENSE-BSD.TXT for more   *
+ * details.                                                              *
+ *                                                                       *
+ *************************************************************************/
+package org.ode4j.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.ode4j.ode.internal.processmem.DxUtil.BlockPointer;
+import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena;
+import org.ode4j.ode.internal.processmem.DxWorldProcessMemArena.ObjectType;
+
+/**
+ * The stepper arena hands out the arrays of previous steps again.
+ */
+public class TestWorldProcessMemArena {
+
+	private static final ObjectType<StringBuilder> BUILDER = new ObjectType<StringBuilder>() {
+		@Override
+		protected StringBuilder NewObject() {
+			return new StringBuilder();
+		}
+	};
+
+	@Test
+	public void testArraysAreReused() {
+		DxWorldProcessMemArena arena = new DxWorldProcessMemArena();
+		BlockPointer state = arena.SaveState();
+		double[] d1 = arena.AllocateArrayDReal(10);
+		int[] i1 = arena.AllocateArrayInt(5);
+		double[] d2 = arena.AllocateArrayDReal(20);
+		d1[3] = 1;
+		i1[4] = 2;
+		assertNotSame(d1, d2);
+
+		arena.RestoreState(state);
+		// Another type in between does not evict the double arrays
+		int[] i2 = arena.AllocateArrayInt(5);
+		double[] d3 = arena.AllocateArrayDReal(8);
+		double[] d4 = arena.AllocateArrayDReal(20);
+		assertSame(i1, i2);
+		assertSame(d1, d3);
+		assertSame(d2, d4);
+		// Like with new, the requested elements are zero
+		assertEquals(0, d3[3], 0);
+		assertEquals(0, i2[4]);
+
+		arena.RestoreState(state);
+		// A larger request replaces the array
+		double[] d5 = arena.AllocateArrayDReal(11);
+		assertNotSame(d1, d5);
+		assertEquals(11, d5.length);
+	}
+
+	@Test
+	public void testObjectsAndStatesAreReused() {
+		DxWorldProcessMemArena arena = new DxWorldProcessMemArena();
+		BlockPointer state = arena.SaveState();
+		StringBuilder o1 = arena.AllocateObject(BUILDER);
+		BlockPointer inner = arena.SaveState();
+		StringBuilder o2 = arena.AllocateObject(BUILDER);
+		assertNotSame(o1, o2);
+		arena.RestoreState(inner);
+		assertSame(o2, arena.AllocateObject(BUILDER));
+
+		arena.RestoreState(state);
+		assertSame(o1, arena.AllocateObject(BUILDER));
+		assertSame(inner, arena.SaveState());
+		assertSame(o2, arena.AllocateObject(BUILDER));
+	}
+}